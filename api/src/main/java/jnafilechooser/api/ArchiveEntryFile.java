@@ -0,0 +1,141 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.api;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/*
+ * an entry of a mounted archive disguised as a File so JFileChooser can
+ * show it
+ *
+ * The path of the file is the path of the archive followed by the path of
+ * the entry, as if the archive were a directory. All attribute queries go
+ * to the archive's file system, toPath() returns the entry's path on it.
+ * Attributes come from the central directory and are read once.
+ */
+class ArchiveEntryFile extends File
+{
+	private static final long serialVersionUID = 1L;
+
+	private final File archive;
+	private final transient Path entry;
+	private transient BasicFileAttributes attributes;
+
+	ArchiveEntryFile(File archive, Path entry) {
+		super(archive, relative(entry));
+		this.archive = archive;
+		this.entry = entry;
+	}
+
+	private static String relative(Path entry) {
+		String s = entry.toString();
+		while (s.startsWith("/")) {
+			s = s.substring(1);
+		}
+		while (s.endsWith("/")) {
+			s = s.substring(0, s.length() - 1);
+		}
+		return s.replace('/', File.separatorChar);
+	}
+
+	File getArchive() {
+		return archive;
+	}
+
+	private synchronized BasicFileAttributes attributes() {
+		if (attributes == null) {
+			try {
+				attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+			}
+			catch (IOException e) {
+				return null;
+			}
+		}
+		return attributes;
+	}
+
+	@Override
+	public Path toPath() {
+		return entry;
+	}
+
+	@Override
+	public String getName() {
+		final Path name = entry.getFileName();
+		return name == null ? "" : name.toString().replace("/", "");
+	}
+
+	@Override
+	public File getParentFile() {
+		final Path parent = entry.getParent();
+		if (parent == null || parent.getNameCount() == 0) {
+			return archive;
+		}
+		return new ArchiveEntryFile(archive, parent);
+	}
+
+	@Override
+	public File getAbsoluteFile() {
+		return this;
+	}
+
+	@Override
+	public File getCanonicalFile() {
+		return this;
+	}
+
+	@Override
+	public boolean exists() {
+		return attributes() != null;
+	}
+
+	@Override
+	public boolean isDirectory() {
+		final BasicFileAttributes a = attributes();
+		return a != null && a.isDirectory();
+	}
+
+	@Override
+	public boolean isFile() {
+		final BasicFileAttributes a = attributes();
+		return a != null && !a.isDirectory();
+	}
+
+	@Override
+	public boolean isHidden() {
+		return false;
+	}
+
+	@Override
+	public boolean canRead() {
+		return exists();
+	}
+
+	@Override
+	public boolean canWrite() {
+		return false;
+	}
+
+	@Override
+	public long length() {
+		final BasicFileAttributes a = attributes();
+		return a != null ? a.size() : 0L;
+	}
+
+	@Override
+	public long lastModified() {
+		final BasicFileAttributes a = attributes();
+		return a != null ? a.lastModifiedTime().toMillis() : 0L;
+	}
+}
@@ -0,0 +1,125 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.api;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/*
+ * the archives mounted by one Swing fallback dialog
+ *
+ * Archives are opened with the zip file system provider, which only reads
+ * the central directory, and stay mounted while the dialog is open so
+ * going back and forth doesn't parse it again. When the dialog closes
+ * every archive is unmounted except those that contain selected entries;
+ * the caller owns those and closes them through the file system of the
+ * returned paths.
+ */
+class ArchiveMounts
+{
+	private static final String[] EXTENSIONS = { "zip", "jar", "war", "ear" };
+
+	private final Map<File, FileSystem> mounts = new HashMap<>();
+
+	static boolean isArchive(File f) {
+		if (f instanceof ArchiveEntryFile) {
+			return false;
+		}
+		final String name = f.getName().toLowerCase(Locale.ROOT);
+		for (final String ext : EXTENSIONS) {
+			if (name.endsWith("." + ext)) {
+				return f.isFile();
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * returns the root of the mounted archive, mounting it if needed
+	 */
+	synchronized Path root(File archive) throws IOException {
+		FileSystem fs = mounts.get(archive);
+		if (fs == null || !fs.isOpen()) {
+			fs = FileSystems.newFileSystem(archive.toPath(), (ClassLoader) null);
+			mounts.put(archive, fs);
+		}
+		return fs.getRootDirectories().iterator().next();
+	}
+
+	/*
+	 * lists a directory of an archive; dir is the archive itself or an
+	 * entry in it
+	 */
+	File[] list(File dir) {
+		final File archive;
+		final Path path;
+		try {
+			if (dir instanceof ArchiveEntryFile) {
+				archive = ((ArchiveEntryFile) dir).getArchive();
+				path = dir.toPath();
+			}
+			else {
+				archive = dir;
+				path = root(dir);
+			}
+			final List<File> children = new ArrayList<>();
+			try (DirectoryStream<Path> entries = Files.newDirectoryStream(path)) {
+				for (final Path entry : entries) {
+					children.add(new ArchiveEntryFile(archive, entry));
+				}
+			}
+			return children.toArray(new File[0]);
+		}
+		catch (IOException | RuntimeException e) {
+			// broken archive, show it as empty
+			return new File[0];
+		}
+	}
+
+	/*
+	 * unmounts all archives except the ones the selection lives in
+	 */
+	synchronized void closeExcept(File[] selection) {
+		final List<FileSystem> keep = new ArrayList<>();
+		if (selection != null) {
+			for (final File f : selection) {
+				if (f instanceof ArchiveEntryFile) {
+					keep.add(f.toPath().getFileSystem());
+				}
+			}
+		}
+		close(mounts.values(), keep);
+		mounts.clear();
+	}
+
+	private static void close(Collection<FileSystem> all, List<FileSystem> keep) {
+		for (final FileSystem fs : all) {
+			if (!keep.contains(fs)) {
+				try {
+					fs.close();
+				}
+				catch (IOException e) {
+					// nothing we can do about it
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,575 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.api;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import jnafilechooser.api.JnaFileChooser.Backend;
+import jnafilechooser.api.JnaFileChooser.Mode;
+
+/**
+ * Picks the backend of {@link Backend#Adaptive} dialogs by what it observed
+ * on this machine.
+ *
+ * For every combination of {@link Mode} and multi selection the selector
+ * records, per backend, the time from the request until the dialog was
+ * visible and whether showing it failed. The candidates are the available
+ * backends that support the dialog, in the platform order: native, portal,
+ * Swing. Each of them is measured with {@link #MIN_SAMPLES} dialogs first,
+ * then the one that became visible fastest on average is preferred.
+ * Backends that never report when their dialog is visible (most native
+ * dialogs) aren't compared by time at all: they keep their place in the
+ * platform order ahead of the timed ones and are only ranked down by
+ * failures. So once such a backend is known, the candidates after it are
+ * not measured, their dialogs couldn't rank above it.
+ *
+ * A backend is demoted for a day if it throws twice in a row, fails more
+ * than half of its dialogs, or is more than twice as slow as its usual
+ * time three dialogs in a row. A demoted backend is only tried when all
+ * others failed and is measured afresh once the demotion ends. A failing
+ * backend doesn't fail the dialog, the next one in the ranking is shown
+ * instead.
+ *
+ * Of the native dialogs only the hooked Windows dialogs (folder browser,
+ * folder picking) report when their window is created. To pin a
+ * backend, set it instead of Adaptive; every {@link Selection} tells which
+ * backend showed it and why, see {@link Selection#getDecision()}.
+ *
+ * Example:
+ * JnaFileChooser fc = new JnaFileChooser();
+ * fc.setBackend(JnaFileChooser.Backend.Adaptive);
+ * fc.showOpenDialog(parent);
+ * System.out.println(fc.getDecision());
+ * // GTK file chooser: reports no timings, first in the platform order and not demoted
+ *
+ * The observations are kept in a small properties file that is read on
+ * first use and replaced atomically after every dialog. Processes sharing
+ * the file don't merge their observations, the last one to write wins.
+ */
+public final class BackendSelector
+{
+	/** the number of dialogs each candidate is measured with before ranking */
+	public static final int MIN_SAMPLES = 3;
+
+	private static final double SMOOTHING = 0.3;
+	private static final double REGRESSION_FACTOR = 2;
+	private static final int REGRESSION_COUNT = 3;
+	private static final int FAILURE_COUNT = 2;
+	private static final long DEMOTION_MILLIS = 24L * 60 * 60 * 1000;
+
+	private static final ThreadLocal<Attempt> CURRENT = new ThreadLocal<>();
+	private static final Runnable NOT_TIMED = new Runnable() {
+		@Override
+		public void run() {
+		}
+	};
+
+	private static BackendSelector defaultSelector;
+
+	private final File file;
+	// guarded by this; the key is "<mode>.<single|multi>.<provider class>"
+	private final TreeMap<String, Record> records = new TreeMap<>();
+	private boolean loaded;
+	private Decision lastDecision;
+
+	/**
+	 * why a backend showed a dialog
+	 */
+	public static final class Decision
+	{
+		private final Backend backend;
+		private final String name;
+		private final String reason;
+
+		Decision(Backend backend, String name, String reason) {
+			this.backend = backend;
+			this.name = name;
+			this.reason = reason;
+		}
+
+		/**
+		 * @return Native, Portal or Swing; null for the terminal chooser
+		 */
+		public Backend getBackend() {
+			return backend;
+		}
+
+		/**
+		 * @return the name of the backend, e.g. "GTK file chooser"
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return why it was chosen, e.g. "pinned by the caller"
+		 */
+		public String getReason() {
+			return reason;
+		}
+
+		@Override
+		public String toString() {
+			return name + ": " + reason;
+		}
+	}
+
+	/**
+	 * what the selector observed of one backend
+	 */
+	public static final class Stats
+	{
+		private final String name;
+		private final long shown;
+		private final long failed;
+		private final double averageMillis;
+		private final boolean demoted;
+		private final String demotionReason;
+
+		Stats(String name, Record r, long now) {
+			this.name = name;
+			this.shown = r.shown;
+			this.failed = r.failed;
+			this.averageMillis = r.average;
+			this.demoted = r.demotedUntil > now;
+			this.demotionReason = r.demotionReason;
+		}
+
+		/**
+		 * @return the class name of the provider
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return the number of dialogs it showed
+		 */
+		public long getShownCount() {
+			return shown;
+		}
+
+		/**
+		 * @return the number of dialogs it failed to show
+		 */
+		public long getFailureCount() {
+			return failed;
+		}
+
+		/**
+		 * @return the failed share of all its dialogs, 0 if it had none
+		 */
+		public double getFailureRate() {
+			return shown + failed == 0 ? 0 : (double) failed / (shown + failed);
+		}
+
+		/**
+		 * @return the smoothed time until its dialogs were visible since it
+		 *         was last demoted; -1 if not measured
+		 */
+		public double getAverageVisibleMillis() {
+			return averageMillis;
+		}
+
+		/**
+		 * @return true if it is only tried when all others failed
+		 */
+		public boolean isDemoted() {
+			return demoted;
+		}
+
+		/**
+		 * @return why it was demoted last; null if it never was
+		 */
+		public String getDemotionReason() {
+			return demotionReason;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(Locale.ROOT, "%s[shown=%d, failed=%d, avg=%.0fms%s]",
+				name, shown, failed, averageMillis,
+				demoted ? ", demoted: " + demotionReason : "");
+		}
+	}
+
+	/**
+	 * creates a selector backed by the given file
+	 *
+	 * The file and its parent directories are created on the first write.
+	 *
+	 * @param file the data file
+	 */
+	public BackendSelector(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * returns the selector shared by all choosers that have none set
+	 *
+	 * It lives in ".jnafilechooser/backends.properties" in the user's home
+	 * directory.
+	 *
+	 * @return the default selector
+	 */
+	public static synchronized BackendSelector getDefault() {
+		if (defaultSelector == null) {
+			defaultSelector = new BackendSelector(new File(
+				new File(System.getProperty("user.home"), ".jnafilechooser"), "backends.properties"));
+		}
+		return defaultSelector;
+	}
+
+	/**
+	 * @param mode           the selection mode
+	 * @param multiSelection whether several files can be selected
+	 *
+	 * @return the observations of every backend tried for such dialogs
+	 */
+	public synchronized List<Stats> getStats(Mode mode, boolean multiSelection) {
+		load();
+		final String prefix = prefix(mode, multiSelection);
+		final long now = System.currentTimeMillis();
+		final List<Stats> stats = new ArrayList<>();
+		for (final Map.Entry<String, Record> e : records.entrySet()) {
+			if (e.getKey().startsWith(prefix)) {
+				stats.add(new Stats(e.getKey().substring(prefix.length()), e.getValue(), now));
+			}
+		}
+		return stats;
+	}
+
+	/**
+	 * @return the decision of the last dialog this selector chose the
+	 *         backend for; null if there was none
+	 */
+	public synchronized Decision getLastDecision() {
+		return lastDecision;
+	}
+
+	/**
+	 * forgets all observations and demotions
+	 */
+	public synchronized void reset() {
+		records.clear();
+		loaded = true;
+		lastDecision = null;
+		save();
+	}
+
+	/*
+	 * orders the candidates, which are in platform order, best first and
+	 * explains why the first one is chosen
+	 */
+	synchronized Plan rank(Mode mode, boolean multiSelection, List<ChooserProvider> candidates) {
+		load();
+		final long now = System.currentTimeMillis();
+		final List<ChooserProvider> active = new ArrayList<>();
+		final List<ChooserProvider> demoted = new ArrayList<>();
+		for (final ChooserProvider c : candidates) {
+			(record(mode, multiSelection, c).demotedUntil > now ? demoted : active).add(c);
+		}
+		if (active.isEmpty()) {
+			return new Plan(candidates, "all candidates are demoted, using the platform order");
+		}
+		final List<ChooserProvider> order = new ArrayList<>();
+		String reason = null;
+		for (final ChooserProvider c : active) {
+			final Record r = record(mode, multiSelection, c);
+			if (r.samples >= MIN_SAMPLES && r.average < 0) {
+				// untimed, it ranks above all that follow whatever they measure
+				break;
+			}
+			if (r.samples < MIN_SAMPLES) {
+				order.add(c);
+				reason = String.format(Locale.ROOT, "measuring, %d of %d dialogs done",
+					r.samples, MIN_SAMPLES);
+				break;
+			}
+		}
+		final List<ChooserProvider> byTime = new ArrayList<>(active);
+		byTime.removeAll(order);
+		Collections.sort(byTime, new Comparator<ChooserProvider>() {
+			@Override
+			public int compare(ChooserProvider a, ChooserProvider b) {
+				return Double.compare(sortKey(record(mode, multiSelection, a)),
+					sortKey(record(mode, multiSelection, b)));
+			}
+		});
+		order.addAll(byTime);
+		if (reason == null) {
+			final Record best = record(mode, multiSelection, order.get(0));
+			reason = best.average < 0 ? "reports no timings, first in the platform order and not demoted" :
+				String.format(Locale.ROOT, "fastest, visible after %.0f ms on average", best.average);
+			if (best.average >= 0 && order.size() > 1
+					&& record(mode, multiSelection, order.get(1)).average >= 0) {
+				reason += String.format(Locale.ROOT, " vs. %.0f ms for %s",
+					record(mode, multiSelection, order.get(1)).average, order.get(1));
+			}
+		}
+		for (final ChooserProvider c : demoted) {
+			reason += "; " + c + " is demoted: " + record(mode, multiSelection, c).demotionReason;
+		}
+		order.addAll(demoted);
+		return new Plan(order, reason);
+	}
+
+	// untimed backends sort first and, the sort being stable, keep the
+	// platform order among themselves
+	private static double sortKey(Record r) {
+		return r.average < 0 ? -1 : r.average;
+	}
+
+	/*
+	 * records a dialog the backend showed; visibleMillis is negative if it
+	 * didn't report when its dialog was visible
+	 */
+	synchronized void recordShown(Mode mode, boolean multiSelection, ChooserProvider p,
+			double visibleMillis) {
+		load();
+		final Record r = record(mode, multiSelection, p);
+		++r.shown;
+		++r.samples;
+		r.consecutiveFailures = 0;
+		if (visibleMillis >= 0) {
+			r.average = r.average < 0 ?
+				visibleMillis : r.average + SMOOTHING * (visibleMillis - r.average);
+			if (r.baseline >= 0 && visibleMillis > REGRESSION_FACTOR * r.baseline) {
+				if (++r.slow >= REGRESSION_COUNT) {
+					demote(r, String.format(Locale.ROOT,
+						"visible after %.0f ms, more than %.0f times its usual %.0f ms",
+						visibleMillis, REGRESSION_FACTOR, r.baseline));
+				}
+			}
+			else {
+				r.slow = 0;
+			}
+			if (r.samples >= MIN_SAMPLES && r.average >= 0) {
+				r.baseline = r.baseline < 0 ? r.average : Math.min(r.baseline, r.average);
+			}
+		}
+		save();
+	}
+
+	/*
+	 * records a dialog the backend failed to show
+	 */
+	synchronized void recordFailure(Mode mode, boolean multiSelection, ChooserProvider p,
+			Throwable failure) {
+		load();
+		final Record r = record(mode, multiSelection, p);
+		++r.failed;
+		++r.samples;
+		++r.windowFailures;
+		if (++r.consecutiveFailures >= FAILURE_COUNT) {
+			demote(r, "failed " + r.consecutiveFailures + " times in a row, last with " + failure);
+		}
+		else if (r.samples >= 2 * FAILURE_COUNT && 2 * r.windowFailures > r.samples) {
+			demote(r, "failed " + r.windowFailures + " of its last " + r.samples + " dialogs");
+		}
+		save();
+	}
+
+	synchronized Decision decided(ChooserProvider p, String reason) {
+		lastDecision = new Decision(p.getBackend(), p.toString(), reason);
+		return lastDecision;
+	}
+
+	private static void demote(Record r, String reason) {
+		r.demotedUntil = System.currentTimeMillis() + DEMOTION_MILLIS;
+		r.demotionReason = reason;
+		r.samples = 0;
+		r.windowFailures = 0;
+		r.consecutiveFailures = 0;
+		r.slow = 0;
+		r.average = -1;
+		r.baseline = -1;
+	}
+
+	private Record record(Mode mode, boolean multiSelection, ChooserProvider p) {
+		final String key = prefix(mode, multiSelection) + p.getClass().getName();
+		Record r = records.get(key);
+		if (r == null) {
+			r = new Record();
+			records.put(key, r);
+		}
+		return r;
+	}
+
+	private static String prefix(Mode mode, boolean multiSelection) {
+		return mode.name() + (multiSelection ? ".multi." : ".single.");
+	}
+
+	private void load() {
+		if (loaded) {
+			return;
+		}
+		loaded = true;
+		final Properties p = new Properties();
+		try (final InputStream in = new FileInputStream(file)) {
+			p.load(in);
+		}
+		catch (IOException e) {
+			// a missing or unreadable file is treated as empty
+			return;
+		}
+		for (final String key : p.stringPropertyNames()) {
+			final Record r = Record.parse(p.getProperty(key));
+			if (r != null) {
+				records.put(key, r);
+			}
+		}
+	}
+
+	private void save() {
+		final Properties p = new Properties();
+		for (final Map.Entry<String, Record> e : records.entrySet()) {
+			p.setProperty(e.getKey(), e.getValue().format());
+		}
+		final File dir = file.getAbsoluteFile().getParentFile();
+		try {
+			if (!dir.isDirectory() && !dir.mkdirs()) {
+				throw new IOException("can't create " + dir);
+			}
+			final File tmp = File.createTempFile("backends", ".tmp", dir);
+			try {
+				try (final OutputStream out = new FileOutputStream(tmp)) {
+					p.store(out, "jnafilechooser backend observations: shown, failed, samples,"
+						+ " window failures, slow, consecutive failures, average ms, baseline ms,"
+						+ " demoted until, demotion reason");
+				}
+				Files.move(tmp.toPath(), file.toPath(),
+					StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			finally {
+				tmp.delete();
+			}
+		}
+		catch (IOException e) {
+			// the observations are a hint, never fail a dialog because of
+			// them; they are still used for this session
+		}
+	}
+
+	/*
+	 * starts timing a dialog shown on this thread; the backend reports the
+	 * moment its dialog is visible with the runnable from onVisible()
+	 */
+	static Attempt start() {
+		final Attempt a = new Attempt();
+		CURRENT.set(a);
+		return a;
+	}
+
+	/*
+	 * returns what a backend runs once its dialog is visible; it has to be
+	 * fetched on the thread that called the backend and can be run on any
+	 * thread
+	 */
+	static Runnable onVisible() {
+		final Attempt a = CURRENT.get();
+		return a != null ? a : NOT_TIMED;
+	}
+
+	static final class Attempt implements Runnable, AutoCloseable
+	{
+		private final long start = System.nanoTime();
+		private volatile long visibleAt;
+
+		@Override
+		public void run() {
+			if (visibleAt == 0) {
+				visibleAt = System.nanoTime();
+			}
+		}
+
+		// -1 if the backend didn't report it
+		double getVisibleMillis() {
+			final long t = visibleAt;
+			return t == 0 ? -1 : (t - start) / 1e6;
+		}
+
+		@Override
+		public void close() {
+			CURRENT.remove();
+		}
+	}
+
+	static final class Plan
+	{
+		final List<ChooserProvider> order;
+		final String reason;
+
+		Plan(List<ChooserProvider> order, String reason) {
+			this.order = order;
+			this.reason = reason;
+		}
+	}
+
+	private static final class Record
+	{
+		long shown;
+		long failed;
+		int samples;
+		int windowFailures;
+		int slow;
+		int consecutiveFailures;
+		double average = -1;
+		double baseline = -1;
+		long demotedUntil;
+		String demotionReason;
+
+		String format() {
+			return String.format(Locale.ROOT, "%d,%d,%d,%d,%d,%d,%.3f,%.3f,%d,%s",
+				shown, failed, samples, windowFailures, slow, consecutiveFailures,
+				average, baseline, demotedUntil, demotionReason != null ? demotionReason : "");
+		}
+
+		// null if malformed, e.g. written by a later version
+		static Record parse(String s) {
+			final String[] f = s.split(",", 10);
+			if (f.length != 10) {
+				return null;
+			}
+			try {
+				final Record r = new Record();
+				r.shown = Long.parseLong(f[0]);
+				r.failed = Long.parseLong(f[1]);
+				r.samples = Integer.parseInt(f[2]);
+				r.windowFailures = Integer.parseInt(f[3]);
+				r.slow = Integer.parseInt(f[4]);
+				r.consecutiveFailures = Integer.parseInt(f[5]);
+				r.average = Double.parseDouble(f[6]);
+				r.baseline = Double.parseDouble(f[7]);
+				r.demotedUntil = Long.parseLong(f[8]);
+				r.demotionReason = f[9].isEmpty() ? null : f[9];
+				return r;
+			}
+			catch (NumberFormatException e) {
+				return null;
+			}
+		}
+	}
+}
@@ -0,0 +1,78 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.api;
+
+import java.awt.Window;
+import java.io.File;
+
+/**
+ * A dialog backend that is found with {@link java.util.ServiceLoader}.
+ *
+ * The Windows dialogs, the GTK file chooser and the XDG desktop portal are
+ * provided this way by the api module itself. Each of them is only
+ * available if JNA and its binding module (jnafilechooser-win32 or
+ * jnafilechooser-gtk) are there, so a runtime image that leaves them out
+ * still works and falls back to Swing. Further backends are registered in
+ * META-INF/services/jnafilechooser.api.ChooserProvider or with a provides
+ * clause in their module-info.
+ *
+ * Providers of {@link JnaFileChooser.Backend#Native} are tried in the order
+ * the service loader finds them; the first one that is available and
+ * supports the dialog shows it. Portal providers are tried first in a
+ * sandbox and as the last resort before Swing otherwise.
+ *
+ * Example:
+ * for (ChooserProvider p : JnaFileChooser.getChooserProviders()) {
+ *     System.out.println(p.getBackend() + " " + p + " " + p.isAvailable());
+ * }
+ */
+public interface ChooserProvider
+{
+	/**
+	 * @return {@link JnaFileChooser.Backend#Native} or
+	 *         {@link JnaFileChooser.Backend#Portal}
+	 */
+	JnaFileChooser.Backend getBackend();
+
+	/**
+	 * returns whether the backend can be used on this platform and session;
+	 * called before every dialog, so it should be cheap after the first call
+	 *
+	 * @return false if the platform doesn't match or a library is missing
+	 */
+	boolean isAvailable();
+
+	/**
+	 * returns whether the backend can show the described dialog
+	 *
+	 * @param spec the dialog
+	 * @param save true for a save dialog
+	 *
+	 * @return false to let the next provider or Swing show it
+	 */
+	boolean supports(DialogSpec spec, boolean save);
+
+	/**
+	 * shows the dialog and waits until it is closed
+	 *
+	 * @param parent      the parent window; may be null
+	 * @param spec        the dialog
+	 * @param save        true for a save dialog
+	 * @param directory   the initial directory, already resolved from the
+	 *                    recent locations; may be null
+	 * @param filterIndex the initially selected filter
+	 *
+	 * @return the selection
+	 *
+	 * @throws LinkageError if a native library lacks something the backend
+	 *                      needs; the next backend is tried then
+	 */
+	Selection show(Window parent, DialogSpec spec, boolean save, File directory, int filterIndex);
+}
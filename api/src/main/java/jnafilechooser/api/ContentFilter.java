@@ -0,0 +1,84 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.api;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.swing.filechooser.FileFilter;
+
+/*
+ * a named set of content types, used as Swing file filter in the fallback
+ * and for validating the selection of the native dialog
+ */
+class ContentFilter extends FileFilter
+{
+	private final String name;
+	private final Set<ContentType> types;
+
+	ContentFilter(String name, ContentType... types) {
+		if (types.length < 1) {
+			throw new IllegalArgumentException();
+		}
+		this.name = name;
+		this.types = Collections.unmodifiableSet(EnumSet.copyOf(Arrays.asList(types)));
+	}
+
+	Set<ContentType> getTypes() {
+		return types;
+	}
+
+	@Override
+	public boolean accept(File f) {
+		if (f.isDirectory()) {
+			return true;
+		}
+		return types.contains(ContentSniffer.getDefault().sniff(f));
+	}
+
+	@Override
+	public String getDescription() {
+		return name;
+	}
+
+	/*
+	 * splits a selection into the files that match at least one of the
+	 * filters and those that don't; the headers of all files are read in
+	 * parallel
+	 */
+	static void partition(List<ContentFilter> filters, File[] files,
+			List<File> accepted, List<File> rejected) {
+		ContentSniffer.getDefault().prefetch(files);
+		for (final File f : files) {
+			if (acceptsAny(filters, f)) {
+				accepted.add(f);
+			}
+			else {
+				rejected.add(f);
+			}
+		}
+	}
+
+	/*
+	 * returns true if the file matches at least one of the filters
+	 */
+	static boolean acceptsAny(List<ContentFilter> filters, File f) {
+		for (final ContentFilter filter : filters) {
+			if (filter.accept(f)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,205 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.api;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * detects and caches the content type of files
+ *
+ * Every file is sniffed at most once per (path, size, mtime). A sniff is
+ * memoized as a future so a caller asking for a file that is currently
+ * being sniffed in the background waits for that result instead of
+ * reading the header a second time.
+ *
+ * When the Swing fallback enters a directory prefetch() sniffs all of its
+ * files in parallel. JFileChooser then calls the filter one file at a
+ * time on its loader thread and mostly finds the result already cached,
+ * so listing a directory isn't serialized on header reads.
+ */
+final class ContentSniffer
+{
+	private static final ContentSniffer DEFAULT = new ContentSniffer();
+
+	// upper bound on the number of remembered files; entries of files that
+	// changed are never looked up again and age out like unused ones
+	private static final int MAX_ENTRIES = 20000;
+
+	// least recently used first; guarded by itself
+	private final LinkedHashMap<Key, Future<ContentType>> results =
+		new LinkedHashMap<Key, Future<ContentType>>(256, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Future<ContentType>> eldest) {
+				return size() > MAX_ENTRIES;
+			}
+		};
+	private final ExecutorService pool;
+
+	ContentSniffer() {
+		final int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+		final ThreadPoolExecutor p = new ThreadPoolExecutor(threads, threads,
+			30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+			new DaemonThreadFactory("jnafilechooser-sniffer"));
+		p.allowCoreThreadTimeOut(true);
+		pool = p;
+	}
+
+	static ContentSniffer getDefault() {
+		return DEFAULT;
+	}
+
+	/*
+	 * returns the content type of the file, sniffing it on the calling
+	 * thread unless it is cached or already being sniffed
+	 */
+	ContentType sniff(File file) {
+		final Key key = key(file);
+		final FutureTask<ContentType> task = newTask(key, file);
+		final Future<ContentType> existing = putIfAbsent(key, task);
+		if (existing == null) {
+			task.run();
+			return get(task);
+		}
+		return get(existing);
+	}
+
+	/*
+	 * starts sniffing all regular files in the directory in the background;
+	 * the directory is listed in the background too
+	 */
+	void prefetch(final File dir) {
+		if (dir == null) {
+			return;
+		}
+		pool.execute(new Runnable() {
+			@Override
+			public void run() {
+				prefetch(dir.listFiles());
+			}
+		});
+	}
+
+	/*
+	 * starts sniffing the given files in the background
+	 */
+	void prefetch(File[] files) {
+		if (files == null) {
+			return;
+		}
+		for (final File f : files) {
+			final Key key = key(f);
+			final FutureTask<ContentType> task = newTask(key, f);
+			if (putIfAbsent(key, task) == null) {
+				pool.execute(task);
+			}
+		}
+	}
+
+	// returns the memoized sniff of the key, or null after storing the task
+	private Future<ContentType> putIfAbsent(Key key, Future<ContentType> task) {
+		synchronized (results) {
+			final Future<ContentType> existing = results.get(key);
+			if (existing == null) {
+				results.put(key, task);
+			}
+			return existing;
+		}
+	}
+
+	// drops the task of the key unless it was replaced already
+	private void forget(Key key, Future<ContentType> task) {
+		synchronized (results) {
+			if (results.get(key) == task) {
+				results.remove(key);
+			}
+		}
+	}
+
+	/*
+	 * a failed or interrupted read says nothing about the content, so it
+	 * isn't remembered and the next lookup reads the file again
+	 */
+	private FutureTask<ContentType> newTask(final Key key, final File file) {
+		return new FutureTask<ContentType>(new Callable<ContentType>() {
+			@Override
+			public ContentType call() throws IOException {
+				final byte[] header = FileHeader.read(file);
+				if (header == null || Thread.currentThread().isInterrupted()) {
+					throw new IOException("can't read " + file);
+				}
+				return ContentType.detect(header);
+			}
+		}) {
+			@Override
+			protected void setException(Throwable t) {
+				forget(key, this);
+				super.setException(t);
+			}
+		};
+	}
+
+	private static ContentType get(Future<ContentType> f) {
+		try {
+			return f.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		catch (ExecutionException e) {
+			return null;
+		}
+	}
+
+	private static Key key(File file) {
+		return new Key(file.getAbsolutePath(), file.length(), file.lastModified());
+	}
+
+	private static final class Key
+	{
+		private final String path;
+		private final long size;
+		private final long modified;
+
+		Key(String path, long size, long modified) {
+			this.path = path;
+			this.size = size;
+			this.modified = modified;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			final Key k = (Key) o;
+			return size == k.size && modified == k.modified && path.equals(k.path);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * (31 * path.hashCode() + (int) (size ^ (size >>> 32)))
+				+ (int) (modified ^ (modified >>> 32));
+		}
+	}
+}
@@ -0,0 +1,119 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.api;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * File types that are recognized by their content (magic bytes) rather
+ * than by their extension.
+ *
+ * Example:
+ * JnaFileChooser fc = new JnaFileChooser();
+ * fc.addContentFilter("Images", ContentType.PNG, ContentType.JPEG);
+ * fc.addContentFilter("Documents", ContentType.PDF);
+ *
+ * @see JnaFileChooser#addContentFilter(String, ContentType...)
+ */
+public enum ContentType
+{
+	PNG(true, 0, bytes(0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A)),
+	JPEG(true, 0, bytes(0xFF, 0xD8, 0xFF)),
+	GIF(true, 0, ascii("GIF87a"), ascii("GIF89a")),
+	BMP(true, 0, ascii("BM")),
+	TIFF(true, 0, bytes('I', 'I', 0x2A, 0x00), bytes('M', 'M', 0x00, 0x2A)),
+	WEBP(true, 0, ascii("RIFF")) {
+		@Override
+		boolean matches(byte[] header) {
+			return super.matches(header)
+				&& FileHeader.startsWith(header, 8, ascii("WEBP"));
+		}
+	},
+	PDF(false, 0, ascii("%PDF-")),
+	ZIP(false, 0, bytes('P', 'K', 0x03, 0x04), bytes('P', 'K', 0x05, 0x06)),
+	GZIP(false, 0, bytes(0x1F, 0x8B)),
+	SEVEN_ZIP(false, 0, bytes('7', 'z', 0xBC, 0xAF, 0x27, 0x1C)),
+	CLASS(false, 0, bytes(0xCA, 0xFE, 0xBA, 0xBE)),
+	ELF(false, 0, bytes(0x7F, 'E', 'L', 'F')),
+	EXE(false, 0, ascii("MZ"));
+
+	private final boolean image;
+	private final int offset;
+	private final byte[][] magic;
+
+	ContentType(boolean image, int offset, byte[]... magic) {
+		this.image = image;
+		this.offset = offset;
+		this.magic = magic;
+	}
+
+	/**
+	 * returns whether this is a raster image format
+	 *
+	 * @return true for image formats
+	 */
+	public boolean isImage() {
+		return image;
+	}
+
+	/*
+	 * checks the header of a file against the magic bytes of this type
+	 */
+	boolean matches(byte[] header) {
+		for (final byte[] m : magic) {
+			if (FileHeader.startsWith(header, offset, m)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * determines the type of a file from its first bytes
+	 *
+	 * Results are cached by path, size and modification time.
+	 *
+	 * @param file the file to inspect
+	 *
+	 * @return the type or null if the type is unknown or the file can't be
+	 *         read
+	 */
+	public static ContentType detect(File file) {
+		return ContentSniffer.getDefault().sniff(file);
+	}
+
+	/*
+	 * determines the type from an already read header
+	 */
+	static ContentType detect(byte[] header) {
+		if (header == null) {
+			return null;
+		}
+		for (final ContentType type : values()) {
+			if (type.matches(header)) {
+				return type;
+			}
+		}
+		return null;
+	}
+
+	private static byte[] bytes(int... values) {
+		final byte[] b = new byte[values.length];
+		for (int i = 0; i < values.length; ++i) {
+			b[i] = (byte) values[i];
+		}
+		return b;
+	}
+
+	private static byte[] ascii(String s) {
+		return s.getBytes(StandardCharsets.US_ASCII);
+	}
+}
@@ -0,0 +1,35 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.api;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * creates named daemon threads for the background pools of the chooser so
+ * that none of them keeps the JVM alive after the application is done
+ */
+class DaemonThreadFactory implements ThreadFactory
+{
+	private final String prefix;
+	private final AtomicInteger counter = new AtomicInteger();
+
+	DaemonThreadFactory(String prefix) {
+		this.prefix = prefix;
+	}
+
+	@Override
+	public Thread newThread(Runnable r) {
+		final Thread t = new Thread(r, prefix + "-" + counter.incrementAndGet());
+		t.setDaemon(true);
+		t.setPriority(Thread.NORM_PRIORITY - 1);
+		return t;
+	}
+}
@@ -0,0 +1,305 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.api;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Shows file dialogs in a separate helper process.
+ *
+ * The helper is a small JVM started from the same Java installation and
+ * class path, or module path if this library runs as a named module. It
+ * hosts the dialog and sends back the {@link Selection} over
+ * its standard streams, so the calling process never initializes AWT, Swing
+ * or the native dialog libraries. This keeps the footprint of server-style
+ * processes that only need a dialog now and then small.
+ *
+ * The helper is reused for all dialogs of a host and started again if it
+ * died. Dialogs of one host are shown one at a time; while one is open the
+ * host can still be queried, and closing it ends the dialog. The helper can't
+ * attach its dialog to a window of the calling process, so dialogs are
+ * shown without a parent.
+ *
+ * Example:
+ * DialogHost host = DialogHost.getDefault();
+ * host.start(); // optional, spawns the helper ahead of time
+ * ...
+ * Selection s = host.open(spec);
+ */
+public final class DialogHost implements Closeable
+{
+	private static DialogHost defaultHost;
+
+	private final List<String> command;
+	// held while a dialog is shown, the state below is only locked briefly
+	private final Object dialogLock = new Object();
+
+	// guarded by this
+	private Process process;
+	private DataOutputStream out;
+	private DataInputStream in;
+	private int starts;
+
+	/**
+	 * creates a new host whose helper runs with the given JVM options
+	 *
+	 * @param jvmOptions options like "-Xmx128m" for the helper JVM
+	 */
+	public DialogHost(String... jvmOptions) {
+		final List<String> cmd = new ArrayList<>();
+		cmd.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+		cmd.addAll(Arrays.asList(jvmOptions));
+		final String classPath = System.getProperty("java.class.path", "");
+		if (!classPath.isEmpty()) {
+			cmd.add("-cp");
+			cmd.add(classPath);
+		}
+		final String module = moduleName();
+		if (module != null) {
+			cmd.add("--module-path");
+			cmd.add(System.getProperty("jdk.module.path", ""));
+			// the bindings are static dependencies and only resolved if
+			// they are asked for
+			cmd.add("--add-modules");
+			cmd.add("ALL-MODULE-PATH");
+			cmd.add("-m");
+			cmd.add(module + "/" + DialogHost.class.getName());
+		}
+		else {
+			cmd.add(DialogHost.class.getName());
+		}
+		this.command = cmd;
+	}
+
+	// the name of our module, null on the class path and before Java 9
+	private static String moduleName() {
+		try {
+			final Object module = Class.class.getMethod("getModule").invoke(DialogHost.class);
+			return (String) module.getClass().getMethod("getName").invoke(module);
+		}
+		catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return the shared host, its helper runs with a 64 MB heap
+	 */
+	public static synchronized DialogHost getDefault() {
+		if (defaultHost == null) {
+			defaultHost = new DialogHost("-Xmx64m", "-XX:+UseSerialGC");
+		}
+		return defaultHost;
+	}
+
+	/**
+	 * starts the helper process unless it is running already
+	 *
+	 * Dialogs start the helper on demand, calling this ahead of time saves
+	 * the startup of the helper JVM when the first dialog is shown. This
+	 * returns when the helper is ready to take requests.
+	 *
+	 * @throws IOException if the helper can't be started
+	 */
+	public synchronized void start() throws IOException {
+		if (process != null && process.isAlive()) {
+			return;
+		}
+		stop();
+		final ProcessBuilder pb = new ProcessBuilder(command);
+		pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+		process = pb.start();
+		++starts;
+		out = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+		in = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+		try {
+			HostProtocol.writeRequest(out, HostProtocol.PING, null, null, 0);
+			HostProtocol.readSelection(in);
+		}
+		catch (IOException e) {
+			stop();
+			throw e;
+		}
+	}
+
+	/**
+	 * shows a dialog for opening files in the helper process
+	 *
+	 * @param spec the dialog to show
+	 *
+	 * @return the selection
+	 */
+	public Selection open(DialogSpec spec) {
+		return show(spec, false, spec.getCurrentDirectory(), spec.getFilterIndex());
+	}
+
+	/**
+	 * shows a dialog for saving files in the helper process
+	 *
+	 * @param spec the dialog to show
+	 *
+	 * @return the selection
+	 */
+	public Selection save(DialogSpec spec) {
+		return show(spec, true, spec.getCurrentDirectory(), spec.getFilterIndex());
+	}
+
+	/*
+	 * shows a dialog with the given effective directory and filter index; a
+	 * helper that failed is restarted and the request is sent once more,
+	 * a dialog whose helper was closed meanwhile counts as cancelled
+	 */
+	Selection show(DialogSpec spec, boolean save, File directory, int filterIndex) {
+		synchronized (dialogLock) {
+			IOException failure = null;
+			for (int attempt = 0; attempt < 2; ++attempt) {
+				final Process p;
+				final DataOutputStream o;
+				final DataInputStream i;
+				try {
+					synchronized (this) {
+						start();
+						p = process;
+						o = out;
+						i = in;
+					}
+				}
+				catch (IOException e) {
+					failure = e;
+					continue;
+				}
+				// the user may take a while, don't block the host meanwhile
+				try {
+					HostProtocol.writeRequest(o, save ? HostProtocol.SAVE : HostProtocol.OPEN,
+						spec, directory, filterIndex);
+					return HostProtocol.readSelection(i);
+				}
+				catch (IOException e) {
+					failure = e;
+					synchronized (this) {
+						if (process != p) {
+							// closed while the dialog was open
+							return Selection.cancelled(null);
+						}
+						stop();
+					}
+				}
+			}
+			throw new RuntimeException("dialog host failed", failure);
+		}
+	}
+
+	/**
+	 * @return true if the helper process is running
+	 */
+	public synchronized boolean isRunning() {
+		return process != null && process.isAlive();
+	}
+
+	/**
+	 * @return how often the helper process was started
+	 */
+	public synchronized int getStartCount() {
+		return starts;
+	}
+
+	/**
+	 * stops the helper process, ending a dialog that is open; the next
+	 * dialog starts it again
+	 */
+	@Override
+	public synchronized void close() {
+		stop();
+	}
+
+	private void stop() {
+		if (process == null) {
+			return;
+		}
+		try {
+			// end of input makes the helper exit by itself
+			out.close();
+		}
+		catch (IOException e) {
+			// it's gone anyway
+		}
+		process.destroy();
+		process = null;
+		out = null;
+		in = null;
+	}
+
+	/**
+	 * the entry point of the helper process
+	 *
+	 * @param args ignored
+	 *
+	 * @throws IOException if the connection to the calling process fails
+	 */
+	public static void main(String[] args) throws IOException {
+		final DataInputStream in = new DataInputStream(
+			new BufferedInputStream(new FileInputStream(FileDescriptor.in)));
+		final DataOutputStream out = new DataOutputStream(
+			new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+		// standard input and output belong to the protocol, keep stray
+		// prints out of it and let the terminal chooser use the terminal
+		System.setOut(new PrintStream(new FileOutputStream(FileDescriptor.err), true));
+		InputStream terminal;
+		try {
+			terminal = new FileInputStream("/dev/tty");
+		}
+		catch (IOException e) {
+			terminal = new ByteArrayInputStream(new byte[0]);
+		}
+		System.setIn(terminal);
+		while (true) {
+			final byte op;
+			try {
+				HostProtocol.readMagic(in);
+				op = in.readByte();
+			}
+			catch (EOFException e) {
+				// the calling process is done or gone
+				break;
+			}
+			if (op == HostProtocol.PING) {
+				HostProtocol.writeSelection(out, Selection.cancelled(null));
+				continue;
+			}
+			final DialogSpec spec = HostProtocol.readSpec(in);
+			Selection selection;
+			try {
+				selection = JnaFileChooser.showInProcess(spec, op == HostProtocol.SAVE);
+			}
+			catch (RuntimeException e) {
+				HostProtocol.writeError(out, e.toString());
+				continue;
+			}
+			HostProtocol.writeSelection(out, selection);
+		}
+		System.exit(0);
+	}
+}
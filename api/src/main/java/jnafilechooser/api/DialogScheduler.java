@@ -0,0 +1,422 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.api;
+
+import java.awt.EventQueue;
+import java.awt.SecondaryLoop;
+import java.awt.Toolkit;
+import java.awt.Window;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.function.BiConsumer;
+
+/**
+ * Serializes file dialogs per owner window.
+ *
+ * Dialogs requested for the same owner are shown one after another in the
+ * order they were submitted instead of stacking on top of each other. A
+ * request that is identical to one that is still waiting (same owner, same
+ * {@link DialogSpec} instance and same kind of dialog) doesn't open another
+ * dialog, it gets the result of the waiting one. Dialogs of different owners
+ * are shown concurrently up to a global limit. The Swing fallback is shown
+ * on the event dispatch thread, native dialogs on a thread of their own.
+ *
+ * Example:
+ * Future&lt;Selection&gt; f = DialogScheduler.getDefault().submitOpen(window, spec);
+ * ...
+ * Selection s = f.get();
+ */
+public final class DialogScheduler
+{
+	private static final DialogScheduler DEFAULT = new DialogScheduler(4);
+
+	private final ExecutorService pool = Executors.newCachedThreadPool(
+		new DaemonThreadFactory("jnafilechooser-dialog"));
+	private final int maxConcurrent;
+
+	// guarded by this
+	private final LinkedList<Request> pending = new LinkedList<>();
+	private final Map<Window, Boolean> busyOwners = new IdentityHashMap<>();
+	private boolean busyWithoutOwner;
+	private int active;
+	private long submitted;
+	private long coalesced;
+	private long started;
+	private long totalWaitNanos;
+	private long maxWaitNanos;
+
+	/**
+	 * creates a new scheduler
+	 *
+	 * @param maxConcurrent the maximum number of dialogs shown at once
+	 */
+	public DialogScheduler(int maxConcurrent) {
+		if (maxConcurrent < 1) {
+			throw new IllegalArgumentException("maxConcurrent < 1");
+		}
+		this.maxConcurrent = maxConcurrent;
+	}
+
+	/**
+	 * @return the shared scheduler, showing at most 4 dialogs at once
+	 */
+	public static DialogScheduler getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * queues an open dialog
+	 *
+	 * @param owner the parent window; may be null
+	 * @param spec  the dialog to show
+	 *
+	 * @return the future selection; cancelling it only gives up this
+	 *         caller's interest, the dialog is withdrawn once everybody
+	 *         waiting for it cancelled and it isn't shown yet
+	 */
+	public Future<Selection> submitOpen(Window owner, DialogSpec spec) {
+		return submit(owner, spec, false);
+	}
+
+	/**
+	 * queues a save dialog
+	 *
+	 * @param owner the parent window; may be null
+	 * @param spec  the dialog to show
+	 *
+	 * @return the future selection
+	 *
+	 * @see #submitOpen(Window, DialogSpec)
+	 */
+	public Future<Selection> submitSave(Window owner, DialogSpec spec) {
+		return submit(owner, spec, true);
+	}
+
+	/**
+	 * queues an open dialog and waits for its result
+	 *
+	 * Called on the event dispatch thread this keeps dispatching events
+	 * while it waits, like a modal dialog does.
+	 *
+	 * @param owner the parent window; may be null
+	 * @param spec  the dialog to show
+	 *
+	 * @return the selection
+	 *
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public Selection open(Window owner, DialogSpec spec) throws InterruptedException {
+		return await((Waiter) submitOpen(owner, spec));
+	}
+
+	/**
+	 * queues a save dialog and waits for its result
+	 *
+	 * @param owner the parent window; may be null
+	 * @param spec  the dialog to show
+	 *
+	 * @return the selection
+	 *
+	 * @throws InterruptedException if interrupted while waiting
+	 *
+	 * @see #open(Window, DialogSpec)
+	 */
+	public Selection save(Window owner, DialogSpec spec) throws InterruptedException {
+		return await((Waiter) submitSave(owner, spec));
+	}
+
+	private synchronized Future<Selection> submit(Window owner, DialogSpec spec, boolean save) {
+		++submitted;
+		for (final Request r : pending) {
+			if (r.owner == owner && r.spec == spec && r.save == save && !r.isCancelled()) {
+				++coalesced;
+				return new Waiter(r);
+			}
+		}
+		final Request r = new Request(owner, spec, save);
+		pending.add(r);
+		final Waiter w = new Waiter(r);
+		schedule();
+		return w;
+	}
+
+	// the last waiter gave up, so the dialog isn't shown if it still waits
+	private synchronized void withdraw(Request r) {
+		if (--r.waiters == 0 && pending.remove(r)) {
+			r.cancel(false);
+		}
+	}
+
+	// starts waiting requests in submission order, skipping owners that
+	// already show a dialog; must hold the lock
+	private void schedule() {
+		final Iterator<Request> it = pending.iterator();
+		while (active < maxConcurrent && it.hasNext()) {
+			final Request r = it.next();
+			if (r.isCancelled()) {
+				it.remove();
+				continue;
+			}
+			if (isBusy(r.owner)) {
+				continue;
+			}
+			it.remove();
+			setBusy(r.owner, true);
+			++active;
+			++started;
+			final long wait = System.nanoTime() - r.queuedAt;
+			totalWaitNanos += wait;
+			maxWaitNanos = Math.max(maxWaitNanos, wait);
+			pool.execute(r);
+		}
+	}
+
+	private boolean isBusy(Window owner) {
+		return owner == null ? busyWithoutOwner : busyOwners.containsKey(owner);
+	}
+
+	private void setBusy(Window owner, boolean busy) {
+		if (owner == null) {
+			busyWithoutOwner = busy;
+		}
+		else if (busy) {
+			busyOwners.put(owner, Boolean.TRUE);
+		}
+		else {
+			busyOwners.remove(owner);
+		}
+	}
+
+	private synchronized void finished(Request r) {
+		setBusy(r.owner, false);
+		--active;
+		schedule();
+	}
+
+	private static Selection await(Waiter w) throws InterruptedException {
+		if (EventQueue.isDispatchThread() && !w.isDone()) {
+			// blocking here would freeze Swing dialogs shown by the
+			// scheduler, so pump events until the result is there
+			final SecondaryLoop loop = Toolkit.getDefaultToolkit()
+				.getSystemEventQueue().createSecondaryLoop();
+			w.whenComplete(new BiConsumer<Selection, Throwable>() {
+				@Override
+				public void accept(Selection selection, Throwable failure) {
+					// posted so that it can't run before enter()
+					EventQueue.invokeLater(new Runnable() {
+						@Override
+						public void run() {
+							loop.exit();
+						}
+					});
+				}
+			});
+			loop.enter();
+		}
+		try {
+			return w.get();
+		}
+		catch (ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new RuntimeException(cause);
+		}
+	}
+
+	/**
+	 * @return the number of requests waiting for their dialog
+	 */
+	public synchronized int getQueueDepth() {
+		int n = 0;
+		for (final Request r : pending) {
+			if (!r.isCancelled()) {
+				++n;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * @param owner the parent window; may be null
+	 *
+	 * @return the number of requests waiting for a dialog of the owner
+	 */
+	public synchronized int getQueueDepth(Window owner) {
+		int n = 0;
+		for (final Request r : pending) {
+			if (r.owner == owner && !r.isCancelled()) {
+				++n;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * @return the number of dialogs currently shown
+	 */
+	public synchronized int getActiveCount() {
+		return active;
+	}
+
+	/**
+	 * @return the number of requests submitted so far
+	 */
+	public synchronized long getSubmittedCount() {
+		return submitted;
+	}
+
+	/**
+	 * @return the number of requests that were merged into a waiting one
+	 */
+	public synchronized long getCoalescedCount() {
+		return coalesced;
+	}
+
+	/**
+	 * @return the average time requests waited before their dialog was
+	 *         shown, in milliseconds
+	 */
+	public synchronized double getAverageWaitMillis() {
+		return started == 0 ? 0 : totalWaitNanos / 1e6 / started;
+	}
+
+	/**
+	 * @return the longest time a request waited before its dialog was
+	 *         shown, in milliseconds
+	 */
+	public synchronized double getMaxWaitMillis() {
+		return maxWaitNanos / 1e6;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("DialogScheduler[active=%d/%d, queued=%d, submitted=%d,"
+			+ " coalesced=%d, avgWait=%.1fms, maxWait=%.1fms]",
+			active, maxConcurrent, getQueueDepth(), submitted, coalesced,
+			getAverageWaitMillis(), getMaxWaitMillis());
+	}
+
+	private final class Request extends FutureTask<Selection>
+	{
+		final Window owner;
+		final DialogSpec spec;
+		final boolean save;
+		final long queuedAt = System.nanoTime();
+		// guarded by the scheduler
+		int waiters;
+		// guarded by this
+		private List<Runnable> listeners = new ArrayList<>();
+
+		Request(final Window owner, final DialogSpec spec, final boolean save) {
+			super(new Callable<Selection>() {
+				@Override
+				public Selection call() {
+					return save ?
+						JnaFileChooser.save(owner, spec) :
+						JnaFileChooser.open(owner, spec);
+				}
+			});
+			this.owner = owner;
+			this.spec = spec;
+			this.save = save;
+		}
+
+		@Override
+		public void run() {
+			try {
+				super.run();
+			}
+			finally {
+				finished(this);
+			}
+		}
+
+		void whenDone(Runnable listener) {
+			synchronized (this) {
+				if (listeners != null) {
+					listeners.add(listener);
+					return;
+				}
+			}
+			listener.run();
+		}
+
+		@Override
+		protected void done() {
+			final List<Runnable> l;
+			synchronized (this) {
+				l = listeners;
+				listeners = null;
+			}
+			for (final Runnable r : l) {
+				r.run();
+			}
+		}
+	}
+
+	/*
+	 * the future of one caller; requests that were coalesced share the
+	 * Request but each caller can cancel its own Waiter
+	 */
+	private final class Waiter extends CompletableFuture<Selection>
+	{
+		final Request request;
+
+		// called with the scheduler's lock held
+		Waiter(final Request request) {
+			this.request = request;
+			++request.waiters;
+			request.whenDone(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						complete(request.get());
+					}
+					catch (CancellationException e) {
+						// every waiter cancelled already
+					}
+					catch (InterruptedException e) {
+						// can't happen, the request is done
+						Thread.currentThread().interrupt();
+					}
+					catch (ExecutionException e) {
+						completeExceptionally(e.getCause());
+					}
+				}
+			});
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			final boolean cancelled = super.cancel(mayInterruptIfRunning);
+			if (cancelled) {
+				withdraw(request);
+			}
+			return cancelled;
+		}
+	}
+}
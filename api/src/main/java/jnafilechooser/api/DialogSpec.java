@@ -0,0 +1,505 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.api;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.swing.filechooser.FileFilter;
+import javax.swing.filechooser.FileNameExtensionFilter;
+
+/**
+ * An immutable description of a file dialog.
+ *
+ * A spec is built once and can then be shared freely between threads and
+ * windows. Everything a backend derives from it, like the filter string of
+ * the Windows dialog or the Swing file filters, is computed once for the
+ * spec, so showing a dialog again doesn't copy or rebuild anything.
+ *
+ * Example:
+ * static final DialogSpec IMPORT = DialogSpec.builder()
+ *     .title("Import")
+ *     .addFilter("Pictures", "jpg", "jpeg", "png")
+ *     .multiSelection(true)
+ *     .build();
+ * ...
+ * Selection s = JnaFileChooser.open(window, IMPORT);
+ * if (s.isApproved()) {
+ *     // do something with s.getFiles()
+ * }
+ */
+public final class DialogSpec
+{
+	private final JnaFileChooser.Mode mode;
+	private final boolean multiSelection;
+	private final String title;
+	private final String openButtonText;
+	private final String saveButtonText;
+	private final String defaultFileName;
+	private final List<String[]> filters;
+	private final List<ContentFilter> contentFilters;
+	private final File currentDirectory;
+	private final File unresponsiveDirectory;
+	private final int filterIndex;
+	private final String context;
+	private final RecentLocations recentLocations;
+	private final boolean preview;
+	private final ThumbnailCache thumbnailCache;
+	private final boolean search;
+	private final boolean archiveBrowsing;
+	private final boolean directorySizes;
+	private final long readAheadBytes;
+	private final boolean saveValidation;
+	private final long requiredFreeBytes;
+	private final String digestAlgorithm;
+
+	private final DialogHost dialogHost;
+	private final JnaFileChooser.Backend backend;
+	private final BackendSelector backendSelector;
+
+	// backend artifacts, built on first use so that a spec shown through a
+	// DialogHost never touches the Windows or Swing classes; racing threads
+	// build equal values
+	private volatile String windowsFilterString;
+	private volatile List<FileFilter> swingFilters;
+
+	private DialogSpec(Builder b) {
+		mode = b.mode;
+		multiSelection = b.multiSelection;
+		title = b.title;
+		openButtonText = b.openButtonText;
+		saveButtonText = b.saveButtonText;
+		defaultFileName = b.defaultFileName;
+		filters = Collections.unmodifiableList(copy(b.filters));
+		contentFilters = Collections.unmodifiableList(new ArrayList<>(b.contentFilters));
+		currentDirectory = b.currentDirectory;
+		unresponsiveDirectory = b.unresponsiveDirectory;
+		filterIndex = b.filterIndex;
+		context = b.context;
+		recentLocations = b.recentLocations;
+		preview = b.preview;
+		thumbnailCache = b.thumbnailCache;
+		search = b.search;
+		archiveBrowsing = b.archiveBrowsing;
+		directorySizes = b.directorySizes;
+		readAheadBytes = b.readAheadBytes;
+		saveValidation = b.saveValidation;
+		requiredFreeBytes = b.requiredFreeBytes;
+		digestAlgorithm = b.digestAlgorithm;
+		dialogHost = b.dialogHost;
+		backend = b.backend;
+		backendSelector = b.backendSelector;
+	}
+
+	/**
+	 * @return a new builder with the defaults of {@link JnaFileChooser}
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * @return a builder initialized with the settings of this spec
+	 */
+	public Builder toBuilder() {
+		final Builder b = new Builder();
+		b.mode = mode;
+		b.multiSelection = multiSelection;
+		b.title = title;
+		b.openButtonText = openButtonText;
+		b.saveButtonText = saveButtonText;
+		b.defaultFileName = defaultFileName;
+		b.filters.addAll(filters);
+		b.contentFilters.addAll(contentFilters);
+		b.currentDirectory = currentDirectory;
+		b.unresponsiveDirectory = unresponsiveDirectory;
+		b.filterIndex = filterIndex;
+		b.context = context;
+		b.recentLocations = recentLocations;
+		b.preview = preview;
+		b.thumbnailCache = thumbnailCache;
+		b.search = search;
+		b.archiveBrowsing = archiveBrowsing;
+		b.directorySizes = directorySizes;
+		b.readAheadBytes = readAheadBytes;
+		b.saveValidation = saveValidation;
+		b.requiredFreeBytes = requiredFreeBytes;
+		b.digestAlgorithm = digestAlgorithm;
+		b.dialogHost = dialogHost;
+		b.backend = backend;
+		b.backendSelector = backendSelector;
+		return b;
+	}
+
+	public JnaFileChooser.Mode getMode() {
+		return mode;
+	}
+
+	public boolean isMultiSelection() {
+		return multiSelection;
+	}
+
+	public String getTitle() {
+		return title;
+	}
+
+	public String getOpenButtonText() {
+		return openButtonText;
+	}
+
+	public String getSaveButtonText() {
+		return saveButtonText;
+	}
+
+	public String getDefaultFileName() {
+		return defaultFileName;
+	}
+
+	/**
+	 * @return the filters, each as name followed by the extensions
+	 */
+	public List<String[]> getFilters() {
+		return copy(filters);
+	}
+
+	// the filters without copying them; they must not be modified
+	List<String[]> getFilterSpecs() {
+		return filters;
+	}
+
+	private static List<String[]> copy(List<String[]> specs) {
+		final List<String[]> l = new ArrayList<>(specs.size());
+		for (final String[] spec : specs) {
+			l.add(spec.clone());
+		}
+		return l;
+	}
+
+	List<ContentFilter> getContentFilters() {
+		return contentFilters;
+	}
+
+	public File getCurrentDirectory() {
+		return currentDirectory;
+	}
+
+	File getUnresponsiveDirectory() {
+		return unresponsiveDirectory;
+	}
+
+	public int getFilterIndex() {
+		return filterIndex;
+	}
+
+	public String getContext() {
+		return context;
+	}
+
+	public RecentLocations getRecentLocations() {
+		return recentLocations;
+	}
+
+	public boolean isPreview() {
+		return preview;
+	}
+
+	public ThumbnailCache getThumbnailCache() {
+		return thumbnailCache;
+	}
+
+	public boolean isSearch() {
+		return search;
+	}
+
+	public boolean isArchiveBrowsing() {
+		return archiveBrowsing;
+	}
+
+	public boolean isDirectorySizes() {
+		return directorySizes;
+	}
+
+	public long getReadAheadBytes() {
+		return readAheadBytes;
+	}
+
+	public boolean isSaveValidation() {
+		return saveValidation;
+	}
+
+	public long getRequiredFreeBytes() {
+		return requiredFreeBytes;
+	}
+
+	/**
+	 * @return the algorithm selected files are hashed with; null for none
+	 */
+	public String getDigestAlgorithm() {
+		return digestAlgorithm;
+	}
+
+	/**
+	 * @return the helper process that shows the dialog; null to show it in
+	 *         this process
+	 */
+	public DialogHost getDialogHost() {
+		return dialogHost;
+	}
+
+	public JnaFileChooser.Backend getBackend() {
+		return backend;
+	}
+
+	/**
+	 * @return where {@link JnaFileChooser.Backend#Adaptive} dialogs record
+	 *         their observations
+	 */
+	public BackendSelector getBackendSelector() {
+		return backendSelector;
+	}
+
+	String getWindowsFilterString() {
+		String s = windowsFilterString;
+		if (s == null && !filters.isEmpty()) {
+			windowsFilterString = s = WindowsFileChooser.buildFilterString(filters);
+		}
+		return s;
+	}
+
+	List<FileFilter> getSwingFilters() {
+		List<FileFilter> l = swingFilters;
+		if (l == null) {
+			final List<FileFilter> swing = new ArrayList<>();
+			for (final String[] spec : filters) {
+				// null stands for JFileChooser's own "All Files" filter
+				swing.add(spec[1].equals("*") ? null : new FileNameExtensionFilter(
+					spec[0], Arrays.copyOfRange(spec, 1, spec.length)));
+			}
+			swingFilters = l = Collections.unmodifiableList(swing);
+		}
+		return l;
+	}
+
+	/**
+	 * Builds {@link DialogSpec}s. The setters correspond to those of
+	 * {@link JnaFileChooser}. A builder is not thread-safe, the specs it
+	 * builds are.
+	 */
+	public static final class Builder
+	{
+		private JnaFileChooser.Mode mode = JnaFileChooser.Mode.Files;
+		private boolean multiSelection = false;
+		private String title = "";
+		private String openButtonText = "";
+		private String saveButtonText = "";
+		private String defaultFileName = "";
+		private final List<String[]> filters = new ArrayList<>();
+		private final List<ContentFilter> contentFilters = new ArrayList<>();
+		private File currentDirectory;
+		private File unresponsiveDirectory;
+		private int filterIndex = 0;
+		private String context;
+		private RecentLocations recentLocations = RecentLocations.getDefault();
+		private boolean preview = false;
+		private ThumbnailCache thumbnailCache = ThumbnailCache.getDefault();
+		private boolean search = false;
+		private boolean archiveBrowsing = false;
+		private boolean directorySizes = false;
+		private long readAheadBytes = 0;
+		private boolean saveValidation = false;
+		private long requiredFreeBytes = 0;
+		private String digestAlgorithm;
+		private DialogHost dialogHost;
+		private JnaFileChooser.Backend backend = JnaFileChooser.Backend.Auto;
+		private BackendSelector backendSelector = BackendSelector.getDefault();
+
+		private Builder() {
+		}
+
+		public Builder mode(JnaFileChooser.Mode mode) {
+			this.mode = mode;
+			return this;
+		}
+
+		public Builder multiSelection(boolean enabled) {
+			this.multiSelection = enabled;
+			return this;
+		}
+
+		public Builder title(String title) {
+			this.title = title;
+			return this;
+		}
+
+		public Builder openButtonText(String text) {
+			this.openButtonText = text;
+			return this;
+		}
+
+		public Builder saveButtonText(String text) {
+			this.saveButtonText = text;
+			return this;
+		}
+
+		public Builder defaultFileName(String name) {
+			this.defaultFileName = name;
+			return this;
+		}
+
+		/**
+		 * add a filter to the user-selectable list of file filters
+		 *
+		 * @param name   name of the filter
+		 * @param filter you must pass at least 1 argument, the arguments
+		 *               are the file extensions.
+		 *
+		 * @return this builder
+		 */
+		public Builder addFilter(String name, String... filter) {
+			if (filter.length < 1) {
+				throw new IllegalArgumentException();
+			}
+			final String[] spec = new String[filter.length + 1];
+			spec[0] = name;
+			System.arraycopy(filter, 0, spec, 1, filter.length);
+			filters.add(spec);
+			return this;
+		}
+
+		public Builder addContentFilter(String name, ContentType... types) {
+			contentFilters.add(new ContentFilter(name, types));
+			return this;
+		}
+
+		// used by JnaFileChooser to share its filter objects
+		Builder contentFilters(List<ContentFilter> filters) {
+			contentFilters.clear();
+			contentFilters.addAll(filters);
+			return this;
+		}
+
+		// the specs are copied when the spec is built
+		Builder filters(List<String[]> specs) {
+			filters.clear();
+			filters.addAll(specs);
+			return this;
+		}
+
+		public Builder currentDirectory(File dir) {
+			this.currentDirectory = dir;
+			return this;
+		}
+
+		Builder unresponsiveDirectory(File dir) {
+			this.unresponsiveDirectory = dir;
+			return this;
+		}
+
+		public Builder filterIndex(int index) {
+			this.filterIndex = index;
+			return this;
+		}
+
+		/**
+		 * @see JnaFileChooser#setContext(String)
+		 */
+		public Builder context(String context) {
+			this.context = context;
+			return this;
+		}
+
+		public Builder recentLocations(RecentLocations store) {
+			this.recentLocations = store != null ? store : RecentLocations.getDefault();
+			return this;
+		}
+
+		public Builder preview(boolean enabled) {
+			this.preview = enabled;
+			return this;
+		}
+
+		public Builder thumbnailCache(ThumbnailCache cache) {
+			this.thumbnailCache = cache != null ? cache : ThumbnailCache.getDefault();
+			return this;
+		}
+
+		public Builder search(boolean enabled) {
+			this.search = enabled;
+			return this;
+		}
+
+		public Builder archiveBrowsing(boolean enabled) {
+			this.archiveBrowsing = enabled;
+			return this;
+		}
+
+		public Builder directorySizes(boolean enabled) {
+			this.directorySizes = enabled;
+			return this;
+		}
+
+		public Builder readAheadBytes(long bytes) {
+			this.readAheadBytes = bytes;
+			return this;
+		}
+
+		/**
+		 * @see JnaFileChooser#setSaveValidationEnabled(boolean)
+		 */
+		public Builder saveValidation(boolean enabled) {
+			this.saveValidation = enabled;
+			return this;
+		}
+
+		public Builder requiredFreeBytes(long bytes) {
+			this.requiredFreeBytes = bytes;
+			return this;
+		}
+
+		/**
+		 * @see JnaFileChooser#setDigestAlgorithm(String)
+		 */
+		public Builder digestAlgorithm(String algorithm) {
+			this.digestAlgorithm = algorithm;
+			return this;
+		}
+
+		/**
+		 * @see JnaFileChooser#setDialogHost(DialogHost)
+		 */
+		public Builder dialogHost(DialogHost host) {
+			this.dialogHost = host;
+			return this;
+		}
+
+		/**
+		 * @see JnaFileChooser#setBackend(JnaFileChooser.Backend)
+		 */
+		public Builder backend(JnaFileChooser.Backend backend) {
+			this.backend = backend != null ? backend : JnaFileChooser.Backend.Auto;
+			return this;
+		}
+
+		/**
+		 * @see JnaFileChooser#setBackendSelector(BackendSelector)
+		 */
+		public Builder backendSelector(BackendSelector selector) {
+			this.backendSelector = selector != null ? selector : BackendSelector.getDefault();
+			return this;
+		}
+
+		public DialogSpec build() {
+			return new DialogSpec(this);
+		}
+	}
+}
@@ -0,0 +1,277 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.api;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Background content digests of the files a user just selected.
+ *
+ * Every selected file is hashed with a {@link MessageDigest} algorithm,
+ * SHA-256 unless configured otherwise, while the application goes on. Files
+ * are hashed in parallel, each one read sequentially through a large direct
+ * buffer; a memory mapping would keep the file locked on Windows until it
+ * is garbage collected. The result of each file is a future keyed by its
+ * path, so the application only waits for the digests it needs, when it
+ * needs them.
+ *
+ * Example:
+ * JnaFileChooser fc = new JnaFileChooser();
+ * fc.setMultiSelectionEnabled(true);
+ * fc.setDigestAlgorithm("SHA-256");
+ * if (fc.showOpenDialog(parent)) {
+ *     Digests digests = fc.getDigests();
+ *     for (Path p : fc.getSelectedPaths()) {
+ *         // blocks only until this file is hashed
+ *         if (alreadyImported(Digests.toHex(digests.get(p).get()))) {
+ *             continue;
+ *         }
+ *         ...
+ *     }
+ * }
+ */
+public class Digests
+{
+	/** the algorithm used if none is given */
+	public static final String DEFAULT_ALGORITHM = "SHA-256";
+
+	private static final int BUFFER_SIZE = 1024 * 1024;
+	// one read buffer per pool thread; it goes away with the idle thread
+	private static final ThreadLocal<ByteBuffer> BUFFER = new ThreadLocal<ByteBuffer>() {
+		@Override
+		protected ByteBuffer initialValue() {
+			return ByteBuffer.allocateDirect(BUFFER_SIZE);
+		}
+	};
+	private static final ExecutorService POOL;
+	static {
+		final int threads = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+		final ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads,
+			10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+			new DaemonThreadFactory("jnafilechooser-digest"));
+		pool.allowCoreThreadTimeOut(true);
+		POOL = pool;
+	}
+
+	private final String algorithm;
+	private final Map<Path, Future<byte[]>> digests = new LinkedHashMap<>();
+	private final CountDownLatch remaining;
+	private final AtomicInteger completed = new AtomicInteger();
+	private final AtomicLong bytesHashed = new AtomicLong();
+	private final AtomicLong bytesTotal = new AtomicLong();
+	private volatile boolean cancelled;
+
+	private Digests(String algorithm, int count) {
+		this.algorithm = algorithm;
+		this.remaining = new CountDownLatch(count);
+	}
+
+	/**
+	 * starts hashing files in the background
+	 *
+	 * Directories can't be hashed, their futures fail with an IOException.
+	 *
+	 * @param files the files to hash
+	 * @param algorithm the name of a MessageDigest algorithm, e.g. "SHA-256"
+	 *
+	 * @return a handle to the digests
+	 *
+	 * @throws IllegalArgumentException if the algorithm is not available
+	 */
+	public static Digests start(File[] files, String algorithm) {
+		try {
+			MessageDigest.getInstance(algorithm);
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalArgumentException(e);
+		}
+		final Map<Path, File> targets = new LinkedHashMap<>();
+		if (files != null) {
+			for (final File f : files) {
+				if (f != null) {
+					targets.put(f.toPath(), f);
+				}
+			}
+		}
+		final Digests d = new Digests(algorithm, targets.size());
+		synchronized (d.digests) {
+			for (final Path p : targets.keySet()) {
+				final FutureTask<byte[]> task = new FutureTask<byte[]>(new Callable<byte[]>() {
+					@Override
+					public byte[] call() throws IOException, NoSuchAlgorithmException {
+						return d.hash(p);
+					}
+				}) {
+					@Override
+					protected void done() {
+						d.completed.incrementAndGet();
+						d.remaining.countDown();
+					}
+				};
+				d.digests.put(p, task);
+				POOL.execute(task);
+			}
+		}
+		return d;
+	}
+
+	private byte[] hash(Path p) throws IOException, NoSuchAlgorithmException {
+		final MessageDigest md = MessageDigest.getInstance(algorithm);
+		try (SeekableByteChannel ch = Files.newByteChannel(p, StandardOpenOption.READ)) {
+			bytesTotal.addAndGet(ch.size());
+			final ByteBuffer buf = BUFFER.get();
+			while (!cancelled) {
+				buf.clear();
+				final int n = ch.read(buf);
+				if (n < 0) {
+					return md.digest();
+				}
+				buf.flip();
+				md.update(buf);
+				bytesHashed.addAndGet(n);
+			}
+		}
+		throw new IOException("cancelled");
+	}
+
+	/**
+	 * @return the algorithm the files are hashed with
+	 */
+	public String getAlgorithm() {
+		return algorithm;
+	}
+
+	/**
+	 * @return the digest of every file, keyed by path, in selection order
+	 */
+	public Map<Path, Future<byte[]>> getAll() {
+		synchronized (digests) {
+			return Collections.unmodifiableMap(new LinkedHashMap<>(digests));
+		}
+	}
+
+	/**
+	 * @param path one of the selected paths
+	 *
+	 * @return the future digest of the file; null if it isn't part of the
+	 *         selection
+	 */
+	public Future<byte[]> get(Path path) {
+		synchronized (digests) {
+			return digests.get(path);
+		}
+	}
+
+	/**
+	 * @return the number of files whose digest is done, failed or cancelled
+	 */
+	public int getCompletedCount() {
+		return completed.get();
+	}
+
+	/**
+	 * @return the number of files to hash
+	 */
+	public int getFileCount() {
+		synchronized (digests) {
+			return digests.size();
+		}
+	}
+
+	/**
+	 * @return the number of bytes hashed so far
+	 */
+	public long getBytesHashed() {
+		return bytesHashed.get();
+	}
+
+	/**
+	 * returns the progress in bytes; files that weren't opened yet don't
+	 * count, so this is only a rough estimate until all files are open
+	 *
+	 * @return a value between 0 and 1
+	 */
+	public double getProgress() {
+		if (isDone()) {
+			return 1;
+		}
+		final long total = bytesTotal.get();
+		return total == 0 ? 0 : Math.min(1, (double) bytesHashed.get() / total);
+	}
+
+	/**
+	 * stops hashing; the futures of unfinished files are cancelled
+	 */
+	public void cancel() {
+		cancelled = true;
+		synchronized (digests) {
+			for (final Future<byte[]> f : digests.values()) {
+				f.cancel(false);
+			}
+		}
+	}
+
+	/**
+	 * @return true if all files are hashed or the digests were cancelled
+	 */
+	public boolean isDone() {
+		return cancelled || remaining.getCount() == 0;
+	}
+
+	/**
+	 * waits until all files are hashed
+	 *
+	 * @param timeout the maximum time to wait
+	 * @param unit the unit of the timeout
+	 *
+	 * @return true if hashing completed in time
+	 *
+	 * @throws InterruptedException if the calling thread is interrupted
+	 */
+	public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+		return remaining.await(timeout, unit);
+	}
+
+	/**
+	 * @param digest a digest
+	 *
+	 * @return the digest as lower-case hex string
+	 */
+	public static String toHex(byte[] digest) {
+		final char[] hex = "0123456789abcdef".toCharArray();
+		final char[] out = new char[digest.length * 2];
+		for (int i = 0; i < digest.length; ++i) {
+			out[2 * i] = hex[(digest[i] >> 4) & 0xF];
+			out[2 * i + 1] = hex[digest[i] & 0xF];
+		}
+		return new String(out);
+	}
+}
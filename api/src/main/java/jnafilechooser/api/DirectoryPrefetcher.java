@@ -0,0 +1,168 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.api;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.filechooser.FileSystemView;
+
+/*
+ * speculative loading of the directory a dialog is about to open in
+ *
+ * prefetch() lists the directory in the background exactly like
+ * JFileChooser's loader would and touches the attributes of every entry,
+ * so the OS caches are warm as well. The Swing fallback then takes the
+ * listing through ProbingFileSystemView.getFiles() instead of listing the
+ * directory again.
+ *
+ * Costs are bounded: at most MAX_PENDING prefetches are queued (the
+ * oldest is dropped), at most MAX_ENTRIES listings are kept and listings
+ * expire after MAX_AGE_MILLIS. Prefetching a directory that is already
+ * being prefetched does nothing.
+ */
+final class DirectoryPrefetcher
+{
+	private static final int MAX_PENDING = 4;
+	private static final int MAX_ENTRIES = 8;
+	private static final long MAX_AGE_MILLIS = 30000;
+
+	private static final ThreadPoolExecutor POOL = new ThreadPoolExecutor(0, 2,
+		10, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(MAX_PENDING),
+		new DaemonThreadFactory("jnafilechooser-prefetch"),
+		new ThreadPoolExecutor.DiscardOldestPolicy());
+
+	// guarded by itself, ordered from oldest to newest
+	private static final LinkedHashMap<File, Listing> LISTINGS = new LinkedHashMap<>();
+
+	private DirectoryPrefetcher() {
+	}
+
+	private static final class Listing extends FutureTask<File[]>
+	{
+		final long created = System.currentTimeMillis();
+		final AtomicBoolean started = new AtomicBoolean();
+
+		Listing(Callable<File[]> c) {
+			super(c);
+		}
+
+		@Override
+		public void run() {
+			if (started.compareAndSet(false, true)) {
+				super.run();
+			}
+		}
+
+		boolean isExpired(long now) {
+			return now - created > MAX_AGE_MILLIS;
+		}
+	}
+
+	/*
+	 * starts loading the listing of the directory in the background
+	 */
+	static void prefetch(final File dir) {
+		if (dir == null) {
+			return;
+		}
+		final File key = dir.getAbsoluteFile();
+		final Listing listing = new Listing(new Callable<File[]>() {
+			@Override
+			public File[] call() {
+				// don't get stuck on dead mounts, see FileProbe
+				if (!Boolean.TRUE.equals(FileProbe.isDirectory(key, FileProbe.TIMEOUT_MILLIS))) {
+					return null;
+				}
+				final File[] files = FileSystemView.getFileSystemView().getFiles(key, true);
+				for (final File f : files) {
+					if (Thread.currentThread().isInterrupted()) {
+						break;
+					}
+					// warm the attributes the loader and renderer ask for
+					f.isDirectory();
+					f.lastModified();
+				}
+				return files;
+			}
+		});
+		synchronized (LISTINGS) {
+			final long now = System.currentTimeMillis();
+			final Listing existing = LISTINGS.get(key);
+			if (existing != null && !existing.isCancelled() && !existing.isExpired(now)) {
+				return;
+			}
+			LISTINGS.remove(key);
+			LISTINGS.put(key, listing);
+			final Iterator<Map.Entry<File, Listing>> it = LISTINGS.entrySet().iterator();
+			while (LISTINGS.size() > MAX_ENTRIES && it.hasNext()) {
+				it.next().getValue().cancel(true);
+				it.remove();
+			}
+		}
+		POOL.execute(listing);
+	}
+
+	/*
+	 * cancels the prefetch of the directory if it is still pending
+	 */
+	static void cancel(File dir) {
+		if (dir == null) {
+			return;
+		}
+		synchronized (LISTINGS) {
+			final Listing listing = LISTINGS.remove(dir.getAbsoluteFile());
+			if (listing != null) {
+				listing.cancel(true);
+			}
+		}
+	}
+
+	/*
+	 * takes the prefetched listing of the directory
+	 *
+	 * Waits if the listing is being loaded right now, since that's faster
+	 * than starting over. Returns null if there is no prefetch, it expired
+	 * or hasn't started yet; the caller then lists the directory itself.
+	 */
+	static File[] take(File dir) {
+		final Listing listing;
+		synchronized (LISTINGS) {
+			listing = LISTINGS.remove(dir.getAbsoluteFile());
+		}
+		if (listing == null || listing.isExpired(System.currentTimeMillis())) {
+			return null;
+		}
+		if (!listing.started.compareAndSet(false, true)) {
+			try {
+				return listing.get();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+			}
+			catch (ExecutionException | CancellationException e) {
+				return null;
+			}
+		}
+		// it never ran, and now it never will
+		return null;
+	}
+}
@@ -0,0 +1,195 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.api;
+
+import java.awt.Component;
+import java.awt.Container;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.HierarchyEvent;
+import java.awt.event.HierarchyListener;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.File;
+
+import javax.swing.Action;
+import javax.swing.JFileChooser;
+import javax.swing.JLabel;
+import javax.swing.JTable;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.UIManager;
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+import javax.swing.table.TableCellRenderer;
+import javax.swing.table.TableColumn;
+import javax.swing.table.TableColumnModel;
+
+/*
+ * shows folder sizes in the "Size" column of the details view of the
+ * Swing fallback
+ *
+ * JFileChooser has no API for columns, but the details view of the Metal
+ * and Windows look and feels is a plain JTable whose first column holds
+ * the File of each row. The renderer of the size column is wrapped so it
+ * asks DirectorySizes for every row, which finds out off the event
+ * dispatch thread whether the row is a directory; only visible rows are
+ * rendered, so only visible directories are walked. The table is
+ * re-patched whenever the look and feel rebuilds its columns, and
+ * repainted while totals are still growing. The walks stop when the dialog
+ * is closed. With other look and feels this quietly does nothing.
+ */
+class DirectorySizeColumn implements PropertyChangeListener
+{
+	private static final int REPAINT_MILLIS = 250;
+
+	private final JFileChooser fc;
+	private final DirectorySizes sizes = new DirectorySizes();
+	private final Timer repaint;
+	private JTable table;
+
+	private DirectorySizeColumn(JFileChooser chooser) {
+		this.fc = chooser;
+		repaint = new Timer(REPAINT_MILLIS, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				if (table != null && table.isShowing()) {
+					table.repaint();
+				}
+				if (!sizes.isBusy()) {
+					repaint.stop();
+				}
+			}
+		});
+	}
+
+	static void install(final JFileChooser fc) {
+		final DirectorySizeColumn column = new DirectorySizeColumn(fc);
+		fc.addPropertyChangeListener(column);
+		fc.addHierarchyListener(new HierarchyListener() {
+			@Override
+			public void hierarchyChanged(HierarchyEvent e) {
+				if ((e.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) != 0 && !fc.isShowing()) {
+					column.repaint.stop();
+					column.sizes.cancel();
+				}
+			}
+		});
+		// folder sizes are only visible in the details view
+		final Action details = fc.getActionMap().get("viewTypeDetails");
+		if (details != null) {
+			details.actionPerformed(new ActionEvent(fc, ActionEvent.ACTION_PERFORMED, "viewTypeDetails"));
+		}
+		column.patchLater();
+	}
+
+	@Override
+	public void propertyChange(PropertyChangeEvent e) {
+		final String prop = e.getPropertyName();
+		if (JFileChooser.DIRECTORY_CHANGED_PROPERTY.equals(prop)) {
+			sizes.cancel();
+			patchLater();
+		}
+		else if ("viewType".equals(prop) || "ancestor".equals(prop)) {
+			patchLater();
+		}
+	}
+
+	private void patchLater() {
+		SwingUtilities.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				patch();
+			}
+		});
+	}
+
+	private void patch() {
+		final JTable t = findTable(fc);
+		if (t == null) {
+			return;
+		}
+		if (t != table) {
+			table = t;
+			t.addPropertyChangeListener("columnModel", new PropertyChangeListener() {
+				@Override
+				public void propertyChange(PropertyChangeEvent e) {
+					patchLater();
+				}
+			});
+			t.getModel().addTableModelListener(new TableModelListener() {
+				@Override
+				public void tableChanged(TableModelEvent e) {
+					patchLater();
+				}
+			});
+		}
+		final TableColumnModel columns = t.getColumnModel();
+		for (int i = 0; i < columns.getColumnCount(); ++i) {
+			final TableColumn column = columns.getColumn(i);
+			if (isSizeColumn(column) && !(column.getCellRenderer() instanceof Renderer)) {
+				column.setCellRenderer(new Renderer(column.getCellRenderer()));
+			}
+		}
+	}
+
+	private static boolean isSizeColumn(TableColumn column) {
+		final Object header = column.getHeaderValue();
+		final Object sizeHeader = UIManager.get("FileChooser.fileSizeHeaderText");
+		return header != null && header.equals(sizeHeader != null ? sizeHeader : "Size");
+	}
+
+	private static JTable findTable(Container c) {
+		for (final Component child : c.getComponents()) {
+			if (child instanceof JTable) {
+				return (JTable) child;
+			}
+			if (child instanceof Container) {
+				final JTable t = findTable((Container) child);
+				if (t != null) {
+					return t;
+				}
+			}
+		}
+		return null;
+	}
+
+	private class Renderer implements TableCellRenderer
+	{
+		private final TableCellRenderer delegate;
+
+		Renderer(TableCellRenderer delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public Component getTableCellRendererComponent(JTable t, Object value,
+				boolean isSelected, boolean hasFocus, int row, int col) {
+			final TableCellRenderer r = delegate != null ? delegate
+				: t.getDefaultRenderer(t.getColumnClass(col));
+			final Component c = r.getTableCellRendererComponent(t, value, isSelected, hasFocus, row, col);
+			final Object first = t.getValueAt(row, 0);
+			if (first instanceof File && c instanceof JLabel && !(first instanceof ArchiveEntryFile)) {
+				final DirectorySizes.Total total = sizes.get((File) first);
+				if (total == null) {
+					return c;
+				}
+				if (!total.complete && !repaint.isRunning()) {
+					repaint.start();
+				}
+				if (total.known) {
+					((JLabel) c).setText(DirectorySizes.format(total.bytes)
+						+ (total.complete ? "" : "\u2026"));
+				}
+			}
+			return c;
+		}
+	}
+}
@@ -0,0 +1,231 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.api;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * computes the total size of directories in the background
+ *
+ * Every directory is walked by fork-join tasks, one per subdirectory, so
+ * idle workers steal subtrees from busy ones. File sizes are added to a
+ * shared counter as soon as they are seen, which lets the UI show a
+ * growing partial total while the walk is still running.
+ *
+ * Walks belong to the directory the user is looking at; cancel() stops
+ * all of them when the user leaves it or the dialog closes. Only the walks
+ * touch the file system: whether a row is a directory and its modification
+ * time are looked up by the walk and kept with it, so asking for a total
+ * from a renderer is cheap. Complete totals are cached by the path and
+ * modification time of the directory. Note that the modification
+ * time only changes when the directory's own entries change, a file
+ * growing deep down in the tree isn't noticed.
+ */
+final class DirectorySizes
+{
+	private static final ForkJoinPool POOL = new ForkJoinPool(
+		Math.max(2, Runtime.getRuntime().availableProcessors()));
+	private static final int MAX_CACHED = 10000;
+	private static final ConcurrentHashMap<File, long[]> CACHE = new ConcurrentHashMap<>();
+
+	// only touched on the EDT
+	private final Map<File, Walk> walks = new HashMap<>();
+	private Session session = new Session();
+
+	/*
+	 * a running or finished total
+	 */
+	static final class Total
+	{
+		final long bytes;
+		final boolean complete;
+		// false until the walk found the file to be a directory
+		final boolean known;
+
+		Total(long bytes, boolean complete, boolean known) {
+			this.bytes = bytes;
+			this.complete = complete;
+			this.known = known;
+		}
+	}
+
+	private static final class Session
+	{
+		volatile boolean cancelled;
+	}
+
+	private static final class Walk
+	{
+		final LongAdder bytes = new LongAdder();
+		volatile boolean directory;
+		volatile boolean complete;
+	}
+
+	/*
+	 * stops everything that was started, because the user navigated to
+	 * another directory or the dialog closed
+	 */
+	void cancel() {
+		session.cancelled = true;
+		session = new Session();
+		walks.clear();
+	}
+
+	/*
+	 * returns the (possibly partial) total of the directory, starting a
+	 * walk the first time the file is asked for
+	 *
+	 * @return null if the file isn't a directory
+	 */
+	Total get(File dir) {
+		Walk walk = walks.get(dir);
+		if (walk == null) {
+			walk = new Walk();
+			walks.put(dir, walk);
+			POOL.execute(new Root(session, walk, dir));
+		}
+		if (walk.complete && !walk.directory) {
+			return null;
+		}
+		return new Total(walk.bytes.sum(), walk.complete, walk.directory);
+	}
+
+	/*
+	 * returns true while any walk of the current directory is running
+	 */
+	boolean isBusy() {
+		for (final Walk walk : walks.values()) {
+			if (!walk.complete) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static final class Root extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final Session session;
+		private final Walk walk;
+		private final File dir;
+
+		Root(Session session, Walk walk, File dir) {
+			this.session = session;
+			this.walk = walk;
+			this.dir = dir;
+		}
+
+		@Override
+		protected void compute() {
+			if (session.cancelled) {
+				return;
+			}
+			if (!dir.isDirectory()) {
+				walk.complete = true;
+				return;
+			}
+			final long modified = dir.lastModified();
+			final long[] cached = CACHE.get(dir);
+			if (cached != null && cached[0] == modified) {
+				walk.bytes.add(cached[1]);
+				walk.directory = true;
+				walk.complete = true;
+				return;
+			}
+			walk.directory = true;
+			new Visit(session, walk, dir).invoke();
+			if (!session.cancelled) {
+				if (CACHE.size() >= MAX_CACHED) {
+					CACHE.clear();
+				}
+				CACHE.put(dir, new long[] { modified, walk.bytes.sum() });
+				walk.complete = true;
+			}
+		}
+	}
+
+	private static final class Visit extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final Session session;
+		private final Walk walk;
+		private final File dir;
+
+		Visit(Session session, Walk walk, File dir) {
+			this.session = session;
+			this.walk = walk;
+			this.dir = dir;
+		}
+
+		@Override
+		protected void compute() {
+			if (session.cancelled) {
+				return;
+			}
+			final File[] children = dir.listFiles();
+			if (children == null) {
+				return;
+			}
+			final List<Visit> subdirs = new ArrayList<>();
+			long bytes = 0;
+			for (final File child : children) {
+				// one stat per entry; links are neither followed (they may
+				// form cycles) nor counted with the size of their target
+				final BasicFileAttributes attrs;
+				try {
+					attrs = Files.readAttributes(child.toPath(),
+						BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+				}
+				catch (IOException e) {
+					continue;
+				}
+				if (attrs.isDirectory()) {
+					subdirs.add(new Visit(session, walk, child));
+				}
+				else if (attrs.isRegularFile()) {
+					bytes += attrs.size();
+				}
+			}
+			walk.bytes.add(bytes);
+			invokeAll(subdirs);
+		}
+	}
+
+	/*
+	 * formats a size for display, e.g. "1.4 MB"
+	 */
+	static String format(long bytes) {
+		if (bytes < 1024) {
+			return bytes + " B";
+		}
+		final String[] units = { "KB", "MB", "GB", "TB", "PB" };
+		double value = bytes;
+		int unit = -1;
+		while (value >= 1024 && unit < units.length - 1) {
+			value /= 1024;
+			++unit;
+		}
+		return String.format(value < 10 ? "%.1f %s" : "%.0f %s", value, units[unit]);
+	}
+}
@@ -0,0 +1,399 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.api;
+
+import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.UnsupportedFlavorException;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.SwingUtilities;
+import javax.swing.TransferHandler;
+
+/**
+ * A drop target that accepts files the way a dialog with the same
+ * settings would.
+ *
+ * Dropped files are checked against the filters and the content filters
+ * of the chooser or spec; if a filter index is set only that filter
+ * applies. In {@link JnaFileChooser.Mode#Files} dropped directories are
+ * expanded recursively up to {@link #setMaxDepth(int) a maximum depth},
+ * in the other modes directories are accepted as they are. Without
+ * multi-selection only one file is kept: the first in path order of the
+ * first dropped item that yields one, no matter which thread finds it first.
+ *
+ * Classification runs in parallel on background threads. Accepted files
+ * are handed to the listener on the event dispatch thread in batches while
+ * the drop is still being classified, followed by one selection with all
+ * accepted and rejected files.
+ *
+ * Example:
+ * JnaFileChooser fc = new JnaFileChooser();
+ * fc.addFilter("Pictures", "jpg", "jpeg", "png");
+ * fc.setMultiSelectionEnabled(true);
+ * panel.setTransferHandler(new FileDropHandler(fc, new FileDropHandler.Listener() {
+ *     public void filesAccepted(Selection batch) {
+ *         model.addAll(batch.getFiles());
+ *     }
+ *     public void dropCompleted(Selection result) {
+ *         status.setText(result.getRejectedFiles().size() + " files skipped");
+ *     }
+ * }));
+ */
+public class FileDropHandler extends TransferHandler
+{
+	private static final long serialVersionUID = 1L;
+
+	/** the default for how deep dropped directories are expanded */
+	public static final int DEFAULT_MAX_DEPTH = 8;
+
+	private static final ThreadPoolExecutor POOL;
+	static {
+		final ThreadPoolExecutor pool = new ThreadPoolExecutor(4, 4,
+			10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+			new DaemonThreadFactory("jnafilechooser-drop"));
+		pool.allowCoreThreadTimeOut(true);
+		POOL = pool;
+	}
+
+	/**
+	 * Receives the outcome of drops, always on the event dispatch thread.
+	 */
+	public interface Listener
+	{
+		/**
+		 * called for every batch of accepted files while a drop is
+		 * classified
+		 *
+		 * @param batch files accepted since the last batch
+		 */
+		void filesAccepted(Selection batch);
+
+		/**
+		 * called once a drop is completely classified
+		 *
+		 * @param result all accepted files, sorted, and the rejected ones
+		 */
+		void dropCompleted(Selection result);
+	}
+
+	private final DialogSpec spec;
+	private final Listener listener;
+	private volatile int maxDepth = DEFAULT_MAX_DEPTH;
+
+	/**
+	 * creates a drop target with the current settings of a chooser; later
+	 * changes to the chooser don't affect it
+	 *
+	 * @param chooser  the chooser whose filters and mode to use
+	 * @param listener receives the accepted files
+	 */
+	public FileDropHandler(JnaFileChooser chooser, Listener listener) {
+		this(chooser.toSpec(), listener);
+	}
+
+	/**
+	 * creates a drop target that accepts files like a dialog of the spec
+	 *
+	 * @param spec     the filters, mode and multi-selection to use
+	 * @param listener receives the accepted files
+	 */
+	public FileDropHandler(DialogSpec spec, Listener listener) {
+		this.spec = spec;
+		this.listener = listener;
+	}
+
+	/**
+	 * sets how many levels of dropped directories are expanded
+	 *
+	 * @param depth the maximum depth; 0 ignores dropped directories in
+	 *              {@link JnaFileChooser.Mode#Files}
+	 */
+	public void setMaxDepth(int depth) {
+		this.maxDepth = depth;
+	}
+
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	@Override
+	public boolean canImport(TransferSupport support) {
+		return support.isDataFlavorSupported(DataFlavor.javaFileListFlavor);
+	}
+
+	@Override
+	public boolean importData(TransferSupport support) {
+		if (!canImport(support)) {
+			return false;
+		}
+		final List<?> dropped;
+		try {
+			dropped = (List<?>) support.getTransferable().getTransferData(DataFlavor.javaFileListFlavor);
+		}
+		catch (UnsupportedFlavorException | IOException e) {
+			return false;
+		}
+		final List<File> files = new ArrayList<>(dropped.size());
+		for (final Object o : dropped) {
+			if (o instanceof File) {
+				files.add((File) o);
+			}
+		}
+		ingest(files);
+		return true;
+	}
+
+	/**
+	 * classifies files as if they were dropped
+	 *
+	 * @param files the files and directories
+	 *
+	 * @return the complete result, also passed to
+	 *         {@link Listener#dropCompleted(Selection)}; cancelling it stops
+	 *         the classification and the listener isn't called anymore
+	 */
+	public Future<Selection> ingest(List<File> files) {
+		return new Job(files).start();
+	}
+
+	/*
+	 * returns true if a file name matches one of the extensions of a filter
+	 */
+	static boolean matches(String[] filter, String name) {
+		final int dot = name.lastIndexOf('.');
+		final String ext = dot >= 0 ? name.substring(dot + 1) : "";
+		for (int i = 1; i < filter.length; ++i) {
+			if (filter[i].equals("*") || filter[i].equalsIgnoreCase(ext)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * one drop being classified
+	 */
+	private final class Job
+	{
+		private final List<File> dropped;
+		private final CompletableFuture<Selection> result = new CompletableFuture<>();
+		private final AtomicInteger pending = new AtomicInteger();
+		private final Queue<File> accepted = new ConcurrentLinkedQueue<>();
+		private final Queue<File> rejected = new ConcurrentLinkedQueue<>();
+		private final File directory;
+
+		// guarded by this
+		private List<File> batch = new ArrayList<>();
+		private boolean flushScheduled;
+		// the file kept without multi-selection and the index of the
+		// dropped item it came from
+		private File best;
+		private int bestIndex = Integer.MAX_VALUE;
+
+		Job(List<File> dropped) {
+			this.dropped = dropped;
+			this.directory = dropped.isEmpty() ? null :
+				dropped.get(0).getAbsoluteFile().getParentFile();
+		}
+
+		Future<Selection> start() {
+			// keeps the job from finishing while tasks are submitted
+			pending.set(1);
+			for (int i = 0; i < dropped.size(); ++i) {
+				submit(dropped.get(i), 0, i);
+			}
+			done();
+			return result;
+		}
+
+		private void submit(final File f, final int depth, final int index) {
+			pending.incrementAndGet();
+			POOL.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						if (!isFinished(index)) {
+							classify(f, depth, index);
+						}
+					}
+					finally {
+						done();
+					}
+				}
+			});
+		}
+
+		// cancelled, or a single selection already has a file from an
+		// earlier dropped item
+		private boolean isFinished(int index) {
+			if (result.isDone()) {
+				return true;
+			}
+			if (spec.isMultiSelection()) {
+				return false;
+			}
+			synchronized (this) {
+				return bestIndex < index;
+			}
+		}
+
+		private void classify(File f, int depth, int index) {
+			if (!f.isDirectory()) {
+				classifyFile(f, index);
+				return;
+			}
+			if (spec.getMode() != JnaFileChooser.Mode.Files) {
+				accept(f, index);
+				return;
+			}
+			if (depth >= maxDepth) {
+				return;
+			}
+			final File[] children = f.listFiles();
+			if (children == null) {
+				return;
+			}
+			// files are classified right here, only subdirectories become
+			// tasks of their own
+			for (final File child : children) {
+				if (isFinished(index)) {
+					return;
+				}
+				if (child.isDirectory()) {
+					submit(child, depth + 1, index);
+				}
+				else {
+					classifyFile(child, index);
+				}
+			}
+		}
+
+		private void classifyFile(File f, int index) {
+			if (spec.getMode() != JnaFileChooser.Mode.Directories && isAccepted(f)) {
+				accept(f, index);
+			}
+			else {
+				rejected.add(f);
+			}
+		}
+
+		private boolean isAccepted(File f) {
+			final List<String[]> filters = spec.getFilterSpecs();
+			final int index = spec.getFilterIndex();
+			boolean ok = filters.isEmpty();
+			if (index >= 1 && index <= filters.size()) {
+				ok = matches(filters.get(index - 1), f.getName());
+			}
+			else {
+				for (final String[] filter : filters) {
+					if (matches(filter, f.getName())) {
+						ok = true;
+						break;
+					}
+				}
+			}
+			final List<ContentFilter> contentFilters = spec.getContentFilters();
+			if (ok && !contentFilters.isEmpty()) {
+				final ContentType type = ContentSniffer.getDefault().sniff(f);
+				ok = false;
+				for (final ContentFilter filter : contentFilters) {
+					if (filter.getTypes().contains(type)) {
+						ok = true;
+						break;
+					}
+				}
+			}
+			return ok;
+		}
+
+		private void accept(File f, int index) {
+			if (!spec.isMultiSelection()) {
+				// kept until the drop is classified, see done()
+				synchronized (this) {
+					if (index < bestIndex || index == bestIndex && f.compareTo(best) < 0) {
+						best = f;
+						bestIndex = index;
+					}
+				}
+				return;
+			}
+			accepted.add(f);
+			synchronized (this) {
+				batch.add(f);
+				if (flushScheduled) {
+					return;
+				}
+				flushScheduled = true;
+			}
+			// batches pile up while the event dispatch thread is busy
+			SwingUtilities.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+					flush();
+				}
+			});
+		}
+
+		// runs on the event dispatch thread
+		private void flush() {
+			final List<File> files;
+			synchronized (this) {
+				files = batch;
+				batch = new ArrayList<>();
+				flushScheduled = false;
+			}
+			if (!files.isEmpty() && !result.isCancelled()) {
+				listener.filesAccepted(Selection.approved(files.toArray(new File[0]),
+					directory, spec.getFilterIndex(), null));
+			}
+		}
+
+		private void done() {
+			if (pending.decrementAndGet() != 0) {
+				return;
+			}
+			synchronized (this) {
+				if (best != null) {
+					accepted.add(best);
+					batch.add(best);
+				}
+			}
+			final List<File> all = new ArrayList<>(accepted);
+			Collections.sort(all);
+			final List<File> skipped = new ArrayList<>(rejected);
+			Collections.sort(skipped);
+			final Selection selection = Selection.approved(all.toArray(new File[0]),
+				directory, spec.getFilterIndex(), skipped.toArray(new File[0]));
+			if (!result.complete(selection)) {
+				// cancelled
+				return;
+			}
+			SwingUtilities.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+					flush();
+					listener.dropCompleted(selection);
+				}
+			});
+		}
+	}
+}
@@ -0,0 +1,73 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.api;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/*
+ * reads the first few bytes of a file
+ *
+ * The header is read with a single positional read into a small buffer.
+ * Mapping the file would work too but for a handful of bytes setting up
+ * the mapping costs more than the read itself, and a mapping keeps the
+ * file locked on Windows until the buffer is collected.
+ */
+final class FileHeader
+{
+	/** the number of bytes read by {@link #read(File)} */
+	static final int LENGTH = 64;
+
+	private FileHeader() {
+	}
+
+	/*
+	 * returns up to LENGTH bytes from the start of the file; the array is
+	 * shorter if the file is. Returns null if the file can't be read.
+	 */
+	static byte[] read(File file) {
+		return read(file, LENGTH);
+	}
+
+	static byte[] read(File file, int length) {
+		if (!file.isFile()) {
+			return null;
+		}
+		try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			final ByteBuffer buf = ByteBuffer.allocate(length);
+			while (buf.hasRemaining()) {
+				if (ch.read(buf, buf.position()) < 0) {
+					break;
+				}
+			}
+			return buf.position() == length ? buf.array()
+				: Arrays.copyOf(buf.array(), buf.position());
+		}
+		catch (IOException e) {
+			return null;
+		}
+	}
+
+	static boolean startsWith(byte[] header, int offset, byte[] magic) {
+		if (header == null || header.length < offset + magic.length) {
+			return false;
+		}
+		for (int i = 0; i < magic.length; ++i) {
+			if (header[offset + i] != magic[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
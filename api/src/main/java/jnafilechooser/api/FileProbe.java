@@ -0,0 +1,177 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.api;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/*
+ * timed file system probes
+ *
+ * A stat() on a stale NFS or SMB mount can block for minutes, and Java
+ * offers no way to interrupt it. Probes therefore run on a small pool of
+ * daemon threads while the caller waits for at most a given time. A probe
+ * that doesn't finish in time keeps its thread; to keep a dead mount from
+ * eating all threads the pool is bounded and a probe for a path that is
+ * still pending from an earlier call joins that call instead of starting
+ * another one. When the pool is exhausted probes fail immediately.
+ * Callers that probe many paths in the background, like the drive
+ * enumeration, bring a pool of their own so the dialog's probes always
+ * find a thread.
+ */
+final class FileProbe
+{
+	/** how long a single probe may take before the path counts as unreachable */
+	static final long TIMEOUT_MILLIS = 500;
+
+	private static final int MAX_THREADS = 8;
+	private static final ExecutorService POOL = newPool("jnafilechooser-probe", MAX_THREADS);
+	private static final ConcurrentHashMap<File, Future<Boolean>> PENDING = new ConcurrentHashMap<>();
+
+	private FileProbe() {
+	}
+
+	/*
+	 * the result of resolving an initial directory
+	 */
+	static final class Result
+	{
+		/** the directory to use; null if no ancestor responded either */
+		final File directory;
+		/** the path that didn't respond in time; null if there was none */
+		final File unresponsive;
+
+		Result(File directory, File unresponsive) {
+			this.directory = directory;
+			this.unresponsive = unresponsive;
+		}
+	}
+
+	/*
+	 * creates a pool for probes: at most the given number of threads and
+	 * no queue, so a probe is rejected instead of waiting behind stuck ones
+	 */
+	static ExecutorService newPool(String name, int threads) {
+		return new ThreadPoolExecutor(0, threads, 30, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+			new DaemonThreadFactory(name), new ThreadPoolExecutor.AbortPolicy());
+	}
+
+	/*
+	 * checks whether a path is a directory, giving up after the timeout
+	 *
+	 * @return TRUE or FALSE, or null if the probe didn't finish in time
+	 */
+	static Boolean isDirectory(File file, long timeoutMillis) {
+		return isDirectory(file, timeoutMillis, POOL);
+	}
+
+	/*
+	 * like isDirectory(File, long), but a new probe runs on the given pool
+	 */
+	static Boolean isDirectory(final File file, long timeoutMillis, ExecutorService pool) {
+		final File key = file.getAbsoluteFile();
+		Future<Boolean> probe = PENDING.get(key);
+		if (probe == null) {
+			final FutureTask<Boolean> task = new FutureTask<>(new Callable<Boolean>() {
+				@Override
+				public Boolean call() {
+					try {
+						return key.isDirectory();
+					}
+					finally {
+						PENDING.remove(key);
+					}
+				}
+			});
+			probe = PENDING.putIfAbsent(key, task);
+			if (probe == null) {
+				probe = task;
+				try {
+					pool.execute(task);
+				}
+				catch (RejectedExecutionException e) {
+					// every probe thread is stuck on some dead mount
+					PENDING.remove(key, task);
+					return null;
+				}
+			}
+		}
+		try {
+			return probe.get(timeoutMillis, TimeUnit.MILLISECONDS);
+		}
+		catch (TimeoutException e) {
+			return null;
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		catch (ExecutionException e) {
+			return Boolean.FALSE;
+		}
+	}
+
+	/*
+	 * resolves the initial directory of a dialog
+	 *
+	 * If the file is a directory it is used as is, otherwise its parent.
+	 * If a path doesn't respond in time its ancestors are tried, so the
+	 * dialog opens at the closest reachable one. The total time spent is
+	 * bounded by the depth of the path times the probe timeout.
+	 */
+	static Result resolveDirectory(File file) {
+		if (file == null) {
+			return new Result(null, null);
+		}
+		final File start = file.getAbsoluteFile();
+		final Boolean dir = isDirectory(start, TIMEOUT_MILLIS);
+		if (dir == null) {
+			return new Result(reachableAncestor(start.getParentFile()), start);
+		}
+		if (dir) {
+			return new Result(file, null);
+		}
+		return new Result(file.getParentFile(), null);
+	}
+
+	/*
+	 * returns the directory itself if it responds in time, or its closest
+	 * ancestor that does
+	 */
+	static Result resolveExistingDirectory(File dir) {
+		if (dir == null) {
+			return new Result(null, null);
+		}
+		final File start = dir.getAbsoluteFile();
+		if (isDirectory(start, TIMEOUT_MILLIS) != null) {
+			return new Result(dir, null);
+		}
+		return new Result(reachableAncestor(start.getParentFile()), start);
+	}
+
+	private static File reachableAncestor(File dir) {
+		for (File f = dir; f != null; f = f.getParentFile()) {
+			if (Boolean.TRUE.equals(isDirectory(f, TIMEOUT_MILLIS))) {
+				return f;
+			}
+		}
+		return null;
+	}
+}
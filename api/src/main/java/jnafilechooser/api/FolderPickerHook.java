@@ -0,0 +1,277 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.api;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import jnafilechooser.win32.Comdlg32;
+import jnafilechooser.win32.User32;
+
+import com.sun.jna.CallbackReference;
+import com.sun.jna.Memory;
+import com.sun.jna.Pointer;
+import com.sun.jna.WString;
+
+/*
+ * lets the explorer-style GetOpenFileName dialog return folders
+ *
+ * The dialog itself navigates into a folder when the user clicks Open, it
+ * never returns one. So a child dialog template with an extra button is
+ * attached to it and the hook procedure, which is the dialog procedure of
+ * that template, handles the button: it reads the selected items from the
+ * dialog's list view, encodes them in the layout GetOpenFileName uses for
+ * multiple selections and closes the dialog. WindowsFileChooser then parses
+ * the captured buffer like a regular result.
+ */
+class FolderPickerHook implements Comdlg32.OFNHookProc
+{
+	static final int SELECT_BUTTON_ID = 0x4A46;
+
+	private final Object owner;
+	private final boolean foldersOnly;
+	private final boolean multipleSelection;
+	private final Memory template;
+	// fetched on the thread that shows the dialog
+	private final Runnable visible = BackendSelector.onVisible();
+	private byte[] captured;
+
+	/*
+	 * @param owner the chooser its native memory is accounted to
+	 * @param foldersOnly whether files in the selection are ignored
+	 * @param multipleSelection whether more than one item may be picked
+	 * @param buttonText the label of the extra button
+	 */
+	FolderPickerHook(Object owner, boolean foldersOnly, boolean multipleSelection, String buttonText) {
+		this.owner = owner;
+		this.foldersOnly = foldersOnly;
+		this.multipleSelection = multipleSelection;
+		final byte[] bytes = template(buttonText);
+		this.template = NativeAllocations.allocate(owner, bytes.length);
+		this.template.write(0, bytes, 0, bytes.length);
+	}
+
+	/*
+	 * sets up the dialog parameters to use this hook; the hook must stay
+	 * reachable until the dialog returned
+	 */
+	void install(Comdlg32.OpenFileName params) {
+		params.Flags |= Comdlg32.OFN_ENABLEHOOK | Comdlg32.OFN_ENABLETEMPLATEHANDLE;
+		params.hInstance = template;
+		params.lpfnHook = CallbackReference.getFunctionPointer(this);
+	}
+
+	/*
+	 * frees the dialog template once the dialog returned
+	 */
+	void close() {
+		template.close();
+	}
+
+	/*
+	 * @return the selection in the GetOpenFileName buffer layout; null if
+	 *         the extra button wasn't used
+	 */
+	byte[] getCaptured() {
+		return captured;
+	}
+
+	@Override
+	public Pointer callback(Pointer hdlg, int uiMsg, Pointer wParam, Pointer lParam) {
+		if (uiMsg == User32.WM_INITDIALOG) {
+			// the dialog window exists and is about to be shown
+			visible.run();
+		}
+		else if (uiMsg == User32.WM_COMMAND) {
+			final int param = (int) Pointer.nativeValue(wParam);
+			if ((param & 0xFFFF) == SELECT_BUTTON_ID && (param >>> 16) == User32.BN_CLICKED) {
+				final Pointer dialog = User32.GetParent(hdlg);
+				captured = capture(dialog);
+				if (captured != null) {
+					User32.PostMessageW(dialog, User32.WM_COMMAND,
+						new Pointer(User32.IDCANCEL), null);
+				}
+				else {
+					// a virtual folder like "This PC" has no path
+					User32.MessageBeep(User32.MB_OK);
+				}
+				return new Pointer(1);
+			}
+		}
+		// let the dialog do its default processing
+		return null;
+	}
+
+	private byte[] capture(Pointer dialog) {
+		final String folder = sendForString(owner, dialog, Comdlg32.CDM_GETFOLDERPATH);
+		if (folder == null || folder.isEmpty()) {
+			return null;
+		}
+		final File dir = new File(folder);
+		final List<String> names = new ArrayList<>();
+		for (final String display : selectedItems(owner, dialog)) {
+			final String name = resolveName(dir, display);
+			if (foldersOnly && !new File(dir, name).isDirectory()) {
+				continue;
+			}
+			names.add(name);
+			if (!multipleSelection) {
+				break;
+			}
+		}
+		return encode(folder, names);
+	}
+
+	private static String sendForString(Object owner, Pointer hwnd, int msg) {
+		final int chars = 32 * 1024;
+		try (Memory buffer = NativeAllocations.allocate(owner, 2L * chars)) {
+			buffer.clear();
+			final int len = (int) Pointer.nativeValue(
+				User32.SendMessageW(hwnd, msg, new Pointer(chars), buffer));
+			return len > 0 ? buffer.getWideString(0) : null;
+		}
+	}
+
+	// reads the text of the selected items of the dialog's list view
+	private static List<String> selectedItems(Object owner, Pointer dialog) {
+		final List<String> items = new ArrayList<>();
+		final Pointer view = User32.FindWindowExW(dialog, null, new WString("SHELLDLL_DefView"), null);
+		final Pointer list = view == null ? null :
+			User32.FindWindowExW(view, null, new WString("SysListView32"), null);
+		if (list == null) {
+			return items;
+		}
+		final int chars = WindowsFileChooser.MAX_PATH;
+		try (Memory text = NativeAllocations.allocate(owner, 2L * chars)) {
+			final User32.LVItem item = new User32.LVItem();
+			int index = -1;
+			while (true) {
+				index = (int) Pointer.nativeValue(User32.SendMessageW(list, User32.LVM_GETNEXTITEM,
+					new Pointer(index), new Pointer(User32.LVNI_SELECTED)));
+				if (index < 0) {
+					break;
+				}
+				text.clear();
+				item.iSubItem = 0;
+				item.pszText = text;
+				item.cchTextMax = chars;
+				item.write();
+				User32.SendMessageW(list, User32.LVM_GETITEMTEXTW, new Pointer(index), item.getPointer());
+				final String name = text.getWideString(0);
+				if (!name.isEmpty()) {
+					items.add(name);
+				}
+			}
+		}
+		return items;
+	}
+
+	/*
+	 * maps a list view label back to a file name
+	 *
+	 * Explorer hides known extensions, so "notes" may stand for
+	 * "notes.txt". If the label isn't a name in the directory and exactly
+	 * one name is the label plus an extension, that name is used.
+	 */
+	static String resolveName(File dir, String display) {
+		if (new File(dir, display).exists()) {
+			return display;
+		}
+		final String[] names = dir.list();
+		if (names == null) {
+			return display;
+		}
+		String match = null;
+		for (final String name : names) {
+			if (name.length() > display.length() + 1 && name.startsWith(display)
+					&& name.charAt(display.length()) == '.'
+					&& name.indexOf('.', display.length() + 1) < 0) {
+				if (match != null) {
+					// ambiguous
+					return display;
+				}
+				match = name;
+			}
+		}
+		return match != null ? match : display;
+	}
+
+	/*
+	 * encodes a selection like GetOpenFileName does with OFN_EXPLORER and
+	 * OFN_ALLOWMULTISELECT: the directory followed by the names, each
+	 * terminated by a null character, and a final null character. Without
+	 * names the directory itself is the selection and it is encoded as a
+	 * single path.
+	 */
+	static byte[] encode(String directory, List<String> names) {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writeString(out, directory);
+		for (final String name : names) {
+			writeString(out, name);
+		}
+		writeString(out, "");
+		return out.toByteArray();
+	}
+
+	private static void writeString(ByteArrayOutputStream out, String s) {
+		final byte[] bytes = s.getBytes(StandardCharsets.UTF_16LE);
+		out.write(bytes, 0, bytes.length);
+		out.write(0);
+		out.write(0);
+	}
+
+	/*
+	 * builds an in-memory DLGTEMPLATE for a child dialog that holds only
+	 * the extra button, see "Explorer-Style Custom Templates" on MSDN
+	 */
+	static byte[] template(String buttonText) {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		// DLGTEMPLATE
+		writeInt(out, User32.WS_CHILD | User32.WS_CLIPSIBLINGS | User32.DS_3DLOOK | User32.DS_CONTROL);
+		writeInt(out, 0);
+		writeShort(out, 1); // cdit
+		writeShort(out, 0); // x
+		writeShort(out, 0); // y
+		writeShort(out, 120); // cx
+		writeShort(out, 20); // cy
+		writeShort(out, 0); // no menu
+		writeShort(out, 0); // default dialog class
+		writeShort(out, 0); // no title
+		// DLGITEMTEMPLATE, aligned on a DWORD boundary
+		while (out.size() % 4 != 0) {
+			out.write(0);
+		}
+		writeInt(out, User32.WS_CHILD | User32.WS_VISIBLE | User32.WS_TABSTOP | User32.BS_PUSHBUTTON);
+		writeInt(out, 0);
+		writeShort(out, 6); // x
+		writeShort(out, 2); // y
+		writeShort(out, 100); // cx
+		writeShort(out, 14); // cy
+		writeShort(out, SELECT_BUTTON_ID);
+		writeShort(out, 0xFFFF); // predefined class ...
+		writeShort(out, 0x0080); // ... button
+		writeString(out, buttonText);
+		writeShort(out, 0); // no creation data
+		return out.toByteArray();
+	}
+
+	private static void writeShort(ByteArrayOutputStream out, int v) {
+		out.write(v & 0xFF);
+		out.write((v >>> 8) & 0xFF);
+	}
+
+	private static void writeInt(ByteArrayOutputStream out, int v) {
+		writeShort(out, v & 0xFFFF);
+		writeShort(out, v >>> 16);
+	}
+}
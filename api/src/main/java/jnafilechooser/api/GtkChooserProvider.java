@@ -0,0 +1,90 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.api;
+
+import java.awt.Window;
+import java.io.File;
+
+import jnafilechooser.api.JnaFileChooser.Backend;
+import jnafilechooser.api.JnaFileChooser.Mode;
+
+/**
+ * Provides the GTK 3 file chooser, see {@link GtkFileChooser}.
+ *
+ * Available on Linux if JNA and jnafilechooser-gtk are there and GTK can be
+ * initialized.
+ *
+ * Example:
+ * META-INF/services/jnafilechooser.api.ChooserProvider:
+ * jnafilechooser.api.GtkChooserProvider
+ */
+public final class GtkChooserProvider implements ChooserProvider
+{
+	private volatile Boolean linked;
+
+	/**
+	 * creates a new provider; called by the service loader
+	 */
+	public GtkChooserProvider() {
+	}
+
+	@Override
+	public Backend getBackend() {
+		return Backend.Native;
+	}
+
+	@Override
+	public boolean isAvailable() {
+		if (linked == null) {
+			linked = Os.isLinux()
+				&& Os.hasClass("com.sun.jna.Native")
+				&& Os.hasClass("jnafilechooser.gtk.Gtk3");
+		}
+		return linked && GtkFileChooser.isAvailable();
+	}
+
+	@Override
+	public boolean supports(DialogSpec spec, boolean save) {
+		return spec.getMode() != Mode.FilesAndDirectories;
+	}
+
+	@Override
+	public Selection show(Window parent, DialogSpec spec, boolean save, File directory,
+			int filterIndex) {
+		final GtkFileChooser fc = new GtkFileChooser();
+		fc.currentDirectory = directory;
+		fc.setFilters(spec.getFilterSpecs());
+		fc.setContentFilters(spec.getContentFilters());
+		fc.setMultiSelectionEnabled(spec.isMultiSelection());
+		if (filterIndex > 0) {
+			fc.setFilterIndex(filterIndex);
+		}
+		fc.setFolderSelection(spec.getMode() == Mode.Directories);
+		if (!spec.getDefaultFileName().isEmpty())
+			fc.setDefaultFilename(spec.getDefaultFileName());
+
+		if (!spec.getTitle().isEmpty()) {
+			fc.setTitle(spec.getTitle());
+		}
+
+		final boolean result = fc.showDialog(parent, !save);
+		if (!result) {
+			return Selection.cancelled(fc.getRejectedFiles());
+		}
+		return Selection.approved(
+			spec.isMultiSelection() ? fc.getSelectedFiles() : new File[]{fc.getSelectedFile()},
+			fc.getCurrentDirectory(), fc.getFilterIndex(), fc.getRejectedFiles());
+	}
+
+	@Override
+	public String toString() {
+		return "GTK file chooser";
+	}
+}
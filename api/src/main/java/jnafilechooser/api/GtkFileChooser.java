@@ -0,0 +1,451 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.api;
+
+import java.awt.GraphicsEnvironment;
+import java.awt.Window;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import jnafilechooser.gtk.GLib;
+import jnafilechooser.gtk.GObject;
+import jnafilechooser.gtk.Gtk3;
+
+import com.sun.jna.Platform;
+import com.sun.jna.Pointer;
+
+/**
+ * The native GTK 3 file chooser (GtkFileChooserNative).
+ *
+ * Example:
+ * GtkFileChooser fc = new GtkFileChooser("/home/me");
+ * fc.addFilter("All Files", "*");
+ * fc.addFilter("Text files", "txt", "log", "xml");
+ * if (GtkFileChooser.isAvailable() && fc.showOpenDialog(parent)) {
+ *     File f = fc.getSelectedFile();
+ *     // do something with f
+ * }
+ *
+ * GTK must only ever be used from one thread, so all GTK calls run on a
+ * dedicated daemon thread and the thread showing the dialog waits for it,
+ * just like it waits for GetOpenFileName on Windows. The dialog can't be
+ * made a child of an AWT window, the parent is only used for ownership
+ * checks by the caller.
+ *
+ * GtkFileChooserNative requires GTK 3.20 or later. Inside a sandbox it
+ * transparently uses the desktop portal.
+ *
+ * {@link https://docs.gtk.org/gtk3/class.FileChooserNative.html}
+ */
+public class GtkFileChooser
+{
+	private static final ExecutorService GTK = Executors.newSingleThreadExecutor(
+		new DaemonThreadFactory("jnafilechooser-gtk"));
+	private static Boolean available;
+
+	protected File selectedFile;
+	protected File currentDirectory;
+	protected List<String[]> filters;
+	private List<ContentFilter> contentFilters;
+
+	protected String defaultFilename = "";
+	protected String dialogTitle = "";
+
+	private int filterIndex = 1;
+	private boolean multipleSelection = false;
+	private boolean folderSelection = false;
+	private File[] selectedFiles = null;
+	private File[] rejectedFiles = new File[0];
+
+	/**
+	 * creates a new file chooser
+	 */
+	public GtkFileChooser() {
+		filters = new ArrayList<>();
+		contentFilters = new ArrayList<>();
+	}
+
+	/**
+	 * creates a new file chooser with the specified initial directory
+	 *
+	 * If the given file is not a directory the parent file will be used
+	 * instead. If the path doesn't respond in time its closest reachable
+	 * ancestor is used.
+	 *
+	 * @param currentDirectory the initial directory
+	 */
+	public GtkFileChooser(File currentDirectory) {
+		this();
+		this.currentDirectory = FileProbe.resolveDirectory(currentDirectory).directory;
+	}
+
+	/**
+	 * creates a new file chooser with the specified initial directory path
+	 *
+	 * @param currentDirectoryPath the initial directory path; may be null
+	 */
+	public GtkFileChooser(String currentDirectoryPath) {
+		this(currentDirectoryPath != null ?
+			new File(currentDirectoryPath) : null);
+	}
+
+	/**
+	 * returns whether GTK 3 can be loaded and initialized
+	 *
+	 * This is false on other platforms than Linux, in headless mode, when
+	 * there is no display to connect to or when GTK 3.20 or later isn't
+	 * installed. The result is computed once.
+	 *
+	 * @return true if the dialog can be shown
+	 */
+	public static synchronized boolean isAvailable() {
+		if (available == null) {
+			available = Platform.isLinux() && !GraphicsEnvironment.isHeadless()
+				&& runOnGtkThread(new Callable<Boolean>() {
+					@Override
+					public Boolean call() {
+						try {
+							return Gtk3.gtk_init_check(null, null);
+						}
+						catch (LinkageError e) {
+							// no GTK 3 or too old for GtkFileChooserNative
+							return false;
+						}
+					}
+				});
+		}
+		return available;
+	}
+
+	// package private, see WindowsFileChooser.setFilters
+	void setFilters(List<String[]> filters) {
+		this.filters = filters;
+	}
+
+	void setContentFilters(List<ContentFilter> contentFilters) {
+		this.contentFilters = contentFilters;
+	}
+
+	/**
+	 * add a filter to the user-selectable list of file filters
+	 *
+	 * @param name name of the filter
+	 * @param filter you must pass at least 1 argument, the arguments
+	 *               are the file extensions.
+	 */
+	public void addFilter(String name, String... filter) {
+		if (filter.length < 1) {
+			throw new IllegalArgumentException();
+		}
+		ArrayList<String> parts = new ArrayList<>();
+		parts.add(name);
+		Collections.addAll(parts, filter);
+		filters.add(parts.toArray(new String[0]));
+	}
+
+	/**
+	 * add a filter that matches files by their content
+	 *
+	 * Like on Windows this is applied after the user approved the open
+	 * dialog, see {@link #getRejectedFiles()}.
+	 *
+	 * @param name name of the filter
+	 * @param types you must pass at least 1 content type
+	 */
+	public void addContentFilter(String name, ContentType... types) {
+		contentFilters.add(new ContentFilter(name, types));
+	}
+
+	/**
+	 * set a title name
+	 *
+	 * @param title of dialog
+	 */
+	public void setTitle(String title) {
+		this.dialogTitle = title;
+	}
+
+	/**
+	 * show the dialog for opening a file
+	 *
+	 * @param parent the parent window of the dialog
+	 *
+	 * @return true if the user clicked ok, false otherwise
+	 */
+	public boolean showOpenDialog(Window parent) {
+		return showDialog(parent, true);
+	}
+
+	/**
+	 * show the dialog for saving a file
+	 *
+	 * @param parent the parent window of the dialog
+	 *
+	 * @return true if the user clicked ok, false otherwise
+	 */
+	public boolean showSaveDialog(Window parent) {
+		return showDialog(parent, false);
+	}
+
+	/*
+	 * shows the dialog
+	 *
+	 * @param parent the parent window
+	 * @param open whether to show the open dialog, if false save dialog is shown
+	 *
+	 * @return true if the user clicked ok, false otherwise
+	 */
+	boolean showDialog(Window parent, final boolean open) {
+		if (!isAvailable()) {
+			throw new IllegalStateException("GTK 3 is not available");
+		}
+		selectedFiles = null;
+		rejectedFiles = new File[0];
+		// GtkFileChooserNative has no window of its own to watch, so the
+		// dialog doesn't report when it is visible
+		final List<String> paths = runOnGtkThread(new Callable<List<String>>() {
+			@Override
+			public List<String> call() {
+				return run(open);
+			}
+		});
+		if (paths == null || paths.isEmpty()) {
+			return false;
+		}
+		selectedFiles = new File[paths.size()];
+		for (int i = 0; i < selectedFiles.length; ++i) {
+			selectedFiles[i] = new File(paths.get(i));
+		}
+		selectedFile = selectedFiles[0];
+		currentDirectory = folderSelection && selectedFile.getParentFile() == null ?
+			selectedFile : selectedFile.getParentFile();
+
+		if (open && !folderSelection && !contentFilters.isEmpty()) {
+			final List<File> accepted = new ArrayList<>();
+			final List<File> rejected = new ArrayList<>();
+			ContentFilter.partition(contentFilters, selectedFiles, accepted, rejected);
+			rejectedFiles = rejected.toArray(new File[0]);
+			if (accepted.isEmpty()) {
+				selectedFile = null;
+				selectedFiles = null;
+				return false;
+			}
+			selectedFiles = accepted.toArray(new File[0]);
+			selectedFile = selectedFiles[0];
+		}
+		return true;
+	}
+
+	// runs on the GTK thread
+	private List<String> run(boolean open) {
+		final int action = folderSelection ? Gtk3.GTK_FILE_CHOOSER_ACTION_SELECT_FOLDER
+			: open ? Gtk3.GTK_FILE_CHOOSER_ACTION_OPEN : Gtk3.GTK_FILE_CHOOSER_ACTION_SAVE;
+		final Pointer dialog = Gtk3.gtk_file_chooser_native_new(
+			dialogTitle.isEmpty() ? null : dialogTitle, null, action, null, null);
+		final NativeAllocations.Allocation handle =
+			NativeAllocations.opened(this, "GtkFileChooserNative", 0);
+		try {
+			Gtk3.gtk_file_chooser_set_select_multiple(dialog, multipleSelection && (open || folderSelection));
+			if (!open && !folderSelection) {
+				Gtk3.gtk_file_chooser_set_do_overwrite_confirmation(dialog, true);
+				if (!defaultFilename.isEmpty()) {
+					Gtk3.gtk_file_chooser_set_current_name(dialog, defaultFilename);
+				}
+			}
+			if (currentDirectory != null) {
+				Gtk3.gtk_file_chooser_set_current_folder(dialog, currentDirectory.getAbsolutePath());
+			}
+			final List<Pointer> gtkFilters = new ArrayList<>();
+			if (!folderSelection) {
+				for (final String[] spec : filters) {
+					final Pointer filter = buildFilter(spec);
+					Gtk3.gtk_file_chooser_add_filter(dialog, filter);
+					gtkFilters.add(filter);
+				}
+				if (filterIndex >= 1 && filterIndex <= gtkFilters.size()) {
+					Gtk3.gtk_file_chooser_set_filter(dialog, gtkFilters.get(filterIndex - 1));
+				}
+			}
+
+			if (Gtk3.gtk_native_dialog_run(dialog) != Gtk3.GTK_RESPONSE_ACCEPT) {
+				return null;
+			}
+
+			final int index = gtkFilters.indexOf(Gtk3.gtk_file_chooser_get_filter(dialog));
+			if (index >= 0) {
+				filterIndex = index + 1;
+			}
+			return takeFilenames(Gtk3.gtk_file_chooser_get_filenames(dialog));
+		}
+		finally {
+			Gtk3.gtk_native_dialog_destroy(dialog);
+			GObject.g_object_unref(dialog);
+			NativeAllocations.closed(handle);
+		}
+	}
+
+	/*
+	 * translates a filter spec into a GtkFileFilter
+	 *
+	 * GTK patterns are case sensitive, so every extension is turned into
+	 * a pattern like "*.[jJ][pP][gG]" to match it the way Windows does.
+	 */
+	private static Pointer buildFilter(String[] spec) {
+		final Pointer filter = Gtk3.gtk_file_filter_new();
+		Gtk3.gtk_file_filter_set_name(filter, spec[0]);
+		for (int i = 1; i < spec.length; ++i) {
+			Gtk3.gtk_file_filter_add_pattern(filter,
+				spec[i].equals("*") ? "*" : "*." + caseInsensitive(spec[i]));
+		}
+		return filter;
+	}
+
+	static String caseInsensitive(String ext) {
+		final StringBuilder sb = new StringBuilder(ext.length() * 4);
+		for (int i = 0; i < ext.length(); ++i) {
+			final char c = ext.charAt(i);
+			final char lower = Character.toLowerCase(c);
+			final char upper = Character.toUpperCase(c);
+			if (lower == upper) {
+				// escape glob metacharacters that aren't letters
+				if (c == '[' || c == ']' || c == '?' || c == '*') {
+					sb.append('[').append(c).append(']');
+				}
+				else {
+					sb.append(c);
+				}
+			}
+			else {
+				sb.append('[').append(lower).append(upper).append(']');
+			}
+		}
+		return sb.toString();
+	}
+
+	// reads and frees a GSList of filenames returned by GTK
+	private static List<String> takeFilenames(Pointer list) {
+		final List<String> paths = new ArrayList<>();
+		for (Pointer node = list; node != null; node = GLib.g_slist_next(node)) {
+			final Pointer name = GLib.g_slist_data(node);
+			if (name != null) {
+				paths.add(name.getString(0, StandardCharsets.UTF_8.name()));
+				GLib.g_free(name);
+			}
+		}
+		if (list != null) {
+			GLib.g_slist_free(list);
+		}
+		return paths;
+	}
+
+	private static <T> T runOnGtkThread(Callable<T> task) {
+		final Future<T> result = GTK.submit(task);
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return result.get();
+				}
+				catch (InterruptedException e) {
+					// the dialog is modal, we can't just walk away from it
+					interrupted = true;
+				}
+			}
+		}
+		catch (ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new RuntimeException(cause);
+		}
+		finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * returns the file selected by the user
+	 *
+	 * @return the selected file; null if the dialog was canceled or never shown
+	 */
+	public File getSelectedFile() {
+		return selectedFile;
+	}
+
+	public File[] getSelectedFiles() {
+		return selectedFiles;
+	}
+
+	/**
+	 * returns the files that were removed from the selection because they
+	 * didn't match any content filter
+	 *
+	 * @return the rejected files; empty if there are none
+	 */
+	public File[] getRejectedFiles() {
+		return rejectedFiles;
+	}
+
+	/**
+	 * returns the current directory
+	 *
+	 * @return the parent directory of the chosen file
+	 */
+	public File getCurrentDirectory() {
+		return currentDirectory;
+	}
+
+	public void setDefaultFilename(String defaultFilename) {
+		this.defaultFilename = defaultFilename;
+	}
+
+	public int getFilterIndex() {
+		return filterIndex;
+	}
+
+	public void setFilterIndex(int filterIndex) {
+		this.filterIndex = filterIndex;
+	}
+
+	public boolean isMultipleSelection() {
+		return multipleSelection;
+	}
+
+	public void setMultiSelectionEnabled(boolean multipleSelection) {
+		this.multipleSelection = multipleSelection;
+	}
+
+	public boolean isFolderSelection() {
+		return folderSelection;
+	}
+
+	/**
+	 * sets whether the dialog selects folders instead of files
+	 *
+	 * @param folderSelection true to select folders
+	 */
+	public void setFolderSelection(boolean folderSelection) {
+		this.folderSelection = folderSelection;
+	}
+}
@@ -0,0 +1,193 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.api;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * the binary protocol between DialogHost and its helper process
+ *
+ * Every message starts with MAGIC. A request is followed by the kind of
+ * dialog, the effective initial directory and filter index and the parts
+ * of the DialogSpec that affect the dialog itself. A response is either
+ * ERROR with a message or OK with the fields of a Selection. Strings are
+ * modified UTF-8 as written by DataOutputStream, optional strings are
+ * preceded by a presence flag.
+ */
+final class HostProtocol
+{
+	static final int MAGIC = 0x4A464331; // "JFC1"
+
+	static final byte OPEN = 1;
+	static final byte SAVE = 2;
+	static final byte PING = 3;
+
+	static final byte OK = 0;
+	static final byte ERROR = 1;
+
+	private static final int MULTI_SELECTION = 1;
+	private static final int PREVIEW = 1 << 1;
+	private static final int SEARCH = 1 << 2;
+	private static final int ARCHIVE_BROWSING = 1 << 3;
+	private static final int DIRECTORY_SIZES = 1 << 4;
+
+	private HostProtocol() {
+	}
+
+	static void writeRequest(DataOutputStream out, byte op, DialogSpec spec,
+			File directory, int filterIndex) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeByte(op);
+		if (op == PING) {
+			out.flush();
+			return;
+		}
+		out.writeByte(spec.getMode().ordinal());
+		out.writeByte((spec.isMultiSelection() ? MULTI_SELECTION : 0)
+			| (spec.isPreview() ? PREVIEW : 0)
+			| (spec.isSearch() ? SEARCH : 0)
+			| (spec.isArchiveBrowsing() ? ARCHIVE_BROWSING : 0)
+			| (spec.isDirectorySizes() ? DIRECTORY_SIZES : 0));
+		out.writeByte(spec.getBackend().ordinal());
+		out.writeUTF(spec.getTitle());
+		out.writeUTF(spec.getOpenButtonText());
+		out.writeUTF(spec.getSaveButtonText());
+		out.writeUTF(spec.getDefaultFileName());
+		out.writeShort(spec.getFilterSpecs().size());
+		for (final String[] filter : spec.getFilterSpecs()) {
+			out.writeShort(filter.length);
+			for (final String s : filter) {
+				out.writeUTF(s);
+			}
+		}
+		out.writeShort(spec.getContentFilters().size());
+		for (final ContentFilter filter : spec.getContentFilters()) {
+			out.writeUTF(filter.getDescription());
+			out.writeShort(filter.getTypes().size());
+			for (final ContentType type : filter.getTypes()) {
+				out.writeByte(type.ordinal());
+			}
+		}
+		writeFile(out, directory);
+		out.writeInt(filterIndex);
+		out.flush();
+	}
+
+	/*
+	 * reads a request after its MAGIC and op; the directory and filter
+	 * index are part of the returned spec
+	 */
+	static DialogSpec readSpec(DataInputStream in) throws IOException {
+		final DialogSpec.Builder b = DialogSpec.builder();
+		b.mode(JnaFileChooser.Mode.values()[in.readUnsignedByte()]);
+		final int flags = in.readUnsignedByte();
+		b.multiSelection((flags & MULTI_SELECTION) != 0)
+			.preview((flags & PREVIEW) != 0)
+			.search((flags & SEARCH) != 0)
+			.archiveBrowsing((flags & ARCHIVE_BROWSING) != 0)
+			.directorySizes((flags & DIRECTORY_SIZES) != 0);
+		b.backend(JnaFileChooser.Backend.values()[in.readUnsignedByte()]);
+		b.title(in.readUTF())
+			.openButtonText(in.readUTF())
+			.saveButtonText(in.readUTF())
+			.defaultFileName(in.readUTF());
+		final int filters = in.readUnsignedShort();
+		for (int i = 0; i < filters; ++i) {
+			final String[] filter = new String[in.readUnsignedShort()];
+			for (int j = 0; j < filter.length; ++j) {
+				filter[j] = in.readUTF();
+			}
+			b.addFilter(filter[0], Arrays.copyOfRange(filter, 1, filter.length));
+		}
+		final int contentFilters = in.readUnsignedShort();
+		for (int i = 0; i < contentFilters; ++i) {
+			final String name = in.readUTF();
+			final ContentType[] types = new ContentType[in.readUnsignedShort()];
+			for (int j = 0; j < types.length; ++j) {
+				types[j] = ContentType.values()[in.readUnsignedByte()];
+			}
+			b.addContentFilter(name, types);
+		}
+		b.currentDirectory(readFile(in));
+		b.filterIndex(in.readInt());
+		return b.build();
+	}
+
+	static void writeSelection(DataOutputStream out, Selection s) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeByte(OK);
+		writeFiles(out, s.getFiles());
+		writeFile(out, s.getCurrentDirectory());
+		out.writeInt(s.getFilterIndex());
+		writeFiles(out, s.getRejectedFiles());
+		out.flush();
+	}
+
+	static void writeError(DataOutputStream out, String message) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeByte(ERROR);
+		out.writeUTF(message != null ? message : "");
+		out.flush();
+	}
+
+	/*
+	 * reads a response; a helper side error is thrown as RuntimeException
+	 */
+	static Selection readSelection(DataInputStream in) throws IOException {
+		readMagic(in);
+		if (in.readByte() == ERROR) {
+			throw new RuntimeException("dialog host failed: " + in.readUTF());
+		}
+		final File[] files = readFiles(in);
+		final File directory = readFile(in);
+		final int filterIndex = in.readInt();
+		final File[] rejected = readFiles(in);
+		return files.length == 0 ?
+			Selection.cancelled(rejected) :
+			Selection.approved(files, directory, filterIndex, rejected);
+	}
+
+	static void readMagic(DataInputStream in) throws IOException {
+		if (in.readInt() != MAGIC) {
+			throw new IOException("protocol error");
+		}
+	}
+
+	private static void writeFile(DataOutputStream out, File f) throws IOException {
+		out.writeBoolean(f != null);
+		if (f != null) {
+			out.writeUTF(f.getPath());
+		}
+	}
+
+	private static File readFile(DataInputStream in) throws IOException {
+		return in.readBoolean() ? new File(in.readUTF()) : null;
+	}
+
+	private static void writeFiles(DataOutputStream out, List<File> files) throws IOException {
+		out.writeInt(files.size());
+		for (final File f : files) {
+			out.writeUTF(f.getPath());
+		}
+	}
+
+	private static File[] readFiles(DataInputStream in) throws IOException {
+		final File[] files = new File[in.readInt()];
+		for (int i = 0; i < files.length; ++i) {
+			files[i] = new File(in.readUTF());
+		}
+		return files;
+	}
+}
@@ -9,23 +9,43 @@
  */
 package jnafilechooser.api;
 
+import java.awt.BorderLayout;
+import java.awt.EventQueue;
+import java.awt.GraphicsEnvironment;
 import java.awt.Window;
+import java.awt.event.HierarchyEvent;
+import java.awt.event.HierarchyListener;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
+import javax.swing.JComponent;
 import javax.swing.JFileChooser;
-import javax.swing.filechooser.FileNameExtensionFilter;
-
-import com.sun.jna.Platform;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+import javax.swing.filechooser.FileFilter;
+import javax.swing.filechooser.FileSystemView;
 
 /**
  * JnaFileChooser is a wrapper around the native Windows file chooser
- * and folder browser that falls back to the Swing JFileChooser on platforms
- * other than Windows or if the user chooses a combination of features
- * that are not supported by the native dialogs (for example multiple
- * selection of directories).
+ * and folder browser, and the GTK file chooser or the desktop portal on
+ * Linux, that falls back
+ * to the Swing JFileChooser on other platforms or if the user chooses a
+ * combination of features that are not supported by the native dialogs
+ * (for example saving in directory mode). Without a display
+ * (headless mode) a fuzzy finder on the terminal is used instead.
  *
  * Example:
  * JnaFileChooser fc = new JnaFileChooser();
@@ -38,12 +58,41 @@ import com.sun.jna.Platform;
  *     // do something with selected
  * }
  *
+ * An instance keeps the state of the last dialog and must not be shared
+ * between threads. To show the same dialog from several threads build a
+ * {@link DialogSpec} once and pass it to {@link #open(Window, DialogSpec)}
+ * or {@link #save(Window, DialogSpec)}.
+ *
  * @see JFileChooser, WindowsFileChooser, WindowsFileBrowser
  */
 public class JnaFileChooser
 {
 	private enum Action { Open, Save }
 
+	// the client property MetalFileChooserUI rebuilds its "Look in" list on
+	private static final String USE_SHELL_FOLDER = "FileChooser.useShellFolder";
+
+	private static List<ChooserProvider> providers;
+
+	// the Swing fallback as a candidate of BackendSelector; not a service
+	private static final ChooserProvider SWING = new SwingProvider();
+
+	/**
+	 * the dialog implementations to choose from
+	 */
+	public enum Backend {
+		/** the best one for the platform and session */
+		Auto,
+		/** the Windows common dialogs or the GTK file chooser, see {@link ChooserProvider} */
+		Native,
+		/** the XDG desktop portal over D-Bus, see {@link PortalFileChooser} */
+		Portal,
+		/** the Swing JFileChooser */
+		Swing,
+		/** the one that was fastest and reliable so far, see {@link BackendSelector} */
+		Adaptive
+	}
+
 	/**
 	 * the available selection modes of the dialog
 	 */
@@ -62,7 +111,10 @@ public class JnaFileChooser
 
 	protected File[] selectedFiles;
 	protected File currentDirectory;
+	protected File unresponsiveDirectory;
 	protected ArrayList<String[]> filters;
+	private ArrayList<ContentFilter> contentFilters;
+	protected File[] rejectedFiles;
 	protected boolean multiSelectionEnabled;
 	protected Mode mode;
 
@@ -71,12 +123,35 @@ public class JnaFileChooser
     protected String openButtonText;
     protected String saveButtonText;
 
+	protected boolean previewEnabled;
+	protected boolean searchEnabled;
+	protected boolean prefetchEnabled;
+	protected int filterIndex;
+	protected boolean archiveBrowsingEnabled;
+	protected long readAheadBytes;
+	protected boolean directorySizesEnabled;
+	protected ReadAhead readAhead;
+	protected boolean saveValidationEnabled;
+	protected long requiredFreeBytes;
+	protected SaveVerdict saveVerdict;
+	protected String digestAlgorithm;
+	protected Digests digests;
+	protected String context;
+	protected RecentLocations recentLocations;
+	protected ThumbnailCache thumbnailCache;
+	protected DialogHost dialogHost;
+	protected Backend backend;
+	protected BackendSelector backendSelector;
+	protected BackendSelector.Decision decision;
+
 	/**
 	 * creates a new file chooser with multiselection disabled and mode set
 	 * to allow file selection only.
 	 */
 	public JnaFileChooser() {
 		filters = new ArrayList<>();
+		contentFilters = new ArrayList<>();
+		rejectedFiles = new File[0];
 		multiSelectionEnabled = false;
 		mode = Mode.Files;
 		selectedFiles = new File[] { null };
@@ -85,19 +160,38 @@ public class JnaFileChooser
         dialogTitle = "";
         openButtonText = "";
         saveButtonText = "";
+
+		previewEnabled = false;
+		searchEnabled = false;
+		prefetchEnabled = false;
+		filterIndex = 0;
+		archiveBrowsingEnabled = false;
+		readAheadBytes = 0;
+		directorySizesEnabled = false;
+		saveValidationEnabled = false;
+		requiredFreeBytes = 0;
+		digestAlgorithm = null;
+		context = null;
+		recentLocations = RecentLocations.getDefault();
+		thumbnailCache = ThumbnailCache.getDefault();
+		backend = Backend.Auto;
+		backendSelector = BackendSelector.getDefault();
 	}
 
 	/**
 	 * creates a new file chooser with the specified initial directory
 	 *
+	 * If the directory doesn't respond in time, for example because it is
+	 * on a stale network mount, the closest reachable ancestor is used
+	 * instead so this never blocks for long.
+	 *
 	 * @param currentDirectory the initial directory
 	 */
 	public JnaFileChooser(File currentDirectory) {
 		this();
-        if (currentDirectory != null) {
-			this.currentDirectory = currentDirectory.isDirectory() ?
-				currentDirectory : currentDirectory.getParentFile();
-		}
+		final FileProbe.Result resolved = FileProbe.resolveDirectory(currentDirectory);
+		this.currentDirectory = resolved.directory;
+		this.unresponsiveDirectory = resolved.unresponsive;
 	}
 
 	/**
@@ -132,109 +226,578 @@ public class JnaFileChooser
 		return showDialog(parent, Action.Save);
 	}
 
+	/**
+	 * shows a dialog for opening files as described by the given spec
+	 *
+	 * Unlike the instance methods this doesn't modify any shared state, so
+	 * any number of threads can show dialogs from the same spec at once.
+	 *
+	 * @param parent the parent window
+	 * @param spec   the dialog to show
+	 *
+	 * @return the selection; not approved if the user canceled
+	 */
+	public static Selection open(Window parent, DialogSpec spec) {
+		return show(parent, spec, Action.Open);
+	}
+
+	/**
+	 * shows a dialog for saving files as described by the given spec
+	 *
+	 * @param parent the parent window
+	 * @param spec   the dialog to show
+	 *
+	 * @return the selection; not approved if the user canceled
+	 *
+	 * @see #open(Window, DialogSpec)
+	 */
+	public static Selection save(Window parent, DialogSpec spec) {
+		return show(parent, spec, Action.Save);
+	}
+
+	/**
+	 * returns an immutable snapshot of the current settings
+	 *
+	 * @return a spec that shows the same dialog as this chooser
+	 */
+	public DialogSpec toSpec() {
+		return DialogSpec.builder()
+			.mode(mode)
+			.multiSelection(multiSelectionEnabled)
+			.title(dialogTitle)
+			.openButtonText(openButtonText)
+			.saveButtonText(saveButtonText)
+			.defaultFileName(defaultFile)
+			.filters(filters)
+			.contentFilters(contentFilters)
+			.currentDirectory(currentDirectory)
+			.unresponsiveDirectory(unresponsiveDirectory)
+			.filterIndex(filterIndex)
+			.context(context)
+			.recentLocations(recentLocations)
+			.preview(previewEnabled)
+			.thumbnailCache(thumbnailCache)
+			.search(searchEnabled)
+			.archiveBrowsing(archiveBrowsingEnabled)
+			.directorySizes(directorySizesEnabled)
+			.readAheadBytes(readAheadBytes)
+			.saveValidation(saveValidationEnabled)
+			.requiredFreeBytes(requiredFreeBytes)
+			.digestAlgorithm(digestAlgorithm)
+			.dialogHost(dialogHost)
+			.backend(backend)
+			.backendSelector(backendSelector)
+			.build();
+	}
+
 	private boolean showDialog(Window parent, Action action) {
-		if (Platform.isWindows()) {
-			if (mode == Mode.Files) {
-				return showWindowsFileChooser(parent, action);
+		if (readAhead != null) {
+			readAhead.cancel();
+			readAhead = null;
+		}
+		if (digests != null) {
+			digests.cancel();
+			digests = null;
+		}
+		saveVerdict = null;
+		final Selection selection = show(parent, toSpec(), action);
+		rejectedFiles = selection.getRejectedFiles().toArray(new File[0]);
+		decision = selection.getDecision();
+		if (!selection.isApproved()) {
+			return false;
+		}
+		selectedFiles = selection.getFiles().toArray(new File[0]);
+		currentDirectory = selection.getCurrentDirectory();
+		if (selection.getFilterIndex() > 0) {
+			filterIndex = selection.getFilterIndex();
+		}
+		readAhead = selection.getReadAhead();
+		saveVerdict = selection.getSaveVerdict();
+		digests = selection.getDigests();
+		return true;
+	}
+
+	private static Selection show(Window parent, DialogSpec spec, Action action) {
+		File directory = spec.getCurrentDirectory();
+		int filterIndex = spec.getFilterIndex();
+		final String context = spec.getContext();
+		if (context != null) {
+			final RecentLocations.Entry recent = spec.getRecentLocations().get(context);
+			if (recent != null) {
+				if (directory == null) {
+					directory = recent.getDirectory();
+				}
+				if (recent.getFilterIndex() > 0) {
+					filterIndex = recent.getFilterIndex();
+				}
 			}
-			else if (mode == Mode.Directories) {
-				return showWindowsFolderBrowser(parent);
+		}
+		final DialogHost host = spec.getDialogHost();
+		Selection selection = host != null ?
+			host.show(spec, action == Action.Save, directory, filterIndex) :
+			dispatch(parent, spec, action, directory, filterIndex);
+		if (!selection.isApproved()) {
+			return selection;
+		}
+		final File[] files = selection.getFiles().toArray(new File[0]);
+		if (action == Action.Save && spec.isSaveValidation() && selection.getSaveVerdict() == null) {
+			selection = selection.withSaveVerdict(
+				new SaveValidator(spec.getRequiredFreeBytes()).validate(files[0]));
+		}
+		if (action == Action.Open && spec.getReadAheadBytes() > 0) {
+			selection = selection.withReadAhead(ReadAhead.start(files, spec.getReadAheadBytes()));
+		}
+		if (action == Action.Open && spec.getDigestAlgorithm() != null) {
+			selection = selection.withDigests(Digests.start(files, spec.getDigestAlgorithm()));
+		}
+		if (context != null) {
+			spec.getRecentLocations().record(context, selection.getCurrentDirectory(),
+				selection.getFilterIndex(), files);
+		}
+		return selection;
+	}
+
+	// used by the helper process of DialogHost
+	static Selection showInProcess(DialogSpec spec, boolean save) {
+		return dispatch(null, spec, save ? Action.Save : Action.Open,
+			spec.getCurrentDirectory(), spec.getFilterIndex());
+	}
+
+	private static Selection dispatch(Window parent, DialogSpec spec, Action action,
+			File directory, int filterIndex) {
+		final Backend backend = spec.getBackend();
+		final boolean pinned = backend != Backend.Auto && backend != Backend.Adaptive;
+		// the portal needs no display in this process, so it is tried first
+		final boolean sandboxed = !pinned && Os.isLinux() && Os.isSandboxed();
+		if (backend == Backend.Portal || sandboxed) {
+			final Selection selection = tryProviders(Backend.Portal,
+				sandboxed ? "sandboxed, files outside are only reachable through the portal" :
+					"pinned by the caller",
+				parent, spec, action, directory, filterIndex);
+			if (selection != null) {
+				return selection;
 			}
 		}
+		if (GraphicsEnvironment.isHeadless()) {
+			// no display at all (e.g. over SSH), Swing would just throw
+			return showTerminalChooser(spec, action, directory, filterIndex).withDecision(
+				new BackendSelector.Decision(null, "terminal chooser", "no display"));
+		}
+		if (backend == Backend.Adaptive) {
+			return showAdaptive(parent, spec, action, directory, filterIndex);
+		}
+		if (backend == Backend.Swing) {
+			return showSwingFileChooser(parent, spec, action, directory, filterIndex).withDecision(
+				new BackendSelector.Decision(Backend.Swing, SWING.toString(), "pinned by the caller"));
+		}
+		Selection selection = tryProviders(Backend.Native,
+			pinned ? "pinned by the caller" : "the platform's dialog",
+			parent, spec, action, directory, filterIndex);
+		if (selection == null && backend == Backend.Auto) {
+			// a minimal session without GTK may still have a portal
+			selection = tryProviders(Backend.Portal, "no native dialog can show it",
+				parent, spec, action, directory, filterIndex);
+		}
+		if (selection != null) {
+			return selection;
+		}
 
 		// fallback to Swing
-		return showSwingFileChooser(parent, action);
+		return showSwingFileChooser(parent, spec, action, directory, filterIndex).withDecision(
+			new BackendSelector.Decision(Backend.Swing, SWING.toString(), pinned ?
+				"the pinned backend can't show it" : "no native dialog can show it"));
 	}
 
-	private boolean showSwingFileChooser(Window parent, Action action) {
-		final JFileChooser fc = new JFileChooser(currentDirectory);
-		fc.setMultiSelectionEnabled(multiSelectionEnabled);
-		fc.setFileSelectionMode(mode.getJFileChooserValue());
+	// returns null if no provider of the backend can show this dialog
+	private static Selection tryProviders(Backend backend, String reason, Window parent,
+			DialogSpec spec, Action action, File directory, int filterIndex) {
+		final boolean save = action == Action.Save;
+		for (final ChooserProvider p : getChooserProviders()) {
+			if (p.getBackend() != backend) {
+				continue;
+			}
+			try {
+				if (p.isAvailable() && p.supports(spec, save)) {
+					return p.show(parent, spec, save, directory, filterIndex).withDecision(
+						new BackendSelector.Decision(backend, p.toString(), reason));
+				}
+			}
+			catch (LinkageError e) {
+				// the library is there but lacks something we need
+			}
+		}
+		return null;
+	}
+
+	// lets the BackendSelector rank all backends that can show the dialog
+	// and falls back along its ranking if one of them fails
+	private static Selection showAdaptive(Window parent, DialogSpec spec, Action action,
+			File directory, int filterIndex) {
+		final boolean save = action == Action.Save;
+		final List<ChooserProvider> candidates = new ArrayList<>();
+		for (final Backend kind : new Backend[] { Backend.Native, Backend.Portal }) {
+			for (final ChooserProvider p : getChooserProviders()) {
+				try {
+					if (p.getBackend() == kind && p.isAvailable() && p.supports(spec, save)) {
+						candidates.add(p);
+					}
+				}
+				catch (LinkageError e) {
+					// the library is there but lacks something we need
+				}
+			}
+		}
+		candidates.add(SWING);
+
+		final BackendSelector selector = spec.getBackendSelector();
+		final Mode mode = spec.getMode();
+		final boolean multi = spec.isMultiSelection();
+		final BackendSelector.Plan plan = selector.rank(mode, multi, candidates);
+		String reason = plan.reason;
+		for (int i = 0; i < plan.order.size(); ++i) {
+			final ChooserProvider p = plan.order.get(i);
+			final Selection selection;
+			final BackendSelector.Attempt attempt = BackendSelector.start();
+			try {
+				selection = p.show(parent, spec, save, directory, filterIndex);
+			}
+			catch (RuntimeException | LinkageError e) {
+				selector.recordFailure(mode, multi, p, e);
+				if (i == plan.order.size() - 1) {
+					throw e;
+				}
+				reason = p + " failed with " + e + ", next in the ranking";
+				continue;
+			}
+			finally {
+				attempt.close();
+			}
+			selector.recordShown(mode, multi, p, attempt.getVisibleMillis());
+			return selection.withDecision(selector.decided(p, reason));
+		}
+		// not reached, there is always at least the Swing candidate
+		throw new IllegalStateException("no backend to show the dialog");
+	}
+
+	/**
+	 * returns the dialog backends found with the service loader, in the
+	 * order they are tried
+	 *
+	 * @return the providers, including unavailable ones
+	 *
+	 * @see ChooserProvider
+	 */
+	public static synchronized List<ChooserProvider> getChooserProviders() {
+		if (providers == null) {
+			final List<ChooserProvider> found = new ArrayList<>();
+			final Iterator<ChooserProvider> it = ServiceLoader.load(ChooserProvider.class,
+				JnaFileChooser.class.getClassLoader()).iterator();
+			while (it.hasNext()) {
+				try {
+					found.add(it.next());
+				}
+				catch (ServiceConfigurationError e) {
+					// a provider built against a library that isn't there
+				}
+			}
+			providers = Collections.unmodifiableList(found);
+		}
+		return providers;
+	}
+
+	private static Selection showSwingFileChooser(final Window parent, final DialogSpec spec,
+			final Action action, final File directory, final int filterIndex) {
+		if (EventQueue.isDispatchThread()) {
+			return showSwingDialog(parent, spec, action, directory, filterIndex);
+		}
+		// Swing components belong to the event dispatch thread, callers on
+		// other threads (e.g. DialogScheduler's) wait for it like they wait
+		// for a native dialog
+		final FutureTask<Selection> task = new FutureTask<>(new Callable<Selection>() {
+			@Override
+			public Selection call() {
+				return showSwingDialog(parent, spec, action, directory, filterIndex);
+			}
+		});
+		EventQueue.invokeLater(task);
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return task.get();
+				}
+				catch (InterruptedException e) {
+					// the dialog is open and can't be taken back
+					interrupted = true;
+				}
+			}
+		}
+		catch (ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new RuntimeException(cause);
+		}
+		finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private static Selection showSwingDialog(Window parent, DialogSpec spec, Action action,
+			File directory, int filterIndex) {
+		// don't let a stale mount hang the dialog before it's even shown
+		RootsProvider.getDefault().refreshIfStale();
+		final FileProbe.Result resolved = FileProbe.resolveExistingDirectory(directory);
+		final File unresponsive = resolved.unresponsive != null ?
+			resolved.unresponsive : spec.getUnresponsiveDirectory();
+		final ArchiveMounts archives = spec.isArchiveBrowsing() ? new ArchiveMounts() : null;
+		final SaveValidator validator = action == Action.Save && spec.isSaveValidation() ?
+			new SaveValidator(spec.getRequiredFreeBytes()) : null;
+		final SaveVerdict[] verdict = new SaveVerdict[1];
+		final JFileChooser fc = new JFileChooser(resolved.directory,
+			new ProbingFileSystemView(FileSystemView.getFileSystemView(), archives)) {
+			private static final long serialVersionUID = 1L;
+			private boolean validating;
+
+			@Override
+			public void approveSelection() {
+				final File target = selectedFiles(this)[0];
+				if (validator != null && target != null) {
+					// checked while the dialog is still open, so the
+					// directory results are current and a slow mount
+					// doesn't freeze the closed dialog's owner
+					if (validating) {
+						return;
+					}
+					validating = true;
+					try {
+						verdict[0] = validator.validateWhilePumping(target);
+					}
+					finally {
+						validating = false;
+					}
+					if (!isShowing()) {
+						// cancelled while the checks ran
+						return;
+					}
+				}
+				super.approveSelection();
+			}
+		};
+		fc.setMultiSelectionEnabled(spec.isMultiSelection());
+		fc.setFileSelectionMode(spec.getMode().getJFileChooserValue());
 
 		// set select file
-		if (!defaultFile.isEmpty() & action == Action.Save) {
-			File fsel = new File(defaultFile);
+		if (!spec.getDefaultFileName().isEmpty() & action == Action.Save) {
+			File fsel = new File(spec.getDefaultFileName());
 			fc.setSelectedFile(fsel);
 		}
-		if (!dialogTitle.isEmpty()) {
-			fc.setDialogTitle(dialogTitle);
+		if (!spec.getTitle().isEmpty()) {
+			fc.setDialogTitle(spec.getTitle());
+		}
+		if (action == Action.Open & !spec.getOpenButtonText().isEmpty()) {
+			fc.setApproveButtonText(spec.getOpenButtonText());
+		} else if (action == Action.Save & !spec.getSaveButtonText().isEmpty()) {
+			fc.setApproveButtonText(spec.getSaveButtonText());
+		}
+
+		TypeAhead.install(fc);
+		if (spec.isDirectorySizes() && spec.getMode() != Mode.Files) {
+			DirectorySizeColumn.install(fc);
 		}
-		if (action == Action.Open & !openButtonText.isEmpty()) {
-			fc.setApproveButtonText(openButtonText);
-		} else if (action == Action.Save & !saveButtonText.isEmpty()) {
-			fc.setApproveButtonText(saveButtonText);
+
+		final JComponent accessory = buildAccessory(fc, spec, unresponsive);
+		if (accessory != null) {
+			fc.setAccessory(accessory);
 		}
 
-		// build filters
-		if (!filters.isEmpty()) {
+		// the filters are built once by the spec and shared by all dialogs,
+		// swingFilters has the same order as the filter specs and null for
+		// the "All Files" filter which is handled specially by JFileChooser
+		final List<FileFilter> swingFilters = spec.getSwingFilters();
+		if (!swingFilters.isEmpty()) {
 			boolean useAcceptAllFilter = false;
-			for (final String[] spec : filters) {
-				// the "All Files" filter is handled specially by JFileChooser
-				if (spec[1].equals("*")) {
+			for (final FileFilter filter : swingFilters) {
+				if (filter == null) {
 					useAcceptAllFilter = true;
 					continue;
 				}
-				fc.addChoosableFileFilter(new FileNameExtensionFilter(
-					spec[0], Arrays.copyOfRange(spec, 1, spec.length)));
+				fc.addChoosableFileFilter(filter);
 			}
 			fc.setAcceptAllFileFilterUsed(useAcceptAllFilter);
 		}
+		final List<ContentFilter> contentFilters = spec.getContentFilters();
+		if (!contentFilters.isEmpty()) {
+			for (final ContentFilter filter : contentFilters) {
+				fc.addChoosableFileFilter(filter);
+			}
+			// sniff the headers of a directory in parallel as soon as it is
+			// entered so the filter finds them cached while listing
+			ContentSniffer.getDefault().prefetch(fc.getCurrentDirectory());
+			fc.addPropertyChangeListener(JFileChooser.DIRECTORY_CHANGED_PROPERTY,
+				new PropertyChangeListener() {
+					@Override
+					public void propertyChange(PropertyChangeEvent e) {
+						ContentSniffer.getDefault().prefetch((File) e.getNewValue());
+					}
+				});
+		}
 
-		int result;
-		if (action == Action.Open) {
-			result = fc.showOpenDialog(parent);
+		if (filterIndex >= 1 && filterIndex <= swingFilters.size()) {
+			final FileFilter filter = swingFilters.get(filterIndex - 1);
+			fc.setFileFilter(filter != null ? filter : fc.getAcceptAllFileFilter());
 		}
-		else {
-			if (saveButtonText.isEmpty()) {
-				result = fc.showSaveDialog(parent);
-            }
+
+		// check every directory the user enters while the dialog is open,
+		// so approving only has to wait for the checks of the file itself
+		if (validator != null) {
+			validator.prepare(fc.getCurrentDirectory());
+			fc.addPropertyChangeListener(JFileChooser.DIRECTORY_CHANGED_PROPERTY,
+				new PropertyChangeListener() {
+					@Override
+					public void propertyChange(PropertyChangeEvent e) {
+						validator.prepare((File) e.getNewValue());
+					}
+				});
+		}
+
+		// drives that answer late are added to the "Look in" list while the
+		// dialog is open; toggling the property between its two equivalent
+		// values makes the UI rebuild the list from getRoots()
+		final Runnable rootsListener = new Runnable() {
+			@Override
+			public void run() {
+				SwingUtilities.invokeLater(new Runnable() {
+					@Override
+					public void run() {
+						fc.putClientProperty(USE_SHELL_FOLDER,
+							fc.getClientProperty(USE_SHELL_FOLDER) == null ? Boolean.FALSE : null);
+					}
+				});
+			}
+		};
+		RootsProvider.getDefault().addListener(rootsListener);
+		// tells an adaptive BackendSelector when the dialog is visible
+		final Runnable visible = BackendSelector.onVisible();
+		fc.addHierarchyListener(new HierarchyListener() {
+			@Override
+			public void hierarchyChanged(HierarchyEvent e) {
+				if ((e.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) != 0 && fc.isShowing()) {
+					visible.run();
+				}
+			}
+		});
+		int result;
+		try {
+			if (action == Action.Open) {
+				result = fc.showOpenDialog(parent);
+			}
 			else {
-				result = fc.showDialog(parent, null);
-            }
+				if (spec.getSaveButtonText().isEmpty()) {
+					result = fc.showSaveDialog(parent);
+				}
+				else {
+					result = fc.showDialog(parent, null);
+				}
+			}
+		}
+		finally {
+			RootsProvider.getDefault().removeListener(rootsListener);
 		}
 		if (result == JFileChooser.APPROVE_OPTION) {
-			selectedFiles = multiSelectionEnabled ?
-				fc.getSelectedFiles() : new File[] { fc.getSelectedFile() };
-			currentDirectory = fc.getCurrentDirectory();
-			return true;
+			final FileFilter filter = fc.getFileFilter();
+			final int index = swingFilters.indexOf(
+				filter == fc.getAcceptAllFileFilter() ? null : filter);
+			final File[] files = selectedFiles(fc);
+			File current = fc.getCurrentDirectory();
+			if (current instanceof ArchiveEntryFile) {
+				current = ((ArchiveEntryFile) current).getArchive().getParentFile();
+			}
+			else if (archives != null && ArchiveMounts.isArchive(current)) {
+				current = current.getParentFile();
+			}
+			if (archives != null) {
+				archives.closeExcept(files);
+			}
+			final Selection selection = Selection.approved(files, current,
+				index >= 0 ? index + 1 : filterIndex, null);
+			if (validator == null) {
+				return selection;
+			}
+			return selection.withSaveVerdict(verdict[0] != null && verdict[0].getTarget().equals(files[0]) ?
+				verdict[0] : validator.validate(files[0]));
 		}
 
-		return false;
+		if (archives != null) {
+			archives.closeExcept(null);
+		}
+		return Selection.cancelled(null);
 	}
 
-	private boolean showWindowsFileChooser(Window parent, Action action) {
-		final WindowsFileChooser fc = new WindowsFileChooser(currentDirectory);
-		fc.setFilters(filters);
-		fc.setMultiSelectionEnabled(multiSelectionEnabled);
-		if (!defaultFile.isEmpty())
-			fc.setDefaultFilename(defaultFile);
+	private static File[] selectedFiles(JFileChooser fc) {
+		// the selected files stay empty when a name was typed in
+		final File[] selected = fc.isMultiSelectionEnabled() ? fc.getSelectedFiles() : null;
+		return selected != null && selected.length > 0 ?
+			selected : new File[] { fc.getSelectedFile() };
+	}
 
-		if (!dialogTitle.isEmpty()) {
-			fc.setTitle(dialogTitle);
+	private static JComponent buildAccessory(JFileChooser fc, DialogSpec spec, File unresponsive) {
+		final JComponent preview = spec.isPreview() ?
+			new ThumbnailAccessory(fc, spec.getThumbnailCache()) : null;
+		final JComponent search = spec.isSearch() ? new SearchPanel(fc) : null;
+		final JComponent notice = unresponsive != null ?
+			new JLabel("<html>" + unresponsive.getPath()
+				+ "<br>is not responding</html>") : null;
+		final JPanel panel = new JPanel(new BorderLayout());
+		int count = 0;
+		if (notice != null) {
+			panel.add(notice, BorderLayout.NORTH);
+			++count;
 		}
-
-		final boolean result = fc.showDialog(parent, action == Action.Open);
-		if (result) {
-            selectedFiles = multiSelectionEnabled ? fc.getSelectedFiles() : new File[]{fc.getSelectedFile()};
-			currentDirectory = fc.getCurrentDirectory();
+		if (search != null) {
+			panel.add(search, BorderLayout.CENTER);
+			++count;
+		}
+		if (preview != null) {
+			panel.add(preview, BorderLayout.SOUTH);
+			++count;
 		}
-		return result;
+		return count > 0 ? panel : null;
 	}
 
-	private boolean showWindowsFolderBrowser(Window parent) {
-		final WindowsFolderBrowser fb = new WindowsFolderBrowser();
-		if (!dialogTitle.isEmpty()) {
-			fb.setTitle(dialogTitle);
+	private static Selection showTerminalChooser(DialogSpec spec, Action action,
+			File directory, int filterIndex) {
+		final File root = directory != null ?
+			directory : new File(System.getProperty("user.dir"));
+		final TerminalChooser tc = new TerminalChooser(root, spec.getFilterSpecs(), filterIndex,
+			spec.getMode(), spec.isMultiSelection(), action == Action.Save, spec.getTitle());
+		File[] files;
+		try {
+			files = tc.show();
 		}
-		final File file = fb.showDialog(parent);
-		if (file != null) {
-			selectedFiles = new File[] { file };
-			currentDirectory = file.getParentFile() != null ?
-				file.getParentFile() : file;
-			return true;
+		catch (IOException e) {
+			throw new RuntimeException("terminal file chooser failed", e);
 		}
-
-		return false;
+		File[] rejected = null;
+		final List<ContentFilter> contentFilters = spec.getContentFilters();
+		if (files != null && action == Action.Open && spec.getMode() != Mode.Directories
+				&& !contentFilters.isEmpty()) {
+			final List<File> accepted = new ArrayList<>();
+			final List<File> dropped = new ArrayList<>();
+			ContentFilter.partition(contentFilters, files, accepted, dropped);
+			rejected = dropped.toArray(new File[0]);
+			files = accepted.isEmpty() ? null : accepted.toArray(new File[0]);
+		}
+		if (files == null) {
+			return Selection.cancelled(rejected);
+		}
+		return Selection.approved(files, files[0].getParentFile(), tc.getFilterIndex(), rejected);
 	}
 
 	/**
@@ -254,6 +817,22 @@ public class JnaFileChooser
 		filters.add(parts.toArray(new String[0]));
 	}
 
+	/**
+	 * add a filter that matches files by their content instead of their
+	 * extension
+	 *
+	 * In the Swing fallback this is a regular user-selectable filter. The
+	 * native Windows dialog can't filter by content, there the filter is
+	 * used to validate the selection after the dialog was closed, see
+	 * {@link #getRejectedFiles()}.
+	 *
+	 * @param name  name of the filter
+	 * @param types you must pass at least 1 content type
+	 */
+	public void addContentFilter(String name, ContentType... types) {
+		contentFilters.add(new ContentFilter(name, types));
+	}
+
 	/**
 	 * sets the selection mode
 	 *
@@ -268,7 +847,274 @@ public class JnaFileChooser
 	}
 
 	public void setCurrentDirectory(String currentDirectoryPath) {
+		final File previous = currentDirectory;
 		this.currentDirectory = (currentDirectoryPath != null ? new File(currentDirectoryPath) : null);
+		this.unresponsiveDirectory = null;
+		if (prefetchEnabled && !equals(previous, currentDirectory)) {
+			DirectoryPrefetcher.cancel(previous);
+			DirectoryPrefetcher.prefetch(currentDirectory);
+		}
+	}
+
+	private static boolean equals(File a, File b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
+	/**
+	 * sets whether the Swing fallback lets the user browse into ZIP and JAR
+	 * archives
+	 *
+	 * Archives are opened through the zip file system provider and only
+	 * their central directory is read. Entries picked inside an archive are
+	 * returned by {@link #getSelectedPaths()} as paths on the archive's file
+	 * system, which stays open until the caller closes it with
+	 * {@code path.getFileSystem().close()}.
+	 *
+	 * @param enabled true to enable browsing into archives
+	 */
+	public void setArchiveBrowsingEnabled(boolean enabled) {
+		this.archiveBrowsingEnabled = enabled;
+	}
+
+	public boolean isArchiveBrowsingEnabled() {
+		return archiveBrowsingEnabled;
+	}
+
+	/**
+	 * sets how much of each selected file to read ahead in the background
+	 * after an open dialog was approved
+	 *
+	 * Reading the beginning of the files right away warms the page cache,
+	 * so the application's own first read doesn't wait for a cold disk or
+	 * network share. See {@link ReadAhead}.
+	 *
+	 * @param bytes the number of bytes per file; 0 disables read-ahead
+	 */
+	public void setReadAheadBytes(long bytes) {
+		this.readAheadBytes = bytes;
+	}
+
+	public long getReadAheadBytes() {
+		return readAheadBytes;
+	}
+
+	/**
+	 * returns the read-ahead started for the last selection
+	 *
+	 * @return the read-ahead; null if none was started
+	 */
+	public ReadAhead getReadAhead() {
+		return readAhead;
+	}
+
+	/**
+	 * sets the algorithm to hash the files of an approved open dialog with
+	 *
+	 * The files are hashed in parallel in the background, the digest of
+	 * each file is available as a future from {@link #getDigests()}. See
+	 * {@link Digests}.
+	 *
+	 * @param algorithm a MessageDigest algorithm like
+	 *                  {@link Digests#DEFAULT_ALGORITHM}; null to not hash
+	 */
+	public void setDigestAlgorithm(String algorithm) {
+		this.digestAlgorithm = algorithm;
+	}
+
+	public String getDigestAlgorithm() {
+		return digestAlgorithm;
+	}
+
+	/**
+	 * returns the digests started for the last selection
+	 *
+	 * @return the digests; null if none were started
+	 */
+	public Digests getDigests() {
+		return digests;
+	}
+
+	/**
+	 * sets whether the target of a save dialog is checked after approval
+	 *
+	 * The checks (does the directory exist, does the file exist, is it
+	 * writable, is there enough free space) run concurrently with a timeout
+	 * each and the result is available from {@link #getSaveVerdict()}. The
+	 * Swing fallback checks each directory as soon as it is entered.
+	 *
+	 * @param enabled true to check the save target
+	 */
+	public void setSaveValidationEnabled(boolean enabled) {
+		this.saveValidationEnabled = enabled;
+	}
+
+	public boolean isSaveValidationEnabled() {
+		return saveValidationEnabled;
+	}
+
+	/**
+	 * sets the free space the save target's volume must have
+	 *
+	 * @param bytes the required free space; 0 to only check the others
+	 */
+	public void setRequiredFreeBytes(long bytes) {
+		this.requiredFreeBytes = bytes;
+	}
+
+	public long getRequiredFreeBytes() {
+		return requiredFreeBytes;
+	}
+
+	/**
+	 * returns the checks of the last approved save dialog
+	 *
+	 * @return the verdict; null if save validation is disabled
+	 */
+	public SaveVerdict getSaveVerdict() {
+		return saveVerdict;
+	}
+
+	/**
+	 * sets whether the Swing fallback shows the total size of folders
+	 *
+	 * This only has an effect in {@link Mode#Directories} and
+	 * {@link Mode#FilesAndDirectories}. The dialog then opens in the
+	 * details view and the size column shows the size of every visible
+	 * folder, computed in the background and updated while it grows.
+	 *
+	 * @param enabled true to show folder sizes
+	 */
+	public void setDirectorySizesEnabled(boolean enabled) {
+		this.directorySizesEnabled = enabled;
+	}
+
+	public boolean isDirectorySizesEnabled() {
+		return directorySizesEnabled;
+	}
+
+	/**
+	 * sets the 1-based index of the filter that is initially selected
+	 *
+	 * @param filterIndex the index in the order the filters were added
+	 */
+	public void setFilterIndex(int filterIndex) {
+		this.filterIndex = filterIndex;
+	}
+
+	/**
+	 * returns the 1-based index of the filter the user selected last
+	 *
+	 * @return the filter index; 0 if unknown
+	 */
+	public int getFilterIndex() {
+		return filterIndex;
+	}
+
+	/**
+	 * sets the context ID under which this dialog remembers its state
+	 *
+	 * Dialogs with the same context ID open in the directory where the
+	 * last one was closed and with the same filter selected, even across
+	 * restarts of the application. A directory set explicitly takes
+	 * precedence over the remembered one.
+	 *
+	 * @param context an application chosen ID like "import-images"; null
+	 *                to not remember anything
+	 *
+	 * @see RecentLocations
+	 */
+	public void setContext(String context) {
+		this.context = context;
+	}
+
+	public String getContext() {
+		return context;
+	}
+
+	/**
+	 * sets the store used to remember the state of dialog contexts
+	 *
+	 * @param store the store; null to use {@link RecentLocations#getDefault()}
+	 */
+	public void setRecentLocations(RecentLocations store) {
+		this.recentLocations = store != null ? store : RecentLocations.getDefault();
+	}
+
+	/**
+	 * sets whether to load the listing of the initial directory in the
+	 * background as soon as it is known
+	 *
+	 * With prefetching enabled the Swing fallback can show a populated
+	 * directory right away. The initial directory is prefetched when this
+	 * is called and whenever {@link #setCurrentDirectory(String)} changes
+	 * it. Prefetched listings that are never used expire after a short
+	 * while. The native Windows dialogs don't benefit from this.
+	 *
+	 * @param enabled true to enable prefetching
+	 */
+	public void setPrefetchEnabled(boolean enabled) {
+		this.prefetchEnabled = enabled;
+		if (enabled) {
+			DirectoryPrefetcher.prefetch(currentDirectory);
+		}
+	}
+
+	public boolean isPrefetchEnabled() {
+		return prefetchEnabled;
+	}
+
+	/**
+	 * sets which dialog implementation to use
+	 *
+	 * With {@link Backend#Auto} the portal is used inside a Flatpak or Snap
+	 * sandbox and on Linux sessions without GTK. A backend that can't show
+	 * the requested dialog, for example the portal in
+	 * {@link Mode#FilesAndDirectories}, falls back to the next one like in
+	 * automatic mode. {@link Backend#Adaptive} ranks the backends by their
+	 * observed speed and failures instead, see {@link BackendSelector}; any
+	 * other value pins the backend.
+	 *
+	 * @param backend the backend
+	 *
+	 * @see #getDecision()
+	 */
+	public void setBackend(Backend backend) {
+		this.backend = backend != null ? backend : Backend.Auto;
+	}
+
+	public Backend getBackend() {
+		return backend;
+	}
+
+	/**
+	 * sets where {@link Backend#Adaptive} dialogs record their observations
+	 *
+	 * @param selector the selector; null to use {@link BackendSelector#getDefault()}
+	 */
+	public void setBackendSelector(BackendSelector selector) {
+		this.backendSelector = selector != null ? selector : BackendSelector.getDefault();
+	}
+
+	public BackendSelector getBackendSelector() {
+		return backendSelector;
+	}
+
+	/**
+	 * sets the helper process that shows the dialogs of this chooser
+	 *
+	 * With a host the dialog runs in a separate JVM and this process never
+	 * loads the UI libraries. The parent window is ignored then. Remembered
+	 * locations and read-ahead are still handled in this process.
+	 *
+	 * @param host the host, for example {@link DialogHost#getDefault()};
+	 *             null to show dialogs in this process
+	 */
+	public void setDialogHost(DialogHost host) {
+		this.dialogHost = host;
+	}
+
+	public DialogHost getDialogHost() {
+		return dialogHost;
 	}
 
 	/**
@@ -318,10 +1164,80 @@ public class JnaFileChooser
 		this.saveButtonText = buttonText;
 	}
 
+	/**
+	 * sets whether to show image previews in the Swing fallback dialog
+	 *
+	 * Thumbnails are decoded in the background and never block the dialog.
+	 * The native Windows dialogs have their own preview pane and ignore
+	 * this setting.
+	 *
+	 * @param enabled true to show previews
+	 */
+	public void setPreviewEnabled(boolean enabled) {
+		this.previewEnabled = enabled;
+	}
+
+	public boolean isPreviewEnabled() {
+		return previewEnabled;
+	}
+
+	/**
+	 * sets whether the Swing fallback dialog shows a field for searching
+	 * file names below the current directory
+	 *
+	 * The directory tree is indexed in the background when the user starts
+	 * typing and results are shown while indexing is still in progress.
+	 * Completed indexes are kept for the lifetime of the process.
+	 *
+	 * @param enabled true to show the search field
+	 */
+	public void setSearchEnabled(boolean enabled) {
+		this.searchEnabled = enabled;
+	}
+
+	public boolean isSearchEnabled() {
+		return searchEnabled;
+	}
+
+	/**
+	 * sets the cache that holds the preview thumbnails
+	 *
+	 * @param cache the cache; null to use {@link ThumbnailCache#getDefault()}
+	 */
+	public void setThumbnailCache(ThumbnailCache cache) {
+		this.thumbnailCache = cache != null ? cache : ThumbnailCache.getDefault();
+	}
+
 	public File[] getSelectedFiles() {
 		return selectedFiles;
 	}
 
+	/**
+	 * returns the files that were selected in the native dialog but dropped
+	 * because they didn't match any content filter
+	 *
+	 * @return the rejected files; empty if there are none
+	 */
+	public File[] getRejectedFiles() {
+		return rejectedFiles;
+	}
+
+	/**
+	 * returns the selection as paths
+	 *
+	 * Unlike {@link #getSelectedFiles()} this can represent entries of
+	 * archives, see {@link #setArchiveBrowsingEnabled(boolean)}.
+	 *
+	 * @return the selected paths
+	 */
+	public Path[] getSelectedPaths() {
+		final Path[] paths = new Path[selectedFiles.length];
+		for (int i = 0; i < paths.length; ++i) {
+			paths[i] = selectedFiles[i] != null ? selectedFiles[i].toPath() : null;
+		}
+		return paths;
+	}
+
 	public File getSelectedFile() {
 		return selectedFiles[0];
 	}
@@ -329,4 +1245,45 @@ public class JnaFileChooser
 	public File getCurrentDirectory() {
 		return currentDirectory;
 	}
+
+	/**
+	 * @return which backend showed the last dialog and why; null before
+	 *         the first dialog or if it was shown by a {@link DialogHost}
+	 */
+	public BackendSelector.Decision getDecision() {
+		return decision;
+	}
+
+	/*
+	 * the Swing fallback as a candidate for BackendSelector
+	 */
+	private static final class SwingProvider implements ChooserProvider
+	{
+		@Override
+		public Backend getBackend() {
+			return Backend.Swing;
+		}
+
+		@Override
+		public boolean isAvailable() {
+			return true;
+		}
+
+		@Override
+		public boolean supports(DialogSpec spec, boolean save) {
+			return true;
+		}
+
+		@Override
+		public Selection show(Window parent, DialogSpec spec, boolean save, File directory,
+				int filterIndex) {
+			return showSwingFileChooser(parent, spec, save ? Action.Save : Action.Open,
+				directory, filterIndex);
+		}
+
+		@Override
+		public String toString() {
+			return "Swing JFileChooser";
+		}
+	}
 }
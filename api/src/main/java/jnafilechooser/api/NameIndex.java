@@ -0,0 +1,500 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.api;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * an in-memory index of all file names below a root directory
+ *
+ * The tree is walked with a fork-join traversal, one task per directory.
+ * Every directory listing is appended to the index as one batch so the
+ * index can be searched while it is still being built; entries keep the
+ * order in which they were added, which makes it cheap to search only the
+ * entries that arrived since the last search.
+ *
+ * Entries are stored as name plus parent entry, full paths are only built
+ * for results. Names are indexed by trigram: each lower-cased trigram is
+ * hashed into one of 64k buckets holding the ascending ids of the entries
+ * that contain it. A query of three or more characters only looks at the
+ * entries of its rarest trigram and verifies them, shorter queries scan.
+ * Fuzzy (subsequence) matching scans and is meant to be narrowed
+ * incrementally by the caller, see refine().
+ *
+ * Indexes are cached per root for the lifetime of the process. They are a
+ * snapshot and don't pick up changes made to the tree after they were
+ * built.
+ */
+final class NameIndex
+{
+	private static final ConcurrentHashMap<File, NameIndex> INDEXES = new ConcurrentHashMap<>();
+	private static final ForkJoinPool WALKER = new ForkJoinPool(
+		Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+	private static final int BUCKETS = 1 << 16;
+
+	private final File root;
+
+	// guarded by this; append-only, queries read a View of them
+	private String[] names = new String[1024];
+	private String[] folded = new String[1024];
+	private int[] parents = new int[1024];
+	private boolean[] dirs = new boolean[1024];
+	private int size;
+	private final int[][] postings = new int[BUCKETS][];
+	private final int[] postingSizes = new int[BUCKETS];
+
+	private volatile boolean complete;
+	private volatile boolean cancelled;
+
+	private NameIndex(File root) {
+		this.root = root;
+	}
+
+	/*
+	 * returns the index of the root, starting to build it if necessary
+	 */
+	static NameIndex forRoot(File root) {
+		final File key = root.getAbsoluteFile();
+		NameIndex index = INDEXES.get(key);
+		if (index == null) {
+			final NameIndex created = new NameIndex(key);
+			index = INDEXES.putIfAbsent(key, created);
+			if (index == null) {
+				index = created;
+				WALKER.execute(new Walk(created, key, -1));
+			}
+		}
+		return index;
+	}
+
+	/*
+	 * stops building the index if it isn't complete yet and forgets about
+	 * it; complete indexes stay cached
+	 */
+	void release() {
+		if (!complete) {
+			cancelled = true;
+			INDEXES.remove(root, this);
+		}
+	}
+
+	File getRoot() {
+		return root;
+	}
+
+	boolean isComplete() {
+		return complete;
+	}
+
+	synchronized int size() {
+		return size;
+	}
+
+	/*
+	 * the entries added so far
+	 *
+	 * Entries are only ever appended and the arrays are replaced, not
+	 * shrunk, when they grow, so the slots below size of the captured
+	 * arrays never change. Queries take a view under the lock and scan it
+	 * without holding the lock, so they don't wait for the walker to add
+	 * the rest of a batch and the walker doesn't wait for them.
+	 */
+	private static final class View
+	{
+		final String[] names;
+		final String[] folded;
+		final int[] parents;
+		final boolean[] dirs;
+		final int size;
+
+		View(String[] names, String[] folded, int[] parents, boolean[] dirs, int size) {
+			this.names = names;
+			this.folded = folded;
+			this.parents = parents;
+			this.dirs = dirs;
+			this.size = size;
+		}
+	}
+
+	private synchronized View view() {
+		return new View(names, folded, parents, dirs, size);
+	}
+
+	/*
+	 * finds entries whose name contains the query, ignoring case
+	 *
+	 * Only entries with an id in [from, size()) are considered, so callers
+	 * can stream results by remembering where the last search ended.
+	 * Queries shorter than three characters scan all of those entries, so
+	 * this is called off the event dispatch thread.
+	 *
+	 * @param max the maximum number of results to add
+	 *
+	 * @return the id after the last considered entry, to be used as from
+	 *         for the next call
+	 */
+	int search(String query, int from, int max, List<File> results) {
+		final String q = fold(query);
+		if (q.length() < 3) {
+			final View v = view();
+			if (q.isEmpty()) {
+				return v.size;
+			}
+			for (int id = from; id < v.size; ++id) {
+				if (v.folded[id].contains(q)) {
+					results.add(path(v, id));
+					if (--max == 0) {
+						return id + 1;
+					}
+				}
+			}
+			return v.size;
+		}
+		final View v;
+		final int[] ids;
+		final int n;
+		synchronized (this) {
+			v = view();
+			// pick the trigram with the fewest candidates; like the
+			// entries, postings are append-only
+			int best = -1;
+			for (int i = 0; i + 3 <= q.length(); ++i) {
+				final int b = bucket(q, i);
+				if (best < 0 || postingSizes[b] < postingSizes[best]) {
+					best = b;
+				}
+			}
+			ids = postings[best];
+			n = postingSizes[best];
+		}
+		if (ids == null) {
+			return v.size;
+		}
+		int pos = Arrays.binarySearch(ids, 0, n, from);
+		if (pos < 0) {
+			pos = -pos - 1;
+		}
+		for (; pos < n; ++pos) {
+			final int id = ids[pos];
+			if (v.folded[id].contains(q)) {
+				results.add(path(v, id));
+				if (--max == 0) {
+					return id + 1;
+				}
+			}
+		}
+		return v.size;
+	}
+
+	/*
+	 * appends the ids in [from, size()) whose name contains the folded
+	 * query as a subsequence, ignoring case; the fuzzy counterpart of
+	 * search()
+	 *
+	 * @return the id to pass as from next time
+	 */
+	int fuzzy(String foldedQuery, int from, IdList out) {
+		final View v = view();
+		for (int id = from; id < v.size; ++id) {
+			if (isSubsequence(foldedQuery, v.folded[id])) {
+				out.add(id);
+			}
+		}
+		return v.size;
+	}
+
+	/*
+	 * removes the ids that don't match the folded query from the list,
+	 * used to narrow the previous result when the query grows
+	 */
+	void refine(String foldedQuery, IdList list) {
+		final View v = view();
+		int n = 0;
+		for (int i = 0; i < list.size; ++i) {
+			final int id = list.ids[i];
+			if (isSubsequence(foldedQuery, v.folded[id])) {
+				list.ids[n++] = id;
+			}
+		}
+		list.size = n;
+	}
+
+	/*
+	 * rates how well a name matches a fuzzy query, lower is better:
+	 * matches that are contiguous, start early and are in short names win
+	 */
+	int score(int id, String foldedQuery) {
+		return score(view().folded[id], foldedQuery);
+	}
+
+	private static int score(String name, String foldedQuery) {
+		int pos = -1;
+		int first = -1;
+		int gaps = 0;
+		for (int i = 0; i < foldedQuery.length(); ++i) {
+			final int next = name.indexOf(foldedQuery.charAt(i), pos + 1);
+			if (next < 0) {
+				return Integer.MAX_VALUE;
+			}
+			if (first < 0) {
+				first = next;
+			}
+			else if (next != pos + 1) {
+				++gaps;
+			}
+			pos = next;
+		}
+		return gaps * 64 + first * 4 + name.length();
+	}
+
+	String name(int id) {
+		return view().names[id];
+	}
+
+	boolean isDirectory(int id) {
+		return view().dirs[id];
+	}
+
+	File file(int id) {
+		return path(view(), id);
+	}
+
+	/*
+	 * decides whether an entry is shown at all, given its name and type
+	 */
+	interface Accept
+	{
+		boolean accept(String name, boolean directory);
+	}
+
+	/*
+	 * picks the best scoring accepted candidates
+	 *
+	 * @param best receives the ids of the best candidates, best first
+	 *
+	 * @return the number of accepted candidates; at most best.length of
+	 *         them end up in best
+	 */
+	int top(String foldedQuery, IdList candidates, Accept accept, IdList best, int k) {
+		final View v = view();
+		final int[] scores = new int[k];
+		best.clear();
+		int accepted = 0;
+		for (int i = 0; i < candidates.size; ++i) {
+			final int id = candidates.ids[i];
+			if (!accept.accept(v.names[id], v.dirs[id])) {
+				continue;
+			}
+			++accepted;
+			final int score = score(v.folded[id], foldedQuery);
+			if (best.size == k && score >= scores[k - 1]) {
+				continue;
+			}
+			// insertion into the small sorted top list
+			int pos = Math.min(best.size, k - 1);
+			if (best.size < k) {
+				best.add(id);
+			}
+			while (pos > 0 && scores[pos - 1] > score) {
+				scores[pos] = scores[pos - 1];
+				best.ids[pos] = best.ids[pos - 1];
+				--pos;
+			}
+			scores[pos] = score;
+			best.ids[pos] = id;
+		}
+		return accepted;
+	}
+
+	/*
+	 * like top() for the empty query: the first accepted entries in index
+	 * order, without scoring
+	 */
+	int first(Accept accept, IdList best, int k) {
+		final View v = view();
+		best.clear();
+		int accepted = 0;
+		for (int id = 0; id < v.size; ++id) {
+			if (accept.accept(v.names[id], v.dirs[id])) {
+				if (best.size < k) {
+					best.add(id);
+				}
+				++accepted;
+			}
+		}
+		return accepted;
+	}
+
+	private static boolean isSubsequence(String q, String s) {
+		int pos = 0;
+		for (int i = 0; i < q.length(); ++i) {
+			pos = s.indexOf(q.charAt(i), pos) + 1;
+			if (pos == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * a growable list of entry ids
+	 */
+	static final class IdList
+	{
+		int[] ids = new int[256];
+		int size;
+
+		void add(int id) {
+			if (size == ids.length) {
+				ids = Arrays.copyOf(ids, size * 2);
+			}
+			ids[size++] = id;
+		}
+
+		void clear() {
+			size = 0;
+		}
+
+		IdList copy() {
+			final IdList c = new IdList();
+			c.ids = Arrays.copyOf(ids, Math.max(size, 16));
+			c.size = size;
+			return c;
+		}
+	}
+
+	private File path(View v, int id) {
+		final ArrayList<String> parts = new ArrayList<>();
+		for (int i = id; i >= 0; i = v.parents[i]) {
+			parts.add(v.names[i]);
+		}
+		File f = root;
+		for (int i = parts.size() - 1; i >= 0; --i) {
+			f = new File(f, parts.get(i));
+		}
+		return f;
+	}
+
+	/*
+	 * appends the children of a directory
+	 *
+	 * @return the id of the first added entry
+	 */
+	private synchronized int add(int parent, File[] children, boolean[] isDir) {
+		final int first = size;
+		ensureCapacity(size + children.length);
+		for (int c = 0; c < children.length; ++c) {
+			final File child = children[c];
+			final int id = size++;
+			dirs[id] = isDir[c];
+			final String name = child.getName();
+			final String f = fold(name);
+			names[id] = name;
+			folded[id] = f;
+			parents[id] = parent;
+			for (int i = 0; i + 3 <= f.length(); ++i) {
+				final int b = bucket(f, i);
+				// the same bucket may be hit repeatedly by one name
+				if (!endsWith(b, id)) {
+					addPosting(b, id);
+				}
+			}
+		}
+		return first;
+	}
+
+	private boolean endsWith(int bucket, int id) {
+		final int n = postingSizes[bucket];
+		return n > 0 && postings[bucket][n - 1] == id;
+	}
+
+	private void addPosting(int bucket, int id) {
+		int[] ids = postings[bucket];
+		final int n = postingSizes[bucket];
+		if (ids == null) {
+			ids = postings[bucket] = new int[4];
+		}
+		else if (n == ids.length) {
+			ids = postings[bucket] = Arrays.copyOf(ids, n * 2);
+		}
+		ids[n] = id;
+		postingSizes[bucket] = n + 1;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > names.length) {
+			final int n = Math.max(capacity, names.length * 2);
+			names = Arrays.copyOf(names, n);
+			folded = Arrays.copyOf(folded, n);
+			parents = Arrays.copyOf(parents, n);
+			dirs = Arrays.copyOf(dirs, n);
+		}
+	}
+
+	private static int bucket(String s, int i) {
+		final int h = (s.charAt(i) * 31 + s.charAt(i + 1)) * 31 + s.charAt(i + 2);
+		return (h ^ (h >>> 16)) & (BUCKETS - 1);
+	}
+
+	static String fold(String s) {
+		return s.toLowerCase(Locale.ROOT);
+	}
+
+	private static final class Walk extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final NameIndex index;
+		private final File dir;
+		private final int id;
+
+		Walk(NameIndex index, File dir, int id) {
+			this.index = index;
+			this.dir = dir;
+			this.id = id;
+		}
+
+		@Override
+		protected void compute() {
+			if (index.cancelled) {
+				return;
+			}
+			final File[] children = dir.listFiles();
+			if (children != null && children.length > 0) {
+				final boolean[] isDir = new boolean[children.length];
+				for (int i = 0; i < children.length; ++i) {
+					isDir[i] = children[i].isDirectory();
+				}
+				final int first = index.add(id, children, isDir);
+				final List<Walk> subtasks = new ArrayList<>();
+				for (int i = 0; i < children.length; ++i) {
+					final File child = children[i];
+					// don't follow links, they may form cycles
+					if (isDir[i] && !Files.isSymbolicLink(child.toPath())) {
+						subtasks.add(new Walk(index, child, first + i));
+					}
+				}
+				invokeAll(subtasks);
+			}
+			if (id < 0 && !index.cancelled) {
+				index.complete = true;
+			}
+		}
+	}
+}
@@ -0,0 +1,367 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.api;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import com.sun.jna.Memory;
+
+/**
+ * Accounting of the native memory and handles the choosers allocate.
+ *
+ * Every JNA memory block and every native handle (PIDLs of the folder
+ * browser, GTK dialogs, strings returned by GTK) that the native backends
+ * obtain is counted while it is alive, globally and per chooser instance.
+ * All of them are released explicitly once a dialog returned; a memory
+ * block that is only reclaimed by the garbage collector is counted as such,
+ * so a steadily growing {@link Stats#getReclaimedByGc()} or
+ * {@link Stats#getLiveBytes()} points at a leak.
+ *
+ * With stack traces enabled, either by {@link #setStackTracesEnabled} or
+ * the system property jnafilechooser.allocationStacks=true, every live
+ * allocation remembers where it was made.
+ *
+ * Example:
+ * NativeAllocations.Stats before = NativeAllocations.getGlobalStats();
+ * // ... a day of kiosk use ...
+ * NativeAllocations.Stats after = NativeAllocations.getGlobalStats();
+ * if (after.getLiveBytes() > before.getLiveBytes()) {
+ *     for (NativeAllocations.Allocation a : NativeAllocations.getLiveAllocations()) {
+ *         System.err.println(a);
+ *     }
+ * }
+ */
+public final class NativeAllocations
+{
+	private static final ReferenceQueue<Memory> RECLAIMED = new ReferenceQueue<>();
+
+	// guarded by NativeAllocations.class
+	private static final Counters GLOBAL = new Counters();
+	private static final Map<Object, Counters> OWNERS = new WeakHashMap<>();
+	private static final Map<Allocation, Boolean> LIVE = new LinkedHashMap<>();
+	private static long nextId;
+
+	private static volatile boolean stackTraces = Boolean.getBoolean("jnafilechooser.allocationStacks");
+
+	private NativeAllocations() {
+	}
+
+	/**
+	 * sets whether allocations record the stack trace of their creation
+	 *
+	 * @param enabled true to record stack traces; this makes allocating
+	 *                noticeably slower
+	 */
+	public static void setStackTracesEnabled(boolean enabled) {
+		stackTraces = enabled;
+	}
+
+	public static boolean isStackTracesEnabled() {
+		return stackTraces;
+	}
+
+	/**
+	 * @return the counters of all choosers
+	 */
+	public static synchronized Stats getGlobalStats() {
+		drain();
+		return new Stats(GLOBAL);
+	}
+
+	/**
+	 * @param chooser a WindowsFileChooser, WindowsFolderBrowser or
+	 *                GtkFileChooser
+	 *
+	 * @return the counters of the chooser; all zero if it never allocated
+	 */
+	public static synchronized Stats getStats(Object chooser) {
+		drain();
+		final Counters c = OWNERS.get(chooser);
+		return new Stats(c != null ? c : new Counters());
+	}
+
+	/**
+	 * @return the allocations that are alive, oldest first
+	 */
+	public static synchronized List<Allocation> getLiveAllocations() {
+		drain();
+		return Collections.unmodifiableList(new ArrayList<>(LIVE.keySet()));
+	}
+
+	/**
+	 * resets the peaks to the current values, e.g. after a warm-up
+	 */
+	public static synchronized void resetPeaks() {
+		GLOBAL.resetPeaks();
+		for (final Counters c : OWNERS.values()) {
+			c.resetPeaks();
+		}
+	}
+
+	/*
+	 * allocates a block of memory that is counted until it is closed or
+	 * reclaimed by the garbage collector
+	 */
+	static Memory allocate(Object owner, long size) {
+		final Allocation a = opened(owner, "Memory", size);
+		final TrackedMemory m = new TrackedMemory(size, a);
+		a.reference = new MemoryReference(m, a);
+		return m;
+	}
+
+	/*
+	 * counts a native handle or block that the caller releases itself;
+	 * pass the result to closed() once it is released
+	 */
+	static Allocation opened(Object owner, String kind, long size) {
+		final Throwable stack = stackTraces ? new Throwable("allocated here") : null;
+		synchronized (NativeAllocations.class) {
+			drain();
+			Counters c = OWNERS.get(owner);
+			if (c == null) {
+				c = new Counters();
+				OWNERS.put(owner, c);
+			}
+			final Allocation a = new Allocation(++nextId, kind, size,
+				owner.getClass().getSimpleName(), c, stack);
+			c.opened(a);
+			GLOBAL.opened(a);
+			LIVE.put(a, Boolean.TRUE);
+			return a;
+		}
+	}
+
+	/*
+	 * counts the release of an allocation; releasing it again is a no-op
+	 */
+	static synchronized void closed(Allocation a) {
+		release(a, false);
+	}
+
+	private static void release(Allocation a, boolean byGc) {
+		if (LIVE.remove(a) == null) {
+			return;
+		}
+		a.counters.closed(a, byGc);
+		GLOBAL.closed(a, byGc);
+		a.reference = null;
+	}
+
+	// counts the blocks the garbage collector found unreachable before
+	// they were closed; must hold the lock
+	private static void drain() {
+		Reference<? extends Memory> r;
+		while ((r = RECLAIMED.poll()) != null) {
+			release(((MemoryReference) r).allocation, true);
+		}
+	}
+
+	private static final class TrackedMemory extends Memory
+	{
+		private final Allocation allocation;
+
+		TrackedMemory(long size, Allocation allocation) {
+			super(size);
+			this.allocation = allocation;
+		}
+
+		@Override
+		public void close() {
+			super.close();
+			closed(allocation);
+		}
+	}
+
+	private static final class MemoryReference extends WeakReference<Memory>
+	{
+		final Allocation allocation;
+
+		MemoryReference(Memory m, Allocation allocation) {
+			super(m, RECLAIMED);
+			this.allocation = allocation;
+		}
+	}
+
+	private static final class Counters
+	{
+		long liveBytes;
+		long peakBytes;
+		long liveHandles;
+		long peakHandles;
+		long allocations;
+		long reclaimedByGc;
+
+		void opened(Allocation a) {
+			++allocations;
+			++liveHandles;
+			liveBytes += a.size;
+			peakHandles = Math.max(peakHandles, liveHandles);
+			peakBytes = Math.max(peakBytes, liveBytes);
+		}
+
+		void closed(Allocation a, boolean byGc) {
+			--liveHandles;
+			liveBytes -= a.size;
+			if (byGc) {
+				++reclaimedByGc;
+			}
+		}
+
+		void resetPeaks() {
+			peakBytes = liveBytes;
+			peakHandles = liveHandles;
+		}
+	}
+
+	/**
+	 * A snapshot of the counters.
+	 */
+	public static final class Stats
+	{
+		private final long liveBytes;
+		private final long peakBytes;
+		private final long liveHandles;
+		private final long peakHandles;
+		private final long allocations;
+		private final long reclaimedByGc;
+
+		private Stats(Counters c) {
+			liveBytes = c.liveBytes;
+			peakBytes = c.peakBytes;
+			liveHandles = c.liveHandles;
+			peakHandles = c.peakHandles;
+			allocations = c.allocations;
+			reclaimedByGc = c.reclaimedByGc;
+		}
+
+		/**
+		 * @return the bytes of the memory blocks that are alive
+		 */
+		public long getLiveBytes() {
+			return liveBytes;
+		}
+
+		public long getPeakLiveBytes() {
+			return peakBytes;
+		}
+
+		/**
+		 * @return the number of memory blocks and handles that are alive
+		 */
+		public long getLiveHandles() {
+			return liveHandles;
+		}
+
+		public long getPeakLiveHandles() {
+			return peakHandles;
+		}
+
+		/**
+		 * @return the number of allocations made so far
+		 */
+		public long getAllocationCount() {
+			return allocations;
+		}
+
+		/**
+		 * @return the number of memory blocks that were never closed and
+		 *         only freed by the garbage collector
+		 */
+		public long getReclaimedByGc() {
+			return reclaimedByGc;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("Stats[live=%d bytes/%d handles, peak=%d bytes/%d handles,"
+				+ " allocations=%d, reclaimedByGc=%d]",
+				liveBytes, liveHandles, peakBytes, peakHandles, allocations, reclaimedByGc);
+		}
+	}
+
+	/**
+	 * A live allocation.
+	 */
+	public static final class Allocation
+	{
+		private final long id;
+		private final String kind;
+		private final long size;
+		private final String ownerType;
+		private final long createdAt = System.nanoTime();
+		private final Throwable stack;
+		final Counters counters;
+		// keeps the reference itself reachable until it is enqueued
+		MemoryReference reference;
+
+		private Allocation(long id, String kind, long size, String ownerType,
+				Counters counters, Throwable stack) {
+			this.id = id;
+			this.kind = kind;
+			this.size = size;
+			this.ownerType = ownerType;
+			this.counters = counters;
+			this.stack = stack;
+		}
+
+		/**
+		 * @return what was allocated, e.g. "Memory" or "PIDL"
+		 */
+		public String getKind() {
+			return kind;
+		}
+
+		/**
+		 * @return the size in bytes; 0 for handles of unknown size
+		 */
+		public long getSize() {
+			return size;
+		}
+
+		/**
+		 * @return the simple class name of the chooser that allocated it
+		 */
+		public String getOwnerType() {
+			return ownerType;
+		}
+
+		public double getAgeMillis() {
+			return (System.nanoTime() - createdAt) / 1e6;
+		}
+
+		/**
+		 * @return where it was allocated; null unless stack traces were
+		 *         enabled at the time
+		 */
+		public StackTraceElement[] getStackTrace() {
+			return stack != null ? stack.getStackTrace() : null;
+		}
+
+		@Override
+		public String toString() {
+			final StringBuilder sb = new StringBuilder(String.format(
+				"Allocation[#%d %s, %d bytes, %s, %.0fms]", id, kind, size, ownerType, getAgeMillis()));
+			if (stack != null) {
+				for (final StackTraceElement e : stack.getStackTrace()) {
+					sb.append("\n\tat ").append(e);
+				}
+			}
+			return sb.toString();
+		}
+	}
+}
@@ -0,0 +1,60 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.api;
+
+import java.io.File;
+import java.util.Locale;
+
+/*
+ * the platform checks the Swing fallback needs, without loading JNA so that
+ * it also works in a runtime image that leaves JNA out
+ */
+final class Os
+{
+	private static final String NAME =
+		System.getProperty("os.name", "").toLowerCase(Locale.ROOT);
+
+	private Os() {
+	}
+
+	static boolean isWindows() {
+		return NAME.startsWith("windows");
+	}
+
+	static boolean isMac() {
+		return NAME.startsWith("mac") || NAME.startsWith("darwin");
+	}
+
+	static boolean isLinux() {
+		return NAME.startsWith("linux");
+	}
+
+	// inside Flatpak or Snap
+	static boolean isSandboxed() {
+		return new File("/.flatpak-info").exists() || System.getenv("SNAP") != null;
+	}
+
+	/**
+	 * returns whether a class can be loaded, without initializing it
+	 *
+	 * @param name the binary name of the class
+	 *
+	 * @return false if its module or jar isn't there
+	 */
+	static boolean hasClass(String name) {
+		try {
+			Class.forName(name, false, Os.class.getClassLoader());
+			return true;
+		}
+		catch (ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,93 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.api;
+
+import java.awt.Window;
+import java.io.File;
+
+import jnafilechooser.api.JnaFileChooser.Backend;
+import jnafilechooser.api.JnaFileChooser.Mode;
+
+/**
+ * Provides the file chooser of the XDG desktop portal, see
+ * {@link PortalFileChooser}.
+ *
+ * Available on Linux if JNA and jnafilechooser-gtk are there and a portal
+ * runs on the session bus.
+ *
+ * Example:
+ * META-INF/services/jnafilechooser.api.ChooserProvider:
+ * jnafilechooser.api.PortalChooserProvider
+ */
+public final class PortalChooserProvider implements ChooserProvider
+{
+	private volatile Boolean linked;
+
+	/**
+	 * creates a new provider; called by the service loader
+	 */
+	public PortalChooserProvider() {
+	}
+
+	@Override
+	public Backend getBackend() {
+		return Backend.Portal;
+	}
+
+	@Override
+	public boolean isAvailable() {
+		if (linked == null) {
+			linked = Os.isLinux()
+				&& Os.hasClass("com.sun.jna.Native")
+				&& Os.hasClass("jnafilechooser.gtk.Gio");
+		}
+		return linked && PortalFileChooser.isAvailable();
+	}
+
+	@Override
+	public boolean supports(DialogSpec spec, boolean save) {
+		final Mode mode = spec.getMode();
+		return mode != Mode.FilesAndDirectories && !(mode == Mode.Directories && save);
+	}
+
+	@Override
+	public Selection show(Window parent, DialogSpec spec, boolean save, File directory,
+			int filterIndex) {
+		final PortalFileChooser fc = new PortalFileChooser();
+		fc.setCurrentDirectory(directory);
+		fc.setFilters(spec.getFilterSpecs());
+		fc.setContentFilters(spec.getContentFilters());
+		fc.setMultiSelectionEnabled(spec.isMultiSelection());
+		if (filterIndex > 0) {
+			fc.setFilterIndex(filterIndex);
+		}
+		fc.setFolderSelection(spec.getMode() == Mode.Directories);
+		if (!spec.getDefaultFileName().isEmpty())
+			fc.setDefaultFilename(spec.getDefaultFileName());
+
+		if (!spec.getTitle().isEmpty()) {
+			fc.setTitle(spec.getTitle());
+		}
+		fc.setAcceptLabel(save ? spec.getSaveButtonText() : spec.getOpenButtonText());
+
+		final boolean result = fc.showDialog(parent, !save);
+		if (!result) {
+			return Selection.cancelled(fc.getRejectedFiles());
+		}
+		return Selection.approved(
+			spec.isMultiSelection() ? fc.getSelectedFiles() : new File[]{fc.getSelectedFile()},
+			fc.getCurrentDirectory(), fc.getFilterIndex(), fc.getRejectedFiles());
+	}
+
+	@Override
+	public String toString() {
+		return "XDG desktop portal";
+	}
+}
@@ -0,0 +1,793 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.api;
+
+import java.awt.Window;
+import java.io.File;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jnafilechooser.gtk.GLib;
+import jnafilechooser.gtk.Gio;
+
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Platform;
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.PointerByReference;
+
+/**
+ * The file chooser of the XDG desktop portal, called over D-Bus.
+ *
+ * This is the dialog sandboxed applications (Flatpak, Snap) are supposed
+ * to use, and it doesn't need GTK in the process, only GIO.
+ *
+ * Example:
+ * PortalFileChooser fc = new PortalFileChooser();
+ * fc.addFilter("Text files", "txt", "log", "xml");
+ * if (PortalFileChooser.isAvailable() && fc.showOpenDialog(parent)) {
+ *     File f = fc.getSelectedFile();
+ *     // do something with f
+ * }
+ *
+ * Dialogs run on a dedicated daemon thread that also receives the portal's
+ * response. The caller waits for it, but gives up the dialog when it is
+ * interrupted, when the timeout passed, when {@link #cancel()} is called,
+ * when the portal leaves the bus and when the connection is closed. The
+ * connection to a bus is opened once and reused by all later dialogs. A
+ * chooser created with a bus address talks to that bus instead of the
+ * session bus, for example a private bus with a stand-in portal.
+ *
+ * {@link https://flatpak.github.io/xdg-desktop-portal/docs/doc-org.freedesktop.portal.FileChooser.html}
+ */
+public class PortalFileChooser
+{
+	private static final String PORTAL_NAME = "org.freedesktop.portal.Desktop";
+	private static final String PORTAL_PATH = "/org/freedesktop/portal/desktop";
+	private static final String FILE_CHOOSER = "org.freedesktop.portal.FileChooser";
+
+	private static final ExecutorService PORTAL = Executors.newSingleThreadExecutor(
+		new DaemonThreadFactory("jnafilechooser-portal"));
+	private static final AtomicInteger TOKENS = new AtomicInteger();
+	// how often a waiting caller checks the timeout and the connection
+	private static final long CHECK_MILLIS = 250;
+
+	// guarded by the class, keyed by bus address ("" is the session bus)
+	private static final Map<String, Pointer> connections = new HashMap<>();
+	private static final Map<String, Integer> versions = new HashMap<>();
+	// created and iterated by the portal thread only
+	private static volatile Pointer context;
+
+	protected File selectedFile;
+	protected File currentDirectory;
+	protected List<String[]> filters;
+	private List<ContentFilter> contentFilters;
+
+	protected String defaultFilename = "";
+	protected String dialogTitle = "";
+	protected String acceptLabel = "";
+
+	private final String busAddress;
+	private int filterIndex = 1;
+	private boolean multipleSelection = false;
+	private boolean folderSelection = false;
+	private File[] selectedFiles = null;
+	private File[] rejectedFiles = new File[0];
+	private long timeoutMillis = 0;
+	private volatile Pending pending;
+
+	/**
+	 * creates a new file chooser that uses the portal on the session bus
+	 */
+	public PortalFileChooser() {
+		this((String) null);
+	}
+
+	/**
+	 * creates a new file chooser that uses the portal on the given bus
+	 *
+	 * @param busAddress a D-Bus address like "unix:path=/tmp/bus"; null for
+	 *                   the session bus
+	 */
+	public PortalFileChooser(String busAddress) {
+		this.busAddress = busAddress != null ? busAddress : "";
+		filters = new ArrayList<>();
+		contentFilters = new ArrayList<>();
+	}
+
+	/**
+	 * returns whether a portal with a file chooser is running on the
+	 * session bus
+	 *
+	 * @return true if the dialog can be shown
+	 */
+	public static boolean isAvailable() {
+		return isAvailable(null);
+	}
+
+	/**
+	 * returns whether a portal with a file chooser is running on the bus
+	 *
+	 * The answer is cached per bus, so this doesn't wait for a dialog that
+	 * is open.
+	 *
+	 * @param busAddress the bus address; null for the session bus
+	 *
+	 * @return true if the dialog can be shown
+	 */
+	public static boolean isAvailable(String busAddress) {
+		if (!Platform.isLinux()) {
+			return false;
+		}
+		try {
+			return version(busAddress != null ? busAddress : "") > 0;
+		}
+		catch (RuntimeException | LinkageError e) {
+			// no GIO or no bus
+			return false;
+		}
+	}
+
+	/**
+	 * returns whether the application most likely runs in a sandbox, where
+	 * the portal is the only way to access files outside of it
+	 *
+	 * @return true inside Flatpak or Snap
+	 */
+	public static boolean isSandboxed() {
+		return Os.isSandboxed();
+	}
+
+	// package private, see WindowsFileChooser.setFilters
+	void setFilters(List<String[]> filters) {
+		this.filters = filters;
+	}
+
+	void setContentFilters(List<ContentFilter> contentFilters) {
+		this.contentFilters = contentFilters;
+	}
+
+	/**
+	 * add a filter to the user-selectable list of file filters
+	 *
+	 * @param name name of the filter
+	 * @param filter you must pass at least 1 argument, the arguments
+	 *               are the file extensions.
+	 */
+	public void addFilter(String name, String... filter) {
+		if (filter.length < 1) {
+			throw new IllegalArgumentException();
+		}
+		ArrayList<String> parts = new ArrayList<>();
+		parts.add(name);
+		Collections.addAll(parts, filter);
+		filters.add(parts.toArray(new String[0]));
+	}
+
+	/**
+	 * add a filter that matches files by their content
+	 *
+	 * Like on Windows this is applied after the user approved the open
+	 * dialog, see {@link #getRejectedFiles()}.
+	 *
+	 * @param name name of the filter
+	 * @param types you must pass at least 1 content type
+	 */
+	public void addContentFilter(String name, ContentType... types) {
+		contentFilters.add(new ContentFilter(name, types));
+	}
+
+	/**
+	 * set a title name
+	 *
+	 * @param title of dialog
+	 */
+	public void setTitle(String title) {
+		this.dialogTitle = title;
+	}
+
+	/**
+	 * set the label of the accept button
+	 *
+	 * @param label the label; empty for the portal's default
+	 */
+	public void setAcceptLabel(String label) {
+		this.acceptLabel = label;
+	}
+
+	/**
+	 * show the dialog for opening a file
+	 *
+	 * @param parent the parent window of the dialog
+	 *
+	 * @return true if the user clicked ok, false otherwise
+	 */
+	public boolean showOpenDialog(Window parent) {
+		return showDialog(parent, true);
+	}
+
+	/**
+	 * show the dialog for saving a file
+	 *
+	 * @param parent the parent window of the dialog
+	 *
+	 * @return true if the user clicked ok, false otherwise
+	 */
+	public boolean showSaveDialog(Window parent) {
+		return showDialog(parent, false);
+	}
+
+	/*
+	 * shows the dialog
+	 *
+	 * @param parent the parent window
+	 * @param open whether to show the open dialog, if false save dialog is shown
+	 *
+	 * @return true if the user clicked ok, false otherwise
+	 */
+	boolean showDialog(Window parent, final boolean open) {
+		if (!open && folderSelection) {
+			throw new IllegalStateException("the portal can't save folders");
+		}
+		selectedFiles = null;
+		rejectedFiles = new File[0];
+		final String parentWindow = parentWindow(parent);
+		final List<String> uris = runDialog(open, parentWindow, BackendSelector.onVisible());
+		final List<File> files = new ArrayList<>();
+		for (final String uri : uris) {
+			final File f = toFile(uri);
+			if (f != null) {
+				files.add(f);
+			}
+		}
+		if (files.isEmpty()) {
+			return false;
+		}
+		selectedFiles = files.toArray(new File[0]);
+		selectedFile = selectedFiles[0];
+		currentDirectory = folderSelection && selectedFile.getParentFile() == null ?
+			selectedFile : selectedFile.getParentFile();
+
+		if (open && !folderSelection && !contentFilters.isEmpty()) {
+			final List<File> accepted = new ArrayList<>();
+			final List<File> rejected = new ArrayList<>();
+			ContentFilter.partition(contentFilters, selectedFiles, accepted, rejected);
+			rejectedFiles = rejected.toArray(new File[0]);
+			if (accepted.isEmpty()) {
+				selectedFile = null;
+				selectedFiles = null;
+				return false;
+			}
+			selectedFiles = accepted.toArray(new File[0]);
+			selectedFile = selectedFiles[0];
+		}
+		return true;
+	}
+
+	/*
+	 * runs a dialog on the portal thread and waits for it
+	 *
+	 * An interrupt or the timeout cancels the dialog. The wait then lasts
+	 * until the portal thread let go of the dialog, which is quick, and the
+	 * interrupt status is restored.
+	 */
+	private List<String> runDialog(final boolean open, final String parentWindow, final Runnable visible) {
+		final Pending p = new Pending();
+		pending = p;
+		final Future<List<String>> result = PORTAL.submit(new Callable<List<String>>() {
+			@Override
+			public List<String> call() {
+				return run(open, parentWindow, visible, p);
+			}
+		});
+		final long started = System.nanoTime();
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return result.get(CHECK_MILLIS, TimeUnit.MILLISECONDS);
+				}
+				catch (InterruptedException e) {
+					interrupted = true;
+					p.cancel();
+				}
+				catch (TimeoutException e) {
+					if (timeoutMillis > 0
+							&& System.nanoTime() - started >= TimeUnit.MILLISECONDS.toNanos(timeoutMillis)) {
+						p.cancel();
+					}
+					p.check();
+				}
+			}
+		}
+		catch (ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new RuntimeException(cause);
+		}
+		finally {
+			pending = null;
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	// runs on the portal thread
+	private List<String> run(boolean open, String parentWindow, Runnable visible, Pending pending) {
+		if (context == null) {
+			// signals are delivered to this context, which only this
+			// thread iterates
+			context = GLib.g_main_context_new();
+			GLib.g_main_context_push_thread_default(context);
+		}
+		if (pending.cancelled) {
+			// while it waited for an earlier dialog
+			return Collections.emptyList();
+		}
+		final Pointer connection = connection(busAddress);
+		pending.connection = connection;
+		if (folderSelection && version(busAddress) < 3) {
+			throw new IllegalStateException("the portal is too old to select folders");
+		}
+		final String token = "jnafilechooser" + TOKENS.incrementAndGet();
+		// the portal sends the response to a request object whose path is
+		// known in advance, subscribe before calling so it can't be missed
+		final String sender = Gio.g_dbus_connection_get_unique_name(connection)
+			.substring(1).replace('.', '_');
+		final Response response = new Response();
+		int subscription = subscribe(connection, PORTAL_PATH + "/request/" + sender + "/" + token, response);
+		final int watch = Gio.g_dbus_connection_signal_subscribe(connection, "org.freedesktop.DBus",
+			"org.freedesktop.DBus", "NameOwnerChanged", "/org/freedesktop/DBus", PORTAL_NAME,
+			Gio.G_DBUS_SIGNAL_FLAGS_NONE, pending, null, null);
+		try {
+			final Pointer reply = call(connection, PORTAL_NAME, PORTAL_PATH, FILE_CHOOSER,
+				open ? "OpenFile" : "SaveFile", buildParameters(open, parentWindow, token));
+			final String handle = string(reply, 0);
+			GLib.g_variant_unref(reply);
+			if (!handle.equals(PORTAL_PATH + "/request/" + sender + "/" + token)) {
+				// portals before version 0.9 choose their own path
+				Gio.g_dbus_connection_signal_unsubscribe(connection, subscription);
+				subscription = subscribe(connection, handle, response);
+			}
+			// the portal shows its dialog once it accepted the request
+			visible.run();
+			while (response.parameters == null && !pending.cancelled && !pending.vanished
+					&& !Gio.g_dbus_connection_is_closed(connection)) {
+				GLib.g_main_context_iteration(context, true);
+			}
+			if (response.parameters != null) {
+				return response.read(this);
+			}
+			if (pending.vanished) {
+				forget(busAddress);
+				throw new RuntimeException("the portal left the bus");
+			}
+			if (Gio.g_dbus_connection_is_closed(connection)) {
+				throw new RuntimeException("the connection to the bus was closed");
+			}
+			// cancelled, take the dialog down
+			close(connection, handle);
+			return Collections.emptyList();
+		}
+		finally {
+			Gio.g_dbus_connection_signal_unsubscribe(connection, watch);
+			Gio.g_dbus_connection_signal_unsubscribe(connection, subscription);
+		}
+	}
+
+	/*
+	 * a dialog handed to the portal thread
+	 *
+	 * The portal thread blocks in its main context until the response
+	 * arrives. The caller wakes it up to give up the dialog. As a callback
+	 * of NameOwnerChanged this also ends the wait when the portal leaves
+	 * the bus.
+	 */
+	private static final class Pending implements Gio.GDBusSignalCallback
+	{
+		volatile boolean cancelled;
+		volatile boolean vanished;
+		volatile Pointer connection;
+
+		// any thread
+		void cancel() {
+			cancelled = true;
+			wakeup();
+		}
+
+		// any thread, wakes the portal thread if the connection is closed
+		void check() {
+			final Pointer c = connection;
+			if (c != null && Gio.g_dbus_connection_is_closed(c)) {
+				wakeup();
+			}
+		}
+
+		private static void wakeup() {
+			final Pointer c = context;
+			if (c != null) {
+				GLib.g_main_context_wakeup(c);
+			}
+		}
+
+		// (name, old owner, new owner), the new owner is empty if it left
+		@Override
+		public void callback(Pointer connection, String senderName, String objectPath,
+				String interfaceName, String signalName, Pointer parameters, Pointer userData) {
+			if (string(parameters, 2).isEmpty()) {
+				vanished = true;
+			}
+		}
+	}
+
+	/*
+	 * receives the Response signal of a portal request
+	 */
+	private static final class Response implements Gio.GDBusSignalCallback
+	{
+		int code;
+		Pointer parameters;
+
+		@Override
+		public void callback(Pointer connection, String senderName, String objectPath,
+				String interfaceName, String signalName, Pointer parameters, Pointer userData) {
+			final Pointer code = GLib.g_variant_get_child_value(parameters, new NativeLong(0));
+			this.code = GLib.g_variant_get_uint32(code);
+			GLib.g_variant_unref(code);
+			this.parameters = GLib.g_variant_get_child_value(parameters, new NativeLong(1));
+		}
+
+		List<String> read(PortalFileChooser fc) {
+			try {
+				// 0 is success, 1 cancelled by the user, 2 otherwise ended
+				if (code != 0) {
+					return Collections.emptyList();
+				}
+				final Pointer filter = GLib.g_variant_lookup_value(parameters, "current_filter", null);
+				if (filter != null) {
+					final String name = string(filter, 0);
+					GLib.g_variant_unref(filter);
+					for (int i = 0; i < fc.filters.size(); ++i) {
+						if (fc.filters.get(i)[0].equals(name)) {
+							fc.filterIndex = i + 1;
+							break;
+						}
+					}
+				}
+				final Pointer uris = GLib.g_variant_lookup_value(parameters, "uris", null);
+				if (uris == null) {
+					return Collections.emptyList();
+				}
+				final List<String> result = new ArrayList<>();
+				final int n = GLib.g_variant_n_children(uris).intValue();
+				for (int i = 0; i < n; ++i) {
+					result.add(string(uris, i));
+				}
+				GLib.g_variant_unref(uris);
+				return result;
+			}
+			finally {
+				GLib.g_variant_unref(parameters);
+			}
+		}
+	}
+
+	// asks the portal to close the dialog of a request
+	private static void close(Pointer connection, String handle) {
+		try {
+			GLib.g_variant_unref(call(connection, PORTAL_NAME, handle,
+				"org.freedesktop.portal.Request", "Close", "()"));
+		}
+		catch (RuntimeException e) {
+			// the request already ended
+		}
+	}
+
+	private static int subscribe(Pointer connection, String path, Response response) {
+		return Gio.g_dbus_connection_signal_subscribe(connection, null,
+			"org.freedesktop.portal.Request", "Response", path, null,
+			Gio.G_DBUS_SIGNAL_FLAGS_NONE, response, null, null);
+	}
+
+	/*
+	 * builds the parameters of OpenFile or SaveFile in the GVariant text
+	 * format: (parent_window, title, options)
+	 */
+	String buildParameters(boolean open, String parentWindow, String token) {
+		final StringBuilder sb = new StringBuilder("(");
+		quote(sb, parentWindow).append(", ");
+		quote(sb, dialogTitle).append(", {'handle_token': <");
+		quote(sb, token).append('>');
+		if (!acceptLabel.isEmpty()) {
+			quote(sb.append(", 'accept_label': <"), acceptLabel).append('>');
+		}
+		if (open) {
+			sb.append(", 'multiple': <").append(multipleSelection).append('>');
+			if (folderSelection) {
+				sb.append(", 'directory': <true>");
+			}
+		}
+		else if (!defaultFilename.isEmpty()) {
+			quote(sb.append(", 'current_name': <"), defaultFilename).append('>');
+		}
+		if (!folderSelection && !filters.isEmpty()) {
+			sb.append(", 'filters': <[");
+			for (int i = 0; i < filters.size(); ++i) {
+				if (i > 0) {
+					sb.append(", ");
+				}
+				appendFilter(sb, filters.get(i));
+			}
+			sb.append("]>");
+			if (filterIndex >= 1 && filterIndex <= filters.size()) {
+				sb.append(", 'current_filter': <");
+				appendFilter(sb, filters.get(filterIndex - 1));
+				sb.append('>');
+			}
+		}
+		if (currentDirectory != null) {
+			// a null terminated byte string, the path needn't be UTF-8
+			sb.append(", 'current_folder': <[byte ");
+			for (final byte b : currentDirectory.getAbsolutePath().getBytes()) {
+				sb.append("0x").append(Integer.toHexString(b & 0xFF)).append(", ");
+			}
+			sb.append("0x00]>");
+		}
+		return sb.append("})").toString();
+	}
+
+	// a filter is (name, [(0 for a glob pattern, pattern), ...])
+	private static void appendFilter(StringBuilder sb, String[] spec) {
+		quote(sb.append('('), spec[0]).append(", [");
+		for (int i = 1; i < spec.length; ++i) {
+			if (i > 1) {
+				sb.append(", ");
+			}
+			quote(sb.append("(uint32 0, "), spec[i].equals("*") ? "*"
+				: "*." + GtkFileChooser.caseInsensitive(spec[i])).append(')');
+		}
+		sb.append("])");
+	}
+
+	private static StringBuilder quote(StringBuilder sb, String s) {
+		sb.append('\'');
+		for (int i = 0; i < s.length(); ++i) {
+			final char c = s.charAt(i);
+			if (c == '\'' || c == '\\') {
+				sb.append('\\').append(c);
+			}
+			else if (c < 0x20) {
+				sb.append(String.format("\\u%04x", (int) c));
+			}
+			else {
+				sb.append(c);
+			}
+		}
+		return sb.append('\'');
+	}
+
+	private static String parentWindow(Window parent) {
+		if (parent == null || !parent.isDisplayable()) {
+			return "";
+		}
+		try {
+			return "x11:" + Long.toHexString(Native.getWindowID(parent));
+		}
+		catch (RuntimeException | LinkageError e) {
+			// not an X11 window, the dialog just won't be attached to it
+			return "";
+		}
+	}
+
+	static File toFile(String uri) {
+		try {
+			final URI u = new URI(uri);
+			return "file".equals(u.getScheme()) ? new File(u) : null;
+		}
+		catch (Exception e) {
+			// not a valid file URI
+			return null;
+		}
+	}
+
+	private static synchronized Pointer connection(String address) {
+		Pointer connection = connections.get(address);
+		if (connection != null && !Gio.g_dbus_connection_is_closed(connection)) {
+			return connection;
+		}
+		final PointerByReference error = new PointerByReference();
+		connection = address.isEmpty() ?
+			Gio.g_bus_get_sync(Gio.G_BUS_TYPE_SESSION, null, error) :
+			Gio.g_dbus_connection_new_for_address_sync(address,
+				Gio.G_DBUS_CONNECTION_FLAGS_AUTHENTICATION_CLIENT
+				| Gio.G_DBUS_CONNECTION_FLAGS_MESSAGE_BUS_CONNECTION, null, null, error);
+		check(connection, error, "can't connect to the bus");
+		connections.put(address, connection);
+		versions.remove(address);
+		return connection;
+	}
+
+	// 0 if there is no file chooser portal
+	private static int version(String address) {
+		synchronized (PortalFileChooser.class) {
+			final Pointer connection = connections.get(address);
+			final Integer cached = versions.get(address);
+			if (cached != null && connection != null && !Gio.g_dbus_connection_is_closed(connection)) {
+				return cached;
+			}
+		}
+		final Pointer connection = connection(address);
+		final Pointer owner = call(connection, "org.freedesktop.DBus", "/org/freedesktop/DBus",
+			"org.freedesktop.DBus", "NameHasOwner", "('" + PORTAL_NAME + "',)");
+		final Pointer hasOwner = GLib.g_variant_get_child_value(owner, new NativeLong(0));
+		final boolean present = GLib.g_variant_get_boolean(hasOwner);
+		GLib.g_variant_unref(hasOwner);
+		GLib.g_variant_unref(owner);
+		int version = 0;
+		if (present) {
+			final Pointer reply = call(connection, PORTAL_NAME, PORTAL_PATH,
+				"org.freedesktop.DBus.Properties", "Get", "('" + FILE_CHOOSER + "', 'version')");
+			final Pointer variant = GLib.g_variant_get_child_value(reply, new NativeLong(0));
+			final Pointer value = GLib.g_variant_get_variant(variant);
+			version = GLib.g_variant_get_uint32(value);
+			GLib.g_variant_unref(value);
+			GLib.g_variant_unref(variant);
+			GLib.g_variant_unref(reply);
+		}
+		synchronized (PortalFileChooser.class) {
+			versions.put(address, version);
+		}
+		return version;
+	}
+
+	private static synchronized void forget(String address) {
+		versions.remove(address);
+	}
+
+	private static Pointer call(Pointer connection, String name, String path,
+			String iface, String method, String parameters) {
+		final PointerByReference error = new PointerByReference();
+		final Pointer params = GLib.g_variant_parse(null, parameters, null, null, error);
+		check(params, error, "invalid parameters");
+		final Pointer reply = Gio.g_dbus_connection_call_sync(connection, name, path, iface,
+			method, params, null, Gio.G_DBUS_CALL_FLAGS_NONE, -1, null, error);
+		check(reply, error, method + " failed");
+		return reply;
+	}
+
+	private static void check(Pointer result, PointerByReference error, String message) {
+		if (result == null) {
+			final Pointer e = error.getValue();
+			final String detail = e != null ? GLib.g_error_message(e) : "";
+			if (e != null) {
+				GLib.g_error_free(e);
+			}
+			throw new RuntimeException(message + ": " + detail);
+		}
+	}
+
+	// reads the string child of a tuple or array
+	private static String string(Pointer container, int index) {
+		final Pointer child = GLib.g_variant_get_child_value(container, new NativeLong(index));
+		final String s = GLib.g_variant_get_string(child, null)
+			.getString(0, StandardCharsets.UTF_8.name());
+		GLib.g_variant_unref(child);
+		return s;
+	}
+
+	/**
+	 * returns the file selected by the user
+	 *
+	 * @return the selected file; null if the dialog was canceled or never shown
+	 */
+	public File getSelectedFile() {
+		return selectedFile;
+	}
+
+	public File[] getSelectedFiles() {
+		return selectedFiles;
+	}
+
+	/**
+	 * returns the files that were removed from the selection because they
+	 * didn't match any content filter
+	 *
+	 * @return the rejected files; empty if there are none
+	 */
+	public File[] getRejectedFiles() {
+		return rejectedFiles;
+	}
+
+	/**
+	 * returns the current directory
+	 *
+	 * @return the parent directory of the chosen file
+	 */
+	public File getCurrentDirectory() {
+		return currentDirectory;
+	}
+
+	public void setCurrentDirectory(File currentDirectory) {
+		this.currentDirectory = currentDirectory;
+	}
+
+	public void setDefaultFilename(String defaultFilename) {
+		this.defaultFilename = defaultFilename;
+	}
+
+	public int getFilterIndex() {
+		return filterIndex;
+	}
+
+	public void setFilterIndex(int filterIndex) {
+		this.filterIndex = filterIndex;
+	}
+
+	public boolean isMultipleSelection() {
+		return multipleSelection;
+	}
+
+	public void setMultiSelectionEnabled(boolean multipleSelection) {
+		this.multipleSelection = multipleSelection;
+	}
+
+	/**
+	 * sets how long a dialog may stay open before it is closed as if the
+	 * user cancelled it
+	 *
+	 * @param millis the time in milliseconds; 0 for no limit, the default
+	 */
+	public void setTimeout(long millis) {
+		this.timeoutMillis = millis;
+	}
+
+	/**
+	 * closes the dialog this chooser shows as if the user cancelled it
+	 *
+	 * This may be called from any thread. It does nothing if no dialog is
+	 * shown.
+	 */
+	public void cancel() {
+		final Pending p = pending;
+		if (p != null) {
+			p.cancel();
+		}
+	}
+
+	/**
+	 * sets whether the dialog selects folders instead of files
+	 *
+	 * This needs version 3 of the portal's file chooser interface.
+	 *
+	 * @param folderSelection true to select folders
+	 */
+	public void setFolderSelection(boolean folderSelection) {
+		this.folderSelection = folderSelection;
+	}
+}
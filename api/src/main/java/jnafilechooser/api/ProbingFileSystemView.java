@@ -0,0 +1,151 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.api;
+
+import java.io.File;
+import java.io.IOException;
+
+import javax.swing.Icon;
+import javax.swing.SwingUtilities;
+import javax.swing.UIManager;
+import javax.swing.filechooser.FileSystemView;
+
+/*
+ * file system view for the Swing fallback that doesn't let a dead mount
+ * freeze the dialog
+ *
+ * JFileChooser asks isTraversable() on the event dispatch thread before it
+ * enters a directory. Here that question goes through a timed FileProbe;
+ * a directory that doesn't answer in time is treated as not traversable,
+ * so the dialog stays where it is instead of hanging.
+ *
+ * The roots come from RootsProvider, which never waits for a drive.
+ *
+ * Listings prefetched by DirectoryPrefetcher are handed to JFileChooser
+ * from getFiles(). If archive browsing is enabled ZIP and JAR files are
+ * presented as directories whose children are ArchiveEntryFiles.
+ */
+class ProbingFileSystemView extends FileSystemView
+{
+	private final FileSystemView delegate;
+	private final ArchiveMounts archives;
+
+	ProbingFileSystemView(FileSystemView delegate) {
+		this(delegate, null);
+	}
+
+	/*
+	 * @param archives the mounts to browse archives with; null to show
+	 *                 archives as plain files
+	 */
+	ProbingFileSystemView(FileSystemView delegate, ArchiveMounts archives) {
+		this.delegate = delegate;
+		this.archives = archives;
+	}
+
+	private boolean isBrowsable(File f) {
+		return archives != null && (f instanceof ArchiveEntryFile || ArchiveMounts.isArchive(f));
+	}
+
+	@Override
+	public Boolean isTraversable(File f) {
+		if (f == null) {
+			return Boolean.FALSE;
+		}
+		if (f instanceof ArchiveEntryFile) {
+			return f.isDirectory();
+		}
+		if (archives != null && ArchiveMounts.isArchive(f)) {
+			return Boolean.TRUE;
+		}
+		// JFileChooser's loader thread asks this for every file it lists;
+		// blocking there doesn't freeze the UI, so only guard the EDT
+		if (!SwingUtilities.isEventDispatchThread()) {
+			return delegate.isTraversable(f);
+		}
+		final Boolean dir = FileProbe.isDirectory(f, FileProbe.TIMEOUT_MILLIS);
+		if (dir == null) {
+			return Boolean.FALSE;
+		}
+		return dir ? delegate.isTraversable(f) : Boolean.FALSE;
+	}
+
+	@Override
+	public File[] getFiles(File dir, boolean useFileHiding) {
+		if (isBrowsable(dir)) {
+			return archives.list(dir);
+		}
+		if (useFileHiding) {
+			final File[] prefetched = DirectoryPrefetcher.take(dir);
+			if (prefetched != null) {
+				return prefetched;
+			}
+		}
+		return delegate.getFiles(dir, useFileHiding);
+	}
+
+	@Override
+	public File getParentDirectory(File dir) {
+		if (dir instanceof ArchiveEntryFile) {
+			return dir.getParentFile();
+		}
+		return delegate.getParentDirectory(dir);
+	}
+
+	@Override
+	public File getChild(File parent, String fileName) {
+		if (isBrowsable(parent)) {
+			for (final File child : archives.list(parent)) {
+				if (child.getName().equals(fileName)) {
+					return child;
+				}
+			}
+		}
+		return delegate.getChild(parent, fileName);
+	}
+
+	@Override
+	public String getSystemDisplayName(File f) {
+		if (f instanceof ArchiveEntryFile) {
+			return f.getName();
+		}
+		return delegate.getSystemDisplayName(f);
+	}
+
+	@Override
+	public Icon getSystemIcon(File f) {
+		if (f instanceof ArchiveEntryFile) {
+			return UIManager.getIcon(f.isDirectory() ?
+				"FileView.directoryIcon" : "FileView.fileIcon");
+		}
+		return delegate.getSystemIcon(f);
+	}
+
+	@Override
+	public File createNewFolder(File containingDir) throws IOException {
+		return delegate.createNewFolder(containingDir);
+	}
+
+	@Override
+	public File[] getRoots() {
+		// drives and mounts are added as soon as they answer, see RootsProvider
+		return RootsProvider.getDefault().getRoots(delegate.getRoots());
+	}
+
+	@Override
+	public File getHomeDirectory() {
+		return delegate.getHomeDirectory();
+	}
+
+	@Override
+	public File getDefaultDirectory() {
+		return delegate.getDefaultDirectory();
+	}
+}
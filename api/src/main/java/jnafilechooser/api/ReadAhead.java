@@ -0,0 +1,168 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.api;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background read-ahead of the files a user just selected.
+ *
+ * The first bytes of each file are read sequentially and thrown away, so
+ * that they are in the operating system's page cache by the time the
+ * application opens the file. This mostly helps with cold spinning disks
+ * and network shares. Reads use a plain file channel instead of a memory
+ * mapping; a mapping would keep the file locked on Windows until it is
+ * garbage collected.
+ *
+ * At most two files are read at a time, more would only make a disk seek
+ * back and forth. Read-ahead can be cancelled at any time, e.g. when the
+ * application is about to read the files itself.
+ *
+ * Example:
+ * JnaFileChooser fc = new JnaFileChooser();
+ * fc.setReadAheadBytes(8 * 1024 * 1024);
+ * if (fc.showOpenDialog(parent)) {
+ *     // the first 8 MB of every selected file are being read now
+ * }
+ */
+public class ReadAhead
+{
+	private static final int CHUNK_SIZE = 1024 * 1024;
+	// one per pool thread, the threads read one file at a time
+	private static final ThreadLocal<ByteBuffer> BUFFER = new ThreadLocal<ByteBuffer>() {
+		@Override
+		protected ByteBuffer initialValue() {
+			return ByteBuffer.allocateDirect(CHUNK_SIZE);
+		}
+	};
+	private static final ExecutorService POOL;
+	static {
+		final ThreadPoolExecutor pool = new ThreadPoolExecutor(2, 2,
+			10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+			new DaemonThreadFactory("jnafilechooser-readahead"));
+		pool.allowCoreThreadTimeOut(true);
+		POOL = pool;
+	}
+
+	private final CountDownLatch remaining;
+	private volatile boolean cancelled;
+
+	private ReadAhead(int count) {
+		remaining = new CountDownLatch(count);
+	}
+
+	/**
+	 * starts reading the beginning of the files in the background
+	 *
+	 * Directories and files that can't be opened are skipped.
+	 *
+	 * @param files the files to read
+	 * @param bytesPerFile how much of each file to read
+	 *
+	 * @return a handle to wait for or cancel the read-ahead
+	 */
+	public static ReadAhead start(File[] files, final long bytesPerFile) {
+		final List<File> targets = new ArrayList<>();
+		if (files != null) {
+			for (final File f : files) {
+				// entries of archives are inflated on every read, reading
+				// them ahead wouldn't help
+				if (f != null && !(f instanceof ArchiveEntryFile)) {
+					targets.add(f);
+				}
+			}
+		}
+		final ReadAhead ra = new ReadAhead(targets.size());
+		for (final File f : targets) {
+			// every task counts down exactly once; after cancel() the
+			// queued ones return as soon as they start
+			POOL.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						ra.read(f, bytesPerFile);
+					}
+					finally {
+						ra.remaining.countDown();
+					}
+				}
+			});
+		}
+		return ra;
+	}
+
+	private void read(File f, long limit) {
+		if (cancelled || limit <= 0 || !f.isFile()) {
+			return;
+		}
+		try (FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+			final ByteBuffer buf = BUFFER.get();
+			long done = 0;
+			while (done < limit && !cancelled) {
+				buf.clear();
+				if (limit - done < buf.capacity()) {
+					buf.limit((int) (limit - done));
+				}
+				final int n = ch.read(buf);
+				if (n < 0) {
+					break;
+				}
+				done += n;
+			}
+		}
+		catch (ClosedByInterruptException e) {
+			// cancelled
+		}
+		catch (IOException e) {
+			// it was only a hint anyway
+		}
+	}
+
+	/**
+	 * stops the read-ahead; files that are being read are abandoned after
+	 * the current chunk
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * @return true if all files were read or the read-ahead was cancelled
+	 */
+	public boolean isDone() {
+		return cancelled || remaining.getCount() == 0;
+	}
+
+	/**
+	 * waits until all files are read
+	 *
+	 * @param timeout the maximum time to wait
+	 * @param unit the unit of the timeout
+	 *
+	 * @return true if the read-ahead completed in time
+	 *
+	 * @throws InterruptedException if the calling thread is interrupted
+	 */
+	public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+		return remaining.await(timeout, unit);
+	}
+}
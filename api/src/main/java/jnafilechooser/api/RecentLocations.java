@@ -0,0 +1,433 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.api;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * A persistent store of the last used locations of file dialogs.
+ *
+ * For every dialog context, an ID chosen by the application such as
+ * "export-report", the store remembers the last directory, the last
+ * selected filter and the most recently chosen files. Unlike the MRU
+ * heuristics of the Windows dialogs (see {@link WindowsFileChooser}) this
+ * works the same on every platform and for every backend.
+ *
+ * Example:
+ * JnaFileChooser fc = new JnaFileChooser();
+ * fc.setContext("import-images");
+ * fc.showOpenDialog(parent); // opens where the last import left off
+ *
+ * The store is a small append-only file. Each update appends one record
+ * holding the complete state of one context, the last record of a context
+ * wins. When the file has grown to several times the size of its live
+ * records it is compacted on the next write. The file is read once, by
+ * mapping it into memory, when the store is first used.
+ *
+ * Several processes may share one store. Every read and write holds a
+ * lock on a separate lock file, and the data file is only ever replaced
+ * atomically, so readers never see a half-written file. File locks belong
+ * to the whole process, so stores of the same file within one process
+ * first agree on a lock object of their own. Records carry a checksum so
+ * a torn append at the end is ignored, and cut off before the next append.
+ */
+public class RecentLocations
+{
+	/** the maximum number of recent files remembered per context */
+	public static final int MAX_RECENT_FILES = 10;
+
+	private static final int MAGIC = 0x4A464352; // "JFCR"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 8;
+	private static final int COMPACT_MIN_SIZE = 64 * 1024;
+	private static final int COMPACT_RATIO = 4;
+
+	private static RecentLocations defaultStore;
+	// one lock object per lock file in this process
+	private static final ConcurrentHashMap<File, Object> PROCESS_LOCKS = new ConcurrentHashMap<>();
+
+	private final File file;
+	private final File lockFile;
+	private final Object processLock;
+	private final HashMap<String, Entry> entries = new HashMap<>();
+	private final HashMap<String, Integer> recordSizes = new HashMap<>();
+	private final HashSet<String> touched = new HashSet<>();
+	private boolean loaded;
+	private long liveBytes;
+
+	/**
+	 * the remembered state of one dialog context
+	 */
+	public static final class Entry
+	{
+		private final File directory;
+		private final int filterIndex;
+		private final List<File> recentFiles;
+
+		Entry(File directory, int filterIndex, List<File> recentFiles) {
+			this.directory = directory;
+			this.filterIndex = filterIndex;
+			this.recentFiles = Collections.unmodifiableList(recentFiles);
+		}
+
+		/**
+		 * @return the last directory; may be null
+		 */
+		public File getDirectory() {
+			return directory;
+		}
+
+		/**
+		 * @return the 1-based index of the last selected filter, 0 if unknown
+		 */
+		public int getFilterIndex() {
+			return filterIndex;
+		}
+
+		/**
+		 * @return the most recently chosen files, newest first
+		 */
+		public List<File> getRecentFiles() {
+			return recentFiles;
+		}
+	}
+
+	/**
+	 * creates a store backed by the given file
+	 *
+	 * The file and its parent directories are created on the first write.
+	 *
+	 * @param file the data file
+	 */
+	public RecentLocations(File file) {
+		this.file = file;
+		this.lockFile = new File(file.getPath() + ".lock");
+		File key;
+		try {
+			key = lockFile.getCanonicalFile();
+		}
+		catch (IOException e) {
+			key = lockFile.getAbsoluteFile();
+		}
+		final Object created = new Object();
+		final Object existing = PROCESS_LOCKS.putIfAbsent(key, created);
+		this.processLock = existing != null ? existing : created;
+	}
+
+	/**
+	 * returns the store shared by all choosers that have no store set
+	 *
+	 * It lives in ".jnafilechooser/recent.dat" in the user's home directory.
+	 *
+	 * @return the default store
+	 */
+	public static synchronized RecentLocations getDefault() {
+		if (defaultStore == null) {
+			defaultStore = new RecentLocations(new File(
+				new File(System.getProperty("user.home"), ".jnafilechooser"), "recent.dat"));
+		}
+		return defaultStore;
+	}
+
+	/**
+	 * returns the remembered state of a context
+	 *
+	 * @param context the context ID
+	 *
+	 * @return the entry or null if nothing is known about the context
+	 */
+	public synchronized Entry get(String context) {
+		ensureLoaded();
+		return entries.get(context);
+	}
+
+	/**
+	 * remembers the outcome of a dialog
+	 *
+	 * @param context the context ID
+	 * @param directory the directory the dialog ended in; may be null
+	 * @param filterIndex the 1-based index of the selected filter, 0 if unknown
+	 * @param files the chosen files; may be null
+	 */
+	public synchronized void record(String context, File directory, int filterIndex, File[] files) {
+		ensureLoaded();
+		final LinkedHashSet<File> recent = new LinkedHashSet<>();
+		if (files != null) {
+			for (final File f : files) {
+				if (f != null && recent.size() < MAX_RECENT_FILES) {
+					recent.add(f.getAbsoluteFile());
+				}
+			}
+		}
+		final Entry previous = entries.get(context);
+		if (previous != null) {
+			for (final File f : previous.recentFiles) {
+				if (recent.size() >= MAX_RECENT_FILES) {
+					break;
+				}
+				recent.add(f);
+			}
+		}
+		final Entry entry = new Entry(directory != null ? directory.getAbsoluteFile() : null,
+			filterIndex, new ArrayList<>(recent));
+		final byte[] record = encode(context, entry);
+		put(context, entry, record.length);
+		touched.add(context);
+		try {
+			write(record);
+		}
+		catch (IOException e) {
+			// remembering locations is a convenience, never fail a dialog
+			// because of it; the entry is still kept for this session
+		}
+	}
+
+	private void put(String context, Entry entry, int size) {
+		entries.put(context, entry);
+		final Integer old = recordSizes.put(context, size);
+		liveBytes += size - (old != null ? old : 0);
+	}
+
+	private void ensureLoaded() {
+		if (loaded) {
+			return;
+		}
+		loaded = true;
+		if (!file.isFile()) {
+			return;
+		}
+		synchronized (processLock) {
+			try (FileChannel lock = FileChannel.open(lockFile.toPath(),
+					StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				// released when the channel is closed
+				lock.lock(0, Long.MAX_VALUE, true);
+				parse(readAll(), true);
+			}
+			catch (IOException e) {
+				// an unreadable store is treated as empty
+			}
+		}
+	}
+
+	/*
+	 * reads the data file; the caller holds the lock
+	 */
+	private ByteBuffer readAll() throws IOException {
+		try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			final long size = ch.size();
+			// on Windows a mapped file can't be replaced until the mapping
+			// is garbage collected, which would block compaction
+			if (!Os.isWindows()) {
+				return ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			}
+			return read(ch);
+		}
+	}
+
+	private static ByteBuffer read(FileChannel ch) throws IOException {
+		final ByteBuffer buf = ByteBuffer.allocate((int) ch.size());
+		ch.position(0);
+		while (buf.hasRemaining() && ch.read(buf) >= 0) {
+			// keep reading
+		}
+		buf.flip();
+		return buf;
+	}
+
+	/*
+	 * reads the records of the data file, or only checks them if apply is
+	 * false
+	 *
+	 * @return the offset after the last intact record, 0 if the file
+	 *         doesn't start with a valid header
+	 */
+	private int parse(ByteBuffer buf, boolean apply) {
+		if (buf.remaining() < HEADER_SIZE || buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+			return 0;
+		}
+		final CRC32 crc = new CRC32();
+		int end = buf.position();
+		while (buf.remaining() >= 8) {
+			final int start = buf.position();
+			final int length = buf.getInt();
+			final int checksum = buf.getInt();
+			if (length < 0 || length > buf.remaining()) {
+				break;
+			}
+			final byte[] payload = new byte[length];
+			buf.get(payload);
+			crc.reset();
+			crc.update(payload, 0, length);
+			if ((int) crc.getValue() != checksum) {
+				break;
+			}
+			try {
+				final ByteBuffer p = ByteBuffer.wrap(payload);
+				final String context = getString(p);
+				final String dir = getString(p);
+				final int filterIndex = p.getInt();
+				// written with writeShort, so it is unsigned
+				final int count = p.getShort() & 0xFFFF;
+				final List<File> files = new ArrayList<>(Math.min(count, MAX_RECENT_FILES));
+				for (int i = 0; i < count; ++i) {
+					files.add(new File(getString(p)));
+				}
+				if (apply) {
+					put(context, new Entry(dir.isEmpty() ? null : new File(dir), filterIndex, files),
+						buf.position() - start);
+				}
+			}
+			catch (BufferUnderflowException | NegativeArraySizeException e) {
+				// a record written by an incompatible version
+				break;
+			}
+			end = buf.position();
+		}
+		return end;
+	}
+
+	private void write(byte[] record) throws IOException {
+		final File dir = file.getAbsoluteFile().getParentFile();
+		if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("can't create " + dir);
+		}
+		synchronized (processLock) {
+			try (FileChannel lock = FileChannel.open(lockFile.toPath(),
+					StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				// released when the channel is closed
+				lock.lock();
+				final long size = file.length();
+				if (size >= COMPACT_MIN_SIZE && size > COMPACT_RATIO * liveBytes) {
+					compact();
+					return;
+				}
+				try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+						StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+					// a torn append would hide every record after it, so
+					// cut the file back to its last intact record first
+					final long end = ch.size() > 0 ? parse(read(ch), false) : 0;
+					if (end < ch.size()) {
+						ch.truncate(end);
+					}
+					ch.position(end);
+					if (end == 0) {
+						writeFully(ch, header());
+					}
+					writeFully(ch, ByteBuffer.wrap(record));
+				}
+			}
+		}
+	}
+
+	/*
+	 * rewrites the file with only the latest record of every context; the
+	 * caller holds the exclusive lock
+	 */
+	private void compact() throws IOException {
+		// merge what other processes wrote since we loaded; our own state
+		// wins for the contexts we touched in this session
+		final HashMap<String, Entry> ours = new HashMap<>();
+		for (final String context : touched) {
+			ours.put(context, entries.get(context));
+		}
+		entries.clear();
+		recordSizes.clear();
+		liveBytes = 0;
+		if (file.isFile()) {
+			parse(readAll(), true);
+		}
+		for (final Map.Entry<String, Entry> e : ours.entrySet()) {
+			put(e.getKey(), e.getValue(), 0);
+		}
+
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(header().array());
+		recordSizes.clear();
+		liveBytes = 0;
+		for (final Map.Entry<String, Entry> e : entries.entrySet()) {
+			final byte[] record = encode(e.getKey(), e.getValue());
+			out.write(record);
+			recordSizes.put(e.getKey(), record.length);
+			liveBytes += record.length;
+		}
+		final File tmp = new File(file.getPath() + ".tmp");
+		Files.write(tmp.toPath(), out.toByteArray());
+		Files.move(tmp.toPath(), file.toPath(),
+			StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static ByteBuffer header() {
+		final ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE);
+		buf.putInt(MAGIC).putInt(VERSION).flip();
+		return buf;
+	}
+
+	private static byte[] encode(String context, Entry entry) {
+		try {
+			final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+			final DataOutputStream out = new DataOutputStream(payload);
+			putString(out, context);
+			putString(out, entry.directory != null ? entry.directory.getPath() : "");
+			out.writeInt(entry.filterIndex);
+			out.writeShort(entry.recentFiles.size());
+			for (final File f : entry.recentFiles) {
+				putString(out, f.getPath());
+			}
+			out.flush();
+			final byte[] bytes = payload.toByteArray();
+			final CRC32 crc = new CRC32();
+			crc.update(bytes, 0, bytes.length);
+			final ByteBuffer record = ByteBuffer.allocate(8 + bytes.length);
+			record.putInt(bytes.length).putInt((int) crc.getValue()).put(bytes);
+			return record.array();
+		}
+		catch (IOException e) {
+			// can't happen with a ByteArrayOutputStream
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void putString(DataOutputStream out, String s) throws IOException {
+		final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String getString(ByteBuffer buf) {
+		final byte[] bytes = new byte[buf.getInt()];
+		buf.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void writeFully(FileChannel ch, ByteBuffer buf) throws IOException {
+		while (buf.hasRemaining()) {
+			ch.write(buf);
+		}
+	}
+}
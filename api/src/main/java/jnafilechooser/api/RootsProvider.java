@@ -0,0 +1,251 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.api;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+ * cached, asynchronous enumeration of drives and mounts for the Swing
+ * fallback
+ *
+ * JFileChooser builds its "Look in" list from FileSystemView.getRoots()
+ * on the event dispatch thread, and a disconnected network drive can stall
+ * that for a long time. Here every drive (Windows), volume (macOS) or
+ * removable and network mount (Linux) is probed in parallel in the
+ * background through FileProbe. getRoots() never waits: it returns the
+ * roots of the platform view plus the drives that answered so far, and
+ * listeners hear about drives that answer later. The enumeration is
+ * refreshed in the background when it is older than REFRESH_MILLIS.
+ */
+final class RootsProvider
+{
+	private static final long REFRESH_MILLIS = 30000;
+	/** how long a drive may take to answer before it is left out until the next refresh */
+	private static final long SLOW_TIMEOUT_MILLIS = 30000;
+
+	private static final Set<String> NETWORK_FS = new HashSet<>(Arrays.asList(
+		"nfs", "nfs4", "cifs", "smb3", "smbfs", "9p", "davfs", "fuse.sshfs", "fuse.rclone"));
+	private static final String[] REMOVABLE_PREFIXES = { "/mnt/", "/media/", "/run/media/" };
+
+	private static final RootsProvider DEFAULT = new RootsProvider();
+
+	private static final int MAX_PROBES = 4;
+
+	private final ExecutorService pool = Executors.newCachedThreadPool(
+		new DaemonThreadFactory("jnafilechooser-roots"));
+	// a dead drive keeps its probe thread, so drives get threads of their
+	// own and can't use up the ones the dialog probes its folders with
+	private final ExecutorService probes = FileProbe.newPool("jnafilechooser-roots-probe", MAX_PROBES);
+	private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+	// guarded by this; candidate order is kept so drives stay sorted
+	private List<File> candidates = Collections.emptyList();
+	private final Map<File, Boolean> reachable = new HashMap<>();
+	private long refreshedAt;
+	private boolean refreshing;
+
+	static RootsProvider getDefault() {
+		return DEFAULT;
+	}
+
+	/*
+	 * returns the base roots followed by the drives known to be reachable;
+	 * never blocks on a drive
+	 */
+	File[] getRoots(File[] base) {
+		final Set<File> roots = new LinkedHashSet<>(Arrays.asList(base));
+		synchronized (this) {
+			for (final File f : candidates) {
+				if (Boolean.TRUE.equals(reachable.get(f))) {
+					roots.add(f);
+				}
+			}
+		}
+		refreshIfStale();
+		return roots.toArray(new File[0]);
+	}
+
+	/*
+	 * starts probing the drives unless that happened recently, e.g. as soon
+	 * as it is clear that a dialog is going to be shown
+	 */
+	void refreshIfStale() {
+		synchronized (this) {
+			if (refreshing || refreshedAt != 0
+					&& System.currentTimeMillis() - refreshedAt < REFRESH_MILLIS) {
+				return;
+			}
+			refreshing = true;
+		}
+		pool.execute(new Runnable() {
+			@Override
+			public void run() {
+				refresh();
+			}
+		});
+	}
+
+	private void refresh() {
+		final List<File> found = enumerate();
+		synchronized (this) {
+			candidates = found;
+			reachable.keySet().retainAll(found);
+			refreshedAt = System.currentTimeMillis();
+			refreshing = false;
+		}
+		for (final File f : found) {
+			pool.execute(new Runnable() {
+				@Override
+				public void run() {
+					// joins a probe that is still stuck from the last refresh
+					update(f, FileProbe.isDirectory(f, SLOW_TIMEOUT_MILLIS, probes));
+				}
+			});
+		}
+		fireChanged();
+	}
+
+	private void update(File root, Boolean isDirectory) {
+		final boolean ok = Boolean.TRUE.equals(isDirectory);
+		synchronized (this) {
+			if (!candidates.contains(root)) {
+				return;
+			}
+			final Boolean old = reachable.put(root, ok);
+			if (old != null && old == ok) {
+				return;
+			}
+			if (old == null && !ok) {
+				// was never shown
+				return;
+			}
+		}
+		fireChanged();
+	}
+
+	/*
+	 * registers a listener that runs on a background thread whenever the
+	 * set of reachable drives changed
+	 */
+	void addListener(Runnable listener) {
+		listeners.add(listener);
+	}
+
+	void removeListener(Runnable listener) {
+		listeners.remove(listener);
+	}
+
+	private void fireChanged() {
+		for (final Runnable l : listeners) {
+			l.run();
+		}
+	}
+
+	// lists the candidates without touching them
+	private static List<File> enumerate() {
+		if (Os.isWindows()) {
+			// GetLogicalDrives, doesn't access the drives
+			return Arrays.asList(File.listRoots());
+		}
+		if (Os.isMac()) {
+			final File[] volumes = new File("/Volumes").listFiles();
+			if (volumes == null) {
+				return Collections.emptyList();
+			}
+			Arrays.sort(volumes);
+			return Arrays.asList(volumes);
+		}
+		return mounts();
+	}
+
+	/*
+	 * reads the removable and network mounts from /proc/self/mounts; the
+	 * file is generated by the kernel and never touches the mounts
+	 */
+	private static List<File> mounts() {
+		final List<File> mounts = new ArrayList<>();
+		try (BufferedReader in = new BufferedReader(new InputStreamReader(
+				new FileInputStream("/proc/self/mounts"), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				final String[] fields = line.split(" ");
+				if (fields.length < 3) {
+					continue;
+				}
+				final String dir = unescape(fields[1]);
+				if (NETWORK_FS.contains(fields[2]) || isRemovable(dir)) {
+					final File f = new File(dir);
+					if (!mounts.contains(f)) {
+						mounts.add(f);
+					}
+				}
+			}
+		}
+		catch (IOException e) {
+			// not Linux after all
+		}
+		Collections.sort(mounts);
+		return mounts;
+	}
+
+	private static boolean isRemovable(String dir) {
+		for (final String prefix : REMOVABLE_PREFIXES) {
+			if (dir.startsWith(prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// decodes the octal escapes of /proc/self/mounts, e.g. \040 for a space
+	static String unescape(String s) {
+		if (s.indexOf('\\') < 0) {
+			return s;
+		}
+		final StringBuilder sb = new StringBuilder(s.length());
+		for (int i = 0; i < s.length(); ++i) {
+			final char c = s.charAt(i);
+			if (c == '\\' && isOctal(s, i + 1)) {
+				sb.append((char) Integer.parseInt(s.substring(i + 1, i + 4), 8));
+				i += 3;
+			}
+			else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	private static boolean isOctal(String s, int start) {
+		for (int i = start; i < start + 3; ++i) {
+			if (i >= s.length() || s.charAt(i) < '0' || s.charAt(i) > '7') {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,252 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.api;
+
+import java.awt.EventQueue;
+import java.awt.SecondaryLoop;
+import java.awt.Toolkit;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/*
+ * concurrent checks of a save target
+ *
+ * The checks that only depend on the directory (does it exist, is it
+ * writable, how much space is left) can be started as soon as the user
+ * enters a directory, so in the Swing dialog they are usually done by the
+ * time the user clicks save. The checks of the file itself start when the
+ * target is known. Every check has its own deadline, counted from when it
+ * was started; directory checks that finished longer than a timeout ago
+ * are started over, since the directory may have changed meanwhile. Like
+ * FileProbe the pool is bounded because a check on a dead mount never
+ * returns; when it is exhausted checks time out at once.
+ */
+final class SaveValidator
+{
+	/** how long a single check may take */
+	static final long TIMEOUT_MILLIS = 2000;
+
+	private static final ExecutorService POOL = new ThreadPoolExecutor(0, 16,
+		30, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+		new DaemonThreadFactory("jnafilechooser-validate"), new ThreadPoolExecutor.AbortPolicy());
+
+	private final long requiredBytes;
+
+	// guarded by this
+	private File directory;
+	private long directoryStarted;
+	private Future<Boolean> parentExists;
+	private Future<Boolean> parentWritable;
+	private Future<Long> usableSpace;
+
+	SaveValidator(long requiredBytes) {
+		this.requiredBytes = requiredBytes;
+	}
+
+	/*
+	 * starts the checks of a directory unless they already run for it
+	 */
+	synchronized void prepare(File dir) {
+		if (dir == null || dir.equals(directory)) {
+			return;
+		}
+		final File d = dir;
+		directory = d;
+		directoryStarted = System.nanoTime();
+		parentExists = submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return d.isDirectory();
+			}
+		});
+		parentWritable = submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return Files.isWritable(d.toPath());
+			}
+		});
+		usableSpace = submit(new Callable<Long>() {
+			@Override
+			public Long call() {
+				return d.getUsableSpace();
+			}
+		});
+	}
+
+	/*
+	 * checks a target, reusing the directory checks if they were prepared
+	 * for its directory; blocks for one timeout at most
+	 */
+	SaveVerdict validate(final File target) {
+		final long start = System.nanoTime();
+		final File parent = target.getAbsoluteFile().getParentFile();
+		final Future<Boolean> exists = submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return target.exists();
+			}
+		});
+		final Future<Boolean> writable = submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return Files.isWritable(target.toPath());
+			}
+		});
+		final Future<Boolean> dirExists;
+		final Future<Boolean> dirWritable;
+		final Future<Long> space;
+		final long dirStarted;
+		synchronized (this) {
+			if (parent != null && parent.equals(directory) && isStale()) {
+				directory = null;
+			}
+			prepare(parent);
+			dirExists = parentExists;
+			dirWritable = parentWritable;
+			space = usableSpace;
+			dirStarted = directoryStarted;
+		}
+
+		final Map<SaveVerdict.Check, SaveVerdict.Status> statuses =
+			new EnumMap<>(SaveVerdict.Check.class);
+		final Boolean parentOk = await(dirExists, dirStarted, Boolean.FALSE);
+		statuses.put(SaveVerdict.Check.ParentExists, status(parentOk));
+		final Boolean existing = await(exists, start, Boolean.FALSE);
+		statuses.put(SaveVerdict.Check.NotExisting,
+			status(existing == null ? null : !existing));
+		// an existing file must be writable itself, a new one needs a
+		// writable directory
+		Boolean canWrite = null;
+		if (existing != null) {
+			canWrite = existing ?
+				await(writable, start, Boolean.FALSE) :
+				await(dirWritable, dirStarted, Boolean.FALSE);
+		}
+		statuses.put(SaveVerdict.Check.Writable, status(canWrite));
+		final Long usable = await(space, dirStarted, Long.valueOf(-1));
+		statuses.put(SaveVerdict.Check.FreeSpace,
+			status(usable == null ? null : usable >= 0 && usable >= requiredBytes));
+		if (writable != null && !Boolean.TRUE.equals(existing)) {
+			writable.cancel(false);
+		}
+		return new SaveVerdict(target, statuses, usable != null ? usable : -1L,
+			requiredBytes, System.nanoTime() - start);
+	}
+
+	/*
+	 * like validate, but on the event dispatch thread events are pumped
+	 * while the checks run, so the dialog that approves stays responsive
+	 */
+	SaveVerdict validateWhilePumping(final File target) {
+		if (!EventQueue.isDispatchThread()) {
+			return validate(target);
+		}
+		final SecondaryLoop loop = Toolkit.getDefaultToolkit()
+			.getSystemEventQueue().createSecondaryLoop();
+		final FutureTask<SaveVerdict> task = new FutureTask<SaveVerdict>(new Callable<SaveVerdict>() {
+			@Override
+			public SaveVerdict call() {
+				return validate(target);
+			}
+		}) {
+			@Override
+			protected void done() {
+				// posted so that it can't run before enter()
+				EventQueue.invokeLater(new Runnable() {
+					@Override
+					public void run() {
+						loop.exit();
+					}
+				});
+			}
+		};
+		try {
+			POOL.execute(task);
+		}
+		catch (RejectedExecutionException e) {
+			// every check would time out at once anyway
+			return validate(target);
+		}
+		loop.enter();
+		try {
+			return task.get();
+		}
+		catch (InterruptedException e) {
+			// can't happen, the task is done
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		}
+		catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	// guarded by this; checks that still run are kept, they are stuck
+	private boolean isStale() {
+		return System.nanoTime() - directoryStarted > TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MILLIS)
+			&& isFinished(parentExists) && isFinished(parentWritable) && isFinished(usableSpace);
+	}
+
+	private static boolean isFinished(Future<?> check) {
+		// null if it was rejected
+		return check == null || check.isDone();
+	}
+
+	private static <T> Future<T> submit(Callable<T> check) {
+		try {
+			return POOL.submit(check);
+		}
+		catch (RejectedExecutionException e) {
+			// every thread is stuck on some dead mount
+			return null;
+		}
+	}
+
+	private static <T> T await(Future<T> check, long started, T failed) {
+		if (check == null) {
+			return null;
+		}
+		final long left = TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MILLIS)
+			- (System.nanoTime() - started);
+		try {
+			return check.get(Math.max(0, left), TimeUnit.NANOSECONDS);
+		}
+		catch (TimeoutException e) {
+			return null;
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		catch (ExecutionException e) {
+			// e.g. a SecurityException
+			return failed;
+		}
+	}
+
+	private static SaveVerdict.Status status(Boolean passed) {
+		if (passed == null) {
+			return SaveVerdict.Status.TimedOut;
+		}
+		return passed ? SaveVerdict.Status.Passed : SaveVerdict.Status.Failed;
+	}
+}
@@ -0,0 +1,146 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.api;
+
+import java.io.File;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * The outcome of checking the target of a save dialog.
+ *
+ * The checks run concurrently, each with its own timeout, so a slow
+ * network share delays the verdict by one timeout at most. A check that
+ * didn't finish in time is reported as {@link Status#TimedOut} and it is up
+ * to the application whether to try anyway.
+ *
+ * Example:
+ * JnaFileChooser fc = new JnaFileChooser();
+ * fc.setSaveValidationEnabled(true);
+ * fc.setRequiredFreeBytes(document.estimateSize());
+ * if (fc.showSaveDialog(parent)) {
+ *     SaveVerdict v = fc.getSaveVerdict();
+ *     if (v.isTargetExisting()) {
+ *         // ask whether to overwrite
+ *     }
+ * }
+ */
+public final class SaveVerdict
+{
+	/**
+	 * the checks made for a save target
+	 */
+	public enum Check
+	{
+		/** the directory of the target exists */
+		ParentExists,
+		/** the target doesn't exist yet */
+		NotExisting,
+		/** the target, or its directory if it doesn't exist, is writable */
+		Writable,
+		/** the volume has at least the required free space */
+		FreeSpace
+	}
+
+	public enum Status
+	{
+		Passed,
+		Failed,
+		TimedOut
+	}
+
+	private final File target;
+	private final Map<Check, Status> statuses;
+	private final long usableSpace;
+	private final long requiredBytes;
+	private final long elapsedNanos;
+
+	SaveVerdict(File target, Map<Check, Status> statuses, long usableSpace,
+			long requiredBytes, long elapsedNanos) {
+		this.target = target;
+		this.statuses = new EnumMap<>(statuses);
+		this.usableSpace = usableSpace;
+		this.requiredBytes = requiredBytes;
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	/**
+	 * @return the file that was checked
+	 */
+	public File getTarget() {
+		return target;
+	}
+
+	/**
+	 * @param check the check
+	 *
+	 * @return the outcome of the check
+	 */
+	public Status getStatus(Check check) {
+		return statuses.get(check);
+	}
+
+	/**
+	 * returns whether saving is expected to succeed; an existing target
+	 * doesn't count against it
+	 *
+	 * @return true if every check but {@link Check#NotExisting} passed
+	 */
+	public boolean isPassed() {
+		for (final Map.Entry<Check, Status> e : statuses.entrySet()) {
+			if (e.getKey() != Check.NotExisting && e.getValue() != Status.Passed) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return true if the target is known to exist already
+	 */
+	public boolean isTargetExisting() {
+		return statuses.get(Check.NotExisting) == Status.Failed;
+	}
+
+	/**
+	 * @return true if any check didn't finish in time
+	 */
+	public boolean isTimedOut() {
+		return statuses.containsValue(Status.TimedOut);
+	}
+
+	/**
+	 * @return the usable space on the target's volume in bytes; -1 if unknown
+	 */
+	public long getUsableSpace() {
+		return usableSpace;
+	}
+
+	/**
+	 * @return the free space that was required in bytes
+	 */
+	public long getRequiredBytes() {
+		return requiredBytes;
+	}
+
+	/**
+	 * @return the time spent waiting for the checks after the dialog was
+	 *         approved, in milliseconds
+	 */
+	public double getElapsedMillis() {
+		return elapsedNanos / 1e6;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("SaveVerdict[%s, %s, usable=%d, required=%d, %.1fms]",
+			target, statuses, usableSpace, requiredBytes, getElapsedMillis());
+	}
+}
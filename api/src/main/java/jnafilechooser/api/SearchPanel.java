@@ -0,0 +1,223 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.api;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.EventQueue;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.BorderFactory;
+import javax.swing.DefaultListModel;
+import javax.swing.JFileChooser;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTextField;
+import javax.swing.Timer;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+
+/*
+ * "search in this folder" panel for the Swing fallback
+ *
+ * Searches file names below the directory that is current when the user
+ * starts typing. Results come from a NameIndex and stream in while the
+ * index is still being built: a timer picks up the entries that were
+ * added since the last tick and only searches those.
+ *
+ * The search and the chooser's filter run on a background thread, the
+ * event dispatch thread only adds what they found. Like in the file list,
+ * folders are always shown so they can be entered, files only if the
+ * chooser selects files and its filter accepts them.
+ */
+class SearchPanel extends JPanel
+{
+	private static final long serialVersionUID = 1L;
+	private static final int MAX_RESULTS = 1000;
+	private static final int POLL_MILLIS = 150;
+
+	private static final ThreadPoolExecutor SEARCHER;
+	static {
+		final ThreadPoolExecutor pool = new ThreadPoolExecutor(1, 1,
+			10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+			new DaemonThreadFactory("jnafilechooser-search"));
+		pool.allowCoreThreadTimeOut(true);
+		SEARCHER = pool;
+	}
+
+	private final JFileChooser fc;
+	private final JTextField query = new JTextField();
+	private final DefaultListModel<File> model = new DefaultListModel<>();
+	private final JList<File> results = new JList<>(model);
+	private final JLabel status = new JLabel(" ");
+	private final Timer timer;
+
+	private NameIndex index;
+	private int searched;
+	// bumped by every new search, results of older ones are dropped
+	private int generation;
+	private boolean searching;
+
+	SearchPanel(JFileChooser chooser) {
+		super(new BorderLayout(0, 4));
+		this.fc = chooser;
+		setBorder(BorderFactory.createEmptyBorder(0, 4, 0, 0));
+		setPreferredSize(new Dimension(220, 200));
+		add(query, BorderLayout.NORTH);
+		add(new JScrollPane(results), BorderLayout.CENTER);
+		add(status, BorderLayout.SOUTH);
+		query.setToolTipText("Search in this folder");
+
+		timer = new Timer(POLL_MILLIS, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				poll();
+			}
+		});
+		query.getDocument().addDocumentListener(new DocumentListener() {
+			@Override public void insertUpdate(DocumentEvent e) { restart(); }
+			@Override public void removeUpdate(DocumentEvent e) { restart(); }
+			@Override public void changedUpdate(DocumentEvent e) { restart(); }
+		});
+		results.addMouseListener(new MouseAdapter() {
+			@Override
+			public void mouseClicked(MouseEvent e) {
+				final File f = results.getSelectedValue();
+				if (f != null) {
+					select(f, e.getClickCount() > 1);
+				}
+			}
+		});
+		query.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				if (!model.isEmpty()) {
+					select(model.get(0), false);
+				}
+			}
+		});
+	}
+
+	private void select(File f, boolean approve) {
+		if (f.isDirectory() && !fc.isDirectorySelectionEnabled()) {
+			// a folder can't be chosen, it is shown or entered
+			fc.setCurrentDirectory(approve ? f : f.getParentFile());
+			return;
+		}
+		fc.setCurrentDirectory(f.getParentFile());
+		fc.setSelectedFile(f);
+		if (approve) {
+			fc.approveSelection();
+		}
+	}
+
+	private void restart() {
+		model.clear();
+		searched = 0;
+		++generation;
+		searching = false;
+		if (query.getText().isEmpty()) {
+			timer.stop();
+			status.setText(" ");
+			return;
+		}
+		final File dir = fc.getCurrentDirectory();
+		if (index == null || !index.getRoot().equals(dir.getAbsoluteFile())) {
+			if (index != null) {
+				index.release();
+			}
+			index = NameIndex.forRoot(dir);
+		}
+		poll();
+	}
+
+	private void poll() {
+		if (searching) {
+			// the next tick picks up what was added meanwhile
+			return;
+		}
+		final boolean complete = index.isComplete();
+		final int room = MAX_RESULTS - model.size();
+		if (room <= 0) {
+			showProgress(complete, true);
+			return;
+		}
+		searching = true;
+		final int search = generation;
+		final NameIndex idx = index;
+		final String q = query.getText();
+		final int from = searched;
+		final boolean files = fc.isFileSelectionEnabled();
+		SEARCHER.execute(new Runnable() {
+			@Override
+			public void run() {
+				final List<File> found = new ArrayList<>();
+				final int next = idx.search(q, from, room, found);
+				final List<File> shown = new ArrayList<>();
+				for (final File f : found) {
+					if (f.isDirectory() || files && fc.accept(f)) {
+						shown.add(f);
+					}
+				}
+				EventQueue.invokeLater(new Runnable() {
+					@Override
+					public void run() {
+						if (search != generation) {
+							return;
+						}
+						searching = false;
+						searched = next;
+						for (final File f : shown) {
+							model.addElement(f);
+						}
+						showProgress(complete, next >= idx.size());
+					}
+				});
+			}
+		});
+	}
+
+	// the search is over once the index is complete and all of it was searched
+	private void showProgress(boolean complete, boolean searchedAll) {
+		if (complete && (searchedAll || model.size() >= MAX_RESULTS)) {
+			timer.stop();
+			status.setText(model.size() + " found");
+		}
+		else {
+			if (!timer.isRunning()) {
+				timer.start();
+			}
+			status.setText(model.size() + " found, "
+				+ (complete ? "searching" : "indexing " + index.size()) + "...");
+		}
+	}
+
+	@Override
+	public void removeNotify() {
+		++generation;
+		searching = false;
+		timer.stop();
+		if (index != null) {
+			index.release();
+		}
+		super.removeNotify();
+	}
+}
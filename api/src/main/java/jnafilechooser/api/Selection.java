@@ -0,0 +1,178 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.api;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The immutable outcome of one file dialog.
+ *
+ * @see JnaFileChooser#open(java.awt.Window, DialogSpec)
+ */
+public final class Selection
+{
+	private static final Selection CANCELLED = new Selection(
+		Collections.<File>emptyList(), null, 0, Collections.<File>emptyList(), null, null, null,
+		null);
+
+	private final List<File> files;
+	private final File currentDirectory;
+	private final int filterIndex;
+	private final List<File> rejectedFiles;
+	private final ReadAhead readAhead;
+	private final SaveVerdict saveVerdict;
+	private final Digests digests;
+	private final BackendSelector.Decision decision;
+
+	private Selection(List<File> files, File currentDirectory, int filterIndex,
+			List<File> rejectedFiles, ReadAhead readAhead, SaveVerdict saveVerdict,
+			Digests digests, BackendSelector.Decision decision) {
+		this.files = files;
+		this.currentDirectory = currentDirectory;
+		this.filterIndex = filterIndex;
+		this.rejectedFiles = rejectedFiles;
+		this.readAhead = readAhead;
+		this.saveVerdict = saveVerdict;
+		this.digests = digests;
+		this.decision = decision;
+	}
+
+	static Selection approved(File[] files, File currentDirectory, int filterIndex, File[] rejected) {
+		return new Selection(immutable(files), currentDirectory, filterIndex,
+			immutable(rejected), null, null, null, null);
+	}
+
+	static Selection cancelled(File[] rejected) {
+		if (rejected == null || rejected.length == 0) {
+			return CANCELLED;
+		}
+		return new Selection(Collections.<File>emptyList(), null, 0, immutable(rejected),
+			null, null, null, null);
+	}
+
+	Selection withReadAhead(ReadAhead ra) {
+		return new Selection(files, currentDirectory, filterIndex, rejectedFiles, ra,
+			saveVerdict, digests, decision);
+	}
+
+	Selection withSaveVerdict(SaveVerdict verdict) {
+		return new Selection(files, currentDirectory, filterIndex, rejectedFiles, readAhead,
+			verdict, digests, decision);
+	}
+
+	Selection withDigests(Digests d) {
+		return new Selection(files, currentDirectory, filterIndex, rejectedFiles, readAhead,
+			saveVerdict, d, decision);
+	}
+
+	Selection withDecision(BackendSelector.Decision d) {
+		return new Selection(files, currentDirectory, filterIndex, rejectedFiles, readAhead,
+			saveVerdict, digests, d);
+	}
+
+	private static List<File> immutable(File[] files) {
+		if (files == null || files.length == 0) {
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(new ArrayList<>(Arrays.asList(files)));
+	}
+
+	/**
+	 * @return true if the user approved the dialog
+	 */
+	public boolean isApproved() {
+		return !files.isEmpty();
+	}
+
+	/**
+	 * @return the selected files; empty if the dialog was cancelled
+	 */
+	public List<File> getFiles() {
+		return files;
+	}
+
+	/**
+	 * @return the first selected file; null if the dialog was cancelled
+	 */
+	public File getFile() {
+		return files.isEmpty() ? null : files.get(0);
+	}
+
+	/**
+	 * returns the selection as paths; entries of archives are paths on the
+	 * archive's file system
+	 *
+	 * @return the selected paths
+	 */
+	public List<Path> getPaths() {
+		final List<Path> paths = new ArrayList<>(files.size());
+		for (final File f : files) {
+			paths.add(f.toPath());
+		}
+		return Collections.unmodifiableList(paths);
+	}
+
+	/**
+	 * @return the directory the dialog was closed in; null if cancelled
+	 */
+	public File getCurrentDirectory() {
+		return currentDirectory;
+	}
+
+	/**
+	 * @return the 1-based index of the selected filter; 0 if unknown
+	 */
+	public int getFilterIndex() {
+		return filterIndex;
+	}
+
+	/**
+	 * @return the selected files that didn't match any content filter, or
+	 *         for a {@link FileDropHandler} any filter
+	 */
+	public List<File> getRejectedFiles() {
+		return rejectedFiles;
+	}
+
+	/**
+	 * @return the read-ahead started for the selection; null if none
+	 */
+	public ReadAhead getReadAhead() {
+		return readAhead;
+	}
+
+	/**
+	 * @return the checks of the save target; null if save validation
+	 *         wasn't enabled
+	 */
+	public SaveVerdict getSaveVerdict() {
+		return saveVerdict;
+	}
+
+	/**
+	 * @return the digests being computed for the selection; null if none
+	 */
+	public Digests getDigests() {
+		return digests;
+	}
+
+	/**
+	 * @return which backend showed the dialog and why; null if the dialog
+	 *         was shown by a {@link DialogHost}
+	 */
+	public BackendSelector.Decision getDecision() {
+		return decision;
+	}
+}
@@ -0,0 +1,501 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.api;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * a fuzzy finder on the terminal, used instead of a dialog when there is
+ * no display (e.g. over SSH)
+ *
+ * The tree below the current directory is indexed by NameIndex in the
+ * background while the user types. Results are narrowed incrementally:
+ * for every prefix of the query the matching ids are kept on a stack, so
+ * typing a character only re-checks the previous matches and deleting one
+ * pops the stack. Entries indexed after a level was computed are matched
+ * when that level is used again.
+ *
+ * Keys: type to filter, up/down (or ctrl-p/ctrl-n) to move, tab to mark
+ * when multi selection is enabled, ctrl-f to cycle the filters, enter to
+ * accept and esc or ctrl-c to cancel. In a save dialog enter returns the
+ * typed name unless the cursor was moved onto a result.
+ *
+ * The terminal is switched to raw mode with stty. Where that's not
+ * possible (Windows consoles, stdin not a terminal) a simple line based
+ * prompt is used instead.
+ */
+class TerminalChooser
+{
+	private static final int KEY_UP = -2;
+	private static final int KEY_DOWN = -3;
+	private static final int KEY_EOF = -1;
+	private static final int REFRESH_MILLIS = 100;
+	private static final int KEY_POLL_MILLIS = 10;
+
+	private final File root;
+	private final List<String[]> filters;
+	private final JnaFileChooser.Mode mode;
+	private final boolean multiSelection;
+	private final boolean save;
+	private final String title;
+	private final PrintStream out = System.out;
+
+	private int filter;
+	private volatile boolean done;
+
+	TerminalChooser(File root, List<String[]> filters, int filterIndex,
+			JnaFileChooser.Mode mode, boolean multiSelection, boolean save, String title) {
+		this.root = root.getAbsoluteFile();
+		this.filters = filters;
+		this.filter = filterIndex >= 1 && filterIndex <= filters.size() ? filterIndex - 1 : 0;
+		this.mode = mode;
+		this.multiSelection = multiSelection;
+		this.save = save;
+		this.title = title;
+	}
+
+	/*
+	 * returns the 1-based index of the filter used last
+	 */
+	int getFilterIndex() {
+		return filters.isEmpty() ? 0 : filter + 1;
+	}
+
+	/*
+	 * runs the finder
+	 *
+	 * @return the chosen files or null if the user cancelled
+	 */
+	File[] show() throws IOException {
+		final NameIndex index = NameIndex.forRoot(root);
+		try {
+			final String saved = stty("-g");
+			if (saved == null || stty("raw -echo") == null) {
+				return showLineMode(index);
+			}
+			try {
+				return showRaw(index);
+			}
+			finally {
+				done = true;
+				stty(saved);
+				out.print("\r\n");
+				out.flush();
+			}
+		}
+		finally {
+			// stops the walk if the finder closed before it was complete
+			index.release();
+		}
+	}
+
+	private final NameIndex.Accept accept = new NameIndex.Accept() {
+		@Override
+		public boolean accept(String name, boolean directory) {
+			if (directory) {
+				return mode != JnaFileChooser.Mode.Files;
+			}
+			if (mode == JnaFileChooser.Mode.Directories) {
+				return false;
+			}
+			if (filters.isEmpty()) {
+				return true;
+			}
+			final String[] spec = filters.get(filter);
+			final String lower = name.toLowerCase(Locale.ROOT);
+			for (int i = 1; i < spec.length; ++i) {
+				if (spec[i].equals("*") || lower.endsWith("." + spec[i].toLowerCase(Locale.ROOT))) {
+					return true;
+				}
+			}
+			return false;
+		}
+	};
+
+	private File[] showRaw(NameIndex index) throws IOException {
+		final BlockingQueue<Integer> keys = new LinkedBlockingQueue<>();
+		startKeyReader(System.in, keys);
+		final int rows = Math.max(5, terminalRows() - 3);
+
+		final StringBuilder query = new StringBuilder();
+		// levels.get(k) matches query.substring(0, k + 1), searched.get(k)
+		// is the index size it was computed against
+		final List<NameIndex.IdList> levels = new ArrayList<>();
+		final List<Integer> searched = new ArrayList<>();
+		final NameIndex.IdList shown = new NameIndex.IdList();
+		final LinkedHashSet<File> marked = new LinkedHashSet<>();
+		int cursor = 0;
+		boolean moved = false;
+
+		while (true) {
+			// bring the current level up to date with the index
+			final String q = NameIndex.fold(query.toString());
+			final int total;
+			if (q.isEmpty()) {
+				total = index.first(accept, shown, rows);
+			}
+			else {
+				final int level = q.length() - 1;
+				searched.set(level, index.fuzzy(q, searched.get(level), levels.get(level)));
+				total = index.top(q, levels.get(level), accept, shown, rows);
+			}
+			cursor = Math.max(0, Math.min(cursor, shown.size - 1));
+			render(query, index, shown, total, cursor, marked);
+
+			final Integer key;
+			try {
+				key = keys.poll(REFRESH_MILLIS, TimeUnit.MILLISECONDS);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+			}
+			if (key == null) {
+				continue;
+			}
+			final int k = key;
+			if (k == KEY_EOF || k == 27 || k == 3) {
+				return null;
+			}
+			else if (k == '\r' || k == '\n') {
+				if (save && !moved && query.length() > 0) {
+					return new File[] { new File(root, query.toString()) };
+				}
+				if (!marked.isEmpty()) {
+					return marked.toArray(new File[0]);
+				}
+				if (shown.size > 0) {
+					return new File[] { index.file(shown.ids[cursor]) };
+				}
+			}
+			else if (k == KEY_UP || k == 16) {
+				--cursor;
+				moved = true;
+			}
+			else if (k == KEY_DOWN || k == 14) {
+				++cursor;
+				moved = true;
+			}
+			else if (k == '\t') {
+				if (multiSelection && shown.size > 0) {
+					final File f = index.file(shown.ids[cursor]);
+					if (!marked.remove(f)) {
+						marked.add(f);
+					}
+					++cursor;
+				}
+			}
+			else if (k == 6) {
+				if (!filters.isEmpty()) {
+					filter = (filter + 1) % filters.size();
+				}
+			}
+			else if (k == 127 || k == 8) {
+				if (query.length() > 0) {
+					query.setLength(query.length() - 1);
+					levels.remove(levels.size() - 1);
+					searched.remove(searched.size() - 1);
+					cursor = 0;
+					moved = false;
+				}
+			}
+			else if (k >= 32) {
+				query.append((char) k);
+				final String nq = NameIndex.fold(query.toString());
+				final NameIndex.IdList next;
+				final int from;
+				if (levels.isEmpty()) {
+					next = new NameIndex.IdList();
+					from = 0;
+				}
+				else {
+					// narrow the previous result instead of starting over
+					next = levels.get(levels.size() - 1).copy();
+					index.refine(nq, next);
+					from = searched.get(searched.size() - 1);
+				}
+				levels.add(next);
+				searched.add(from);
+				cursor = 0;
+				moved = false;
+			}
+		}
+	}
+
+	private void render(CharSequence query, NameIndex index, NameIndex.IdList shown,
+			int total, int cursor, LinkedHashSet<File> marked) {
+		final StringBuilder sb = new StringBuilder(4096);
+		sb.append("\033[H");
+		if (!title.isEmpty()) {
+			sb.append(title).append("  ");
+		}
+		sb.append(root.getPath());
+		if (!filters.isEmpty()) {
+			sb.append("  [").append(filters.get(filter)[0]).append(']');
+		}
+		sb.append("\033[K\r\n");
+		sb.append("> ").append(query).append("\033[K\r\n");
+		sb.append("  ").append(total).append(" matches");
+		if (!index.isComplete()) {
+			sb.append(", indexing ").append(index.size()).append("...");
+		}
+		if (!marked.isEmpty()) {
+			sb.append(", ").append(marked.size()).append(" marked");
+		}
+		sb.append("\033[K\r\n");
+		final String base = root.getPath();
+		for (int i = 0; i < shown.size; ++i) {
+			final File f = index.file(shown.ids[i]);
+			String path = f.getPath();
+			if (path.startsWith(base)) {
+				path = path.substring(base.length() + (base.endsWith(File.separator) ? 0 : 1));
+			}
+			sb.append(i == cursor ? "\033[7m" : "");
+			sb.append(marked.contains(f) ? "* " : "  ");
+			sb.append(path);
+			if (index.isDirectory(shown.ids[i])) {
+				sb.append(File.separatorChar);
+			}
+			sb.append(i == cursor ? "\033[0m" : "").append("\033[K\r\n");
+		}
+		sb.append("\033[J");
+		// put the terminal cursor back at the end of the query
+		sb.append("\033[2;").append(3 + query.length()).append('H');
+		out.print(sb);
+		out.flush();
+	}
+
+	/*
+	 * prompt for terminals without raw mode: enter a query, then pick
+	 * results by number
+	 */
+	private File[] showLineMode(NameIndex index) throws IOException {
+		final InputStream in = System.in;
+		final CharsetDecoder decoder = decoder();
+		final NameIndex.IdList candidates = new NameIndex.IdList();
+		final NameIndex.IdList shown = new NameIndex.IdList();
+		while (true) {
+			out.print((title.isEmpty() ? "" : title + " ") + "search in " + root
+				+ (save ? " (or =name to save as)" : "") + ", empty line cancels: ");
+			out.flush();
+			final String line = readLine(in, decoder);
+			if (line == null || line.isEmpty()) {
+				return null;
+			}
+			if (save && line.startsWith("=")) {
+				return new File[] { new File(root, line.substring(1)) };
+			}
+			final String q = NameIndex.fold(line);
+			candidates.clear();
+			// wait a moment for the index if it's still building
+			for (int i = 0; i < 20 && !index.isComplete(); ++i) {
+				sleep(REFRESH_MILLIS);
+			}
+			index.fuzzy(q, 0, candidates);
+			final int total = index.top(q, candidates, accept, shown, 20);
+			out.println(total + " matches" + (index.isComplete() ? "" : " so far"));
+			for (int i = 0; i < shown.size; ++i) {
+				out.println("  " + (i + 1) + ") " + index.file(shown.ids[i]));
+			}
+			if (shown.size == 0) {
+				continue;
+			}
+			out.print(multiSelection ? "numbers separated by spaces, empty line searches again: "
+				: "number, empty line searches again: ");
+			out.flush();
+			final String choice = readLine(in, decoder);
+			if (choice == null) {
+				return null;
+			}
+			final List<File> chosen = new ArrayList<>();
+			for (final String n : choice.trim().split("[\\s,]+")) {
+				try {
+					final int i = Integer.parseInt(n) - 1;
+					if (i >= 0 && i < shown.size) {
+						chosen.add(index.file(shown.ids[i]));
+					}
+				}
+				catch (NumberFormatException e) {
+					// ignore garbage
+				}
+				if (!multiSelection && !chosen.isEmpty()) {
+					break;
+				}
+			}
+			if (!chosen.isEmpty()) {
+				return chosen.toArray(new File[0]);
+			}
+		}
+	}
+
+	/*
+	 * reads a line without reading ahead, so input after it is left to the
+	 * application like in raw mode
+	 *
+	 * @return the line without its terminator; null at the end of input
+	 */
+	private static String readLine(InputStream in, CharsetDecoder decoder) throws IOException {
+		final ByteArrayOutputStream line = new ByteArrayOutputStream();
+		int c;
+		while ((c = in.read()) != '\n') {
+			if (c < 0) {
+				if (line.size() == 0) {
+					return null;
+				}
+				break;
+			}
+			line.write(c);
+		}
+		final byte[] bytes = line.toByteArray();
+		final int n = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+		return decoder.decode(ByteBuffer.wrap(bytes, 0, n)).toString();
+	}
+
+	private static CharsetDecoder decoder() {
+		return Charset.defaultCharset().newDecoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	/*
+	 * reads keys from the terminal until the finder is done
+	 *
+	 * A blocking read can't be stopped and would swallow input meant for
+	 * the application after the finder closed, so the reader only reads
+	 * bytes that are already there and decodes them itself instead of
+	 * letting a Reader buffer ahead.
+	 */
+	private void startKeyReader(final InputStream in, final BlockingQueue<Integer> keys) {
+		final Thread t = new DaemonThreadFactory("jnafilechooser-terminal").newThread(new Runnable() {
+			@Override
+			public void run() {
+				final CharsetDecoder decoder = decoder();
+				final ByteBuffer bytes = ByteBuffer.allocate(16);
+				final CharBuffer chars = CharBuffer.allocate(16);
+				try {
+					while (!done) {
+						if (in.available() == 0) {
+							sleep(KEY_POLL_MILLIS);
+							continue;
+						}
+						final int c = in.read();
+						if (c < 0) {
+							break;
+						}
+						if (c == 27) {
+							// tell escape sequences (arrows) from a lone escape
+							sleep(20);
+							if (in.available() > 0) {
+								final int b = in.read();
+								final int d = in.available() > 0 ? in.read() : -1;
+								if (b == '[' && d == 'A') {
+									keys.add(KEY_UP);
+								}
+								else if (b == '[' && d == 'B') {
+									keys.add(KEY_DOWN);
+								}
+								// other sequences are ignored
+								continue;
+							}
+							keys.add(c);
+							continue;
+						}
+						bytes.put((byte) c);
+						bytes.flip();
+						decoder.decode(bytes, chars, false);
+						bytes.compact();
+						chars.flip();
+						while (chars.hasRemaining()) {
+							keys.add((int) chars.get());
+						}
+						chars.clear();
+					}
+				}
+				catch (IOException e) {
+					// treat like end of input
+				}
+				keys.add(KEY_EOF);
+			}
+		});
+		t.start();
+	}
+
+	private static int terminalRows() {
+		final String size = stty("size");
+		if (size != null) {
+			final String[] parts = size.trim().split("\\s+");
+			try {
+				return Integer.parseInt(parts[0]);
+			}
+			catch (NumberFormatException e) {
+				// fall through
+			}
+		}
+		return 24;
+	}
+
+	/*
+	 * runs stty on the controlling terminal
+	 *
+	 * @return the output or null if it failed
+	 */
+	private static String stty(String args) {
+		if (Os.isWindows() || System.console() == null) {
+			return null;
+		}
+		try {
+			final Process p = new ProcessBuilder("sh", "-c", "stty " + args + " < /dev/tty")
+				.redirectErrorStream(true).start();
+			final StringBuilder sb = new StringBuilder();
+			try (BufferedReader r = new BufferedReader(
+					new InputStreamReader(p.getInputStream(), Charset.defaultCharset()))) {
+				String line;
+				while ((line = r.readLine()) != null) {
+					sb.append(line);
+				}
+			}
+			return p.waitFor() == 0 ? sb.toString() : null;
+		}
+		catch (IOException e) {
+			return null;
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,239 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.api;
+
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.swing.JComponent;
+import javax.swing.JFileChooser;
+import javax.swing.SwingUtilities;
+
+/*
+ * preview accessory for the Swing fallback
+ *
+ * Thumbnails are decoded on a small shared background pool. Only the
+ * request for the most recently selected file is kept alive, earlier ones
+ * are cancelled as soon as the selection moves on. Nothing but the cache
+ * lookup and painting happens on the event dispatch thread.
+ */
+class ThumbnailAccessory extends JComponent implements PropertyChangeListener
+{
+	private static final long serialVersionUID = 1L;
+
+	static final int SIZE = 150;
+	private static final int PADDING = 5;
+
+	private static final ExecutorService DECODER;
+	static {
+		final int threads = Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors() / 2));
+		final ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads,
+			30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+			new DaemonThreadFactory("jnafilechooser-thumbnail"));
+		pool.allowCoreThreadTimeOut(true);
+		DECODER = pool;
+	}
+
+	private final ThumbnailCache cache;
+	private File file;
+	private BufferedImage thumbnail;
+	private Future<?> pending;
+	private Request request;
+
+	ThumbnailAccessory(JFileChooser fc, ThumbnailCache cache) {
+		this.cache = cache;
+		setPreferredSize(new Dimension(SIZE + 2 * PADDING, SIZE + 2 * PADDING));
+		fc.addPropertyChangeListener(this);
+	}
+
+	@Override
+	public void propertyChange(PropertyChangeEvent e) {
+		final String prop = e.getPropertyName();
+		if (JFileChooser.DIRECTORY_CHANGED_PROPERTY.equals(prop)) {
+			show(null);
+		}
+		else if (JFileChooser.SELECTED_FILE_CHANGED_PROPERTY.equals(prop)) {
+			show((File) e.getNewValue());
+		}
+	}
+
+	private void show(File f) {
+		cancelPending();
+		file = f;
+		thumbnail = null;
+		if (f != null) {
+			// the cached thumbnail may be of an older version of the file,
+			// the request checks that off the EDT and is a memory hit if not
+			thumbnail = cache.getCached(f, SIZE);
+			request = new Request(f);
+			pending = DECODER.submit(request);
+		}
+		repaint();
+	}
+
+	private void cancelPending() {
+		if (request != null) {
+			request.cancel();
+			request = null;
+		}
+		if (pending != null) {
+			// no interrupt, it would close the channel of a header read and
+			// the request checks its own flag anyway
+			pending.cancel(false);
+			pending = null;
+		}
+	}
+
+	@Override
+	public void removeNotify() {
+		// the dialog was closed, don't waste time on previews nobody sees
+		cancelPending();
+		super.removeNotify();
+	}
+
+	@Override
+	protected void paintComponent(Graphics g) {
+		super.paintComponent(g);
+		if (thumbnail != null) {
+			final int x = (getWidth() - thumbnail.getWidth()) / 2;
+			final int y = (getHeight() - thumbnail.getHeight()) / 2;
+			g.drawImage(thumbnail, x, y, null);
+		}
+	}
+
+	private void deliver(final File f, final BufferedImage img) {
+		SwingUtilities.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				// the selection may have moved on in the meantime
+				if (f.equals(file)) {
+					thumbnail = img;
+					request = null;
+					pending = null;
+					repaint();
+				}
+			}
+		});
+	}
+
+	private class Request implements Runnable
+	{
+		private final File source;
+		private volatile boolean cancelled;
+		private volatile ImageReader reader;
+
+		Request(File source) {
+			this.source = source;
+		}
+
+		void cancel() {
+			cancelled = true;
+			final ImageReader r = reader;
+			if (r != null) {
+				r.abort();
+			}
+		}
+
+		@Override
+		public void run() {
+			if (cancelled) {
+				return;
+			}
+			BufferedImage img = cache.get(source, SIZE);
+			if (img == null && !cancelled) {
+				img = decode();
+				if (img != null && !cancelled) {
+					cache.put(source, SIZE, img);
+				}
+			}
+			if (img != null && !cancelled) {
+				deliver(source, img);
+			}
+		}
+
+		private BufferedImage decode() {
+			// look at the header first so we don't make every ImageIO
+			// plugin probe arbitrary (and possibly huge) files
+			final ContentType type = ContentType.detect(source);
+			if (type == null || !type.isImage()) {
+				return null;
+			}
+			try (ImageInputStream in = ImageIO.createImageInputStream(source)) {
+				if (in == null) {
+					return null;
+				}
+				final Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+				if (!readers.hasNext()) {
+					return null;
+				}
+				final ImageReader r = readers.next();
+				reader = r;
+				try {
+					r.setInput(in, true, true);
+					final int w = r.getWidth(0);
+					final int h = r.getHeight(0);
+					// skip source pixels while decoding instead of decoding
+					// the full image and throwing most of it away
+					final int step = Math.max(1, Math.min(w, h) / (2 * SIZE));
+					final ImageReadParam param = r.getDefaultReadParam();
+					param.setSourceSubsampling(step, step, 0, 0);
+					if (cancelled) {
+						return null;
+					}
+					final BufferedImage img = r.read(0, param);
+					return img == null || cancelled ? null : scale(img);
+				}
+				finally {
+					reader = null;
+					r.dispose();
+				}
+			}
+			catch (IOException | RuntimeException e) {
+				// broken or unsupported image, just don't show a preview
+				return null;
+			}
+		}
+	}
+
+	private static BufferedImage scale(BufferedImage img) {
+		final double factor = Math.min(1.0, Math.min(
+			(double) SIZE / img.getWidth(), (double) SIZE / img.getHeight()));
+		final int w = Math.max(1, (int) Math.round(img.getWidth() * factor));
+		final int h = Math.max(1, (int) Math.round(img.getHeight() * factor));
+		final BufferedImage out = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+		final Graphics2D g = out.createGraphics();
+		try {
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+				RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g.drawImage(img, 0, 0, w, h, null);
+		}
+		finally {
+			g.dispose();
+		}
+		return out;
+	}
+}
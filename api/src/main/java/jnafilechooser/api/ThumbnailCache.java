@@ -0,0 +1,221 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.api;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+/**
+ * A size-bounded LRU cache for preview thumbnails.
+ *
+ * Entries are keyed by the absolute path and the modification time of the
+ * source file so a changed file is never shown with a stale preview. If a
+ * cache directory is given thumbnails are also written there as PNG files
+ * and survive the process.
+ *
+ * The cache is thread-safe. One instance is usually shared by all
+ * choosers of an application, see {@link #getDefault()}.
+ *
+ * Example:
+ * ThumbnailCache cache = new ThumbnailCache(32 * 1024 * 1024, cacheDir);
+ * JnaFileChooser fc = new JnaFileChooser();
+ * fc.setThumbnailCache(cache);
+ * fc.setPreviewEnabled(true);
+ */
+public class ThumbnailCache
+{
+	private static final ThumbnailCache DEFAULT = new ThumbnailCache(16L * 1024 * 1024, null);
+	private static final int MAX_KNOWN_KEYS = 4096;
+
+	private final long maxBytes;
+	private final File directory;
+	private final LinkedHashMap<String, BufferedImage> images;
+	// path and size to the full key seen by the last get or put, so that
+	// getCached doesn't have to read the modification time; guarded by images
+	private final LinkedHashMap<String, String> knownKeys;
+	private long bytes;
+
+	/**
+	 * creates a new cache
+	 *
+	 * @param maxBytes the maximum number of bytes of decoded pixel data to
+	 *                 keep in memory
+	 * @param directory directory for the on-disk cache; may be null to
+	 *                  disable it
+	 */
+	public ThumbnailCache(long maxBytes, File directory) {
+		if (maxBytes < 0) {
+			throw new IllegalArgumentException();
+		}
+		this.maxBytes = maxBytes;
+		this.directory = directory;
+		this.images = new LinkedHashMap<>(64, 0.75f, true);
+		this.knownKeys = new LinkedHashMap<String, String>(64, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+				return size() > MAX_KNOWN_KEYS;
+			}
+		};
+	}
+
+	/**
+	 * returns the cache used by choosers that have no cache set
+	 *
+	 * @return the shared default cache (16 MB, memory only)
+	 */
+	public static ThumbnailCache getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * looks up the in-memory thumbnail of a file
+	 *
+	 * This never touches the disk, not even for the modification time, and
+	 * is therefore cheap enough to call on the event dispatch thread. It
+	 * returns the thumbnail of the file as it was when the thumbnail was
+	 * last loaded or stored; a caller that needs to be sure it is current
+	 * loads it again off the EDT, which is a memory hit if it is.
+	 *
+	 * @param file the source file
+	 * @param size the edge length of the thumbnail
+	 *
+	 * @return the thumbnail or null if it's not in memory
+	 */
+	public BufferedImage getCached(File file, int size) {
+		synchronized (images) {
+			final String key = knownKeys.get(file.getAbsolutePath() + '\0' + size);
+			return key != null ? images.get(key) : null;
+		}
+	}
+
+	/*
+	 * looks up a thumbnail in memory and then in the disk cache. This may
+	 * block on IO and must not be called on the EDT.
+	 */
+	BufferedImage get(File file, int size) {
+		final String key = key(file, size);
+		synchronized (images) {
+			knownKeys.put(file.getAbsolutePath() + '\0' + size, key);
+			final BufferedImage img = images.get(key);
+			if (img != null) {
+				return img;
+			}
+		}
+		if (directory == null) {
+			return null;
+		}
+		final File cached = new File(directory, hash(key) + ".png");
+		if (!cached.isFile()) {
+			return null;
+		}
+		try {
+			final BufferedImage img = ImageIO.read(cached);
+			if (img != null) {
+				putInMemory(key, img);
+			}
+			return img;
+		}
+		catch (IOException e) {
+			return null;
+		}
+	}
+
+	/*
+	 * stores a thumbnail in memory and, if enabled, on disk. Like get this
+	 * may block on IO.
+	 */
+	void put(File file, int size, BufferedImage img) {
+		final String key = key(file, size);
+		synchronized (images) {
+			knownKeys.put(file.getAbsolutePath() + '\0' + size, key);
+		}
+		putInMemory(key, img);
+		if (directory != null && (directory.isDirectory() || directory.mkdirs())) {
+			final File target = new File(directory, hash(key) + ".png");
+			final File tmp = new File(directory, target.getName() + ".tmp");
+			try {
+				if (ImageIO.write(img, "png", tmp) && !tmp.renameTo(target)) {
+					tmp.delete();
+				}
+			}
+			catch (IOException e) {
+				// the disk cache is best effort only
+				tmp.delete();
+			}
+		}
+	}
+
+	/**
+	 * removes all thumbnails from memory; the disk cache is left alone
+	 */
+	public void clear() {
+		synchronized (images) {
+			images.clear();
+			knownKeys.clear();
+			bytes = 0;
+		}
+	}
+
+	private void putInMemory(String key, BufferedImage img) {
+		final long imgBytes = sizeOf(img);
+		if (imgBytes > maxBytes) {
+			return;
+		}
+		synchronized (images) {
+			final BufferedImage old = images.put(key, img);
+			if (old != null) {
+				bytes -= sizeOf(old);
+			}
+			bytes += imgBytes;
+			// evict least recently used entries until we fit again
+			final Iterator<Map.Entry<String, BufferedImage>> it = images.entrySet().iterator();
+			while (bytes > maxBytes && it.hasNext()) {
+				bytes -= sizeOf(it.next().getValue());
+				it.remove();
+			}
+		}
+	}
+
+	private static long sizeOf(BufferedImage img) {
+		return 4L * img.getWidth() * img.getHeight();
+	}
+
+	private static String key(File file, int size) {
+		return file.getAbsolutePath() + '\0' + file.lastModified() + '\0' + size;
+	}
+
+	private static String hash(String key) {
+		try {
+			final byte[] digest = MessageDigest.getInstance("SHA-1")
+				.digest(key.getBytes(StandardCharsets.UTF_8));
+			final StringBuilder sb = new StringBuilder(digest.length * 2);
+			for (final byte b : digest) {
+				sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+				sb.append(Character.forDigit(b & 0xF, 16));
+			}
+			return sb.toString();
+		}
+		catch (NoSuchAlgorithmException e) {
+			// every JRE is required to support SHA-1
+			throw new IllegalStateException(e);
+		}
+	}
+}
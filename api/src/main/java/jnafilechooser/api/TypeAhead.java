@@ -0,0 +1,417 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.api;
+
+import java.awt.Component;
+import java.awt.Container;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.KeyEvent;
+import java.awt.event.KeyListener;
+import java.io.File;
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.swing.JFileChooser;
+import javax.swing.JList;
+import javax.swing.ListModel;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.UIManager;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+
+/*
+ * type-to-select for the file list of the Swing fallback
+ *
+ * The list of JFileChooser compares every name with the typed prefix on
+ * each keystroke, which lags in directories with 100k entries. Here the
+ * names of the listing are kept as a sorted array of normalized (NFC),
+ * case-folded keys. A keystroke folds only the typed character onto the
+ * prefix and narrows the range of keys that start with it by binary search
+ * within the previous range, so it costs O(log n) and, as long as the
+ * prefix is ASCII, allocates nothing. Other characters may compose with or
+ * change the folding of the ones before them, so then the whole prefix is
+ * folded again. The keys are rebuilt in the background shortly after the
+ * listing changed; a keystroke that comes before that starts the build
+ * right away and selects once it is done, the event dispatch thread never
+ * sorts.
+ *
+ * Matches are visited in key order, which differs from the list order only
+ * in that directories aren't listed first. Like JList, typing the same
+ * single character again moves on to the next match, and a pause longer
+ * than List.timeFactor starts a new prefix.
+ *
+ * The look and feel's own type-to-select is switched off by keeping typed
+ * keys away from its key listener. With look and feels whose file list
+ * isn't marked as one this quietly does nothing.
+ */
+final class TypeAhead implements KeyListener, ListDataListener
+{
+	private static final int REBUILD_DELAY_MILLIS = 200;
+	private static final ExecutorService SORTER = Executors.newSingleThreadExecutor(
+		new DaemonThreadFactory("jnafilechooser-typeahead"));
+
+	private final JList<?> list;
+	private final long timeFactor;
+	private final Timer rebuild;
+
+	// confined to the event dispatch thread
+	private Keys keys;
+	private int version;
+	// the version being sorted in the background, -1 if none
+	private int sorting = -1;
+	// a keystroke came before the keys of the listing were sorted
+	private boolean waiting;
+	private final StringBuilder typed = new StringBuilder();
+	// typed, folded like the keys
+	private final StringBuilder prefix = new StringBuilder();
+	private boolean ascii = true;
+	private long lastTyped;
+	private int lo;
+	private int hi;
+	private int current = -1;
+
+	private TypeAhead(JList<?> list) {
+		this.list = list;
+		final Object factor = UIManager.get("List.timeFactor");
+		timeFactor = factor instanceof Long ? (Long) factor : 1000L;
+		rebuild = new Timer(REBUILD_DELAY_MILLIS, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				if (sorting != version) {
+					sortInBackground();
+				}
+			}
+		});
+		rebuild.setRepeats(false);
+	}
+
+	static void install(JFileChooser fc) {
+		final JList<?> list = findFileList(fc);
+		if (list == null) {
+			return;
+		}
+		final TypeAhead typeAhead = new TypeAhead(list);
+		// the look and feel's handler must not see typed keys any more
+		for (final KeyListener l : list.getKeyListeners()) {
+			list.removeKeyListener(l);
+			list.addKeyListener(new WithoutTyped(l));
+		}
+		list.addKeyListener(typeAhead);
+		list.getModel().addListDataListener(typeAhead);
+		typeAhead.rebuild.restart();
+	}
+
+	private static JList<?> findFileList(Container c) {
+		for (final Component child : c.getComponents()) {
+			if (child instanceof JList
+					&& Boolean.TRUE.equals(((JList<?>) child).getClientProperty("List.isFileList"))) {
+				return (JList<?>) child;
+			}
+			if (child instanceof Container) {
+				final JList<?> l = findFileList((Container) child);
+				if (l != null) {
+					return l;
+				}
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public void keyTyped(KeyEvent e) {
+		final char c = e.getKeyChar();
+		if (list.getModel().getSize() == 0 || e.isAltDown() || e.isControlDown() || e.isMetaDown()
+				|| c == KeyEvent.CHAR_UNDEFINED || Character.isISOControl(c)) {
+			return;
+		}
+		final boolean ready = keys != null && keys.version == version;
+		final boolean continued = e.getWhen() - lastTyped < timeFactor;
+		lastTyped = e.getWhen();
+		if (continued && typed.length() == 1 && typed.charAt(0) == c) {
+			// the same key again cycles through the matches
+			if (ready && hi > lo) {
+				current = current + 1 < hi ? current + 1 : lo;
+				select();
+			}
+			return;
+		}
+		final boolean restarted = !continued || typed.length() == 0;
+		if (restarted) {
+			clear();
+		}
+		final boolean extended = extend(c);
+		if (!ready) {
+			waiting = true;
+			rebuild.stop();
+			if (sorting != version) {
+				sortInBackground();
+			}
+			return;
+		}
+		narrow(restarted || !extended);
+	}
+
+	/*
+	 * appends c to the typed characters and its folding to the prefix
+	 *
+	 * Returns false if the characters before it fold differently now, e.g.
+	 * because a combining mark composed with the one before it.
+	 */
+	private boolean extend(char c) {
+		typed.append(c);
+		if (ascii && c < 0x80) {
+			prefix.append(Character.toLowerCase(c));
+			return true;
+		}
+		ascii = false;
+		final String folded = Keys.fold(typed.toString());
+		final boolean extended = folded.length() >= prefix.length()
+			&& folded.regionMatches(0, prefix.toString(), 0, prefix.length());
+		prefix.setLength(0);
+		prefix.append(folded);
+		return extended;
+	}
+
+	private void narrow(boolean all) {
+		if (all) {
+			lo = 0;
+			hi = keys.keys.length;
+		}
+		// everything that starts with the longer prefix is within the
+		// range of the shorter one
+		lo = keys.lowerBound(prefix, lo, hi);
+		hi = keys.upperBound(prefix, lo, hi);
+		current = lo;
+		if (hi > lo) {
+			select();
+		}
+	}
+
+	private void clear() {
+		typed.setLength(0);
+		prefix.setLength(0);
+		ascii = true;
+	}
+
+	private void select() {
+		final int row = keys.rows[current];
+		if (row < list.getModel().getSize()) {
+			list.setSelectedIndex(row);
+			list.ensureIndexIsVisible(row);
+		}
+	}
+
+	@Override
+	public void keyPressed(KeyEvent e) {
+	}
+
+	@Override
+	public void keyReleased(KeyEvent e) {
+	}
+
+	@Override
+	public void intervalAdded(ListDataEvent e) {
+		changed();
+	}
+
+	@Override
+	public void intervalRemoved(ListDataEvent e) {
+		changed();
+	}
+
+	@Override
+	public void contentsChanged(ListDataEvent e) {
+		changed();
+	}
+
+	private void changed() {
+		++version;
+		clear();
+		waiting = false;
+		rebuild.restart();
+	}
+
+	private String[] snapshot() {
+		final ListModel<?> model = list.getModel();
+		final String[] names = new String[model.getSize()];
+		for (int i = 0; i < names.length; ++i) {
+			final Object o = model.getElementAt(i);
+			final String name = o instanceof File ? ((File) o).getName() : String.valueOf(o);
+			// roots have no name
+			names[i] = name.isEmpty() && o instanceof File ? ((File) o).getPath() : name;
+		}
+		return names;
+	}
+
+	// the names are copied here, sorting them is left to the background
+	private void sortInBackground() {
+		final String[] names = snapshot();
+		final int v = version;
+		sorting = v;
+		SORTER.execute(new Runnable() {
+			@Override
+			public void run() {
+				final Keys built = Keys.build(names, v);
+				SwingUtilities.invokeLater(new Runnable() {
+					@Override
+					public void run() {
+						if (sorting == built.version) {
+							sorting = -1;
+						}
+						if (built.version == version && (keys == null || keys.version != version)) {
+							keys = built;
+							if (waiting) {
+								waiting = false;
+								if (typed.length() > 0) {
+									narrow(true);
+								}
+							}
+						}
+					}
+				});
+			}
+		});
+	}
+
+	/*
+	 * the sorted keys of one listing
+	 */
+	static final class Keys
+	{
+		final String[] keys;
+		/** the list row of each key */
+		final int[] rows;
+		final int version;
+
+		private Keys(String[] keys, int[] rows, int version) {
+			this.keys = keys;
+			this.rows = rows;
+			this.version = version;
+		}
+
+		static Keys build(String[] names, int version) {
+			final Entry[] entries = new Entry[names.length];
+			for (int i = 0; i < names.length; ++i) {
+				entries[i] = new Entry(fold(names[i]), i);
+			}
+			Arrays.sort(entries);
+			final String[] keys = new String[names.length];
+			final int[] rows = new int[names.length];
+			for (int i = 0; i < entries.length; ++i) {
+				keys[i] = entries[i].key;
+				rows[i] = entries[i].row;
+			}
+			return new Keys(keys, rows, version);
+		}
+
+		static String fold(String name) {
+			for (int i = 0; i < name.length(); ++i) {
+				if (name.charAt(i) >= 0x80) {
+					return Normalizer.normalize(name, Normalizer.Form.NFC).toLowerCase(Locale.ROOT);
+				}
+			}
+			// ASCII is already normalized
+			return name.toLowerCase(Locale.ROOT);
+		}
+
+		/*
+		 * the first index in [from, to) whose key isn't less than the prefix
+		 */
+		int lowerBound(CharSequence prefix, int from, int to) {
+			while (from < to) {
+				final int mid = (from + to) >>> 1;
+				if (comparePrefix(keys[mid], prefix) < 0) {
+					from = mid + 1;
+				}
+				else {
+					to = mid;
+				}
+			}
+			return from;
+		}
+
+		/*
+		 * the first index in [from, to) whose key neither starts with the
+		 * prefix nor is less than it
+		 */
+		int upperBound(CharSequence prefix, int from, int to) {
+			while (from < to) {
+				final int mid = (from + to) >>> 1;
+				if (comparePrefix(keys[mid], prefix) <= 0) {
+					from = mid + 1;
+				}
+				else {
+					to = mid;
+				}
+			}
+			return from;
+		}
+
+		// compares the key, cut to the length of the prefix, with the prefix
+		private static int comparePrefix(String key, CharSequence prefix) {
+			final int n = Math.min(key.length(), prefix.length());
+			for (int i = 0; i < n; ++i) {
+				final int d = key.charAt(i) - prefix.charAt(i);
+				if (d != 0) {
+					return d;
+				}
+			}
+			return key.length() < prefix.length() ? -1 : 0;
+		}
+	}
+
+	private static final class Entry implements Comparable<Entry>
+	{
+		final String key;
+		final int row;
+
+		Entry(String key, int row) {
+			this.key = key;
+			this.row = row;
+		}
+
+		@Override
+		public int compareTo(Entry o) {
+			final int c = key.compareTo(o.key);
+			return c != 0 ? c : Integer.compare(row, o.row);
+		}
+	}
+
+	/*
+	 * forwards everything but typed keys
+	 */
+	private static final class WithoutTyped implements KeyListener
+	{
+		private final KeyListener delegate;
+
+		WithoutTyped(KeyListener delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public void keyTyped(KeyEvent e) {
+		}
+
+		@Override
+		public void keyPressed(KeyEvent e) {
+			delegate.keyPressed(e);
+		}
+
+		@Override
+		public void keyReleased(KeyEvent e) {
+			delegate.keyReleased(e);
+		}
+	}
+}
@@ -0,0 +1,115 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.api;
+
+import java.awt.Window;
+import java.io.File;
+
+import jnafilechooser.api.JnaFileChooser.Backend;
+import jnafilechooser.api.JnaFileChooser.Mode;
+
+/**
+ * Provides the Windows common dialogs, see {@link WindowsFileChooser} and
+ * {@link WindowsFolderBrowser}.
+ *
+ * Available on Windows if JNA and jnafilechooser-win32 are there.
+ *
+ * Example:
+ * META-INF/services/jnafilechooser.api.ChooserProvider:
+ * jnafilechooser.api.WindowsChooserProvider
+ */
+public final class WindowsChooserProvider implements ChooserProvider
+{
+	private volatile Boolean available;
+
+	/**
+	 * creates a new provider; called by the service loader
+	 */
+	public WindowsChooserProvider() {
+	}
+
+	@Override
+	public Backend getBackend() {
+		return Backend.Native;
+	}
+
+	@Override
+	public boolean isAvailable() {
+		if (available == null) {
+			available = Os.isWindows()
+				&& Os.hasClass("com.sun.jna.Native")
+				&& Os.hasClass("jnafilechooser.win32.Comdlg32");
+		}
+		return available;
+	}
+
+	@Override
+	public boolean supports(DialogSpec spec, boolean save) {
+		// the open dialog picks folders too, see WindowsFileChooser.setMode
+		return isFolderBrowser(spec) || spec.getMode() == Mode.Files || !save;
+	}
+
+	@Override
+	public Selection show(Window parent, DialogSpec spec, boolean save, File directory,
+			int filterIndex) {
+		return isFolderBrowser(spec) ?
+			showFolderBrowser(parent, spec, filterIndex) :
+			showFileChooser(parent, spec, save, directory, filterIndex);
+	}
+
+	private static boolean isFolderBrowser(DialogSpec spec) {
+		return spec.getMode() == Mode.Directories && !spec.isMultiSelection();
+	}
+
+	private static Selection showFileChooser(Window parent, DialogSpec spec, boolean save,
+			File directory, int filterIndex) {
+		final WindowsFileChooser fc = new WindowsFileChooser(directory);
+		fc.setFilterString(spec.getWindowsFilterString());
+		fc.setContentFilters(spec.getContentFilters());
+		fc.setMultiSelectionEnabled(spec.isMultiSelection());
+		fc.setMode(spec.getMode());
+		if (filterIndex > 0) {
+			fc.setFilterIndex(filterIndex);
+		}
+		if (!spec.getDefaultFileName().isEmpty())
+			fc.setDefaultFilename(spec.getDefaultFileName());
+
+		if (!spec.getTitle().isEmpty()) {
+			fc.setTitle(spec.getTitle());
+		}
+
+		final boolean result = fc.showDialog(parent, !save);
+		if (!result) {
+			return Selection.cancelled(fc.getRejectedFiles());
+		}
+		return Selection.approved(
+			spec.isMultiSelection() ? fc.getSelectedFiles() : new File[]{fc.getSelectedFile()},
+			fc.getCurrentDirectory(), fc.getFilterIndex(), fc.getRejectedFiles());
+	}
+
+	private static Selection showFolderBrowser(Window parent, DialogSpec spec, int filterIndex) {
+		final WindowsFolderBrowser fb = new WindowsFolderBrowser();
+		if (!spec.getTitle().isEmpty()) {
+			fb.setTitle(spec.getTitle());
+		}
+		final File file = fb.showDialog(parent);
+		if (file != null) {
+			return Selection.approved(new File[] { file },
+				file.getParentFile() != null ? file.getParentFile() : file, filterIndex, null);
+		}
+
+		return Selection.cancelled(null);
+	}
+
+	@Override
+	public String toString() {
+		return "Windows common dialogs";
+	}
+}
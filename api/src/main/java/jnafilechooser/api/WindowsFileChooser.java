@@ -84,6 +84,8 @@ public class WindowsFileChooser
 	protected File selectedFile;
 	protected File currentDirectory;
 	protected ArrayList<String[]> filters;
+	private List<ContentFilter> contentFilters;
+	private String filterString;
 
 	protected String defaultFilename = "";
 	protected String dialogTitle = "";
@@ -93,27 +95,33 @@ public class WindowsFileChooser
     private boolean multipleSelection = false;
     private int maxNumberOfFiles = 10000;
     private File[] selectedFiles = null;
+    private File[] rejectedFiles = new File[0];
+    private long readAheadBytes = 0;
+    private ReadAhead readAhead = null;
+    private JnaFileChooser.Mode mode = JnaFileChooser.Mode.Files;
 
 	/**
 	 * creates a new file chooser
 	 */
 	public WindowsFileChooser() {
 		filters = new ArrayList<>();
+		contentFilters = new ArrayList<>();
 	}
 
 	/**
 	 * creates a new file chooser with the specified initial directory
 	 *
 	 * If the given file is not a directory the parent file will be used instead.
+	 * If the path doesn't respond in time (e.g. a stale network mount) its
+	 * closest reachable ancestor is used.
 	 *
 	 * @param currentDirectory the initial directory
 	 */
 	public WindowsFileChooser(File currentDirectory) {
 		filters = new ArrayList<>();
-		if (currentDirectory != null) {
-			this.currentDirectory = currentDirectory.isDirectory() ?
-				currentDirectory : currentDirectory.getParentFile();
-		}
+		contentFilters = new ArrayList<>();
+		// a dead network mount must not hang the caller, see FileProbe
+		this.currentDirectory = FileProbe.resolveDirectory(currentDirectory).directory;
 	}
 
 	/**
@@ -149,6 +157,32 @@ public class WindowsFileChooser
 		filters.add(parts.toArray(new String[0]));
 	}
 
+	// package private, see setFilters
+	void setContentFilters(List<ContentFilter> contentFilters) {
+		this.contentFilters = contentFilters;
+	}
+
+	// package private, lets a DialogSpec hand over the filter string it
+	// built once instead of building it again for every dialog
+	void setFilterString(String filterString) {
+		this.filterString = filterString;
+	}
+
+	/**
+	 * add a filter that matches files by their content
+	 *
+	 * The native dialog can only filter by extension, so content filters
+	 * are applied after the user approved the open dialog: selected files
+	 * that match none of the content filters are removed from the selection
+	 * and can be queried with {@link #getRejectedFiles()}.
+	 *
+	 * @param name name of the filter
+	 * @param types you must pass at least 1 content type
+	 */
+	public void addContentFilter(String name, ContentType... types) {
+		contentFilters.add(new ContentFilter(name, types));
+	}
+
 	/**
 	 * set a title name
 	 *
@@ -221,7 +255,8 @@ public class WindowsFileChooser
 		final int bufferLength = multipleSelection ? maxNumberOfFiles * MAX_PATH : MAX_PATH;
 		// 4 bytes per char + 1 null byte
 		final int bufferSize = 4 * bufferLength + 1;
-		params.lpstrFile = new Memory(bufferSize);
+		final Memory file = NativeAllocations.allocate(this, bufferSize);
+		params.lpstrFile = file;
 
 		if (!defaultFilename.isEmpty()) {
 			params.lpstrFile.setWideString(0, defaultFilename);
@@ -249,58 +284,155 @@ public class WindowsFileChooser
 		}
 
 		// build filter string if filters were specified
-		if (!filters.isEmpty()) {
-			params.lpstrFilter = new WString(buildFilterString());
+		if (filterString != null) {
+			params.lpstrFilter = new WString(filterString);
+			params.nFilterIndex = filterIndex;
+		}
+		else if (!filters.isEmpty()) {
+			params.lpstrFilter = new WString(buildFilterString(filters));
 			params.nFilterIndex = filterIndex;
 		}
 
-		final boolean approved = open ?
-			Comdlg32.GetOpenFileNameW(params) :
-			Comdlg32.GetSaveFileNameW(params);
-
-        // clear selection
-        selectedFiles = null;
-
-        if (approved) {
-			// nFilterIndex is updated if user changed the selected filter
-			filterIndex = params.nFilterIndex;
-
-            if (multipleSelection) {
-                final byte[] bytes = params.lpstrFile.getByteArray(0, bufferSize);
-                final List<String> filePaths = bytesToFilePaths(bytes);
-
-                if (filePaths.size() == 1) {
-                    selectedFile = new File(filePaths.get(0));
-                    currentDirectory = selectedFile.getParentFile();
-                    selectedFiles = new File[1];
-                    selectedFiles[0] = selectedFile;
-                } else if (filePaths.size() > 1) {
-                    selectedFiles = new File[filePaths.size() - 1];
-                    currentDirectory = new File(filePaths.get(0));
-                    for (int i = 1; i < filePaths.size(); i++) {
-                        selectedFiles[i - 1] = new File(currentDirectory, filePaths.get(i));
-                    }
-                    selectedFile = selectedFiles[0];
-                }
-            } else {
-                final String filePath = params.lpstrFile.getWideString(0);
+		// folders can only be picked with the help of a hook, see
+		// FolderPickerHook; it is only reachable until the dialog returned
+		final FolderPickerHook hook = open && mode != JnaFileChooser.Mode.Files ?
+			new FolderPickerHook(this, mode == JnaFileChooser.Mode.Directories, multipleSelection,
+				mode == JnaFileChooser.Mode.Directories ? "Select Folder" : "Select") : null;
+		if (hook != null) {
+			hook.install(params);
+		}
 
-                selectedFile = new File(filePath);
-                currentDirectory = selectedFile.getParentFile();
+		try {
+			// only the hook can tell when the dialog is visible
+			boolean approved = open ?
+				Comdlg32.GetOpenFileNameW(params) :
+				Comdlg32.GetSaveFileNameW(params);
+
+	        if (readAhead != null) {
+	            readAhead.cancel();
+	            readAhead = null;
+	        }
+
+	        // clear selection
+	        selectedFiles = null;
+	        rejectedFiles = new File[0];
+
+	        final byte[] captured = hook != null ? hook.getCaptured() : null;
+	        if (captured != null) {
+	            // the dialog was closed by the hook's button
+	            approved = true;
+	            parseSelection(captured);
+	        }
+	        else if (approved) {
+				// nFilterIndex is updated if user changed the selected filter
+				filterIndex = params.nFilterIndex;
+
+	            if (multipleSelection) {
+	                parseSelection(params.lpstrFile.getByteArray(0, bufferSize));
+	            } else {
+	                final String filePath = params.lpstrFile.getWideString(0);
+
+	                selectedFile = new File(filePath);
+	                currentDirectory = selectedFile.getParentFile();
+
+	                selectedFiles = new File[1];
+	                selectedFiles[0] = selectedFile;
+	            }
+
+	            if (open && mode == JnaFileChooser.Mode.Directories) {
+	                // Open was used on files, which don't belong here
+	                approved = keepDirectories();
+	            }
+	        }
+	        if (approved) {
+	            if (open && !contentFilters.isEmpty()) {
+	                approved = validateContent();
+	            }
+	            if (approved && open && readAheadBytes > 0) {
+	                readAhead = ReadAhead.start(selectedFiles, readAheadBytes);
+	            }
+	        }
+			else {
+				final int errCode = Comdlg32.CommDlgExtendedError();
+				// if the code is 0 the user clicked cancel
+				if (errCode != 0) {
+					throw new RuntimeException(
+						"GetOpenFileName failed with error " + errCode);
+				}
+			}
+			return approved;
+		}
+		finally {
+			// the buffers are only needed until the selection is parsed
+			file.close();
+			if (hook != null) {
+				hook.close();
+			}
+		}
+	}
 
-                selectedFiles = new File[1];
-                selectedFiles[0] = selectedFile;
+	/*
+	 * sets the selection from a buffer in the layout GetOpenFileName uses
+	 * for multiple selections
+	 */
+	void parseSelection(byte[] bytes) {
+        final List<String> filePaths = bytesToFilePaths(bytes);
+
+        if (filePaths.size() == 1) {
+            selectedFile = new File(filePaths.get(0));
+            currentDirectory = selectedFile.getParentFile();
+            selectedFiles = new File[1];
+            selectedFiles[0] = selectedFile;
+        } else if (filePaths.size() > 1) {
+            selectedFiles = new File[filePaths.size() - 1];
+            currentDirectory = new File(filePaths.get(0));
+            for (int i = 1; i < filePaths.size(); i++) {
+                selectedFiles[i - 1] = new File(currentDirectory, filePaths.get(i));
             }
+            selectedFile = selectedFiles[0];
         }
-		else {
-			final int errCode = Comdlg32.CommDlgExtendedError();
-			// if the code is 0 the user clicked cancel
-			if (errCode != 0) {
-				throw new RuntimeException(
-					"GetOpenFileName failed with error " + errCode);
+	}
+
+	/*
+	 * drops everything but directories from the selection
+	 *
+	 * @return true if at least one directory is left
+	 */
+	private boolean keepDirectories() {
+		final List<File> dirs = new ArrayList<>();
+		for (final File f : selectedFiles) {
+			if (f.isDirectory()) {
+				dirs.add(f);
 			}
 		}
-		return approved;
+		if (dirs.isEmpty()) {
+			selectedFile = null;
+			selectedFiles = null;
+			return false;
+		}
+		selectedFiles = dirs.toArray(new File[0]);
+		selectedFile = selectedFiles[0];
+		return true;
+	}
+
+	/*
+	 * drops selected files that match none of the content filters
+	 *
+	 * @return true if at least one file is left
+	 */
+	private boolean validateContent() {
+		final List<File> accepted = new ArrayList<>();
+		final List<File> rejected = new ArrayList<>();
+		ContentFilter.partition(contentFilters, selectedFiles, accepted, rejected);
+		rejectedFiles = rejected.toArray(new File[0]);
+		if (accepted.isEmpty()) {
+			selectedFile = null;
+			selectedFiles = null;
+			return false;
+		}
+		selectedFiles = accepted.toArray(new File[0]);
+		selectedFile = selectedFiles[0];
+		return true;
 	}
 
 	/*
@@ -318,7 +450,7 @@ public class WindowsFileChooser
 	 *
 	 * http://msdn.microsoft.com/en-us/library/ms646839.aspx
 	 */
-	private String buildFilterString() {
+	static String buildFilterString(List<String[]> filters) {
 		final StringBuilder filterStr = new StringBuilder();
 		for (final String[] spec : filters) {
 			final String label = spec[0];
@@ -383,6 +515,26 @@ public class WindowsFileChooser
 		this.addToRecent = addToRecent;
 	}
 
+	/**
+	 * sets what the open dialog lets the user pick
+	 *
+	 * In {@link JnaFileChooser.Mode#Directories} and
+	 * {@link JnaFileChooser.Mode#FilesAndDirectories} the dialog gets an
+	 * extra button that returns the items selected in the current folder,
+	 * or the current folder itself if nothing is selected. This uses the
+	 * dialog's hook and template mode, so it looks like the pre-Vista
+	 * explorer-style dialog. The save dialog ignores this.
+	 *
+	 * @param mode the selection mode
+	 */
+	public void setMode(JnaFileChooser.Mode mode) {
+		this.mode = mode;
+	}
+
+	public JnaFileChooser.Mode getMode() {
+		return mode;
+	}
+
 	public boolean isMultipleSelection() {
 		return multipleSelection;
 	}
@@ -403,6 +555,41 @@ public class WindowsFileChooser
 		return selectedFiles;
 	}
 
+	/**
+	 * sets how much of each selected file to read ahead in the background
+	 * after the open dialog was approved
+	 *
+	 * @param bytes the number of bytes per file; 0 disables read-ahead
+	 *
+	 * @see ReadAhead
+	 */
+	public void setReadAheadBytes(long bytes) {
+		this.readAheadBytes = bytes;
+	}
+
+	public long getReadAheadBytes() {
+		return readAheadBytes;
+	}
+
+	/**
+	 * returns the read-ahead started for the last selection
+	 *
+	 * @return the read-ahead; null if none was started
+	 */
+	public ReadAhead getReadAhead() {
+		return readAhead;
+	}
+
+	/**
+	 * returns the files the user selected that were removed from the
+	 * selection because they didn't match any content filter
+	 *
+	 * @return the rejected files; empty if there are none
+	 */
+	public File[] getRejectedFiles() {
+		return rejectedFiles;
+	}
+
 	public static List<String> bytesToFilePaths(byte[] bytes) {
         final List<String> filePaths = new ArrayList<>();
         int from = 0;
@@ -15,6 +15,7 @@ import java.io.File;
 import jnafilechooser.win32.Ole32;
 import jnafilechooser.win32.Shell32;
 
+import com.sun.jna.CallbackReference;
 import com.sun.jna.Memory;
 import com.sun.jna.Native;
 import com.sun.jna.Pointer;
@@ -32,6 +33,8 @@ import com.sun.jna.Pointer;
 public class WindowsFolderBrowser
 {
 	private String title;
+	// keeps the callback reachable while the dialog is open
+	private Shell32.BrowseCallbackProc callback;
 
 	/**
 	 * creates a new folder browser
@@ -76,17 +79,40 @@ public class WindowsFolderBrowser
 		if (title != null) {
 			params.lpszTitle = title;
 		}
-		final Pointer pidl = Shell32.SHBrowseForFolder(params);
-		if (pidl != null) {
-			// MAX_PATH is 260 on Windows XP x32 so 4kB should
-			// be more than big enough
-			final Pointer path = new Memory(1024 * 4);
+		final Runnable visible = BackendSelector.onVisible();
+		callback = new Shell32.BrowseCallbackProc() {
+			@Override
+			public int callback(Pointer hwnd, int uMsg, Pointer lParam, Pointer lpData) {
+				if (uMsg == Shell32.BFFM_INITIALIZED) {
+					visible.run();
+				}
+				return 0;
+			}
+		};
+		params.lpfn = CallbackReference.getFunctionPointer(callback);
+		final Pointer pidl;
+		try {
+			pidl = Shell32.SHBrowseForFolder(params);
+		}
+		finally {
+			callback = null;
+		}
+		if (pidl == null) {
+			return null;
+		}
+		// the PIDL is allocated by the shell and must be freed even if
+		// the conversion fails
+		final NativeAllocations.Allocation handle = NativeAllocations.opened(this, "PIDL", 0);
+		// MAX_PATH is 260 on Windows XP x32 so 4kB should
+		// be more than big enough
+		try (Memory path = NativeAllocations.allocate(this, 1024 * 4)) {
+			path.clear();
 			Shell32.SHGetPathFromIDListW(pidl, path);
-			final String filePath = path.getWideString(0);
-			final File file = new File(filePath);
+			return new File(path.getWideString(0));
+		}
+		finally {
 			Ole32.CoTaskMemFree(pidl);
-			return file;
+			NativeAllocations.closed(handle);
 		}
-		return null;
 	}
 }
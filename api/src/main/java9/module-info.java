@@ -0,0 +1,35 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+/**
+ * The file chooser API with the Swing fallback.
+ *
+ * JNA and the binding modules are optional: a runtime image without them
+ * only has the Swing and terminal choosers, one with jnafilechooser.win32 or
+ * jnafilechooser.gtk (add them with --add-modules when the application is
+ * a module itself) gets the native dialogs through the
+ * {@link jnafilechooser.api.ChooserProvider} services.
+ */
+module jnafilechooser.api {
+	requires transitive java.desktop;
+	requires static com.sun.jna;
+	requires static jnafilechooser.win32;
+	requires static jnafilechooser.gtk;
+
+	exports jnafilechooser.api;
+	// JNA calls the dialog hook and the D-Bus signal handler reflectively
+	opens jnafilechooser.api to com.sun.jna;
+
+	uses jnafilechooser.api.ChooserProvider;
+	provides jnafilechooser.api.ChooserProvider with
+		jnafilechooser.api.WindowsChooserProvider,
+		jnafilechooser.api.GtkChooserProvider,
+		jnafilechooser.api.PortalChooserProvider;
+}
@@ -0,0 +1,124 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Window;
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import jnafilechooser.api.JnaFileChooser.Backend;
+import jnafilechooser.api.JnaFileChooser.Mode;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BackendSelectorTest
+{
+	@Rule
+	public final TemporaryFolder tmp = new TemporaryFolder();
+
+	private final ChooserProvider nativeDialog = new NativeDialog();
+	private final ChooserProvider swing = new SwingDialog();
+	private final List<ChooserProvider> candidates = Arrays.asList(nativeDialog, swing);
+	private BackendSelector selector;
+
+	@Before
+	public void createSelector() {
+		selector = new BackendSelector(new File(tmp.getRoot(), "backends.properties"));
+	}
+
+	@Test
+	public void measuresFirstCandidateFirst() {
+		final BackendSelector.Plan plan = selector.rank(Mode.Files, false, candidates);
+		assertEquals(candidates, plan.order);
+		assertTrue(plan.reason, plan.reason.startsWith("measuring"));
+	}
+
+	@Test
+	public void doesNotMeasureBehindUntimedBackend() {
+		for (int i = 0; i < BackendSelector.MIN_SAMPLES; ++i) {
+			assertSame(nativeDialog, selector.rank(Mode.Files, false, candidates).order.get(0));
+			selector.recordShown(Mode.Files, false, nativeDialog, -1);
+		}
+		for (int i = 0; i < 2 * BackendSelector.MIN_SAMPLES; ++i) {
+			final BackendSelector.Plan plan = selector.rank(Mode.Files, false, candidates);
+			assertEquals(candidates, plan.order);
+			assertEquals("reports no timings, first in the platform order and not demoted", plan.reason);
+			selector.recordShown(Mode.Files, false, nativeDialog, -1);
+		}
+	}
+
+	@Test
+	public void measuresBehindTimedBackend() {
+		for (int i = 0; i < BackendSelector.MIN_SAMPLES; ++i) {
+			selector.recordShown(Mode.Files, false, nativeDialog, 300);
+		}
+		for (int i = 0; i < BackendSelector.MIN_SAMPLES; ++i) {
+			final BackendSelector.Plan plan = selector.rank(Mode.Files, false, candidates);
+			assertSame(swing, plan.order.get(0));
+			assertTrue(plan.reason, plan.reason.startsWith("measuring"));
+			selector.recordShown(Mode.Files, false, swing, 100);
+		}
+		final BackendSelector.Plan plan = selector.rank(Mode.Files, false, candidates);
+		assertEquals(Arrays.asList(swing, nativeDialog), plan.order);
+		assertTrue(plan.reason, plan.reason.startsWith("fastest"));
+	}
+
+	@Test
+	public void keepsObservationsPerMode() {
+		for (int i = 0; i < BackendSelector.MIN_SAMPLES; ++i) {
+			selector.recordShown(Mode.Files, false, nativeDialog, -1);
+		}
+		assertTrue(selector.rank(Mode.Directories, false, candidates).reason.startsWith("measuring"));
+		assertTrue(selector.rank(Mode.Files, true, candidates).reason.startsWith("measuring"));
+	}
+
+	private abstract static class Fake implements ChooserProvider
+	{
+		@Override
+		public boolean isAvailable() {
+			return true;
+		}
+
+		@Override
+		public boolean supports(DialogSpec spec, boolean save) {
+			return true;
+		}
+
+		@Override
+		public Selection show(Window parent, DialogSpec spec, boolean save, File directory, int filterIndex) {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	// the selector keys its records by class, so each fake needs its own
+	private static final class NativeDialog extends Fake
+	{
+		@Override
+		public Backend getBackend() {
+			return Backend.Native;
+		}
+	}
+
+	private static final class SwingDialog extends Fake
+	{
+		@Override
+		public Backend getBackend() {
+			return Backend.Swing;
+		}
+	}
+}
@@ -0,0 +1,51 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ContentSnifferTest
+{
+	private static final byte[] PNG = { (byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A, 0, 0 };
+
+	@Rule
+	public final TemporaryFolder tmp = new TemporaryFolder();
+
+	@Test
+	public void detectsType() throws IOException {
+		final File f = tmp.newFile("a.png");
+		Files.write(f.toPath(), PNG);
+		assertEquals(ContentType.PNG, new ContentSniffer().sniff(f));
+	}
+
+	@Test
+	public void forgetsInterruptedRead() throws IOException {
+		final File f = tmp.newFile("a.png");
+		Files.write(f.toPath(), PNG);
+		final ContentSniffer sniffer = new ContentSniffer();
+		Thread.currentThread().interrupt();
+		try {
+			assertNull(sniffer.sniff(f));
+		}
+		finally {
+			Thread.interrupted();
+		}
+		assertEquals(ContentType.PNG, sniffer.sniff(f));
+	}
+}
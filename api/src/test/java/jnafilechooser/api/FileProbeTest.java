@@ -0,0 +1,61 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileProbeTest
+{
+	@Rule
+	public final TemporaryFolder tmp = new TemporaryFolder();
+
+	@Test
+	public void probesDirectoriesAndFiles() throws IOException {
+		assertEquals(Boolean.TRUE, FileProbe.isDirectory(tmp.getRoot(), FileProbe.TIMEOUT_MILLIS));
+		assertEquals(Boolean.FALSE, FileProbe.isDirectory(tmp.newFile("f"), FileProbe.TIMEOUT_MILLIS));
+	}
+
+	@Test
+	public void exhaustedPoolDoesNotStarveOthers() throws Exception {
+		final ExecutorService pool = FileProbe.newPool("test-probe", 1);
+		final CountDownLatch stuck = new CountDownLatch(1);
+		try {
+			// stands in for a probe hanging on a dead mount
+			pool.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						stuck.await();
+					}
+					catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+			final File dir = tmp.newFolder("d");
+			assertNull(FileProbe.isDirectory(dir, FileProbe.TIMEOUT_MILLIS, pool));
+			assertEquals(Boolean.TRUE, FileProbe.isDirectory(dir, FileProbe.TIMEOUT_MILLIS));
+		}
+		finally {
+			stuck.countDown();
+			pool.shutdown();
+		}
+	}
+}
@@ -0,0 +1,129 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.api;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import jnafilechooser.win32.User32;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/*
+ * only the pure parts of the hook are tested here, so this runs on any
+ * platform: the win32 constants are compile-time constants and nothing
+ * initializes Comdlg32 or User32, whose native registration fails off
+ * Windows
+ */
+public class FolderPickerHookTest
+{
+	@Rule
+	public final TemporaryFolder tmp = new TemporaryFolder();
+
+	@Test
+	public void encodesDirectoryAndNames() {
+		final byte[] bytes = FolderPickerHook.encode("C:\\data", Arrays.asList("a", "b.txt"));
+		assertEquals(Arrays.asList("C:\\data", "a", "b.txt"), WindowsFileChooser.bytesToFilePaths(bytes));
+		// each string and the list itself end with a null character
+		assertEquals(2 * ("C:\\data".length() + 1 + 1 + 1 + 5 + 1 + 1), bytes.length);
+		assertEquals(0, bytes[bytes.length - 1]);
+		assertEquals(0, bytes[bytes.length - 2]);
+	}
+
+	@Test
+	public void encodesDirectoryAlone() {
+		final byte[] bytes = FolderPickerHook.encode("C:\\data", Collections.<String>emptyList());
+		assertEquals(Collections.singletonList("C:\\data"), WindowsFileChooser.bytesToFilePaths(bytes));
+	}
+
+	@Test
+	public void keepsNameAsListed() throws IOException {
+		tmp.newFile("notes");
+		tmp.newFile("notes.txt");
+		assertEquals("notes", FolderPickerHook.resolveName(tmp.getRoot(), "notes"));
+	}
+
+	@Test
+	public void resolvesHiddenExtension() throws IOException {
+		tmp.newFile("notes.txt");
+		tmp.newFile("notes.txt.bak");
+		tmp.newFile("other.md");
+		assertEquals("notes.txt", FolderPickerHook.resolveName(tmp.getRoot(), "notes"));
+	}
+
+	@Test
+	public void keepsAmbiguousName() throws IOException {
+		tmp.newFile("notes.txt");
+		tmp.newFile("notes.md");
+		assertEquals("notes", FolderPickerHook.resolveName(tmp.getRoot(), "notes"));
+	}
+
+	@Test
+	public void ignoresSeveralExtensions() throws IOException {
+		// Explorer hides only the last extension
+		tmp.newFile("backup.tar.gz");
+		assertEquals("backup", FolderPickerHook.resolveName(tmp.getRoot(), "backup"));
+	}
+
+	@Test
+	public void keepsNameInUnreadableDirectory() {
+		final File missing = new File(tmp.getRoot(), "missing");
+		assertEquals("notes", FolderPickerHook.resolveName(missing, "notes"));
+	}
+
+	@Test
+	public void buildsTemplate() {
+		final byte[] bytes = FolderPickerHook.template("Select");
+		final ByteBuffer b = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+		// DLGTEMPLATE
+		assertEquals(User32.WS_CHILD | User32.WS_CLIPSIBLINGS | User32.DS_3DLOOK | User32.DS_CONTROL, b.getInt(0));
+		assertEquals(0, b.getInt(4)); // dwExtendedStyle
+		assertEquals(1, b.getShort(8)); // cdit
+		assertEquals(0, b.getShort(10)); // x
+		assertEquals(0, b.getShort(12)); // y
+		assertEquals(120, b.getShort(14)); // cx
+		assertEquals(20, b.getShort(16)); // cy
+		assertEquals(0, b.getShort(18)); // menu
+		assertEquals(0, b.getShort(20)); // class
+		assertEquals(0, b.getShort(22)); // title
+		// DLGITEMTEMPLATE, on a DWORD boundary
+		assertEquals(User32.WS_CHILD | User32.WS_VISIBLE | User32.WS_TABSTOP | User32.BS_PUSHBUTTON, b.getInt(24));
+		assertEquals(0, b.getInt(28)); // dwExtendedStyle
+		assertEquals(6, b.getShort(32)); // x
+		assertEquals(2, b.getShort(34)); // y
+		assertEquals(100, b.getShort(36)); // cx
+		assertEquals(14, b.getShort(38)); // cy
+		assertEquals(FolderPickerHook.SELECT_BUTTON_ID, b.getShort(40) & 0xFFFF);
+		assertEquals(0xFFFF, b.getShort(42) & 0xFFFF); // predefined class ...
+		assertEquals(0x0080, b.getShort(44)); // ... button
+		final int text = 46;
+		final int end = text + 2 * "Select".length();
+		assertEquals("Select", new String(bytes, text, end - text, StandardCharsets.UTF_16LE));
+		assertEquals(0, b.getShort(end)); // text terminator
+		assertEquals(0, b.getShort(end + 2)); // no creation data
+		assertEquals(end + 4, bytes.length);
+	}
+
+	@Test
+	public void sizesTemplateByLabel() {
+		// the header is 24 bytes whatever the label, only the text grows
+		assertEquals(FolderPickerHook.template("A").length + 2 * 4,
+			FolderPickerHook.template("Abcde").length);
+	}
+}
@@ -0,0 +1,217 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Rectangle;
+import java.awt.Robot;
+import java.awt.Toolkit;
+import java.awt.event.KeyEvent;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.jna.NativeLibrary;
+import com.sun.jna.Platform;
+
+/*
+ * shows the GTK file chooser on a private Xvfb display
+ *
+ * The dialog runs in a child JVM, since the display has to be set before
+ * AWT and GTK start. The child drives it like LatencyHarness does: the
+ * dialog is visible once the screen changes, then keys are sent to it.
+ * The test is skipped where there is no Xvfb or no GTK 3.
+ */
+public class GtkFileChooserTest
+{
+	private static final long WAIT_SECONDS = 60;
+	// exit code of the child if GTK can't be initialized or is too old
+	private static final int NO_GTK = 3;
+
+	@Rule
+	public final TemporaryFolder tmp = new TemporaryFolder();
+
+	private Process xvfb;
+	private int display;
+
+	@BeforeClass
+	public static void checkPlatform() {
+		Assume.assumeTrue("needs Linux", Platform.isLinux());
+		Assume.assumeTrue("needs Xvfb", onPath("Xvfb"));
+		try {
+			NativeLibrary.getInstance("gtk-3");
+		}
+		catch (LinkageError e) {
+			Assume.assumeNoException("needs GTK 3", e);
+		}
+	}
+
+	@Before
+	public void startXvfb() throws IOException, InterruptedException {
+		display = 99;
+		while (new File("/tmp/.X11-unix/X" + display).exists()) {
+			++display;
+		}
+		xvfb = new ProcessBuilder("Xvfb", ":" + display, "-screen", "0", "1280x1024x24", "-nolisten", "tcp")
+			.redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.appendTo(new File("/dev/null")))
+			.start();
+		final File socket = new File("/tmp/.X11-unix/X" + display);
+		for (int i = 0; i < 100 && !socket.exists(); ++i) {
+			Thread.sleep(100);
+		}
+		assertTrue("Xvfb didn't start", socket.exists());
+	}
+
+	@After
+	public void stopXvfb() throws InterruptedException {
+		if (xvfb != null) {
+			xvfb.destroy();
+			xvfb.waitFor();
+		}
+	}
+
+	@Test
+	public void cancelsWithEscape() throws Exception {
+		assertEquals("", child("cancel", tmp.getRoot().getPath()));
+	}
+
+	@Test
+	public void savesDefaultName() throws Exception {
+		assertEquals(new File(tmp.getRoot(), "out.txt").getPath(), child("save", tmp.getRoot().getPath()));
+	}
+
+	// runs main in a child JVM on the display and returns what it printed
+	private String child(String... args) throws Exception {
+		final List<String> cmd = new ArrayList<>();
+		cmd.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+		cmd.add("-cp");
+		cmd.add(System.getProperty("java.class.path"));
+		cmd.add(GtkFileChooserTest.class.getName());
+		for (final String a : args) {
+			cmd.add(a);
+		}
+		final ProcessBuilder pb = new ProcessBuilder(cmd).redirectError(ProcessBuilder.Redirect.INHERIT);
+		pb.environment().put("DISPLAY", ":" + display);
+		final Process p = pb.start();
+		final ExecutorService reader = Executors.newSingleThreadExecutor();
+		try {
+			final Future<String> out = reader.submit(new Callable<String>() {
+				@Override
+				public String call() throws IOException {
+					final StringBuilder sb = new StringBuilder();
+					int c;
+					while ((c = p.getInputStream().read()) >= 0) {
+						sb.append((char) c);
+					}
+					return sb.toString().trim();
+				}
+			});
+			if (!p.waitFor(WAIT_SECONDS, TimeUnit.SECONDS)) {
+				p.destroyForcibly();
+				throw new AssertionError("the dialog didn't close");
+			}
+			Assume.assumeTrue("GTK 3.20 or later can't be initialized", p.exitValue() != NO_GTK);
+			assertEquals("exit code", 0, p.exitValue());
+			return out.get(WAIT_SECONDS, TimeUnit.SECONDS);
+		}
+		finally {
+			reader.shutdownNow();
+		}
+	}
+
+	/*
+	 * the child: shows a dialog in the directory args[1] and, for "cancel",
+	 * presses Escape or, for "save", accepts the default name with Enter.
+	 * Prints the selected path, nothing if cancelled.
+	 */
+	public static void main(String[] args) throws Exception {
+		if (!GtkFileChooser.isAvailable()) {
+			System.exit(NO_GTK);
+		}
+		final boolean save = args[0].equals("save");
+		final GtkFileChooser fc = new GtkFileChooser(new File(args[1]));
+		fc.setDefaultFilename("out.txt");
+		final Robot robot = new Robot();
+		final Rectangle screen = new Rectangle(Toolkit.getDefaultToolkit().getScreenSize());
+		final BufferedImage before = robot.createScreenCapture(screen);
+		final ExecutorService shower = Executors.newSingleThreadExecutor();
+		final Future<Boolean> shown = shower.submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return save ? fc.showSaveDialog(null) : fc.showOpenDialog(null);
+			}
+		});
+		Rectangle changed = null;
+		final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(WAIT_SECONDS / 2);
+		while (changed == null && !shown.isDone() && System.nanoTime() < deadline) {
+			changed = changed(before, robot.createScreenCapture(screen));
+		}
+		if (changed == null) {
+			System.err.println("the dialog never showed up");
+			System.exit(1);
+		}
+		// without a window manager the window under the pointer gets the keys
+		robot.mouseMove(changed.x + changed.width / 2, changed.y + changed.height / 2);
+		robot.delay(1000);
+		final int key = save ? KeyEvent.VK_ENTER : KeyEvent.VK_ESCAPE;
+		robot.keyPress(key);
+		robot.keyRelease(key);
+		final boolean approved = shown.get(WAIT_SECONDS / 2, TimeUnit.SECONDS);
+		System.out.println(approved ? fc.getSelectedFile().getPath() : "");
+		System.exit(0);
+	}
+
+	private static Rectangle changed(BufferedImage a, BufferedImage b) {
+		Rectangle r = null;
+		for (int y = 0; y < a.getHeight(); y += 4) {
+			for (int x = 0; x < a.getWidth(); x += 4) {
+				if (a.getRGB(x, y) != b.getRGB(x, y)) {
+					if (r == null) {
+						r = new Rectangle(x, y, 1, 1);
+					}
+					else {
+						r.add(x, y);
+					}
+				}
+			}
+		}
+		return r;
+	}
+
+	private static boolean onPath(String command) {
+		final String path = System.getenv("PATH");
+		if (path == null) {
+			return false;
+		}
+		for (final String dir : path.split(File.pathSeparator)) {
+			if (new File(dir, command).canExecute()) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
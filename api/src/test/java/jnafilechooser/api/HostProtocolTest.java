@@ -0,0 +1,157 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.api;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.EnumSet;
+
+import org.junit.Test;
+
+public class HostProtocolTest
+{
+	@Test
+	public void roundTripsRequest() throws IOException {
+		final DialogSpec spec = DialogSpec.builder()
+			.mode(JnaFileChooser.Mode.FilesAndDirectories)
+			.multiSelection(true)
+			.search(true)
+			.directorySizes(true)
+			.backend(JnaFileChooser.Backend.Swing)
+			.title("Import")
+			.openButtonText("Import")
+			.saveButtonText("Export")
+			.defaultFileName("r\u00e9sum\u00e9.txt")
+			.addFilter("Images", "png", "jpg")
+			.addFilter("Text", "txt")
+			.addContentFilter("Pictures", ContentType.PNG, ContentType.GIF)
+			.addContentFilter("Documents", ContentType.PDF)
+			.build();
+		final DialogSpec read = roundTrip(spec, new File("/tmp/in"), 2);
+		assertEquals(JnaFileChooser.Mode.FilesAndDirectories, read.getMode());
+		assertTrue(read.isMultiSelection());
+		assertFalse(read.isPreview());
+		assertTrue(read.isSearch());
+		assertFalse(read.isArchiveBrowsing());
+		assertTrue(read.isDirectorySizes());
+		assertEquals(JnaFileChooser.Backend.Swing, read.getBackend());
+		assertEquals("Import", read.getTitle());
+		assertEquals("Import", read.getOpenButtonText());
+		assertEquals("Export", read.getSaveButtonText());
+		assertEquals("r\u00e9sum\u00e9.txt", read.getDefaultFileName());
+		assertEquals(2, read.getFilterSpecs().size());
+		assertArrayEquals(new String[] { "Images", "png", "jpg" }, read.getFilterSpecs().get(0));
+		assertArrayEquals(new String[] { "Text", "txt" }, read.getFilterSpecs().get(1));
+		assertEquals(2, read.getContentFilters().size());
+		assertEquals("Pictures", read.getContentFilters().get(0).getDescription());
+		assertEquals(EnumSet.of(ContentType.PNG, ContentType.GIF), read.getContentFilters().get(0).getTypes());
+		assertEquals("Documents", read.getContentFilters().get(1).getDescription());
+		assertEquals(EnumSet.of(ContentType.PDF), read.getContentFilters().get(1).getTypes());
+		assertEquals(new File("/tmp/in"), read.getCurrentDirectory());
+		assertEquals(2, read.getFilterIndex());
+	}
+
+	@Test
+	public void roundTripsNullDirectory() throws IOException {
+		final DialogSpec read = roundTrip(DialogSpec.builder().preview(true).archiveBrowsing(true).build(), null, 0);
+		assertNull(read.getCurrentDirectory());
+		assertTrue(read.isPreview());
+		assertTrue(read.isArchiveBrowsing());
+		assertTrue(read.getFilterSpecs().isEmpty());
+		assertTrue(read.getContentFilters().isEmpty());
+	}
+
+	@Test
+	public void roundTripsEveryEnumConstant() throws IOException {
+		for (final JnaFileChooser.Mode mode : JnaFileChooser.Mode.values()) {
+			assertEquals(mode, roundTrip(DialogSpec.builder().mode(mode).build(), null, 0).getMode());
+		}
+		for (final JnaFileChooser.Backend backend : JnaFileChooser.Backend.values()) {
+			assertEquals(backend, roundTrip(DialogSpec.builder().backend(backend).build(), null, 0).getBackend());
+		}
+		// the ordinals are written as bytes
+		assertTrue(ContentType.values().length <= 256);
+		for (final ContentType type : ContentType.values()) {
+			final DialogSpec spec = DialogSpec.builder().addContentFilter("t", type).build();
+			assertEquals(EnumSet.of(type), roundTrip(spec, null, 0).getContentFilters().get(0).getTypes());
+		}
+	}
+
+	@Test
+	public void roundTripsSelection() throws IOException {
+		final File[] files = { new File("/tmp/a.txt"), new File("/tmp/b.txt") };
+		final File[] rejected = { new File("/tmp/c.bin") };
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		HostProtocol.writeSelection(new DataOutputStream(bytes),
+			Selection.approved(files, new File("/tmp"), 1, rejected));
+		final Selection read = HostProtocol.readSelection(input(bytes));
+		assertTrue(read.isApproved());
+		assertEquals(Arrays.asList(files), read.getFiles());
+		assertEquals(new File("/tmp"), read.getCurrentDirectory());
+		assertEquals(1, read.getFilterIndex());
+		assertEquals(Arrays.asList(rejected), read.getRejectedFiles());
+	}
+
+	@Test
+	public void roundTripsCancelled() throws IOException {
+		final File[] rejected = { new File("/tmp/c.bin") };
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		HostProtocol.writeSelection(new DataOutputStream(bytes), Selection.cancelled(rejected));
+		final Selection read = HostProtocol.readSelection(input(bytes));
+		assertFalse(read.isApproved());
+		assertNull(read.getCurrentDirectory());
+		assertEquals(Arrays.asList(rejected), read.getRejectedFiles());
+	}
+
+	@Test
+	public void throwsErrorReply() throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		HostProtocol.writeError(new DataOutputStream(bytes), "no display");
+		try {
+			HostProtocol.readSelection(input(bytes));
+			fail();
+		}
+		catch (RuntimeException e) {
+			assertEquals("dialog host failed: no display", e.getMessage());
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsWrongMagic() throws IOException {
+		HostProtocol.readSelection(new DataInputStream(new ByteArrayInputStream(new byte[] { 'J', 'F', 'C', '0', 0 })));
+	}
+
+	private static DialogSpec roundTrip(DialogSpec spec, File directory, int filterIndex) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		HostProtocol.writeRequest(new DataOutputStream(bytes), HostProtocol.OPEN, spec, directory, filterIndex);
+		final DataInputStream in = input(bytes);
+		HostProtocol.readMagic(in);
+		assertEquals(HostProtocol.OPEN, in.readByte());
+		final DialogSpec read = HostProtocol.readSpec(in);
+		assertEquals("trailing bytes", -1, in.read());
+		return read;
+	}
+
+	private static DataInputStream input(ByteArrayOutputStream bytes) {
+		return new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+	}
+}
@@ -0,0 +1,396 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.api;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.jna.Callback;
+import com.sun.jna.Library;
+import com.sun.jna.Native;
+import com.sun.jna.Platform;
+import com.sun.jna.Pointer;
+import com.sun.jna.Structure;
+
+/*
+ * runs the portal chooser against a stand-in portal on a private bus
+ *
+ * Each test starts its own dbus-daemon, so a test can take the bus down.
+ * The tests are skipped where there is no dbus-daemon or no GIO.
+ */
+public class PortalFileChooserTest
+{
+	private static final long WAIT_SECONDS = 10;
+
+	@Rule
+	public final TemporaryFolder tmp = new TemporaryFolder();
+
+	private Process daemon;
+	private String address;
+	private FakePortal portal;
+	private final ExecutorService callers = Executors.newCachedThreadPool();
+
+	@BeforeClass
+	public static void checkPlatform() {
+		Assume.assumeTrue("needs Linux", Platform.isLinux());
+		Assume.assumeTrue("needs dbus-daemon", onPath("dbus-daemon"));
+		try {
+			Gio.INSTANCE.hashCode();
+		}
+		catch (LinkageError e) {
+			Assume.assumeNoException("needs GIO", e);
+		}
+	}
+
+	@Before
+	public void startBus() throws IOException {
+		final File config = tmp.newFile("bus.conf");
+		Files.write(config.toPath(), ("<busconfig><type>session</type>"
+			+ "<listen>unix:dir=" + tmp.getRoot().getAbsolutePath() + "</listen>"
+			+ "<auth>EXTERNAL</auth><policy context='default'>"
+			+ "<allow send_destination='*' eavesdrop='true'/><allow eavesdrop='true'/>"
+			+ "<allow own='*'/></policy></busconfig>").getBytes(StandardCharsets.UTF_8));
+		daemon = new ProcessBuilder("dbus-daemon", "--config-file=" + config, "--nofork", "--print-address")
+			.redirectError(ProcessBuilder.Redirect.INHERIT).start();
+		address = new BufferedReader(new InputStreamReader(daemon.getInputStream(), StandardCharsets.UTF_8))
+			.readLine();
+		assertTrue("dbus-daemon printed no address", address != null && !address.isEmpty());
+		portal = new FakePortal(address);
+	}
+
+	@After
+	public void stopBus() throws InterruptedException {
+		callers.shutdownNow();
+		if (portal != null) {
+			portal.stop();
+		}
+		if (daemon != null) {
+			daemon.destroy();
+			daemon.waitFor();
+		}
+	}
+
+	@Test
+	public void opensFiles() {
+		portal.respond = true;
+		assertTrue(PortalFileChooser.isAvailable(address));
+		final PortalFileChooser fc = new PortalFileChooser(address);
+		fc.addFilter("Text", "txt");
+		fc.setMultiSelectionEnabled(true);
+		assertTrue(fc.showOpenDialog(null));
+		assertArrayEquals(new File[] { new File("/tmp/a.txt"), new File("/tmp/b c.txt") }, fc.getSelectedFiles());
+		assertEquals(1, fc.getFilterIndex());
+	}
+
+	@Test
+	public void answersAvailabilityWhileDialogIsOpen() throws Exception {
+		final PortalFileChooser fc = new PortalFileChooser(address);
+		final Future<Boolean> shown = show(fc);
+		assertEquals("OpenFile", portal.next());
+		final Future<Boolean> available = callers.submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return PortalFileChooser.isAvailable(address);
+			}
+		});
+		assertTrue(available.get(1, TimeUnit.SECONDS));
+		fc.cancel();
+		assertFalse(shown.get(WAIT_SECONDS, TimeUnit.SECONDS));
+		assertEquals("Close", portal.next());
+	}
+
+	@Test
+	public void closesDialogAfterTimeout() throws Exception {
+		final PortalFileChooser fc = new PortalFileChooser(address);
+		fc.setTimeout(300);
+		final long started = System.nanoTime();
+		assertFalse(show(fc).get(WAIT_SECONDS, TimeUnit.SECONDS));
+		assertTrue(System.nanoTime() - started >= TimeUnit.MILLISECONDS.toNanos(300));
+		assertEquals("OpenFile", portal.next());
+		assertEquals("Close", portal.next());
+	}
+
+	@Test
+	public void closesDialogWhenInterrupted() throws Exception {
+		final PortalFileChooser fc = new PortalFileChooser(address);
+		final CountDownLatch started = new CountDownLatch(1);
+		final Thread[] caller = new Thread[1];
+		final Future<Boolean> interrupted = callers.submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				caller[0] = Thread.currentThread();
+				started.countDown();
+				assertFalse(fc.showOpenDialog(null));
+				return Thread.interrupted();
+			}
+		});
+		started.await();
+		assertEquals("OpenFile", portal.next());
+		caller[0].interrupt();
+		assertTrue(interrupted.get(WAIT_SECONDS, TimeUnit.SECONDS));
+		assertEquals("Close", portal.next());
+	}
+
+	@Test
+	public void failsWhenPortalLeaves() throws Exception {
+		final PortalFileChooser fc = new PortalFileChooser(address);
+		final Future<Boolean> shown = show(fc);
+		assertEquals("OpenFile", portal.next());
+		portal.releaseName();
+		assertFailed(shown);
+		assertFalse(PortalFileChooser.isAvailable(address));
+	}
+
+	@Test
+	public void failsWhenBusGoesAway() throws Exception {
+		final PortalFileChooser fc = new PortalFileChooser(address);
+		final Future<Boolean> shown = show(fc);
+		assertEquals("OpenFile", portal.next());
+		daemon.destroy();
+		assertFailed(shown);
+	}
+
+	private Future<Boolean> show(final PortalFileChooser fc) {
+		return callers.submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return fc.showOpenDialog(null);
+			}
+		});
+	}
+
+	private static void assertFailed(Future<Boolean> shown) throws Exception {
+		try {
+			shown.get(WAIT_SECONDS, TimeUnit.SECONDS);
+			fail("the dialog didn't fail");
+		}
+		catch (java.util.concurrent.ExecutionException e) {
+			assertTrue(e.getCause() instanceof RuntimeException);
+		}
+	}
+
+	private static boolean onPath(String command) {
+		final String path = System.getenv("PATH");
+		if (path == null) {
+			return false;
+		}
+		for (final String dir : path.split(File.pathSeparator)) {
+			if (new File(dir, command).canExecute()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * the GIO calls the stand-in portal needs beyond the ones of the gtk
+	 * module
+	 */
+	public interface Gio extends Library
+	{
+		Gio INSTANCE = Native.load("gio-2.0", Gio.class);
+
+		Pointer g_main_context_new();
+		void g_main_context_push_thread_default(Pointer context);
+		Pointer g_main_loop_new(Pointer context, boolean running);
+		void g_main_loop_run(Pointer loop);
+		void g_main_loop_quit(Pointer loop);
+
+		Pointer g_dbus_connection_new_for_address_sync(String address, int flags, Pointer observer,
+			Pointer cancellable, Pointer error);
+		boolean g_dbus_connection_close_sync(Pointer connection, Pointer cancellable, Pointer error);
+		Pointer g_dbus_connection_call_sync(Pointer connection, String busName, String objectPath,
+			String interfaceName, String methodName, Pointer parameters, Pointer replyType, int flags,
+			int timeoutMsec, Pointer cancellable, Pointer error);
+		boolean g_dbus_connection_emit_signal(Pointer connection, String destination, String objectPath,
+			String interfaceName, String signalName, Pointer parameters, Pointer error);
+		int g_dbus_connection_register_object(Pointer connection, String objectPath, Pointer interfaceInfo,
+			VTable vtable, Pointer userData, Pointer userDataFreeFunc, Pointer error);
+		Pointer g_dbus_node_info_new_for_xml(String xml, Pointer error);
+		Pointer g_dbus_node_info_lookup_interface(Pointer info, String name);
+		void g_dbus_method_invocation_return_value(Pointer invocation, Pointer parameters);
+
+		Pointer g_variant_new_parsed(String format);
+		Pointer g_variant_print(Pointer value, boolean typeAnnotate);
+	}
+
+	public interface MethodCall extends Callback
+	{
+		void invoke(Pointer connection, String sender, String objectPath, String interfaceName,
+			String methodName, Pointer parameters, Pointer invocation, Pointer userData);
+	}
+
+	public interface GetProperty extends Callback
+	{
+		Pointer invoke(Pointer connection, String sender, String objectPath, String interfaceName,
+			String propertyName, Pointer error, Pointer userData);
+	}
+
+	// GDBusInterfaceVTable
+	public static class VTable extends Structure
+	{
+		public MethodCall method_call;
+		public GetProperty get_property;
+		public Pointer set_property;
+		public Pointer[] padding = new Pointer[8];
+
+		@Override
+		protected List<String> getFieldOrder() {
+			return Arrays.asList("method_call", "get_property", "set_property", "padding");
+		}
+	}
+
+	/*
+	 * owns org.freedesktop.portal.Desktop and serves FileChooser version 4
+	 *
+	 * It answers OpenFile with a request handle and, if told to respond,
+	 * sends the Response right away. Otherwise the request stays open
+	 * until it is closed. The methods called are queued for the test.
+	 */
+	static final class FakePortal
+	{
+		private static final String XML = "<node>"
+			+ "<interface name='org.freedesktop.portal.FileChooser'>"
+			+ "<method name='OpenFile'><arg type='s' direction='in'/><arg type='s' direction='in'/>"
+			+ "<arg type='a{sv}' direction='in'/><arg type='o' direction='out'/></method>"
+			+ "<property name='version' type='u' access='read'/></interface>"
+			+ "<interface name='org.freedesktop.portal.Request'><method name='Close'/></interface>"
+			+ "</node>";
+
+		volatile boolean respond;
+		private final BlockingQueue<String> calls = new LinkedBlockingQueue<>();
+		private final Gio gio = Gio.INSTANCE;
+		private final Pointer node = gio.g_dbus_node_info_new_for_xml(XML, null);
+		private final VTable vtable = new VTable();
+		private final CountDownLatch ready = new CountDownLatch(1);
+		private final Thread thread;
+		private volatile Pointer connection;
+		private volatile Pointer loop;
+
+		FakePortal(final String address) {
+			vtable.method_call = new MethodCall() {
+				@Override
+				public void invoke(Pointer connection, String sender, String objectPath,
+						String interfaceName, String methodName, Pointer parameters,
+						Pointer invocation, Pointer userData) {
+					if (methodName.equals("OpenFile")) {
+						open(sender, parameters, invocation);
+					}
+					else {
+						gio.g_dbus_method_invocation_return_value(invocation, null);
+					}
+					calls.add(methodName);
+				}
+			};
+			vtable.get_property = new GetProperty() {
+				@Override
+				public Pointer invoke(Pointer connection, String sender, String objectPath,
+						String interfaceName, String propertyName, Pointer error, Pointer userData) {
+					return gio.g_variant_new_parsed("uint32 4");
+				}
+			};
+			vtable.write();
+			thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					// method calls are dispatched in this thread's context
+					final Pointer context = gio.g_main_context_new();
+					gio.g_main_context_push_thread_default(context);
+					connection = gio.g_dbus_connection_new_for_address_sync(address,
+						jnafilechooser.gtk.Gio.G_DBUS_CONNECTION_FLAGS_AUTHENTICATION_CLIENT
+						| jnafilechooser.gtk.Gio.G_DBUS_CONNECTION_FLAGS_MESSAGE_BUS_CONNECTION,
+						null, null, null);
+					gio.g_dbus_connection_register_object(connection, "/org/freedesktop/portal/desktop",
+						gio.g_dbus_node_info_lookup_interface(node, "org.freedesktop.portal.FileChooser"),
+						vtable, null, null, null);
+					nameCall("RequestName", "('org.freedesktop.portal.Desktop', uint32 0)");
+					loop = gio.g_main_loop_new(context, false);
+					ready.countDown();
+					gio.g_main_loop_run(loop);
+				}
+			}, "fake-portal");
+			thread.setDaemon(true);
+			thread.start();
+			try {
+				ready.await();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		// portal thread
+		private void open(String sender, Pointer parameters, Pointer invocation) {
+			final String options = gio.g_variant_print(parameters, false).getString(0);
+			final String token = options.replaceAll("(?s).*'handle_token': <'([^']*)'>.*", "$1");
+			final String handle = "/org/freedesktop/portal/desktop/request/"
+				+ sender.substring(1).replace('.', '_') + "/" + token;
+			gio.g_dbus_connection_register_object(connection, handle,
+				gio.g_dbus_node_info_lookup_interface(node, "org.freedesktop.portal.Request"),
+				vtable, null, null, null);
+			gio.g_dbus_method_invocation_return_value(invocation,
+				gio.g_variant_new_parsed("(objectpath '" + handle + "',)"));
+			if (respond) {
+				gio.g_dbus_connection_emit_signal(connection, sender, handle,
+					"org.freedesktop.portal.Request", "Response", gio.g_variant_new_parsed(
+						"(uint32 0, {'uris': <['file:///tmp/a.txt', 'file:///tmp/b%20c.txt']>,"
+						+ " 'current_filter': <('Text', [(uint32 0, '*.txt')])>})"), null);
+			}
+		}
+
+		// the next method the chooser called
+		String next() throws InterruptedException {
+			return calls.poll(WAIT_SECONDS, TimeUnit.SECONDS);
+		}
+
+		void releaseName() {
+			nameCall("ReleaseName", "('org.freedesktop.portal.Desktop',)");
+		}
+
+		private void nameCall(String method, String parameters) {
+			gio.g_dbus_connection_call_sync(connection, "org.freedesktop.DBus", "/org/freedesktop/DBus",
+				"org.freedesktop.DBus", method, gio.g_variant_new_parsed(parameters), null, 0, -1, null, null);
+		}
+
+		void stop() throws InterruptedException {
+			gio.g_main_loop_quit(loop);
+			thread.join();
+			gio.g_dbus_connection_close_sync(connection, null, null);
+		}
+	}
+}
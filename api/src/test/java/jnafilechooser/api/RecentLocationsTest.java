@@ -0,0 +1,109 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RecentLocationsTest
+{
+	@Rule
+	public final TemporaryFolder tmp = new TemporaryFolder();
+
+	@Test
+	public void reloadsAppendedRecords() throws IOException {
+		final File data = new File(tmp.getRoot(), "store/recent.dat");
+		final RecentLocations store = new RecentLocations(data);
+		final File a = new File(tmp.getRoot(), "a.txt").getAbsoluteFile();
+		final File b = new File(tmp.getRoot(), "b.txt").getAbsoluteFile();
+		store.record("import", tmp.getRoot(), 2, new File[] { a });
+		store.record("import", tmp.getRoot(), 3, new File[] { b });
+		store.record("export", null, 0, null);
+
+		final RecentLocations reloaded = new RecentLocations(data);
+		final RecentLocations.Entry imp = reloaded.get("import");
+		assertEquals(tmp.getRoot().getAbsoluteFile(), imp.getDirectory());
+		assertEquals(3, imp.getFilterIndex());
+		// newest first
+		assertEquals(Arrays.asList(b, a), imp.getRecentFiles());
+		final RecentLocations.Entry exp = reloaded.get("export");
+		assertNull(exp.getDirectory());
+		assertTrue(exp.getRecentFiles().isEmpty());
+		assertNull(reloaded.get("unknown"));
+	}
+
+	@Test
+	public void ignoresTruncatedLastRecord() throws IOException {
+		final File data = new File(tmp.getRoot(), "recent.dat");
+		new RecentLocations(data).record("first", tmp.getRoot(), 1, null);
+		final long intact = data.length();
+		new RecentLocations(data).record("second", tmp.getRoot(), 1, null);
+		try (RandomAccessFile raf = new RandomAccessFile(data, "rw")) {
+			raf.setLength(data.length() - 3);
+		}
+
+		final RecentLocations store = new RecentLocations(data);
+		assertNotNull(store.get("first"));
+		assertNull(store.get("second"));
+		// the torn record is cut off before the next append
+		store.record("third", tmp.getRoot(), 1, null);
+		assertTrue(data.length() > intact);
+		final RecentLocations reloaded = new RecentLocations(data);
+		assertNotNull(reloaded.get("first"));
+		assertNotNull(reloaded.get("third"));
+	}
+
+	@Test
+	public void ignoresCorruptedChecksum() throws IOException {
+		final File data = new File(tmp.getRoot(), "recent.dat");
+		new RecentLocations(data).record("first", tmp.getRoot(), 1, null);
+		new RecentLocations(data).record("second", tmp.getRoot(), 1, null);
+		try (RandomAccessFile raf = new RandomAccessFile(data, "rw")) {
+			// the last byte of the payload of the last record
+			raf.seek(data.length() - 1);
+			final int last = raf.read();
+			raf.seek(data.length() - 1);
+			raf.write(last ^ 0xFF);
+		}
+
+		final RecentLocations store = new RecentLocations(data);
+		assertNotNull(store.get("first"));
+		assertNull(store.get("second"));
+	}
+
+	@Test
+	public void compactsSupersededRecords() throws IOException {
+		final File data = new File(tmp.getRoot(), "recent.dat");
+		final RecentLocations store = new RecentLocations(data);
+		final char[] name = new char[200];
+		Arrays.fill(name, 'd');
+		final File dir = new File(tmp.getRoot(), new String(name));
+		long largest = 0;
+		for (int i = 0; i < 500; ++i) {
+			store.record("same", dir, i, null);
+			largest = Math.max(largest, data.length());
+		}
+		// every record is over 200 bytes, 500 of them never fit below 64 KB
+		assertTrue(largest >= 64 * 1024);
+		assertTrue(data.length() < largest);
+		assertEquals(499, new RecentLocations(data).get("same").getFilterIndex());
+	}
+}
@@ -0,0 +1,81 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.api;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class TypeAheadTest
+{
+	private static final TypeAhead.Keys KEYS = TypeAhead.Keys.build(
+		new String[] { "b.txt", "Apple", "ab", "abc", "B", "\u00c9t\u00e9", "\u00e9cole" }, 0);
+
+	@Test
+	public void foldsCaseAndNormalizes() {
+		assertEquals("readme.txt", TypeAhead.Keys.fold("README.txt"));
+		// a decomposed e with acute accent composes to U+00E9
+		assertEquals("\u00e9cole", TypeAhead.Keys.fold("E\u0301cole"));
+		assertEquals("\u00e9t\u00e9", TypeAhead.Keys.fold("\u00c9t\u00e9"));
+	}
+
+	@Test
+	public void sortsKeysWithTheirRows() {
+		assertArrayEquals(new String[] { "ab", "abc", "apple", "b", "b.txt", "\u00e9cole", "\u00e9t\u00e9" },
+			KEYS.keys);
+		assertArrayEquals(new int[] { 2, 3, 1, 4, 0, 6, 5 }, KEYS.rows);
+	}
+
+	@Test
+	public void boundsPrefixRange() {
+		final int n = KEYS.keys.length;
+		assertEquals(0, KEYS.lowerBound("a", 0, n));
+		assertEquals(3, KEYS.upperBound("a", 0, n));
+		assertEquals(0, KEYS.lowerBound("ab", 0, n));
+		assertEquals(2, KEYS.upperBound("ab", 0, n));
+		assertEquals(3, KEYS.lowerBound("b", 0, n));
+		assertEquals(5, KEYS.upperBound("b", 0, n));
+		assertEquals(5, KEYS.lowerBound("\u00e9", 0, n));
+		assertEquals(7, KEYS.upperBound("\u00e9", 0, n));
+	}
+
+	@Test
+	public void boundsEmptyRange() {
+		final int n = KEYS.keys.length;
+		// between abc and apple
+		assertEquals(2, KEYS.lowerBound("ac", 0, n));
+		assertEquals(2, KEYS.upperBound("ac", 0, n));
+		// between b.txt and the accented keys
+		assertEquals(5, KEYS.lowerBound("z", 0, n));
+		assertEquals(5, KEYS.upperBound("z", 0, n));
+		// past the end
+		assertEquals(n, KEYS.lowerBound("\u00ff", 0, n));
+		assertEquals(n, KEYS.upperBound("\u00ff", 0, n));
+	}
+
+	@Test
+	public void narrowsWithinRange() {
+		// a longer prefix only searches the range of the shorter one
+		final StringBuilder prefix = new StringBuilder("a");
+		int lo = KEYS.lowerBound(prefix, 0, KEYS.keys.length);
+		int hi = KEYS.upperBound(prefix, lo, KEYS.keys.length);
+		prefix.append('b');
+		lo = KEYS.lowerBound(prefix, lo, hi);
+		hi = KEYS.upperBound(prefix, lo, hi);
+		assertEquals(0, lo);
+		assertEquals(2, hi);
+		prefix.append('c');
+		lo = KEYS.lowerBound(prefix, lo, hi);
+		hi = KEYS.upperBound(prefix, lo, hi);
+		assertEquals(1, lo);
+		assertEquals(2, hi);
+	}
+}
@@ -0,0 +1,80 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.api;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+/*
+ * tests the parsing of GetOpenFileName buffers; nothing here calls into
+ * Comdlg32, so it runs on any platform
+ */
+public class WindowsFileChooserTest
+{
+	@Test
+	public void parsesSingleFile() {
+		final File file = new File(new File("data"), "a.txt");
+		final WindowsFileChooser fc = new WindowsFileChooser();
+		fc.parseSelection(FolderPickerHook.encode(file.getPath(), Collections.<String>emptyList()));
+		assertEquals(file, fc.getSelectedFile());
+		assertArrayEquals(new File[] { file }, fc.getSelectedFiles());
+		assertEquals(file.getParentFile(), fc.getCurrentDirectory());
+	}
+
+	@Test
+	public void parsesMultipleFiles() {
+		final File dir = new File("data");
+		final WindowsFileChooser fc = new WindowsFileChooser();
+		fc.parseSelection(FolderPickerHook.encode(dir.getPath(), Arrays.asList("a.txt", "sub")));
+		assertArrayEquals(new File[] { new File(dir, "a.txt"), new File(dir, "sub") }, fc.getSelectedFiles());
+		assertEquals(new File(dir, "a.txt"), fc.getSelectedFile());
+		assertEquals(dir, fc.getCurrentDirectory());
+	}
+
+	@Test
+	public void keepsSelectionOfEmptyBuffer() {
+		final WindowsFileChooser fc = new WindowsFileChooser();
+		fc.parseSelection(new byte[4]);
+		assertEquals(null, fc.getSelectedFile());
+	}
+
+	@Test
+	public void roundTripsWideCharacters() {
+		// U+0100 encodes as 00 01 and the surrogate pair has zero bytes too,
+		// none of them may be taken for a terminator
+		final String dir = "C:\\\u0100\u00e9";
+		final String name = "\ud83d\udcc4 \u65e5\u672c.txt";
+		assertEquals(Arrays.asList(dir, name),
+			WindowsFileChooser.bytesToFilePaths(FolderPickerHook.encode(dir, Collections.singletonList(name))));
+	}
+
+	@Test
+	public void stopsAtEmptyString() {
+		final byte[] head = FolderPickerHook.encode("C:\\data", Collections.singletonList("a"));
+		final byte[] stale = "stale\0".getBytes(StandardCharsets.UTF_16LE);
+		final byte[] bytes = Arrays.copyOf(head, head.length + stale.length);
+		System.arraycopy(stale, 0, bytes, head.length, stale.length);
+		assertEquals(Arrays.asList("C:\\data", "a"), WindowsFileChooser.bytesToFilePaths(bytes));
+	}
+
+	@Test
+	public void ignoresUnterminatedTail() {
+		final byte[] bytes = "C:\\data".getBytes(StandardCharsets.UTF_16LE);
+		assertTrue(WindowsFileChooser.bytesToFilePaths(bytes).isEmpty());
+	}
+}
@@ -0,0 +1,244 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.demo;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import javax.swing.JFileChooser;
+
+import jnafilechooser.api.ChooserProvider;
+import jnafilechooser.api.DialogSpec;
+import jnafilechooser.api.JnaFileChooser;
+
+/**
+ * Measures runtime images built with jlink for each backend configuration.
+ *
+ * swing   jnafilechooser.api only, the Swing and terminal choosers
+ * gtk     plus jnafilechooser.gtk and JNA, the GTK dialog and the portal
+ * win32   plus jnafilechooser.win32 and JNA, the Windows dialogs
+ * all     all of the above
+ *
+ * Every image is linked with --strip-debug --no-header-files --no-man-pages
+ * --compress=2. One JSON object per line is written for every image with
+ * its size, the size of lib/modules and the wall clock time of starting it
+ * with a probe that finds the chooser providers and creates the Swing
+ * fallback headless. The time is the median of the runs; null if the image
+ * can't run here, e.g. because it was linked from the jmods of another
+ * platform.
+ *
+ * jlink only takes modules with a module-info, so JNA has to come from the
+ * jna-jpms artifact; by default it is looked up in the local Maven
+ * repository. The jnafilechooser modules are taken from the target
+ * directories of a "mvn package" build run with Java 9 or later.
+ *
+ * Example:
+ * java -cp demo.jar jnafilechooser.demo.ImageHarness --jna jna-jpms-5.13.0.jar --out images.jsonl
+ */
+public class ImageHarness
+{
+	private static final String[][] CONFIGURATIONS = {
+		{ "swing", "jnafilechooser.api" },
+		{ "gtk", "jnafilechooser.api", "jnafilechooser.gtk" },
+		{ "win32", "jnafilechooser.api", "jnafilechooser.win32" },
+		{ "all", "jnafilechooser.api", "jnafilechooser.gtk", "jnafilechooser.win32" },
+	};
+
+	public static void main(String[] args) throws Exception {
+		if (args.length == 1 && args[0].equals("--probe")) {
+			probe();
+			return;
+		}
+		final File javaHome = new File(System.getProperty("java.home"));
+		String modulePath = "api/target" + File.pathSeparator + "gtk/target"
+			+ File.pathSeparator + "win32/target";
+		File jna = new File(System.getProperty("user.home"),
+			".m2/repository/net/java/dev/jna/jna-jpms/5.13.0/jna-jpms-5.13.0.jar");
+		File jmods = new File(javaHome, "jmods");
+		File root = new File(System.getProperty("java.io.tmpdir"), "jnafilechooser-images");
+		String out = null;
+		int runs = 10;
+		for (int i = 0; i < args.length; ++i) {
+			if (args[i].equals("--module-path") && i + 1 < args.length) {
+				modulePath = args[++i];
+			}
+			else if (args[i].equals("--jna") && i + 1 < args.length) {
+				jna = new File(args[++i]);
+			}
+			else if (args[i].equals("--jmods") && i + 1 < args.length) {
+				jmods = new File(args[++i]);
+			}
+			else if (args[i].equals("--root") && i + 1 < args.length) {
+				root = new File(args[++i]);
+			}
+			else if (args[i].equals("--runs") && i + 1 < args.length) {
+				runs = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("--out") && i + 1 < args.length) {
+				out = args[++i];
+			}
+			else {
+				System.err.println("usage: ImageHarness [--module-path path] [--jna jar]"
+					+ " [--jmods dir] [--root dir] [--runs n] [--out file]");
+				System.exit(2);
+			}
+		}
+		final File jlink = new File(new File(javaHome, "bin"), "jlink");
+		if (!jlink.exists() && !new File(jlink.getPath() + ".exe").exists()) {
+			System.err.println("ImageHarness needs a JDK with jlink, not " + javaHome);
+			System.exit(2);
+		}
+		final String path = jmods + File.pathSeparator + modulePath
+			+ (jna.isFile() ? File.pathSeparator + jna : "");
+
+		final PrintStream result = out != null ?
+			new PrintStream(new FileOutputStream(out), true, "UTF-8") : System.out;
+		result.println(String.format(Locale.ROOT,
+			"{\"type\":\"environment\",\"java\":%s,\"os\":%s,\"jmods\":%s,\"jna\":%s}",
+			quote(System.getProperty("java.version")),
+			quote(System.getProperty("os.name") + " " + System.getProperty("os.version")),
+			quote(jmods.getPath()), jna.isFile() ? quote(jna.getPath()) : "null"));
+
+		for (final String[] config : CONFIGURATIONS) {
+			final String name = config[0];
+			final List<String> modules = Arrays.asList(config).subList(1, config.length);
+			final File image = new File(root, name);
+			final StringBuilder sb = new StringBuilder();
+			sb.append("{\"type\":\"image\",\"name\":").append(quote(name));
+			sb.append(",\"modules\":").append(quote(String.join(",", modules)));
+			final String error = link(jlink, path, modules, image);
+			if (error != null) {
+				sb.append(",\"error\":").append(quote(error)).append('}');
+				result.println(sb);
+				continue;
+			}
+			sb.append(",\"sizeBytes\":").append(size(image));
+			sb.append(",\"modulesFileBytes\":").append(new File(image, "lib/modules").length());
+			final List<Long> times = new ArrayList<>();
+			String probe = null;
+			final File java = new File(new File(image, "bin"), "java");
+			if (java.canExecute()) {
+				for (int i = 0; i < runs; ++i) {
+					final long start = System.nanoTime();
+					probe = run(java.getPath(), "-Djava.awt.headless=true",
+						"-cp", classPath(), ImageHarness.class.getName(), "--probe");
+					times.add(System.nanoTime() - start);
+				}
+				Collections.sort(times);
+			}
+			sb.append(",\"startupMedianMs\":").append(times.isEmpty() ? "null" :
+				String.format(Locale.ROOT, "%.1f", times.get(times.size() / 2) / 1e6));
+			sb.append(",\"startupMinMs\":").append(times.isEmpty() ? "null" :
+				String.format(Locale.ROOT, "%.1f", times.get(0) / 1e6));
+			sb.append(",\"providers\":").append(probe != null ? probe.trim() : "null");
+			sb.append('}');
+			result.println(sb);
+		}
+		result.close();
+	}
+
+	/*
+	 * what an application does before its first dialog: find the backends
+	 * and set up the Swing fallback; prints the providers as JSON
+	 */
+	private static void probe() {
+		DialogSpec.builder().addFilter("Pictures", "png", "jpg").build();
+		final StringBuilder sb = new StringBuilder("[");
+		for (final ChooserProvider p : JnaFileChooser.getChooserProviders()) {
+			if (sb.length() > 1) {
+				sb.append(',');
+			}
+			sb.append("{\"name\":").append(quote(p.toString()));
+			sb.append(",\"backend\":").append(quote(p.getBackend().name()));
+			sb.append(",\"available\":").append(p.isAvailable()).append('}');
+		}
+		new JFileChooser();
+		System.out.println(sb.append(']'));
+	}
+
+	// returns null on success or the output of jlink
+	private static String link(File jlink, String modulePath, List<String> modules, File image)
+			throws IOException, InterruptedException {
+		delete(image);
+		final List<String> cmd = new ArrayList<>();
+		Collections.addAll(cmd, jlink.getPath(), "--module-path", modulePath,
+			"--add-modules", String.join(",", modules), "--output", image.getPath(),
+			"--strip-debug", "--no-header-files", "--no-man-pages", "--compress=2");
+		final Process p = new ProcessBuilder(cmd).redirectErrorStream(true).start();
+		final String output = read(p);
+		return p.waitFor() == 0 ? null : output.trim();
+	}
+
+	// returns the standard output, or null if the process failed
+	private static String run(String... cmd) throws IOException, InterruptedException {
+		final Process p = new ProcessBuilder(cmd)
+			.redirectError(ProcessBuilder.Redirect.INHERIT).start();
+		final String output = read(p);
+		return p.waitFor() == 0 ? output : null;
+	}
+
+	private static String read(Process p) throws IOException {
+		final StringBuilder sb = new StringBuilder();
+		try (final BufferedReader r = new BufferedReader(
+				new InputStreamReader(p.getInputStream(), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = r.readLine()) != null) {
+				sb.append(line).append('\n');
+			}
+		}
+		return sb.toString();
+	}
+
+	// where the harness was loaded from; the api has to come from the image
+	private static String classPath() {
+		return new File(ImageHarness.class.getProtectionDomain().getCodeSource()
+			.getLocation().getPath()).getPath();
+	}
+
+	private static long size(File f) {
+		if (!f.isDirectory()) {
+			return f.length();
+		}
+		long size = 0;
+		final File[] children = f.listFiles();
+		if (children != null) {
+			for (final File child : children) {
+				size += size(child);
+			}
+		}
+		return size;
+	}
+
+	private static void delete(File f) throws IOException {
+		final File[] children = f.listFiles();
+		if (children != null) {
+			for (final File child : children) {
+				delete(child);
+			}
+		}
+		if (f.exists() && !f.delete()) {
+			throw new IOException("can't delete " + f);
+		}
+	}
+
+	private static String quote(String s) {
+		return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+	}
+}
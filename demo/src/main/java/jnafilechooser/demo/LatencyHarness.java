@@ -0,0 +1,652 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.demo;
+
+import java.awt.AWTEvent;
+import java.awt.Component;
+import java.awt.Container;
+import java.awt.GraphicsEnvironment;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.Robot;
+import java.awt.Toolkit;
+import java.awt.Window;
+import java.awt.event.AWTEventListener;
+import java.awt.event.KeyEvent;
+import java.awt.event.WindowEvent;
+import java.awt.image.BufferedImage;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import javax.swing.JFileChooser;
+import javax.swing.JList;
+import javax.swing.JTextField;
+import javax.swing.ListModel;
+import javax.swing.RepaintManager;
+import javax.swing.SwingUtilities;
+import javax.swing.UIManager;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+
+import jnafilechooser.api.GtkFileChooser;
+import jnafilechooser.api.JnaFileChooser;
+import jnafilechooser.api.JnaFileChooser.Backend;
+
+import com.sun.jna.Platform;
+
+/**
+ * Measures the latency of the file dialogs end to end.
+ *
+ * For every requested size a directory with that many entries is created
+ * (and kept for later runs), the dialog is opened on it and driven with
+ * java.awt.Robot the way a user would. One JSON object per line is written
+ * for every run:
+ *
+ * timeToVisibleMs   from showOpenDialog until the dialog window is opened
+ * timeToFirstRowMs  until the file list has its first entry
+ * timeToAllRowsMs   until the file list has all entries
+ * navigateInMs      from typing "sub" + Enter until the subdirectory is listed
+ * navigateOutMs     from typing ".." + Enter until the directory is listed again
+ * scrollFrameMs     percentiles of the Swing paint passes while scrolling
+ * closeMs           native only: from pressing Escape until showOpenDialog returned
+ *
+ * The Swing fallback is measured by default. With --backend gtk (or
+ * native) the native dialog is measured instead. Its window can't be
+ * looked into, so it counts as visible when the screen first changes and
+ * is closed with Escape; only timeToVisibleMs and closeMs are measured.
+ *
+ * Values that couldn't be measured in time are null. On Linux without a
+ * display the harness starts Xvfb and runs itself again inside it.
+ *
+ * Example:
+ * java -cp demo.jar jnafilechooser.demo.LatencyHarness --sizes 10,10000,1000000 --out latency.jsonl
+ * java -cp demo.jar jnafilechooser.demo.LatencyHarness --backend gtk --sizes 10,10000
+ */
+public class LatencyHarness
+{
+	private static final long TIMEOUT_MILLIS = 120000;
+	private static final int SUBDIRECTORY_ENTRIES = 10;
+	private static final int SCROLL_STEPS = 60;
+
+	public static void main(String[] args) throws Exception {
+		final List<Integer> sizes = new ArrayList<>();
+		File root = new File(System.getProperty("java.io.tmpdir"), "jnafilechooser-harness");
+		String out = null;
+		Backend backend = Backend.Swing;
+		for (int i = 0; i < args.length; ++i) {
+			if (args[i].equals("--sizes") && i + 1 < args.length) {
+				for (final String s : args[++i].split(",")) {
+					sizes.add(Integer.parseInt(s.trim()));
+				}
+			}
+			else if (args[i].equals("--root") && i + 1 < args.length) {
+				root = new File(args[++i]);
+			}
+			else if (args[i].equals("--out") && i + 1 < args.length) {
+				out = args[++i];
+			}
+			else if (args[i].equals("--backend") && i + 1 < args.length) {
+				backend = backend(args[++i]);
+			}
+			else {
+				backend = null;
+			}
+			if (backend == null) {
+				System.err.println("usage: LatencyHarness [--sizes 10,10000,1000000]"
+					+ " [--root dir] [--out file] [--backend swing|gtk|native]");
+				System.exit(2);
+			}
+		}
+		if (sizes.isEmpty()) {
+			Collections.addAll(sizes, 10, 10000, 1000000);
+		}
+
+		if (Platform.isLinux() && System.getenv("DISPLAY") == null) {
+			System.exit(runUnderXvfb(args));
+		}
+		if (GraphicsEnvironment.isHeadless()) {
+			System.err.println("LatencyHarness needs a display");
+			System.exit(2);
+		}
+		if (backend == Backend.Native && Platform.isLinux() && !GtkFileChooser.isAvailable()) {
+			System.err.println("GTK 3.20 or later is needed for --backend " + backend);
+			System.exit(2);
+		}
+
+		final PrintStream result = out != null ?
+			new PrintStream(new FileOutputStream(out), true, "UTF-8") : System.out;
+		result.println(String.format(Locale.ROOT,
+			"{\"type\":\"environment\",\"backend\":%s,\"java\":%s,\"os\":%s,\"lookAndFeel\":%s,\"cpus\":%d}",
+			quote(backend.name()),
+			quote(System.getProperty("java.version")),
+			quote(System.getProperty("os.name") + " " + System.getProperty("os.version")),
+			quote(UIManager.getLookAndFeel().getName()),
+			Runtime.getRuntime().availableProcessors()));
+
+		final FrameTimer frames = new FrameTimer();
+		SwingUtilities.invokeAndWait(new Runnable() {
+			@Override
+			public void run() {
+				RepaintManager.setCurrentManager(frames);
+			}
+		});
+		final Robot robot = new Robot();
+		robot.setAutoWaitForIdle(false);
+
+		for (final int size : sizes) {
+			final File dir = createTree(root, size);
+			if (backend == Backend.Swing) {
+				final Run run = new Run(dir, size, robot, frames);
+				run.measure();
+				result.println(run.toJson());
+			}
+			else {
+				final ScreenRun run = new ScreenRun(dir, size, robot, backend);
+				run.measure();
+				result.println(run.toJson());
+				if (run.closed.getCount() > 0) {
+					// the next dialog would queue behind this one
+					System.err.println("the dialog didn't close, stopping");
+					break;
+				}
+			}
+		}
+		result.close();
+		System.exit(0);
+	}
+
+	// null if there is no such backend
+	private static Backend backend(String name) {
+		if (name.equalsIgnoreCase("gtk")) {
+			return Backend.Native;
+		}
+		for (final Backend b : new Backend[] { Backend.Swing, Backend.Native }) {
+			if (b.name().equalsIgnoreCase(name)) {
+				return b;
+			}
+		}
+		return null;
+	}
+
+	/*
+	 * one native dialog on one directory, timed from the outside
+	 *
+	 * The dialog counts as visible once the screen differs from a capture
+	 * taken before it was requested. Then the pointer is moved onto it,
+	 * which gives it the keyboard when there is no window manager, and
+	 * Escape closes it.
+	 */
+	private static final class ScreenRun
+	{
+		// every how many pixels the captures are compared
+		private static final int STEP = 4;
+
+		final File dir;
+		final int size;
+		final Robot robot;
+		final Backend backend;
+
+		long start;
+		long visible;
+		long escape;
+		volatile long returned;
+		final CountDownLatch closed = new CountDownLatch(1);
+
+		ScreenRun(File dir, int size, Robot robot, Backend backend) {
+			this.dir = dir;
+			this.size = size;
+			this.robot = robot;
+			this.backend = backend;
+		}
+
+		void measure() throws InterruptedException {
+			final Rectangle screen = new Rectangle(Toolkit.getDefaultToolkit().getScreenSize());
+			robot.waitForIdle();
+			final BufferedImage before = robot.createScreenCapture(screen);
+			final JnaFileChooser fc = new JnaFileChooser(dir);
+			fc.setBackend(backend);
+			start = System.nanoTime();
+			final Thread t = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						fc.showOpenDialog(null);
+					}
+					finally {
+						returned = System.nanoTime();
+						closed.countDown();
+					}
+				}
+			}, "harness-dialog");
+			t.setDaemon(true);
+			t.start();
+			Rectangle changed = null;
+			while (changed == null && closed.getCount() > 0
+					&& System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MILLIS)) {
+				changed = changed(before, robot.createScreenCapture(screen));
+			}
+			if (changed == null) {
+				return;
+			}
+			visible = System.nanoTime();
+			robot.mouseMove(changed.x + changed.width / 2, changed.y + changed.height / 2);
+			// let the dialog finish its first frame before it's closed
+			robot.delay(500);
+			escape = System.nanoTime();
+			robot.keyPress(KeyEvent.VK_ESCAPE);
+			robot.keyRelease(KeyEvent.VK_ESCAPE);
+			closed.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+		}
+
+		// the bounds of the sampled pixels that differ; null if none do
+		private static Rectangle changed(BufferedImage a, BufferedImage b) {
+			Rectangle r = null;
+			for (int y = 0; y < a.getHeight(); y += STEP) {
+				for (int x = 0; x < a.getWidth(); x += STEP) {
+					if (a.getRGB(x, y) != b.getRGB(x, y)) {
+						if (r == null) {
+							r = new Rectangle(x, y, 1, 1);
+						}
+						else {
+							r.add(x, y);
+						}
+					}
+				}
+			}
+			return r;
+		}
+
+		String toJson() {
+			final StringBuilder sb = new StringBuilder();
+			sb.append("{\"type\":\"run\",\"backend\":").append(quote(backend.name()));
+			sb.append(",\"entries\":").append(size);
+			field(sb, "timeToVisibleMs", visible == 0 ? -1 : (visible - start) / 1e6);
+			field(sb, "closeMs", escape == 0 || closed.getCount() > 0 ? -1 : (returned - escape) / 1e6);
+			return sb.append('}').toString();
+		}
+	}
+
+	/*
+	 * one dialog on one directory
+	 */
+	private static final class Run implements AWTEventListener, ListDataListener, PropertyChangeListener
+	{
+		final File dir;
+		final int size;
+		final Robot robot;
+		final FrameTimer frames;
+
+		volatile long start;
+		volatile long visible;
+		volatile long firstRow;
+		volatile long allRows;
+		volatile int expected;
+		volatile File expectedDir;
+		volatile JFileChooser chooser;
+		volatile JList<?> list;
+		final CountDownLatch opened = new CountDownLatch(1);
+		final CountDownLatch closed = new CountDownLatch(1);
+		volatile CountDownLatch listed = new CountDownLatch(1);
+
+		double navigateIn = -1;
+		double navigateOut = -1;
+		List<Long> scroll = Collections.emptyList();
+
+		Run(File dir, int size, Robot robot, FrameTimer frames) {
+			this.dir = dir;
+			this.size = size;
+			this.robot = robot;
+			this.frames = frames;
+		}
+
+		void measure() throws Exception {
+			final JnaFileChooser fc = new JnaFileChooser(dir);
+			fc.setBackend(JnaFileChooser.Backend.Swing);
+			Toolkit.getDefaultToolkit().addAWTEventListener(this, AWTEvent.WINDOW_EVENT_MASK);
+			try {
+				expected = size;
+				expectedDir = dir.getCanonicalFile();
+				start = System.nanoTime();
+				SwingUtilities.invokeLater(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							fc.showOpenDialog(null);
+						}
+						finally {
+							closed.countDown();
+						}
+					}
+				});
+				if (!opened.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+					return;
+				}
+				listed.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+				robot.waitForIdle();
+				navigateIn = navigate("sub", new File(dir, "sub"), SUBDIRECTORY_ENTRIES);
+				navigateOut = navigate("..", dir, size);
+				scroll = scroll();
+			}
+			finally {
+				Toolkit.getDefaultToolkit().removeAWTEventListener(this);
+				SwingUtilities.invokeAndWait(new Runnable() {
+					@Override
+					public void run() {
+						if (chooser != null) {
+							chooser.cancelSelection();
+						}
+					}
+				});
+				closed.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+			}
+		}
+
+		// types a name into the file name field and waits for the listing
+		private double navigate(String name, File target, int entries)
+				throws IOException, InterruptedException, InvocationTargetException {
+			final JTextField field = find(chooser, JTextField.class);
+			if (field == null) {
+				return -1;
+			}
+			SwingUtilities.invokeAndWait(new Runnable() {
+				@Override
+				public void run() {
+					field.setText("");
+					field.requestFocusInWindow();
+				}
+			});
+			robot.waitForIdle();
+			expected = entries;
+			expectedDir = target.getCanonicalFile();
+			listed = new CountDownLatch(1);
+			final long t = System.nanoTime();
+			for (final char c : name.toCharArray()) {
+				final int key = c == '.' ? KeyEvent.VK_PERIOD : KeyEvent.getExtendedKeyCodeForChar(c);
+				robot.keyPress(key);
+				robot.keyRelease(key);
+			}
+			robot.keyPress(KeyEvent.VK_ENTER);
+			robot.keyRelease(KeyEvent.VK_ENTER);
+			if (!listed.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+				return -1;
+			}
+			return (System.nanoTime() - t) / 1e6;
+		}
+
+		// turns the mouse wheel over the file list and times the repaints
+		private List<Long> scroll() throws InterruptedException, InvocationTargetException {
+			final JList<?> l = list;
+			if (l == null) {
+				return Collections.emptyList();
+			}
+			final Point[] center = new Point[1];
+			SwingUtilities.invokeAndWait(new Runnable() {
+				@Override
+				public void run() {
+					final Point p = l.getVisibleRect().getLocation();
+					SwingUtilities.convertPointToScreen(p, l);
+					p.translate(l.getVisibleRect().width / 2, l.getVisibleRect().height / 2);
+					center[0] = p;
+				}
+			});
+			robot.mouseMove(center[0].x, center[0].y);
+			robot.waitForIdle();
+			frames.start();
+			for (int i = 0; i < SCROLL_STEPS; ++i) {
+				robot.mouseWheel(3);
+				robot.delay(16);
+			}
+			robot.waitForIdle();
+			return frames.stop();
+		}
+
+		@Override
+		public void eventDispatched(AWTEvent e) {
+			if (e.getID() != WindowEvent.WINDOW_OPENED || chooser != null) {
+				return;
+			}
+			final JFileChooser fc = find((Window) e.getSource(), JFileChooser.class);
+			if (fc == null) {
+				return;
+			}
+			visible = System.nanoTime();
+			chooser = fc;
+			list = find(fc, JList.class);
+			fc.addPropertyChangeListener(JFileChooser.DIRECTORY_CHANGED_PROPERTY, this);
+			if (list != null) {
+				list.getModel().addListDataListener(this);
+				list.addPropertyChangeListener("model", this);
+				check();
+			}
+			opened.countDown();
+		}
+
+		@Override
+		public void propertyChange(PropertyChangeEvent e) {
+			if ("model".equals(e.getPropertyName())) {
+				((ListModel<?>) e.getOldValue()).removeListDataListener(this);
+				((ListModel<?>) e.getNewValue()).addListDataListener(this);
+			}
+			check();
+		}
+
+		@Override
+		public void intervalAdded(ListDataEvent e) {
+			check();
+		}
+
+		@Override
+		public void intervalRemoved(ListDataEvent e) {
+			check();
+		}
+
+		@Override
+		public void contentsChanged(ListDataEvent e) {
+			check();
+		}
+
+		// runs on the EDT whenever the listing may have changed
+		private void check() {
+			if (list == null) {
+				return;
+			}
+			final ListModel<?> model = list.getModel();
+			final int n = model.getSize();
+			final long now = System.nanoTime();
+			if (n > 0 && firstRow == 0) {
+				firstRow = now;
+			}
+			// the old listing stays until the new one is loaded
+			if (n >= expected && isIn(model.getElementAt(0), expectedDir)) {
+				if (allRows == 0) {
+					allRows = now;
+				}
+				listed.countDown();
+			}
+		}
+
+		private static boolean isIn(Object entry, File dir) {
+			if (!(entry instanceof File)) {
+				return false;
+			}
+			try {
+				return ((File) entry).getAbsoluteFile().getParentFile().getCanonicalFile().equals(dir);
+			}
+			catch (IOException e) {
+				return false;
+			}
+		}
+
+		String toJson() {
+			final StringBuilder sb = new StringBuilder();
+			sb.append("{\"type\":\"run\",\"backend\":\"Swing\",\"entries\":").append(size);
+			field(sb, "timeToVisibleMs", visible == 0 ? -1 : (visible - start) / 1e6);
+			field(sb, "timeToFirstRowMs", firstRow == 0 ? -1 : (firstRow - start) / 1e6);
+			field(sb, "timeToAllRowsMs", allRows == 0 ? -1 : (allRows - start) / 1e6);
+			field(sb, "navigateInMs", navigateIn);
+			field(sb, "navigateOutMs", navigateOut);
+			final List<Long> sorted = new ArrayList<>(scroll);
+			Collections.sort(sorted);
+			sb.append(",\"scrollFrames\":").append(sorted.size());
+			field(sb, "scrollFrameP50Ms", percentile(sorted, 50));
+			field(sb, "scrollFrameP95Ms", percentile(sorted, 95));
+			field(sb, "scrollFrameMaxMs", percentile(sorted, 100));
+			return sb.append('}').toString();
+		}
+	}
+
+	/*
+	 * times every paint pass of Swing while recording
+	 */
+	private static final class FrameTimer extends RepaintManager
+	{
+		private final List<Long> frames = new ArrayList<>();
+		private volatile boolean recording;
+
+		synchronized void start() {
+			frames.clear();
+			recording = true;
+		}
+
+		synchronized List<Long> stop() {
+			recording = false;
+			return new ArrayList<>(frames);
+		}
+
+		@Override
+		public void paintDirtyRegions() {
+			final long t = System.nanoTime();
+			super.paintDirtyRegions();
+			if (recording) {
+				synchronized (this) {
+					frames.add(System.nanoTime() - t);
+				}
+			}
+		}
+	}
+
+	/*
+	 * creates a directory with the given number of entries: a subdirectory
+	 * "sub" and empty files; a complete tree is reused by later runs
+	 */
+	static File createTree(File root, final int size) throws IOException {
+		final File dir = new File(root, "entries-" + size);
+		final File marker = new File(root, "entries-" + size + ".complete");
+		if (marker.exists()) {
+			return dir;
+		}
+		final File sub = new File(dir, "sub");
+		if (!sub.isDirectory() && !sub.mkdirs()) {
+			throw new IOException("can't create " + sub);
+		}
+		for (int i = 0; i < SUBDIRECTORY_ENTRIES; ++i) {
+			new File(sub, String.format("file-%02d.txt", i)).createNewFile();
+		}
+		final boolean[] failed = new boolean[1];
+		IntStream.range(1, size).parallel().forEach(new java.util.function.IntConsumer() {
+			@Override
+			public void accept(int i) {
+				try {
+					new File(dir, String.format("file-%07d.txt", i)).createNewFile();
+				}
+				catch (IOException e) {
+					failed[0] = true;
+				}
+			}
+		});
+		if (failed[0] || !marker.createNewFile()) {
+			throw new IOException("can't create the entries of " + dir);
+		}
+		return dir;
+	}
+
+	/*
+	 * starts Xvfb on a free display and runs the harness again inside it
+	 */
+	private static int runUnderXvfb(String[] args) throws IOException, InterruptedException {
+		int display = 99;
+		while (new File("/tmp/.X11-unix/X" + display).exists()) {
+			++display;
+		}
+		final Process xvfb;
+		try {
+			xvfb = new ProcessBuilder("Xvfb", ":" + display, "-screen", "0", "1280x1024x24",
+				"-nolisten", "tcp").redirectErrorStream(true)
+				.redirectOutput(ProcessBuilder.Redirect.appendTo(new File("/dev/null"))).start();
+		}
+		catch (IOException e) {
+			System.err.println("no DISPLAY and Xvfb can't be started: " + e.getMessage());
+			return 2;
+		}
+		try {
+			final File socket = new File("/tmp/.X11-unix/X" + display);
+			for (int i = 0; i < 100 && !socket.exists(); ++i) {
+				Thread.sleep(100);
+			}
+			final List<String> cmd = new ArrayList<>();
+			cmd.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+			cmd.add("-cp");
+			cmd.add(System.getProperty("java.class.path"));
+			cmd.add(LatencyHarness.class.getName());
+			Collections.addAll(cmd, args);
+			final ProcessBuilder pb = new ProcessBuilder(cmd).inheritIO();
+			pb.environment().put("DISPLAY", ":" + display);
+			return pb.start().waitFor();
+		}
+		finally {
+			xvfb.destroy();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T extends Component> T find(Container c, Class<?> type) {
+		for (final Component child : c.getComponents()) {
+			if (type.isInstance(child)) {
+				return (T) child;
+			}
+			if (child instanceof Container) {
+				final T found = find((Container) child, type);
+				if (found != null) {
+					return found;
+				}
+			}
+		}
+		return null;
+	}
+
+	private static double percentile(List<Long> sorted, int p) {
+		if (sorted.isEmpty()) {
+			return -1;
+		}
+		final int i = (int) Math.ceil(p / 100.0 * sorted.size()) - 1;
+		return sorted.get(Math.max(0, i)) / 1e6;
+	}
+
+	private static void field(StringBuilder sb, String name, double ms) {
+		sb.append(",\"").append(name).append("\":");
+		sb.append(ms < 0 ? "null" : String.format(Locale.ROOT, "%.3f", ms));
+	}
+
+	private static String quote(String s) {
+		return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+	}
+}
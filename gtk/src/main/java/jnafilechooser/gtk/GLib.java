@@ -0,0 +1,59 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.gtk;
+
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.PointerByReference;
+
+public class GLib
+{
+	static {
+		Native.register("glib-2.0");
+	}
+
+	public static native void g_free(Pointer mem);
+	public static native void g_slist_free(Pointer list);
+
+	public static native Pointer g_main_context_new();
+	public static native void g_main_context_push_thread_default(Pointer context);
+	public static native boolean g_main_context_iteration(Pointer context, boolean mayBlock);
+	public static native void g_main_context_wakeup(Pointer context);
+
+	public static native Pointer g_variant_parse(Pointer type, String text, Pointer limit,
+		Pointer endptr, PointerByReference error);
+	public static native Pointer g_variant_get_child_value(Pointer value, NativeLong index);
+	public static native NativeLong g_variant_n_children(Pointer value);
+	public static native int g_variant_get_uint32(Pointer value);
+	public static native boolean g_variant_get_boolean(Pointer value);
+	public static native Pointer g_variant_get_string(Pointer value, Pointer length);
+	public static native Pointer g_variant_get_strv(Pointer value, Pointer length);
+	public static native Pointer g_variant_lookup_value(Pointer dictionary, String key, Pointer expectedType);
+	public static native Pointer g_variant_get_variant(Pointer value);
+	public static native void g_variant_unref(Pointer value);
+
+	public static native void g_error_free(Pointer error);
+
+	// layout of a GError: { GQuark domain; gint code; gchar *message; }
+	public static String g_error_message(Pointer error) {
+		final Pointer message = error.getPointer(8);
+		return message != null ? message.getString(0, "UTF-8") : "";
+	}
+
+	// layout of a GSList node: { gpointer data; GSList *next; }
+	public static Pointer g_slist_data(Pointer node) {
+		return node.getPointer(0);
+	}
+
+	public static Pointer g_slist_next(Pointer node) {
+		return node.getPointer(Native.POINTER_SIZE);
+	}
+}
@@ -0,0 +1,23 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.gtk;
+
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+
+public class GObject
+{
+	static {
+		Native.register("gobject-2.0");
+	}
+
+	public static native Pointer g_object_ref_sink(Pointer object);
+	public static native void g_object_unref(Pointer object);
+}
@@ -0,0 +1,51 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.gtk;
+
+import com.sun.jna.Callback;
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.PointerByReference;
+
+public class Gio
+{
+	static {
+		Native.register("gio-2.0");
+	}
+
+	public static native Pointer g_bus_get_sync(int busType, Pointer cancellable, PointerByReference error);
+	public static native Pointer g_dbus_connection_new_for_address_sync(String address, int flags,
+		Pointer observer, Pointer cancellable, PointerByReference error);
+	public static native String g_dbus_connection_get_unique_name(Pointer connection);
+	public static native boolean g_dbus_connection_is_closed(Pointer connection);
+	public static native Pointer g_dbus_connection_call_sync(Pointer connection, String busName,
+		String objectPath, String interfaceName, String methodName, Pointer parameters,
+		Pointer replyType, int flags, int timeoutMsec, Pointer cancellable, PointerByReference error);
+	public static native int g_dbus_connection_signal_subscribe(Pointer connection, String sender,
+		String interfaceName, String member, String objectPath, String arg0, int flags,
+		GDBusSignalCallback callback, Pointer userData, Pointer userDataFreeFunc);
+	public static native void g_dbus_connection_signal_unsubscribe(Pointer connection, int subscriptionId);
+
+	public interface GDBusSignalCallback extends Callback {
+		void callback(Pointer connection, String senderName, String objectPath,
+			String interfaceName, String signalName, Pointer parameters, Pointer userData);
+	}
+
+	// GBusType
+	public static final int G_BUS_TYPE_SESSION = 2;
+
+	// GDBusConnectionFlags
+	public static final int G_DBUS_CONNECTION_FLAGS_AUTHENTICATION_CLIENT = 1;
+	public static final int G_DBUS_CONNECTION_FLAGS_MESSAGE_BUS_CONNECTION = 1 << 3;
+
+	// GDBusCallFlags and GDBusSignalFlags
+	public static final int G_DBUS_CALL_FLAGS_NONE = 0;
+	public static final int G_DBUS_SIGNAL_FLAGS_NONE = 0;
+}
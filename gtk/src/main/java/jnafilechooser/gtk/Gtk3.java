@@ -0,0 +1,58 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.gtk;
+
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+
+// https://docs.gtk.org/gtk3/class.FileChooserNative.html
+public class Gtk3
+{
+	static {
+		Native.register("gtk-3");
+	}
+
+	public static native boolean gtk_init_check(Pointer argc, Pointer argv);
+
+	// GtkFileChooserNative, available as of GTK 3.20
+	public static native Pointer gtk_file_chooser_native_new(String title,
+		Pointer parent, int action, String acceptLabel, String cancelLabel);
+	public static native int gtk_native_dialog_run(Pointer self);
+	public static native void gtk_native_dialog_destroy(Pointer self);
+
+	// GtkFileChooser interface
+	public static native void gtk_file_chooser_set_select_multiple(Pointer chooser, boolean selectMultiple);
+	public static native void gtk_file_chooser_set_do_overwrite_confirmation(Pointer chooser, boolean confirm);
+	public static native boolean gtk_file_chooser_set_current_folder(Pointer chooser, String filename);
+	public static native void gtk_file_chooser_set_current_name(Pointer chooser, String name);
+	public static native void gtk_file_chooser_add_filter(Pointer chooser, Pointer filter);
+	public static native void gtk_file_chooser_set_filter(Pointer chooser, Pointer filter);
+	public static native Pointer gtk_file_chooser_get_filter(Pointer chooser);
+	public static native Pointer gtk_file_chooser_get_filenames(Pointer chooser);
+	public static native Pointer gtk_file_chooser_get_current_folder(Pointer chooser);
+
+	// GtkFileFilter
+	public static native Pointer gtk_file_filter_new();
+	public static native void gtk_file_filter_set_name(Pointer filter, String name);
+	public static native void gtk_file_filter_add_pattern(Pointer filter, String pattern);
+
+	// values of GtkFileChooserAction
+	public static final int GTK_FILE_CHOOSER_ACTION_OPEN = 0;
+	public static final int GTK_FILE_CHOOSER_ACTION_SAVE = 1;
+	public static final int GTK_FILE_CHOOSER_ACTION_SELECT_FOLDER = 2;
+	public static final int GTK_FILE_CHOOSER_ACTION_CREATE_FOLDER = 3;
+
+	// values of GtkResponseType
+	public static final int GTK_RESPONSE_NONE = -1;
+	public static final int GTK_RESPONSE_REJECT = -2;
+	public static final int GTK_RESPONSE_ACCEPT = -3;
+	public static final int GTK_RESPONSE_DELETE_EVENT = -4;
+	public static final int GTK_RESPONSE_CANCEL = -6;
+}
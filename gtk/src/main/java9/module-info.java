@@ -0,0 +1,18 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+/**
+ * JNA mappings of the GTK 3 file chooser and of the GIO D-Bus API.
+ */
+module jnafilechooser.gtk {
+	requires com.sun.jna;
+
+	exports jnafilechooser.gtk;
+}
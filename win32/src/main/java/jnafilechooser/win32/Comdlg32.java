@@ -13,6 +13,7 @@ import com.sun.jna.Native;
 import com.sun.jna.Pointer;
 import com.sun.jna.Structure;
 import com.sun.jna.WString;
+import com.sun.jna.win32.StdCallLibrary;
 import java.util.Arrays;
 import java.util.List;
 
@@ -64,6 +65,12 @@ public class Comdlg32
 		}
 	}
 
+	// http://msdn.microsoft.com/en-us/library/ms646931.aspx
+	// set through CallbackReference.getFunctionPointer as lpfnHook
+	public interface OFNHookProc extends StdCallLibrary.StdCallCallback {
+		Pointer callback(Pointer hdlg, int uiMsg, Pointer wParam, Pointer lParam);
+	}
+
 	// flags for the OpenFileName structure
 	public final static int OFN_READONLY = 0x00000001;
 	public final static int OFN_OVERWRITEPROMPT = 0x00000002;
@@ -92,6 +99,11 @@ public class Comdlg32
 	public static final int OFN_DONTADDTORECENT = 0x02000000;
 	public static final int OFN_FORCESHOWHIDDEN = 0x10000000;
 
+	// messages that can be sent to explorer-style dialogs from a hook
+	public static final int CDM_GETSPEC = 0x0464;
+	public static final int CDM_GETFILEPATH = 0x0465;
+	public static final int CDM_GETFOLDERPATH = 0x0466;
+
 	// error codes from cderr.h which may be returned by
 	// CommDlgExtendedError for the GetOpenFileName and
 	// GetSaveFileName functions.
@@ -12,6 +12,7 @@ package jnafilechooser.win32;
 import com.sun.jna.Native;
 import com.sun.jna.Pointer;
 import com.sun.jna.Structure;
+import com.sun.jna.win32.StdCallLibrary;
 import java.util.Arrays;
 import java.util.List;
 
@@ -42,6 +43,15 @@ public class Shell32
 		}
 	}
 
+	// https://learn.microsoft.com/en-us/windows/win32/api/shlobj_core/nc-shlobj_core-bffcallback
+	// set through CallbackReference.getFunctionPointer as lpfn
+	public interface BrowseCallbackProc extends StdCallLibrary.StdCallCallback {
+		int callback(Pointer hwnd, int uMsg, Pointer lParam, Pointer lpData);
+	}
+
+	// messages of the BrowseCallbackProc
+	public static final int BFFM_INITIALIZED = 1;
+
 	// flags for the BrowseInfo structure
 	public static final int BIF_RETURNONLYFSDIRS = 0x00000001;
 	public static final int BIF_DONTGOBELOWDOMAIN = 0x00000002;
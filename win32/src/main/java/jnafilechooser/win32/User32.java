@@ -0,0 +1,85 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package jnafilechooser.win32;
+
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+import com.sun.jna.Structure;
+import com.sun.jna.WString;
+import java.util.Arrays;
+import java.util.List;
+
+public class User32
+{
+	static {
+		Native.register("user32");
+	}
+
+	public static native Pointer GetParent(Pointer hWnd);
+	public static native Pointer FindWindowExW(Pointer hWndParent, Pointer hWndChildAfter,
+		WString lpszClass, WString lpszWindow);
+	public static native Pointer SendMessageW(Pointer hWnd, int msg, Pointer wParam, Pointer lParam);
+	public static native boolean PostMessageW(Pointer hWnd, int msg, Pointer wParam, Pointer lParam);
+	public static native boolean MessageBeep(int uType);
+
+	// http://msdn.microsoft.com/en-us/library/bb774760.aspx
+	public static class LVItem extends Structure {
+		public int mask;
+		public int iItem;
+		public int iSubItem;
+		public int state;
+		public int stateMask;
+		public Pointer pszText;
+		public int cchTextMax;
+		public int iImage;
+		public Pointer lParam;
+		public int iIndent;
+		public int iGroupId;
+		public int cColumns;
+		public Pointer puColumns;
+		public Pointer piColFmt;
+		public int iGroup;
+
+		@Override
+		protected List<String> getFieldOrder() {
+			return Arrays.asList(new String[] { "mask", "iItem", "iSubItem",
+				"state", "stateMask", "pszText", "cchTextMax", "iImage", "lParam",
+				"iIndent", "iGroupId", "cColumns", "puColumns", "piColFmt", "iGroup"
+			});
+		}
+	}
+
+	// window messages
+	public static final int WM_INITDIALOG = 0x0110;
+	public static final int WM_COMMAND = 0x0111;
+	public static final int WM_USER = 0x0400;
+
+	// list view messages and flags
+	public static final int LVM_GETNEXTITEM = 0x100C;
+	public static final int LVM_GETITEMTEXTW = 0x1073;
+	public static final int LVNI_SELECTED = 0x0002;
+
+	// dialog box command IDs and button notifications
+	public static final int IDOK = 1;
+	public static final int IDCANCEL = 2;
+	public static final int BN_CLICKED = 0;
+
+	// window and dialog styles for in-memory dialog templates
+	public static final int WS_CHILD = 0x40000000;
+	public static final int WS_VISIBLE = 0x10000000;
+	public static final int WS_CLIPSIBLINGS = 0x04000000;
+	public static final int WS_TABSTOP = 0x00010000;
+	public static final int DS_3DLOOK = 0x0004;
+	public static final int DS_CONTROL = 0x0400;
+	public static final int BS_PUSHBUTTON = 0x0000;
+
+	// MessageBeep types
+	public static final int MB_OK = 0x00000000;
+}
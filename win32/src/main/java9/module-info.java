@@ -0,0 +1,20 @@
+/* This file is part of JnaFileChooser.
+ *
+ * JnaFileChooser is free software: you can redistribute it and/or modify it
+ * under the terms of the new BSD license.
+ *
+ * JnaFileChooser is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+/**
+ * JNA mappings of the Windows common dialogs and shell functions.
+ */
+module jnafilechooser.win32 {
+	requires com.sun.jna;
+
+	exports jnafilechooser.win32;
+	// JNA reads and writes the fields of the structures reflectively
+	opens jnafilechooser.win32 to com.sun.jna;
+}